@@ -16,11 +16,22 @@
 package eus.ixa.ixa.pipe.lemma;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Pattern;
+
+import eus.ixa.ixa.pipe.pos.train.FeatureHasher;
 
 /**
- * Simple feature generator for learning statistical lemmatizers.
+ * Simple feature generator for learning statistical lemmatizers. The features
+ * depending only on the token and its tag are computed once per sentence, the
+ * first time the token is seen, and only the previous prediction features are
+ * built for every hypothesis of the beam. The features of a position are kept
+ * together with the token and tag they were computed from, and computed again
+ * if the caller passes other strings at that position, so the token and tag
+ * arrays may be buffers refilled for every sentence. If the model uses hashed
+ * features, the token features are hashed once per sentence as well. An
+ * instance keeps the features of the current sentence and must not be shared
+ * by threads.
  * @author ragerri
  * @version 2016-02-15
  */
@@ -29,10 +40,34 @@ public class DefaultLemmatizerContextGenerator implements LemmatizerContextGener
   private static final int PREFIX_LENGTH = 5;
   private static final int SUFFIX_LENGTH = 7;
 
-  private static Pattern hasCap = Pattern.compile("[A-Z]");
-  private static Pattern hasNum = Pattern.compile("[0-9]");
+  /**
+   * The token and tag every position's features were computed from.
+   */
+  private String[] featureToks = new String[0];
+  private String[] featureTags = new String[0];
+  /**
+   * The token features of every position, null until a token is seen there.
+   */
+  private String[][] tokenFeatures = new String[0][];
+  /**
+   * The hashed token features of the current sentence.
+   */
+  private String[][] hashedFeatures = new String[0][];
+  /**
+   * The hasher of the features, null if the features are not hashed.
+   */
+  private final FeatureHasher hasher;
 
   public DefaultLemmatizerContextGenerator() {
+    this(null);
+  }
+
+  /**
+   * @param aHasher the hasher of the features, null if the features are not
+   * hashed
+   */
+  public DefaultLemmatizerContextGenerator(FeatureHasher aHasher) {
+    this.hasher = aHasher;
   }
 
   protected static String[] getPrefixes(String lex) {
@@ -56,32 +91,79 @@ public class DefaultLemmatizerContextGenerator implements LemmatizerContextGener
   }
 
   public String[] getContext(int index, String[] toks, String[] tags, String[] preds) {
-    // Word
-    String w0;
-    // Tag
-    String t0;
+    if (this.tokenFeatures.length < toks.length) {
+      ensureCapacity(toks.length);
+    }
+    // the features only depend on the token and the tag, so the features of
+    // the same strings are still valid
+    if (this.tokenFeatures[index] == null
+        || this.featureToks[index] != toks[index]
+        || this.featureTags[index] != tags[index]) {
+      this.featureToks[index] = toks[index];
+      this.featureTags[index] = tags[index];
+      this.tokenFeatures[index] = getTokenFeatures(toks[index], tags[index]);
+      if (this.hasher != null) {
+        this.hashedFeatures[index] = this.hasher.hash(this.tokenFeatures[index]);
+      }
+    }
+    // the previous prediction features combine the unhashed token features
+    final String[] tokenFeatures = this.tokenFeatures[index];
+    final String[] predicates = this.hasher == null ? tokenFeatures : this.hashedFeatures[index];
     // Previous prediction
     String p_1;
-
-    String lex = toks[index].toString();
     if (index < 1) {
       p_1 = "p_1=bos";
     }
     else {
       p_1 = "p_1=" + preds[index - 1];
     }
+    // the word and tag features come first, followed by the previous
+    // prediction features and by the rest of the token features
+    final String[] features = new String[tokenFeatures.length + 3];
+    features[0] = predicates[0];
+    features[1] = predicates[1];
+    features[2] = feature(p_1);
+    features[3] = feature(p_1 + tokenFeatures[1]);
+    features[4] = feature(p_1 + tokenFeatures[0]);
+    System.arraycopy(predicates, 2, features, 5, predicates.length - 2);
+    return features;
+  }
 
-    w0 = "w0=" + toks[index];
-    t0 = "t0=" + tags[index];
+  /**
+   * Hash a feature if the features are hashed.
+   *
+   * @param feature the feature
+   * @return the predicate
+   */
+  private String feature(String feature) {
+    return this.hasher == null ? feature : this.hasher.hash(feature);
+  }
+
+  /**
+   * Make room for the token features of a longer sentence.
+   *
+   * @param length the number of tokens of the sentence
+   */
+  private void ensureCapacity(int length) {
+    final int capacity = Math.max(length, this.tokenFeatures.length * 2);
+    this.featureToks = Arrays.copyOf(this.featureToks, capacity);
+    this.featureTags = Arrays.copyOf(this.featureTags, capacity);
+    this.tokenFeatures = Arrays.copyOf(this.tokenFeatures, capacity);
+    this.hashedFeatures = Arrays.copyOf(this.hashedFeatures, capacity);
+  }
 
+  /**
+   * Compute the features which depend only on the token and its tag: the word,
+   * the tag, the suffixes, the prefixes and the shape of the word.
+   *
+   * @param lex the token
+   * @param tag the tag
+   * @return the word and tag features followed by the rest
+   */
+  private static String[] getTokenFeatures(String lex, String tag) {
     List<String> features = new ArrayList<String>();
-    
-    features.add(w0);
-    features.add(t0);
-    features.add(p_1);
-    features.add(p_1 + t0);
-    features.add(p_1 + w0);
-    
+    features.add("w0=" + lex);
+    features.add("t0=" + tag);
     // do some basic suffix analysis
     String[] suffs = getSuffixes(lex);
     for (int i = 0; i < suffs.length; i++) {
@@ -97,14 +179,32 @@ public class DefaultLemmatizerContextGenerator implements LemmatizerContextGener
       features.add("h");
     }
 
-    if (hasCap.matcher(lex).find()) {
+    if (hasChar(lex, 'A', 'Z')) {
       features.add("c");
     }
 
-    if (hasNum.matcher(lex).find()) {
+    if (hasChar(lex, '0', '9')) {
       features.add("d");
     }
-    
     return features.toArray(new String[features.size()]);
   }
+
+  /**
+   * Whether a word contains a character of a range, as the regular expression
+   * [from-to] would find.
+   *
+   * @param lex the word
+   * @param from the first character of the range
+   * @param to the last character of the range
+   * @return true if the word contains a character of the range
+   */
+  private static boolean hasChar(String lex, char from, char to) {
+    for (int i = 0; i < lex.length(); i++) {
+      char c = lex.charAt(i);
+      if (c >= from && c <= to) {
+        return true;
+      }
+    }
+    return false;
+  }
 }
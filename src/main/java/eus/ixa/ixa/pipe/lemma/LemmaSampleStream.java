@@ -16,6 +16,8 @@
 package eus.ixa.ixa.pipe.lemma;
 
 import eus.ixa.ixa.pipe.pos.StringUtils;
+import eus.ixa.ixa.pipe.pos.train.ParallelSampleStream;
+import eus.ixa.ixa.pipe.pos.train.SampleParser;
 import opennlp.tools.util.FilterObjectStream;
 import opennlp.tools.util.ObjectStream;
 import org.apache.logging.log4j.LogManager;
@@ -23,28 +25,69 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
  * Reads data for training and testing. The format consists of:
- * word\tabpostag\tablemma.
+ * word\tabpostag\tablemma. The shortest edit script of every (word, lemma)
+ * pair is computed once and kept for the next passes over the corpus, as the
+ * trainers reset and read the stream for every iteration.
  * @author ragerri
  * @version 2016-02-16
  */
-public class LemmaSampleStream extends FilterObjectStream<String, LemmaSample> {
+public class LemmaSampleStream extends FilterObjectStream<String, LemmaSample>
+    implements SampleParser<LemmaSample> {
   private static final Logger logger = LogManager.getLogger(LemmaSampleStream.class);
+  /**
+   * The shortest edit scripts seen so far, by word and lemma. The maps of the
+   * lemmas of a word are guarded by their own lock.
+   */
+  private final ConcurrentMap<String, Map<String, String>> editScripts = new ConcurrentHashMap<String, Map<String, String>>();
+
   public LemmaSampleStream(ObjectStream<String> samples) {
     super(samples);
   }
 
-  public LemmaSample read() throws IOException {
+  /**
+   * Create a stream of {@link LemmaSample}s, parsing the sentences and
+   * computing their edit scripts in parallel if more than one thread is
+   * requested.
+   * @param samples the lines of the corpus
+   * @param threads the number of parsing threads
+   * @return the sample stream
+   */
+  public static ObjectStream<LemmaSample> create(ObjectStream<String> samples, int threads) {
+    if (threads > 1) {
+      return new ParallelSampleStream<LemmaSample>(samples, new LemmaSampleStream(samples), threads);
+    }
+    return new LemmaSampleStream(samples);
+  }
 
-    List<String> toks = new ArrayList<String>();
-    List<String> tags = new ArrayList<String>();
-    List<String> preds = new ArrayList<String>();
+  public LemmaSample read() throws IOException {
 
+    List<String> lines = new ArrayList<String>();
     for (String line = samples.read(); line != null && !line.equals(""); line = samples.read()) {
+      lines.add(line);
+    }
+    return parse(lines);
+  }
+
+  /**
+   * Parses the lines of a sentence into a {@link LemmaSample}. Thread-safe.
+   * @param lines the lines of the sentence
+   * @return the sample, or null if the sentence has no valid lines
+   */
+  public LemmaSample parse(List<String> lines) {
+    List<String> toks = new ArrayList<String>(lines.size());
+    List<String> tags = new ArrayList<String>(lines.size());
+    List<String> preds = new ArrayList<String>(lines.size());
+
+    for (String line : lines) {
       String[] parts = line.split("\t");
       if (parts.length != 3) {
         logger.error("Skipping corrupt line: " + line);
@@ -52,7 +95,7 @@ public class LemmaSampleStream extends FilterObjectStream<String, LemmaSample> {
       else {
         toks.add(parts[0]);
         tags.add(parts[1]);
-        String ses = StringUtils.getShortestEditScript(parts[0], parts[2]);
+        String ses = getShortestEditScript(parts[0], parts[2]);
         preds.add(ses);
       }
     }
@@ -64,4 +107,30 @@ public class LemmaSampleStream extends FilterObjectStream<String, LemmaSample> {
       return null;
     }
   }
+
+  /**
+   * Get the shortest edit script of a word and its lemma, computing it only
+   * the first time the pair is seen.
+   * @param word the word
+   * @param lemma the lemma
+   * @return the shortest edit script
+   */
+  private String getShortestEditScript(String word, String lemma) {
+    Map<String, String> lemmaScripts = this.editScripts.get(word);
+    if (lemmaScripts == null) {
+      Map<String, String> newScripts = new HashMap<String, String>(4);
+      lemmaScripts = this.editScripts.putIfAbsent(word, newScripts);
+      if (lemmaScripts == null) {
+        lemmaScripts = newScripts;
+      }
+    }
+    synchronized (lemmaScripts) {
+      String ses = lemmaScripts.get(lemma);
+      if (ses == null) {
+        ses = StringUtils.getShortestEditScript(word, lemma);
+        lemmaScripts.put(lemma, ses);
+      }
+      return ses;
+    }
+  }
 }
\ No newline at end of file
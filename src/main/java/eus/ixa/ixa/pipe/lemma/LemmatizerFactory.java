@@ -15,6 +15,9 @@
  */
 package eus.ixa.ixa.pipe.lemma;
 
+import java.util.Map;
+
+import eus.ixa.ixa.pipe.pos.train.FeatureHasher;
 import opennlp.tools.util.BaseToolFactory;
 import opennlp.tools.util.InvalidFormatException;
 import opennlp.tools.util.SequenceValidator;
@@ -24,6 +27,10 @@ import org.apache.logging.log4j.Logger;
 
 public class LemmatizerFactory extends BaseToolFactory {
   private static final Logger logger = LogManager.getLogger(LemmatizerFactory.class);
+  /**
+   * The hash width of the features when training, 0 for no hashing.
+   */
+  private int hashFeatures;
   /**
    * Creates a {@link LemmatizerFactory} that provides the default implementation
    * of the resources.
@@ -59,7 +66,46 @@ public class LemmatizerFactory extends BaseToolFactory {
     return new DefaultLemmatizerSequenceValidator();
   }
 
+  /**
+   * Hash the features of the model to be trained into 2^bits predicates.
+   * 
+   * @param bits
+   *          the hash width, 0 for no hashing
+   */
+  public void setHashFeatures(final int bits) {
+    this.hashFeatures = bits;
+  }
+
+  /**
+   * Get the hash width of the features, read from the manifest of a loaded
+   * model.
+   * 
+   * @return the hash width, 0 if the features are not hashed
+   */
+  public int getHashFeatures() {
+    if (this.artifactProvider != null) {
+      final String bits = this.artifactProvider
+          .getManifestProperty(FeatureHasher.HASH_FEATURES_PARAMETER);
+      return bits == null ? 0 : Integer.parseInt(bits);
+    }
+    return this.hashFeatures;
+  }
+
+  @Override
+  public Map<String, String> createManifestEntries() {
+    final Map<String, String> manifestEntries = super.createManifestEntries();
+    if (getHashFeatures() > 0) {
+      manifestEntries.put(FeatureHasher.HASH_FEATURES_PARAMETER,
+          Integer.toString(getHashFeatures()));
+    }
+    return manifestEntries;
+  }
+
   public LemmatizerContextGenerator getContextGenerator() {
+    final int bits = getHashFeatures();
+    if (bits > 0) {
+      return new DefaultLemmatizerContextGenerator(new FeatureHasher(bits));
+    }
     return new DefaultLemmatizerContextGenerator();
   }
 }
@@ -15,7 +15,7 @@
  */
 package eus.ixa.ixa.pipe.lemma;
 
-import eus.ixa.ixa.pipe.pos.StringUtils;
+import eus.ixa.ixa.pipe.pos.EditScriptProgram;
 import opennlp.tools.ml.*;
 import opennlp.tools.ml.TrainerFactory.TrainerType;
 import opennlp.tools.ml.model.Event;
@@ -29,7 +29,6 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -52,6 +51,14 @@ public class LemmatizerME implements Lemmatizer {
 
   private LemmatizerContextGenerator contextGenerator;
   private SequenceValidator<String> sequenceValidator;
+  /**
+   * The compiled lemma classes of the model.
+   */
+  private final Map<String, EditScriptProgram> editScripts;
+  /**
+   * The buffer to apply the lemma classes.
+   */
+  private char[] lemmaBuffer = new char[64];
 
   /**
    * Initializes the current instance with the provided model and the default
@@ -81,6 +88,7 @@ public class LemmatizerME implements Lemmatizer {
       this.model = new opennlp.tools.ml.BeamSearch<String>(beamSize,
           (MaxentModel) model.getLemmatizerSequenceModel(), 0);
     }
+    this.editScripts = model.getEditScripts();
   }
 
   /**
@@ -128,16 +136,27 @@ public class LemmatizerME implements Lemmatizer {
    * @return the array of decoded lemmas
    */
   public String[] decodeLemmas(String[] toks, String[] preds) {
-    List<String> lemmas = new ArrayList<String>();
+    String[] lemmas = new String[toks.length];
     for (int i = 0; i < toks.length; i++) {
-      String lemma = StringUtils.decodeShortestEditScript(toks[i].toLowerCase(), preds[i]);
-      logger.debug("-> DEBUG: " + toks[i].toLowerCase() + " " + preds[i] + " " + lemma);
+      String wordForm = toks[i].toLowerCase();
+      EditScriptProgram program = this.editScripts.get(preds[i]);
+      if (program == null) {
+        program = EditScriptProgram.compile(preds[i]);
+      }
+      int bufferSize = program.getBufferSize(wordForm);
+      if (this.lemmaBuffer.length < bufferSize) {
+        this.lemmaBuffer = new char[Math.max(bufferSize, this.lemmaBuffer.length * 2)];
+      }
+      String lemma = program.apply(wordForm, this.lemmaBuffer);
+      if (logger.isDebugEnabled()) {
+        logger.debug("-> DEBUG: " + wordForm + " " + preds[i] + " " + lemma);
+      }
       if (lemma.length() == 0) {
         lemma = "_";
       }
-      lemmas.add(lemma);
+      lemmas[i] = lemma;
     }
-    return lemmas.toArray(new String[lemmas.size()]);
+    return lemmas;
   }
 
   public Sequence[] topKSequences(String[] sentence, String[] tags) {
@@ -19,6 +19,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 
@@ -29,6 +31,7 @@ import opennlp.tools.ml.model.SequenceClassificationModel;
 import opennlp.tools.util.BaseToolFactory;
 import opennlp.tools.util.InvalidFormatException;
 import opennlp.tools.util.model.BaseModel;
+import eus.ixa.ixa.pipe.pos.EditScriptProgram;
 
 /**
  * The {@link LemmatizerModel} is the model used
@@ -40,6 +43,10 @@ public class LemmatizerModel extends BaseModel {
 
   private static final String COMPONENT_NAME = "StatisticalLemmatizer";
   private static final String LEMMATIZER_MODEL_ENTRY_NAME = "lemmatizer.model";
+  /**
+   * The lemma classes of the model compiled into programs, built once.
+   */
+  private volatile Map<String, EditScriptProgram> editScripts;
 
   public LemmatizerModel(String languageCode, SequenceClassificationModel<String> lemmatizerModel,
       Map<String, String> manifestInfoEntries, LemmatizerFactory factory) {
@@ -88,6 +95,18 @@ public class LemmatizerModel extends BaseModel {
     }
   }
 
+  /**
+   * Get the maxent model of the lemmatizer.
+   * 
+   * @return the maxent model, or null if the lemmatizer is a sequence model
+   */
+  public MaxentModel getLemmatizerModel() {
+    if (artifactMap.get(LEMMATIZER_MODEL_ENTRY_NAME) instanceof MaxentModel) {
+      return (MaxentModel) artifactMap.get(LEMMATIZER_MODEL_ENTRY_NAME);
+    }
+    return null;
+  }
+
   public SequenceClassificationModel<String> getLemmatizerSequenceModel() {
 
     Properties manifest = (Properties) artifactMap.get(MANIFEST_ENTRY);
@@ -110,6 +129,34 @@ public class LemmatizerModel extends BaseModel {
     }
   }
 
+  /**
+   * Get the lemma classes of the model compiled into {@link EditScriptProgram}s.
+   * They are compiled the first time they are requested and shared by every
+   * {@link LemmatizerME} of the model.
+   * 
+   * @return the programs by lemma class
+   */
+  public Map<String, EditScriptProgram> getEditScripts() {
+    Map<String, EditScriptProgram> scripts = this.editScripts;
+    if (scripts == null) {
+      synchronized (this) {
+        scripts = this.editScripts;
+        if (scripts == null) {
+          scripts = new HashMap<String, EditScriptProgram>();
+          SequenceClassificationModel<String> model = getLemmatizerSequenceModel();
+          if (model != null) {
+            for (String lemmaClass : model.getOutcomes()) {
+              scripts.put(lemmaClass, EditScriptProgram.compile(lemmaClass));
+            }
+          }
+          scripts = Collections.unmodifiableMap(scripts);
+          this.editScripts = scripts;
+        }
+      }
+    }
+    return scripts;
+  }
+
   @Override
   protected Class<? extends BaseToolFactory> getDefaultFactory() {
     return LemmatizerFactory.class;
@@ -17,17 +17,19 @@ package eus.ixa.ixa.pipe.lemma;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
+import com.google.common.io.ByteStreams;
+import eus.ixa.ixa.pipe.pos.CompactModel;
+import eus.ixa.ixa.pipe.pos.ModelRegistry;
 import eus.ixa.ixa.pipe.pos.Morpheme;
 import eus.ixa.ixa.pipe.pos.MorphoFactory;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Probabilistic lemmatizer.
@@ -43,10 +45,13 @@ public class StatisticalLemmatizer {
    */
   private final LemmatizerME lemmatizer;
   /**
-   * The models to use for every language. The keys of the hashmap are the language
-   * codes, the values the models.
+   * The model of the lemmatizer.
    */
-  private final static ConcurrentHashMap<String, LemmatizerModel> lemmaModels = new ConcurrentHashMap<String, LemmatizerModel>();
+  private final LemmatizerModel lemmatizerModel;
+  /**
+   * The loaded models, shared by every instance.
+   */
+  private final static ModelRegistry<LemmatizerModel> lemmaModels = new ModelRegistry<LemmatizerModel>("lemmatizer");
   /**
    * The morpho factory.
    */
@@ -71,11 +76,17 @@ public class StatisticalLemmatizer {
    *          the morpho factory
    */
   public StatisticalLemmatizer(final Properties props, final MorphoFactory aMorphoFactory) {
-    final String lang = props.getProperty("language");
     final String model = props.getProperty("lemmatizerModel");
     final Boolean useModelCache = Boolean.valueOf(props.getProperty("useModelCache", "true"));
-    final LemmatizerModel posModel = loadModel(lang, model, useModelCache);
-    this.lemmatizer = new LemmatizerME(posModel);
+    final LemmatizerModel lemmatizerModel;
+    try {
+      final File modelFile = new File(model);
+      lemmatizerModel = loadModel(ModelRegistry.getFileKey(modelFile), modelFile.length(), new FileModelLoader(modelFile), useModelCache);
+    } catch (final IOException e) {
+      throw new IllegalStateException("Could not load lemmatizer model " + model + ": " + e.getMessage(), e);
+    }
+    this.lemmatizerModel = lemmatizerModel;
+    this.lemmatizer = new LemmatizerME(lemmatizerModel);
     this.morphoFactory = aMorphoFactory;
   }
 
@@ -90,13 +101,54 @@ public class StatisticalLemmatizer {
    *          the morpho factory
    */
   public StatisticalLemmatizer(final InputStream modelAsStream, final Properties props, final MorphoFactory aMorphoFactory) {
-    final String lang = props.getProperty("language");
     final Boolean useModelCache = Boolean.valueOf(props.getProperty("useModelCache", "true"));
-    final LemmatizerModel posModel = loadModelAsStream(lang, modelAsStream, useModelCache);
-    this.lemmatizer = new LemmatizerME(posModel);
+    final LemmatizerModel lemmatizerModel;
+    try {
+      final byte[] model;
+      try {
+        model = ByteStreams.toByteArray(modelAsStream);
+      } finally {
+        modelAsStream.close();
+      }
+      lemmatizerModel = loadModel(ModelRegistry.getContentKey(model), model.length, new ModelRegistry.ModelLoader<LemmatizerModel>() {
+        public LemmatizerModel load() throws IOException {
+          return new LemmatizerModel(new ByteArrayInputStream(model));
+        }
+      }, useModelCache);
+    } catch (final IOException e) {
+      throw new IllegalStateException("Could not load lemmatizer model: " + e.getMessage(), e);
+    }
+    this.lemmatizerModel = lemmatizerModel;
+    this.lemmatizer = new LemmatizerME(lemmatizerModel);
     this.morphoFactory = aMorphoFactory;
   }
 
+  /**
+   * Construct a statistical lemmatizer over an already loaded model, with its
+   * own decoder. The model file is not read again, so the lemmatizer uses the
+   * same model as the lemmatizer the model comes from even if the file has
+   * changed since.
+   *
+   * @param aLemmatizerModel
+   *          the model, see {@link #getModel()}
+   * @param aMorphoFactory
+   *          the morpho factory
+   */
+  public StatisticalLemmatizer(final LemmatizerModel aLemmatizerModel, final MorphoFactory aMorphoFactory) {
+    this.lemmatizerModel = aLemmatizerModel;
+    this.lemmatizer = new LemmatizerME(aLemmatizerModel);
+    this.morphoFactory = aMorphoFactory;
+  }
+
+  /**
+   * Get the model of the lemmatizer.
+   * 
+   * @return the model
+   */
+  public final LemmatizerModel getModel() {
+    return this.lemmatizerModel;
+  }
+
   /**
    * Get lemmas from a tokenized and pos tagged sentence.
    * 
@@ -118,12 +170,21 @@ public class StatisticalLemmatizer {
    * @return the lemmas
    */
   public List<String> lemmatize(String[] tokens, String[] posTags) {
-    String[] annotatedLemmas = lemmatizer.lemmatize(tokens, posTags);
-    String[] decodedLemmas = lemmatizer.decodeLemmas(tokens, annotatedLemmas);
-    final List<String> lemmas = new ArrayList<String>(Arrays.asList(decodedLemmas));
+    final List<String> lemmas = new ArrayList<String>(Arrays.asList(getLemmas(tokens, posTags)));
     return lemmas;
   }
 
+  /**
+   * Produce lemmas from a tokenized sentence and its postags, as an array.
+   * @param tokens the tokens
+   * @param posTags the pos tags
+   * @return the lemmas
+   */
+  public final String[] getLemmas(final String[] tokens, final String[] posTags) {
+    final String[] annotatedLemmas = this.lemmatizer.lemmatize(tokens, posTags);
+    return this.lemmatizer.decodeLemmas(tokens, annotatedLemmas);
+  }
+
   /**
    * Create {@code Morpheme} objects from the output of posAnnotate.
    * @param tokens the tokens
@@ -165,58 +226,48 @@ public class StatisticalLemmatizer {
   }
 
   /**
-   * Loads statically the probabilistic model. Every instance of this finder
-   * will share the same model.
+   * Get the registry of the loaded lemmatizer models, with their statistics.
    * 
-   * @param lang
-   *          the language
-   * @param modelName
-   *          the model to be loaded
-   * @param useModelCache
-   *          whether to cache the model in memory
-   * @return the model as a {@link LemmatizerModel} object
+   * @return the model registry
    */
-  private LemmatizerModel loadModel(final String lang, final String modelName, final Boolean useModelCache) {
-    FileInputStream fileInputStream;
-    try {
-      fileInputStream = new FileInputStream(modelName);
-    } catch (FileNotFoundException e) {
-      throw new RuntimeException(e);
-    }
+  public static ModelRegistry<LemmatizerModel> getModelRegistry() {
+    return lemmaModels;
+  }
 
-    return loadModelAsStream(lang,fileInputStream, useModelCache);
+  /**
+   * Remove the previous versions of a model file from the registry, once no
+   * new lemmatizer is to be built over them. Lemmatizers already built keep
+   * their model.
+   *
+   * @param modelFile
+   *          the model file
+   * @return whether a previous version was registered
+   * @throws IOException
+   *           if the path of the model can not be resolved
+   */
+  public static boolean evictPreviousModels(final File modelFile) throws IOException {
+    return !lemmaModels.evictOtherVersions(modelFile).isEmpty();
   }
 
   /**
-   * Loads statically the probabilistic model. Every instance of this finder
-   * will share the same model.
+   * Loads statically the probabilistic model. Every instance of this
+   * lemmatizer using the same model will share it.
    *
-   * @param lang
-   *          the language
-   * @param modelAsStream
-   *          the model to be loaded
+   * @param modelKey
+   *          the key of the model in the registry
+   * @param size
+   *          the size of the model in bytes
+   * @param loader
+   *          the loader of the model
    * @param useModelCache
-   *          whether to cache the model in memory
+   *          whether to share the model via the registry
    * @return the model as a {@link LemmatizerModel} object
+   * @throws IOException
+   *           if the model can not be loaded
    */
-  private LemmatizerModel loadModelAsStream(final String lang, final InputStream modelAsStream, final Boolean useModelCache) {
+  private LemmatizerModel loadModel(final String modelKey, final long size, final ModelRegistry.ModelLoader<LemmatizerModel> loader, final Boolean useModelCache) throws IOException {
     final long lStartTime = new Date().getTime();
-    LemmatizerModel model = null;
-    try {
-      if (useModelCache) {
-        synchronized (lemmaModels) {
-          model = lemmaModels.get(lang);
-          if (model == null) {
-            model = new LemmatizerModel(modelAsStream);
-            lemmaModels.put(lang, model);
-          }
-        }
-      } else {
-        model = new LemmatizerModel(modelAsStream);
-      }
-    } catch (final IOException e) {
-      e.printStackTrace();
-    }
+    final LemmatizerModel model = useModelCache ? lemmaModels.get(modelKey, size, loader) : loader.load();
     final long lEndTime = new Date().getTime();
     final long difference = lEndTime - lStartTime;
 
@@ -224,4 +275,22 @@ public class StatisticalLemmatizer {
     return model;
   }
 
+  /**
+   * Loads a model file, in the zip or in the {@link CompactModel} format.
+   */
+  private static class FileModelLoader implements ModelRegistry.ModelLoader<LemmatizerModel> {
+    private final File modelFile;
+
+    FileModelLoader(final File aModelFile) {
+      this.modelFile = aModelFile;
+    }
+
+    public LemmatizerModel load() throws IOException {
+      if (CompactModel.isCompact(this.modelFile.getPath())) {
+        return CompactModel.loadLemmatizerModel(this.modelFile);
+      }
+      return new LemmatizerModel(this.modelFile);
+    }
+  }
+
 }
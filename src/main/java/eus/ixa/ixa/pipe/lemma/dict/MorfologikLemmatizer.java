@@ -18,31 +18,52 @@ package eus.ixa.ixa.pipe.lemma.dict;
 
 import java.io.IOException;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import morfologik.stemming.Dictionary;
 import morfologik.stemming.DictionaryLookup;
 import morfologik.stemming.IStemmer;
 import morfologik.stemming.WordData;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
 import eus.ixa.ixa.pipe.lemma.Lemmatizer;
 
 /**
  * Lemmatizer based on Morfologik Stemming library. It requires a FSA Morfologik
  * dictionary as input.
  * 
+ * Lemmas can optionally be cached by (lowercased word, postag). The cache is
+ * bounded, thread-safe and shared by every lemmatizer reading the same
+ * dictionary, as word frequencies are skewed enough for a small cache to serve
+ * most lookups.
+ * 
  * @author ragerri
  * @version 2014-07-08
  * 
  */
 public class MorfologikLemmatizer implements Lemmatizer {
 
+  /**
+   * The lemma returned when the word and postag are not in the dictionary.
+   */
+  private static final String NO_LEMMA = "O";
+  /**
+   * The lemma caches, by dictionary.
+   */
+  private static final ConcurrentMap<String, Cache<LemmaKey, String>> lemmaCaches = new ConcurrentHashMap<String, Cache<LemmaKey, String>>();
   /**
    * The Morfologik steamer to perform lemmatization with FSA dictionaries.
    */
   private final IStemmer dictLookup;
+  /**
+   * The lemma cache, null if lemmas are not cached.
+   */
+  private final Cache<LemmaKey, String> lemmaCache;
 
   /**
    * Reads a dictionary in morfologik FSA format.
@@ -57,29 +78,52 @@ public class MorfologikLemmatizer implements Lemmatizer {
    */
   public MorfologikLemmatizer(final URL dictURL)
       throws IOException {
-    this.dictLookup = new DictionaryLookup(Dictionary.read(dictURL));
+    this(dictURL, 0);
   }
 
   /**
-   * Get the lemma for a surface form word and a postag from a FSA morfologik
-   * generated dictionary.
+   * Reads a dictionary in morfologik FSA format and caches the lemmas looked
+   * up. The cache of a dictionary is created by the first lemmatizer reading
+   * it, which sets its size.
    * 
-   * @param word
-   *          the surface form
-   * @return the hashmap with the word and tag as keys and the lemma as value
+   * @param dictURL
+   *          the URL containing the dictionary
+   * @param cacheSize
+   *          the maximum number of lemmas cached, 0 to disable caching
+   * @throws IOException
+   *           throws an exception if dictionary path is not correct
    */
-  private HashMap<List<String>, String> getLemmaTagsDict(final String word) {
-    final List<WordData> wdList = this.dictLookup.lookup(word);
-    final HashMap<List<String>, String> dictMap = new HashMap<List<String>, String>();
-    for (final WordData wd : wdList) {
-      final List<String> wordLemmaTags = new ArrayList<String>();
-      wordLemmaTags.add(word);
-      wordLemmaTags.add(wd.getTag().toString());
-      dictMap.put(wordLemmaTags, wd.getStem().toString());
+  public MorfologikLemmatizer(final URL dictURL, final int cacheSize)
+      throws IOException {
+    this(dictURL, Dictionary.read(dictURL), cacheSize);
+  }
+
+  /**
+   * Look up a dictionary already read, caching the lemmas looked up. The
+   * dictionary can be shared by several lemmatizers, each one with its own
+   * lookup.
+   * 
+   * @param dictURL
+   *          the URL of the dictionary, which identifies its lemma cache
+   * @param dictionary
+   *          the dictionary read from that URL
+   * @param cacheSize
+   *          the maximum number of lemmas cached, 0 to disable caching
+   */
+  public MorfologikLemmatizer(final URL dictURL, final Dictionary dictionary,
+      final int cacheSize) {
+    this.dictLookup = new DictionaryLookup(dictionary);
+    if (cacheSize > 0) {
+      final Cache<LemmaKey, String> cache = CacheBuilder.newBuilder()
+          .maximumSize(cacheSize).recordStats().build();
+      final Cache<LemmaKey, String> previous = lemmaCaches.putIfAbsent(
+          dictURL.toString(), cache);
+      this.lemmaCache = previous == null ? cache : previous;
+    } else {
+      this.lemmaCache = null;
     }
-    return dictMap;
   }
-  
+
   public final void getAllPosLemmas(final String word, List<String> posLemmaValues) {
     final List<WordData> wdList = this.dictLookup.lookup(word);
     for (final WordData wd : wdList) {
@@ -87,66 +131,108 @@ public class MorfologikLemmatizer implements Lemmatizer {
     }
   }
 
-  /**
-   * Generate the dictionary keys (word, postag).
-   * 
-   * @param word
-   *          the surface form
-   * @param postag
-   *          the assigned postag
-   * @return a list of keys consisting of the word and its postag
-   */
-  private List<String> getDictKeys(final String word, final String postag) {
-    final List<String> keys = new ArrayList<String>();
-    keys.addAll(Arrays.asList(word.toLowerCase(), postag));
-    return keys;
-  }
-
-  /**
-   * Generates the dictionary map.
-   * 
-   * @param word
-   *          the surface form word
-   * @param postag
-   *          the postag assigned by the pos tagger
-   * @return the hash map dictionary
-   */
-  private HashMap<List<String>, String> getDictMap(final String word,
-      final String postag) {
-    HashMap<List<String>, String> dictMap = new HashMap<List<String>, String>();
-    dictMap = this.getLemmaTagsDict(word.toLowerCase());
-    return dictMap;
-  }
-  
   /* (non-Javadoc)
    * @see eus.ixa.ixa.pipe.lemma.Lemmatizer#lemmatize(java.lang.String[], java.lang.String[])
    */
   public String[] lemmatize(final String[] tokens, final String[] postags) {
-    List<String> lemmas = new ArrayList<String>();
+    final String[] lemmas = new String[tokens.length];
     for (int i = 0; i < tokens.length; i++) {
-      lemmas.add(this.apply(tokens[i], postags[i])); 
+      lemmas[i] = this.apply(tokens[i], postags[i]);
     }
-    return lemmas.toArray(new String[lemmas.size()]);
+    return lemmas;
   }
 
   /**
    * Looks-up the lemma in a dictionary. Outputs "O" if not found.
- * @param word the token
- * @param postag the postag
- * @return the lemma
- */
-public String apply(final String word, final String postag) {
-    String lemma = null;
-    final List<String> keys = this.getDictKeys(word, postag);
-    final HashMap<List<String>, String> dictMap = this.getDictMap(word, postag);
-    // lookup lemma as value of the map
-    final String keyValue = dictMap.get(keys);
-    if (keyValue != null) {
-      lemma = keyValue;
-    } else {
-      lemma = "O";
+   * @param word the token
+   * @param postag the postag
+   * @return the lemma
+   */
+  public String apply(final String word, final String postag) {
+    final String lowerWord = word.toLowerCase();
+    if (this.lemmaCache == null) {
+      return lookup(lowerWord, postag);
+    }
+    final LemmaKey key = new LemmaKey(lowerWord, postag);
+    String lemma = this.lemmaCache.getIfPresent(key);
+    if (lemma == null) {
+      lemma = lookup(lowerWord, postag);
+      this.lemmaCache.put(key, lemma);
     }
     return lemma;
   }
 
+  /**
+   * Scan the analyses of a word for the postag. If several analyses have the
+   * postag, the last one is used.
+   * @param lowerWord the lowercased token
+   * @param postag the postag
+   * @return the lemma, or "O" if not found
+   */
+  private String lookup(final String lowerWord, final String postag) {
+    final List<WordData> wdList = this.dictLookup.lookup(lowerWord);
+    WordData found = null;
+    for (int i = 0; i < wdList.size(); i++) {
+      final WordData wd = wdList.get(i);
+      if (contentEquals(wd.getTag(), postag)) {
+        found = wd;
+      }
+    }
+    // WordData objects are reused by the lookup, so the stem is copied here
+    return found == null ? NO_LEMMA : found.getStem().toString();
+  }
+
+  private static boolean contentEquals(final CharSequence tag, final String postag) {
+    if (tag == null || tag.length() != postag.length()) {
+      return false;
+    }
+    for (int i = 0; i < postag.length(); i++) {
+      if (tag.charAt(i) != postag.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get the statistics of the lemma cache.
+   * @return the statistics, or null if lemmas are not cached
+   */
+  public final CacheStats getCacheStats() {
+    return this.lemmaCache == null ? null : this.lemmaCache.stats();
+  }
+
+  /**
+   * Cache key: a lowercased word and a postag.
+   */
+  private static final class LemmaKey {
+    private final String word;
+    private final String postag;
+    private final int hash;
+
+    private LemmaKey(final String aWord, final String aPostag) {
+      this.word = aWord;
+      this.postag = aPostag;
+      this.hash = 31 * aWord.hashCode() + aPostag.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof LemmaKey)) {
+        return false;
+      }
+      final LemmaKey other = (LemmaKey) obj;
+      return this.hash == other.hash && this.word.equals(other.word)
+          && this.postag.equals(other.postag);
+    }
+  }
+
 }
@@ -0,0 +1,114 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.lemma.eval;
+
+import java.io.IOException;
+
+import eus.ixa.ixa.pipe.lemma.LemmaSample;
+import eus.ixa.ixa.pipe.lemma.LemmatizerEvaluator;
+import eus.ixa.ixa.pipe.lemma.LemmatizerFactory;
+import eus.ixa.ixa.pipe.lemma.LemmatizerME;
+import eus.ixa.ixa.pipe.lemma.LemmatizerModel;
+import eus.ixa.ixa.pipe.pos.eval.CrossValidationRunner;
+import eus.ixa.ixa.pipe.pos.train.CompiledCorpus;
+import eus.ixa.ixa.pipe.pos.train.Flags;
+import opennlp.tools.util.ObjectStream;
+import opennlp.tools.util.TrainingParameters;
+import opennlp.tools.util.eval.Mean;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Training the statistical lemmatizer via cross validation. The folds are
+ * trained and evaluated concurrently.
+ */
+public class LemmaCrossValidator {
+  private static final Logger logger = LogManager.getLogger(LemmaCrossValidator.class);
+  /**
+   * The language.
+   */
+  private final String lang;
+  /**
+   * ObjectStream of the training data.
+   */
+  private final ObjectStream<LemmaSample> trainSamples;
+  /**
+   * The folds value for cross validation.
+   */
+  private final int folds;
+
+  /**
+   * Construct a CrossValidator.
+   * 
+   * @param params
+   *          the training parameters
+   * @throws IOException
+   *           the io exceptions
+   */
+  public LemmaCrossValidator(final TrainingParameters params) throws IOException {
+    this.lang = Flags.getLanguage(params);
+    final String trainData = Flags.getDataSet("TrainSet", params);
+    this.trainSamples = CompiledCorpus.openLemmaSamples(trainData,
+        Flags.getParseThreads(params));
+    this.folds = Flags.getFolds(params);
+  }
+
+  /**
+   * Cross validate when no separate testset is available. The folds are
+   * trained and evaluated concurrently by FoldThreads threads.
+   * 
+   * @param params
+   *          the training parameters
+   */
+  public final void crossValidate(final TrainingParameters params) {
+    Mean wordAccuracy = null;
+    try {
+      final CrossValidationRunner<LemmaSample> validator = new CrossValidationRunner<LemmaSample>(
+          this.folds, Flags.getFoldThreads(params));
+      wordAccuracy = validator.run(this.trainSamples,
+          new CrossValidationRunner.FoldEvaluator<LemmaSample>() {
+            public Mean evaluate(final int fold,
+                final ObjectStream<LemmaSample> foldTrainSamples,
+                final ObjectStream<LemmaSample> foldTestSamples)
+                throws IOException {
+              final LemmatizerFactory factory = LemmatizerFactory
+                  .create(LemmatizerFactory.class.getName());
+              factory.setHashFeatures(Flags.getHashFeatures(params));
+              final LemmatizerModel model = LemmatizerME.train(
+                  LemmaCrossValidator.this.lang, foldTrainSamples, params,
+                  factory);
+              final LemmatizerEvaluator evaluator = new LemmatizerEvaluator(
+                  new LemmatizerME(model));
+              evaluator.evaluate(foldTestSamples);
+              final Mean foldAccuracy = new Mean();
+              foldAccuracy.add(evaluator.getWordAccuracy(),
+                  evaluator.getWordCount());
+              return foldAccuracy;
+            }
+          });
+    } catch (final IOException e) {
+      logger.error("IO error while loading training set!");
+      e.printStackTrace();
+      System.exit(1);
+    } finally {
+      try {
+        this.trainSamples.close();
+      } catch (final IOException e) {
+        logger.error("IO error with the train samples!");
+      }
+    }
+    System.out.println(wordAccuracy.mean());
+  }
+}
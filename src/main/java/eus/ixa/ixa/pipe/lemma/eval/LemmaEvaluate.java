@@ -17,12 +17,15 @@
 package eus.ixa.ixa.pipe.lemma.eval;
 
 import eus.ixa.ixa.pipe.lemma.*;
+import eus.ixa.ixa.pipe.pos.CompactModel;
 import eus.ixa.ixa.pipe.pos.eval.Evaluate;
-import eus.ixa.ixa.pipe.pos.train.InputOutputUtils;
+import eus.ixa.ixa.pipe.pos.train.CompiledCorpus;
+import eus.ixa.ixa.pipe.pos.train.FeatureHasher;
 import opennlp.tools.util.ObjectStream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -47,6 +50,10 @@ public class LemmaEvaluate implements Evaluate {
    * An instance of the probabilistic {@link LemmatizerME}.
    */
   private final LemmatizerME lemmatizer;
+  /**
+   * The size of the model file in bytes.
+   */
+  private final long modelSize;
 
   /**
    * Construct an evaluator. The features are encoded in the model itself.
@@ -60,12 +67,12 @@ public class LemmaEvaluate implements Evaluate {
    */
   public LemmaEvaluate(final String testData, final String model) throws IOException {
 
-    final ObjectStream<String> testStream = InputOutputUtils
-        .readFileIntoMarkableStreamFactory(testData);
-    this.testSamples = new LemmaSampleStream(testStream);
+    this.testSamples = CompiledCorpus.openLemmaSamples(testData, 1);
     InputStream trainedModelInputStream = null;
     try {
-      if (lemmatizerModel == null) {
+      if (lemmatizerModel == null && CompactModel.isCompact(model)) {
+        lemmatizerModel = CompactModel.loadLemmatizerModel(new File(model));
+      } else if (lemmatizerModel == null) {
         trainedModelInputStream = new FileInputStream(model);
         lemmatizerModel = new LemmatizerModel(trainedModelInputStream);
       }
@@ -81,10 +88,12 @@ public class LemmaEvaluate implements Evaluate {
       }
     }
     this.lemmatizer = new LemmatizerME(lemmatizerModel);
+    this.modelSize = new File(model).length();
   }
 
   /**
-   * Evaluate and print word accuracy.
+   * Evaluate and print word accuracy, the size of the model and the width of
+   * its hashed features, if any.
    */
   public final void evaluate() {
     final LemmatizerEvaluator evaluator = new LemmatizerEvaluator(this.lemmatizer);
@@ -94,6 +103,10 @@ public class LemmaEvaluate implements Evaluate {
       e.printStackTrace();
     }
     System.out.println(evaluator.getWordAccuracy());
+    final String hashFeatures = lemmatizerModel
+        .getManifestProperty(FeatureHasher.HASH_FEATURES_PARAMETER);
+    System.out.println("Model size: " + this.modelSize + " bytes; hashed features: "
+        + (hashFeatures == null ? "no" : hashFeatures + " bits"));
   }
 
   @Override
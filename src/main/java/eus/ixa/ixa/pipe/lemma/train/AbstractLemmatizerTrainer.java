@@ -17,14 +17,16 @@
 package eus.ixa.ixa.pipe.lemma.train;
 
 import eus.ixa.ixa.pipe.lemma.*;
+import eus.ixa.ixa.pipe.pos.train.CompiledCorpus;
 import eus.ixa.ixa.pipe.pos.train.Flags;
-import eus.ixa.ixa.pipe.pos.train.InputOutputUtils;
+import opennlp.tools.util.CollectionObjectStream;
 import opennlp.tools.util.ObjectStream;
 import opennlp.tools.util.TrainingParameters;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Training a Lemmatizer.
@@ -52,6 +54,10 @@ public abstract class AbstractLemmatizerTrainer implements LemmatizerTrainer {
    * this one.
    */
   private LemmatizerFactory lemmatizerFactory;
+  /**
+   * The word accuracy of the last trained model on the test data.
+   */
+  private double wordAccuracy;
 
   /**
    * Construct an AbstractTrainer. In the params parameter there is information
@@ -67,35 +73,71 @@ public abstract class AbstractLemmatizerTrainer implements LemmatizerTrainer {
     this.lang = Flags.getLanguage(params);
     final String trainData = Flags.getDataSet("TrainSet", params);
     final String testData = Flags.getDataSet("TestSet", params);
-    final ObjectStream<String> trainStream = InputOutputUtils.readFileIntoMarkableStreamFactory(trainData);
-    this.trainSamples = new LemmaSampleStream(trainStream);
-    final ObjectStream<String> testStream = InputOutputUtils.readFileIntoMarkableStreamFactory(testData);
-    this.testSamples = new LemmaSampleStream(testStream);
+    final int parseThreads = Flags.getParseThreads(params);
+    this.trainSamples = CompiledCorpus.openLemmaSamples(trainData, parseThreads);
+    this.testSamples = CompiledCorpus.openLemmaSamples(testData, parseThreads);
   }
 
-  public final LemmatizerModel train(final TrainingParameters params) {
-    // features
-    if (getLemmatizerFactory() == null) {
-      throw new IllegalStateException(
-          "Classes derived from AbstractLemmatizerTrainer must "
-              + " create a LemmatizerFactory features!");
-    }
-    // training model
-    LemmatizerModel trainedModel = null;
-    LemmatizerEvaluator lemmatizerEvaluator = null;
+  /**
+   * Construct an AbstractTrainer over already parsed training and test data,
+   * so that a corpus can be parsed once and shared by several trainings. The
+   * TrainSet and TestSet parameters are ignored.
+   * 
+   * @param params
+   *          the training parameters
+   * @param aTrainSamples
+   *          the training samples, which are not copied
+   * @param aTestSamples
+   *          the test samples, which are not copied
+   */
+  public AbstractLemmatizerTrainer(final TrainingParameters params,
+      final List<LemmaSample> aTrainSamples,
+      final List<LemmaSample> aTestSamples) {
+    this.lang = Flags.getLanguage(params);
+    this.trainSamples = new CollectionObjectStream<LemmaSample>(aTrainSamples);
+    this.testSamples = new CollectionObjectStream<LemmaSample>(aTestSamples);
+  }
+
+  /**
+   * Train and evaluate a model. The sample streams are closed afterwards,
+   * releasing the threads of the parallel streams, so a trainer trains a
+   * single model.
+   * 
+   * @see eus.ixa.ixa.pipe.lemma.train.LemmatizerTrainer#train(
+   * opennlp.tools.util.TrainingParameters)
+   */
+  public final LemmatizerModel train(final TrainingParameters params)
+      throws IOException {
     try {
-      trainedModel = LemmatizerME.train(this.lang, this.trainSamples, params,
-          getLemmatizerFactory());
+      // features
+      if (getLemmatizerFactory() == null) {
+        throw new IllegalStateException(
+            "Classes derived from AbstractLemmatizerTrainer must "
+                + " create a LemmatizerFactory features!");
+      }
+      // training model
+      final LemmatizerModel trainedModel = LemmatizerME.train(this.lang,
+          this.trainSamples, params, getLemmatizerFactory());
       final LemmatizerME lemmatizer = new LemmatizerME(trainedModel);
-      lemmatizerEvaluator = new LemmatizerEvaluator(lemmatizer);
+      final LemmatizerEvaluator lemmatizerEvaluator = new LemmatizerEvaluator(
+          lemmatizer);
       lemmatizerEvaluator.evaluate(this.testSamples);
-    } catch (final IOException e) {
-      logger.error("IO error while loading training and test sets!");
-      e.printStackTrace();
-      System.exit(1);
+      this.wordAccuracy = lemmatizerEvaluator.getWordAccuracy();
+      logger.info("Final result: " + this.wordAccuracy);
+      return trainedModel;
+    } finally {
+      this.trainSamples.close();
+      this.testSamples.close();
     }
-    System.out.println("Final result: " + lemmatizerEvaluator.getWordAccuracy());
-    return trainedModel;
+  }
+
+  /**
+   * Get the word accuracy on the test data of the last trained model.
+   * 
+   * @return the word accuracy
+   */
+  public final double getWordAccuracy() {
+    return this.wordAccuracy;
   }
 
   /**
@@ -16,7 +16,9 @@
 package eus.ixa.ixa.pipe.lemma.train;
 
 import java.io.IOException;
+import java.util.List;
 
+import eus.ixa.ixa.pipe.lemma.LemmaSample;
 import eus.ixa.ixa.pipe.lemma.LemmatizerFactory;
 import eus.ixa.ixa.pipe.pos.train.Flags;
 
@@ -43,6 +45,25 @@ public class LemmatizerFixedTrainer extends AbstractLemmatizerTrainer {
   public LemmatizerFixedTrainer(final TrainingParameters params) throws IOException {
     super(params);
     setLemmatizerFactory(getTrainerFactory(params));
+    getLemmatizerFactory().setHashFeatures(Flags.getHashFeatures(params));
+  }
+
+  /**
+   * Extends the {@code AbstractLemmatizerTrainer} over already parsed training
+   * and test data.
+   * 
+   * @param params
+   *          the training parameters
+   * @param trainSamples
+   *          the training samples
+   * @param testSamples
+   *          the test samples
+   */
+  public LemmatizerFixedTrainer(final TrainingParameters params,
+      final List<LemmaSample> trainSamples, final List<LemmaSample> testSamples) {
+    super(params, trainSamples, testSamples);
+    setLemmatizerFactory(getTrainerFactory(params));
+    getLemmatizerFactory().setHashFeatures(Flags.getHashFeatures(params));
   }
 
   /**
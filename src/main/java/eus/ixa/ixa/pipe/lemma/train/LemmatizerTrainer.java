@@ -15,6 +15,8 @@
  */
 package eus.ixa.ixa.pipe.lemma.train;
 
+import java.io.IOException;
+
 import opennlp.tools.util.TrainingParameters;
 import eus.ixa.ixa.pipe.lemma.LemmatizerModel;
 
@@ -32,7 +34,9 @@ public interface LemmatizerTrainer {
    * @param params
    *          the parameters file
    * @return the {@code LemmatizerModel} trained
+   * @throws IOException
+   *           if the training or test samples can not be read
    */
-  LemmatizerModel train(TrainingParameters params);
+  LemmatizerModel train(TrainingParameters params) throws IOException;
 
 }
@@ -16,24 +16,46 @@
 
 package eus.ixa.ixa.pipe.pos;
 
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ListMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import eus.ixa.ixa.pipe.lemma.StatisticalLemmatizer;
 import eus.ixa.ixa.pipe.lemma.dict.MorfologikLemmatizer;
 import eus.ixa.ixa.pipe.pos.dict.DictionaryTagger;
+import eus.ixa.ixa.pipe.pos.dict.MonosemicTagIndex;
 import eus.ixa.ixa.pipe.pos.dict.MorfologikTagger;
+import eus.ixa.ixa.pipe.pos.dict.MultiWordMatch;
 import eus.ixa.ixa.pipe.pos.dict.MultiWordMatcher;
 import ixa.kaflib.KAFDocument;
 import ixa.kaflib.Term;
 import ixa.kaflib.WF;
+import morfologik.stemming.Dictionary;
 import opennlp.tools.util.Span;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Example annotation class of ixa-pipe-pos. Check this class for examples using
@@ -42,7 +64,7 @@ import java.util.Properties;
  * @author ragerri
  * @version 2014-12-05
  */
-public class Annotate {
+public class Annotate implements Closeable {
   private static final Logger logger = LogManager.getLogger(Annotate.class);
   /**
    * The morpho tagger.
@@ -56,6 +78,10 @@ public class Annotate {
    * The language.
    */
   private final String lang;
+  /**
+   * The tags of the pos tagging model.
+   */
+  private final TagVocabulary tagVocabulary;
   /**
    * The factory to build morpheme objects.
    */
@@ -63,7 +89,7 @@ public class Annotate {
   /**
    * The dictionary lemmatizer.
    */
-  private MorfologikLemmatizer dictLemmatizer;
+  private final MorfologikLemmatizer dictLemmatizer;
   /**
    * If true detect multiwords.
    */
@@ -71,7 +97,7 @@ public class Annotate {
   /**
    * The multiword matcher.
    */
-  private MultiWordMatcher multiWordMatcher;
+  private final MultiWordMatcher multiWordMatcher;
   /**
    * If true detect postprocess tagger output with monosemic dictionary.
    */
@@ -79,10 +105,60 @@ public class Annotate {
   /**
    * The monosemic dictionary postagger.
    */
-  private DictionaryTagger dictMorphoTagger;
+  private final DictionaryTagger dictMorphoTagger;
+  /**
+   * The monosemic tag indexes, by pos tagger dictionary, shared by every
+   * annotator.
+   */
+  private static final ModelRegistry<MonosemicTagIndex> tagIndexes = new ModelRegistry<MonosemicTagIndex>("monosemic tag index");
+  /**
+   * The Morfologik dictionaries, by URL, shared by every annotator; each
+   * annotator keeps its own lookups over them.
+   */
+  private static final ModelRegistry<Dictionary> dictionaries = new ModelRegistry<Dictionary>("dictionary");
+  /**
+   * The threads loading the resources of the annotators concurrently.
+   */
+  private static final ExecutorService resourceLoaders = Executors
+      .newCachedThreadPool(new ThreadFactoryBuilder()
+          .setNameFormat("resource-loader-%d").setDaemon(true).build());
+  /**
+   * The properties, required to look up the dictionaries of the annotators
+   * sharing the resources of this one.
+   */
+  private final Properties properties;
+  /**
+   * The pool to annotate sentences in parallel, null if the annotation is
+   * sequential.
+   */
+  private final ForkJoinPool sentencePool;
+  /**
+   * Whether the sentence pool belongs to another annotator.
+   */
+  private final boolean sharedSentencePool;
+  /**
+   * The morpho tagger of every thread of the sentence pool.
+   */
+  private final ThreadLocal<StatisticalTagger> threadPosTaggers;
+  /**
+   * The statistical lemmatizer of every thread of the sentence pool.
+   */
+  private final ThreadLocal<StatisticalLemmatizer> threadLemmatizers;
+  /**
+   * The analysis reused for every sentence when the annotation is sequential.
+   */
+  private final SentenceAnalysis sentenceAnalysis = new SentenceAnalysis();
+  /**
+   * The number of sentences below which a range is not split any further.
+   */
+  private static final int SENTENCE_BATCH_SIZE = 8;
 
   /**
-   * Construct an annotator with a {@code MorphoFactory}.
+   * Construct an annotator with a {@code MorphoFactory}. The multiword
+   * dictionary, the pos tagger dictionary, the lemmatizer dictionary and the
+   * probabilistic models are loaded concurrently, and shared with every other
+   * annotator using them; the load time of each of them is logged at info
+   * level.
    * 
    * @param properties
    *          the properties file
@@ -90,31 +166,121 @@ public class Annotate {
    *           io exception if model not properly loaded
    */
   public Annotate(final Properties properties) throws IOException {
+    final long lStartTime = System.currentTimeMillis();
+    this.properties = properties;
     this.lang = properties.getProperty("language");
     this.multiwords = Boolean.valueOf(properties.getProperty("multiwords"));
     this.dictag = Boolean.valueOf(properties.getProperty("dictag"));
-    if (this.multiwords) {
-      this.multiWordMatcher = new MultiWordMatcher(properties);
-      loadMorphoTaggerDicts(properties);
-    }
-    if (this.dictag) {
-      loadMorphoTaggerDicts(properties);
-    }
-    loadLemmatizerDicts(properties);
     this.morphoFactory = new MorphoFactory();
-    this.posTagger = new StatisticalTagger(properties, this.morphoFactory);
-    this.lemmatizer = new StatisticalLemmatizer(properties, this.morphoFactory);
+    final Future<MultiWordMatcher> multiWordMatcherTask = this.multiwords ? resourceLoaders
+        .submit(new ResourceLoad<MultiWordMatcher>("multiword dictionary") {
+          MultiWordMatcher load() throws IOException {
+            return new MultiWordMatcher(properties);
+          }
+        }) : null;
+    // the multiwords and the dictag options share the pos tagger dictionary
+    final Future<DictionaryTagger> dictMorphoTaggerTask = this.multiwords
+        || this.dictag ? resourceLoaders
+        .submit(new ResourceLoad<DictionaryTagger>("pos tagger dictionary") {
+          DictionaryTagger load() throws IOException {
+            return loadMorphoTaggerDicts(properties);
+          }
+        }) : null;
+    final Future<MorfologikLemmatizer> dictLemmatizerTask = resourceLoaders
+        .submit(new ResourceLoad<MorfologikLemmatizer>("lemmatizer dictionary") {
+          MorfologikLemmatizer load() throws IOException {
+            return loadLemmatizerDicts(properties);
+          }
+        });
+    final Future<StatisticalTagger> posTaggerTask = resourceLoaders
+        .submit(new ResourceLoad<StatisticalTagger>("pos model") {
+          StatisticalTagger load() {
+            return new StatisticalTagger(properties, morphoFactory);
+          }
+        });
+    final Future<StatisticalLemmatizer> lemmatizerTask = resourceLoaders
+        .submit(new ResourceLoad<StatisticalLemmatizer>("lemmatizer model") {
+          StatisticalLemmatizer load() {
+            return new StatisticalLemmatizer(properties, morphoFactory);
+          }
+        });
+    this.multiWordMatcher = getResource(multiWordMatcherTask);
+    this.dictMorphoTagger = getResource(dictMorphoTaggerTask);
+    this.dictLemmatizer = getResource(dictLemmatizerTask);
+    this.posTagger = getResource(posTaggerTask);
+    this.lemmatizer = getResource(lemmatizerTask);
+    logger.info("Annotator resources loaded in: "
+        + (System.currentTimeMillis() - lStartTime) + " miliseconds ... [DONE]");
+    this.tagVocabulary = this.posTagger.getTagVocabulary();
+    final int sentenceThreads = Integer.parseInt(properties.getProperty(
+        "sentenceThreads", "1"));
+    this.sentencePool = sentenceThreads > 1 ? new ForkJoinPool(sentenceThreads) : null;
+    this.sharedSentencePool = false;
+    // the decoders of the pool threads run the models loaded above, even if
+    // the model files change while the annotator is in use
+    final StatisticalTagger loadedPosTagger = this.posTagger;
+    final StatisticalLemmatizer loadedLemmatizer = this.lemmatizer;
+    this.threadPosTaggers = new ThreadLocal<StatisticalTagger>() {
+      @Override
+      protected StatisticalTagger initialValue() {
+        return new StatisticalTagger(loadedPosTagger.getModel(),
+            loadedPosTagger.getTagVocabulary(), morphoFactory);
+      }
+    };
+    this.threadLemmatizers = new ThreadLocal<StatisticalLemmatizer>() {
+      @Override
+      protected StatisticalLemmatizer initialValue() {
+        return new StatisticalLemmatizer(loadedLemmatizer.getModel(),
+            morphoFactory);
+      }
+    };
+  }
+
+  /**
+   * Construct an annotator sharing the dictionaries, models and sentence pool
+   * of another one. Only the decoders and the dictionary lookups, which keep
+   * state while annotating, are built for this annotator; the decoders run
+   * the models of the other annotator, never reading the model files again.
+   * Closing it does not release the shared sentence pool.
+   * 
+   * @param shared
+   *          the annotator whose resources are shared
+   * @throws IOException
+   *           if the dictionaries can not be looked up
+   */
+  Annotate(final Annotate shared) throws IOException {
+    this.properties = shared.properties;
+    this.lang = shared.lang;
+    this.multiwords = shared.multiwords;
+    this.dictag = shared.dictag;
+    this.morphoFactory = shared.morphoFactory;
+    this.multiWordMatcher = shared.multiWordMatcher;
+    // the dictionaries are registered, only new lookups are created
+    this.dictMorphoTagger = this.multiwords || this.dictag ? loadMorphoTaggerDicts(this.properties)
+        : null;
+    this.dictLemmatizer = loadLemmatizerDicts(this.properties);
+    // the models already loaded, the model files may have changed since
+    this.tagVocabulary = shared.tagVocabulary;
+    this.posTagger = new StatisticalTagger(shared.posTagger.getModel(),
+        this.tagVocabulary, this.morphoFactory);
+    this.lemmatizer = new StatisticalLemmatizer(shared.lemmatizer.getModel(),
+        this.morphoFactory);
+    this.sentencePool = shared.sentencePool;
+    this.sharedSentencePool = true;
+    this.threadPosTaggers = shared.threadPosTaggers;
+    this.threadLemmatizers = shared.threadLemmatizers;
   }
 
-  // TODO static loading of lemmatizer dictionaries
   /**
-   * Load the binary lemmatizer dictionaries by language. Exits if no lemmatizer
-   * dictionary (binary) is available for the input language.
+   * Load the binary lemmatizer dictionaries by language. Warns if no
+   * lemmatizer dictionary (binary) is available for the input language.
    * 
    * @param props
    *          the props object
+   * @return the dictionary lemmatizer, or null if there is no dictionary or
+   *         it can not be read
    */
-  private void loadLemmatizerDicts(final Properties props) {
+  private MorfologikLemmatizer loadLemmatizerDicts(final Properties props) {
     final String resourcesDirectory = props.getProperty("resourcesDirectory");
     final Resources resources = new Resources();
     final URL binLemmatizerURL = resources.getBinaryDict(this.lang, resourcesDirectory);
@@ -123,96 +289,441 @@ public class Annotate {
       logger.warn("WARNING: No lemmatizer dictionary available for language " + this.lang + " in " + resourcesLocation + "!");
     } else {
       try {
-        this.dictLemmatizer = new MorfologikLemmatizer(binLemmatizerURL);
+        final int lemmaCacheSize = Integer.parseInt(props.getProperty(
+            "lemmaCacheSize", "0"));
+        return new MorfologikLemmatizer(binLemmatizerURL,
+            loadDictionary(binLemmatizerURL), lemmaCacheSize);
       } catch (final IOException e) {
         e.printStackTrace();
       }
     }
-
+    return null;
   }
 
-  // TODO static loading of postag dictionaries
   /**
-   * Load the pos tagger dictionaries by language and format. Exits if no pos
+   * Load the pos tagger dictionaries by language and format. Fails if no pos
    * tagger dictionary (binary) is available for the input language.
    * 
    * @param props
    *          the props object
+   * @return the dictionary tagger
+   * @throws IOException
+   *           if there is no dictionary or it can not be read
    */
-  private void loadMorphoTaggerDicts(final Properties props) {
+  private DictionaryTagger loadMorphoTaggerDicts(final Properties props)
+      throws IOException {
     final String resourcesDirectory = props.getProperty("resourcesDirectory");
     final Resources resources = new Resources();
     final URL binDictMorphoTaggerURL = resources.getBinaryTaggerDict(this.lang, resourcesDirectory);
     if (binDictMorphoTaggerURL == null) {
       final String resourcesLocation = resourcesDirectory == null ? "src/main/resources" : resourcesDirectory;
-      logger.error("ERROR: No binary POS tagger dictionary available for language " + this.lang + " in " + resourcesLocation + "!!");
-      System.exit(1);
+      throw new FileNotFoundException("No binary POS tagger dictionary available for language "
+          + this.lang + " in " + resourcesLocation + "!!");
+    }
+    if (Boolean.valueOf(props.getProperty("dictagIndex"))) {
+      return loadMonosemicTagIndex(binDictMorphoTaggerURL,
+          props.getProperty("dictagIndexFile"));
+    } else {
+      return new MorfologikTagger(loadDictionary(binDictMorphoTaggerURL));
+    }
+  }
+
+  /**
+   * Load statically a Morfologik dictionary, so that every annotator shares
+   * it.
+   * 
+   * @param dictURL
+   *          the URL of the dictionary
+   * @return the dictionary
+   * @throws IOException
+   *           if the dictionary can not be read
+   */
+  private static Dictionary loadDictionary(final URL dictURL)
+      throws IOException {
+    final long size = dictURL.openConnection().getContentLengthLong();
+    return dictionaries.get("url:" + dictURL, size,
+        new ModelRegistry.ModelLoader<Dictionary>() {
+          public Dictionary load() throws IOException {
+            return Dictionary.read(dictURL);
+          }
+        });
+  }
+
+  /**
+   * Get a resource loaded concurrently.
+   * 
+   * @param task
+   *          the loading task, or null if the resource is not used
+   * @return the resource, or null if the resource is not used
+   * @throws IOException
+   *           if the resource can not be loaded
+   */
+  private static <T> T getResource(final Future<T> task) throws IOException {
+    if (task == null) {
+      return null;
+    }
+    try {
+      return task.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while loading the resources");
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      } else if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Loads a resource of the annotator and logs its load time.
+   */
+  private abstract static class ResourceLoad<T> implements Callable<T> {
+    private final String name;
+
+    ResourceLoad(final String aName) {
+      this.name = aName;
+    }
+
+    abstract T load() throws IOException;
+
+    public T call() throws IOException {
+      final long lStartTime = System.currentTimeMillis();
+      final T resource = load();
+      logger.info(this.name + " loaded in: "
+          + (System.currentTimeMillis() - lStartTime) + " miliseconds ... [DONE]");
+      return resource;
+    }
+  }
+
+  /**
+   * Load statically the monosemic tag index of a pos tagger dictionary, so
+   * that every annotator shares it. The index is read from the snapshot file
+   * if it exists and was saved from the current version of the dictionary;
+   * otherwise it is built from the dictionary and, if a snapshot file is
+   * given, saved there. As for the models, the index of a dictionary is
+   * loaded once, while the indexes of distinct dictionaries load
+   * concurrently.
+   * 
+   * @param dictURL
+   *          the binary pos tagger dictionary
+   * @param snapshotFile
+   *          the snapshot of the index, or null
+   * @return the index
+   * @throws IOException
+   *           if the dictionary or the snapshot can not be read
+   */
+  private static DictionaryTagger loadMonosemicTagIndex(final URL dictURL,
+      final String snapshotFile) throws IOException {
+    final long size = dictURL.openConnection().getContentLengthLong();
+    // indexes of distinct dictionaries are built concurrently
+    return tagIndexes.get("url:" + dictURL, size,
+        new ModelRegistry.ModelLoader<MonosemicTagIndex>() {
+          public MonosemicTagIndex load() throws IOException {
+            return readMonosemicTagIndex(dictURL, snapshotFile);
+          }
+        });
+  }
+
+  /**
+   * Read the monosemic tag index of a pos tagger dictionary from its
+   * snapshot, or build it and save the snapshot.
+   * 
+   * @param dictURL
+   *          the binary pos tagger dictionary
+   * @param snapshotFile
+   *          the snapshot of the index, or null
+   * @return the index
+   * @throws IOException
+   *           if the dictionary or the snapshot can not be read
+   */
+  private static MonosemicTagIndex readMonosemicTagIndex(final URL dictURL,
+      final String snapshotFile) throws IOException {
+    MonosemicTagIndex tagIndex = null;
+    final File snapshot = snapshotFile == null ? null : new File(snapshotFile);
+    if (snapshot != null && snapshot.isFile()) {
+      try (InputStream snapshotStream = new FileInputStream(snapshot)) {
+        tagIndex = MonosemicTagIndex.load(snapshotStream, dictURL);
+      }
+      if (tagIndex == null) {
+        logger.info("The monosemic tag index snapshot " + snapshot
+            + " does not match the dictionary " + dictURL + ", rebuilding it");
+      }
+    }
+    if (tagIndex == null) {
+      tagIndex = MonosemicTagIndex.build(dictURL);
+      if (snapshot != null) {
+        saveMonosemicTagIndex(tagIndex, dictURL, snapshot);
+      }
     }
+    logger.debug("Monosemic tag index of " + tagIndex.size() + " words");
+    return tagIndex;
+  }
+
+  /**
+   * Save a monosemic tag index snapshot. The snapshot is written to a
+   * temporary file next to it and renamed over it, so that a crash or another
+   * annotator saving it at the same time never leaves a truncated snapshot.
+   * 
+   * @param tagIndex
+   *          the index
+   * @param dictURL
+   *          the dictionary the index was built from
+   * @param snapshot
+   *          the snapshot file
+   * @throws IOException
+   *           if the snapshot can not be written
+   */
+  private static void saveMonosemicTagIndex(final MonosemicTagIndex tagIndex,
+      final URL dictURL, final File snapshot) throws IOException {
+    final File tempSnapshot = File.createTempFile(snapshot.getName(), ".tmp",
+        snapshot.getAbsoluteFile().getParentFile());
     try {
-      this.dictMorphoTagger = new MorfologikTagger(binDictMorphoTaggerURL,
-          this.lang);
-    } catch (final IOException e) {
-      e.printStackTrace();
+      try (OutputStream snapshotStream = new FileOutputStream(tempSnapshot)) {
+        tagIndex.save(snapshotStream, dictURL);
+      }
+      Files.move(tempSnapshot.toPath(), snapshot.toPath(),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tempSnapshot.toPath());
     }
   }
 
  
 
   /**
-   * Annotate morphological information into a NAF document.
+   * Annotate morphological information into a NAF document. If the
+   * {@code sentenceThreads} property is greater than 1, the sentences are
+   * tagged and lemmatized in parallel; the terms are always created in
+   * document order.
    * 
    * @param kaf
    *          the NAF document
    */
   public final void annotatePOSToKAF(final KAFDocument kaf) {
     final List<List<WF>> sentences = kaf.getSentences();
-    for (final List<WF> wfs : sentences) {
-
+    final List<Span[]> sentenceMultiWords = new ArrayList<Span[]>(
+        sentences.size());
+    final List<String[]> sentenceTokens = getSentenceTokens(sentences,
+        sentenceMultiWords);
+    final List<SentenceAnalysis> analyses = getParallelAnalyses(sentenceTokens);
+    for (int s = 0; s < sentences.size(); s++) {
+      final List<WF> wfs = sentences.get(s);
+      final SentenceAnalysis analysis = getAnalysis(analyses, sentenceTokens, s);
       final List<ixa.kaflib.Span<WF>> tokenSpans = new ArrayList<ixa.kaflib.Span<WF>>();
-      List<Morpheme> morphemes = null;
-      final String[] tokens = new String[wfs.size()];
       for (int i = 0; i < wfs.size(); i++) {
-        tokens[i] = wfs.get(i).getForm();
         final List<WF> wfTarget = new ArrayList<WF>();
         wfTarget.add(wfs.get(i));
         tokenSpans.add(KAFDocument.newWFSpan(wfTarget));
       }
       if (this.multiwords) {
-        final String[] multiWordTokens = this.multiWordMatcher
-            .getTokensWithMultiWords(tokens);
-        List<String> posTags = this.posTagger.posAnnotate(multiWordTokens);
-        String[] posTagsArray = new String[posTags.size()];
-        posTagsArray = posTags.toArray(posTagsArray);
-        morphemes = this.lemmatizer.getMorphemes(multiWordTokens, posTagsArray);
-        getMultiWordSpans(tokens, wfs, tokenSpans);
-      } else {
-        List<String> posTags = this.posTagger.posAnnotate(tokens);
-        String[] posTagsArray = new String[posTags.size()];
-        posTagsArray = posTags.toArray(posTagsArray);
-        morphemes = this.lemmatizer.getMorphemes(tokens, posTagsArray);
+        getMultiWordSpans(sentenceMultiWords.get(s), wfs, tokenSpans);
       }
-      for (int i = 0; i < morphemes.size(); i++) {
+      for (int i = 0; i < analysis.size(); i++) {
         final Term term = kaf.newTerm(tokenSpans.get(i));
-        if (this.dictag || multiwords) {
-          final String dictPosTag = this.dictMorphoTagger.tag(morphemes.get(i)
-              .getWord(), morphemes.get(i).getTag());
-          morphemes.get(i).setTag(dictPosTag);
+        final String posId = analysis.getPosId(i);
+        final int tagId = analysis.getTagId(i);
+        term.setType(tagId == -1 ? Resources.setTermType(posId)
+            : this.tagVocabulary.getTermType(tagId));
+        term.setLemma(analysis.getLemma(i));
+        term.setPos(posId);
+        term.setMorphofeat(analysis.getTag(i));
+      }
+    }
+  }
+
+  /**
+   * Get an array of token forms from a list of WF objects.
+   * 
+   * @param wfs
+   *          the WFs of a sentence
+   * @return the token forms
+   */
+  private String[] getTokens(final List<WF> wfs) {
+    final String[] tokens = new String[wfs.size()];
+    for (int i = 0; i < wfs.size(); i++) {
+      tokens[i] = wfs.get(i).getForm();
+    }
+    return tokens;
+  }
+
+  /**
+   * Get the tokens of every sentence, with the multiwords joined if required.
+   * The multiwords of every sentence are matched only once.
+   * 
+   * @param sentences
+   *          the sentences
+   * @param sentenceMultiWords
+   *          the list where the multiword spans of every sentence are added,
+   *          or null if they are not needed
+   * @return the tokens of each sentence
+   */
+  private List<String[]> getSentenceTokens(final List<List<WF>> sentences,
+      final List<Span[]> sentenceMultiWords) {
+    final List<String[]> sentenceTokens = new ArrayList<String[]>(
+        sentences.size());
+    for (final List<WF> wfs : sentences) {
+      String[] tokens = getTokens(wfs);
+      if (this.multiwords) {
+        final MultiWordMatch multiWordMatch = this.multiWordMatcher
+            .match(tokens);
+        tokens = multiWordMatch.getTokens();
+        if (sentenceMultiWords != null) {
+          sentenceMultiWords.add(multiWordMatch.getSpans());
         }
-        final String posId = Resources.getKafTagSet(morphemes.get(i).getTag(), lang);
-        final String type = Resources.setTermType(posId);
-        // dictionary lemmatizer overwrites probabilistic predictions if
-        // lemma is not equal to "O"
-        if (this.dictLemmatizer != null) {
-          final String lemma = this.dictLemmatizer.apply(morphemes.get(i)
-              .getWord(), morphemes.get(i).getTag());
-          if (!lemma.equalsIgnoreCase("O")) {
-            morphemes.get(i).setLemma(lemma);
-          }
+      }
+      sentenceTokens.add(tokens);
+    }
+    return sentenceTokens;
+  }
+
+  /**
+   * Tag and lemmatize every sentence in the sentence pool, if the annotation
+   * is parallel.
+   * 
+   * @param sentences
+   *          the tokens of every sentence
+   * @return the analysis of each sentence, in document order, or null if the
+   *         sentences are to be analyzed one at a time
+   */
+  private List<SentenceAnalysis> getParallelAnalyses(final List<String[]> sentences) {
+    if (this.sentencePool == null || sentences.size() <= SENTENCE_BATCH_SIZE) {
+      return null;
+    }
+    final List<SentenceAnalysis> analyses = new ArrayList<SentenceAnalysis>(
+        sentences.size());
+    for (int s = 0; s < sentences.size(); s++) {
+      analyses.add(null);
+    }
+    this.sentencePool.invoke(new SentenceTask(sentences, analyses, 0,
+        sentences.size()));
+    return analyses;
+  }
+
+  /**
+   * Get the complete analysis of a sentence: the one computed in parallel if
+   * any, otherwise the sentence is tagged and lemmatized in the reusable
+   * analysis of this annotator, which is only valid until the next sentence.
+   * The dictionaries are then applied, always in the calling thread.
+   * 
+   * @param analyses
+   *          the analyses computed in parallel, or null
+   * @param sentences
+   *          the tokens of every sentence
+   * @param s
+   *          the sentence index
+   * @return the analysis
+   */
+  private SentenceAnalysis getAnalysis(final List<SentenceAnalysis> analyses,
+      final List<String[]> sentences, final int s) {
+    SentenceAnalysis analysis;
+    if (analyses == null) {
+      analysis = this.sentenceAnalysis;
+      analyze(sentences.get(s), this.posTagger, this.lemmatizer, analysis);
+    } else {
+      analysis = analyses.get(s);
+    }
+    postProcess(analysis);
+    return analysis;
+  }
+
+  /**
+   * Tag and lemmatize a sentence.
+   * 
+   * @param tokens
+   *          the tokens of the sentence, with the multiwords joined
+   * @param tagger
+   *          the morpho tagger
+   * @param statLemmatizer
+   *          the statistical lemmatizer
+   * @param analysis
+   *          the analysis to fill
+   */
+  private void analyze(final String[] tokens, final StatisticalTagger tagger,
+      final StatisticalLemmatizer statLemmatizer, final SentenceAnalysis analysis) {
+    final String[] posTags = tagger.getPosTags(tokens);
+    // the lemmatizer takes the tags as predicted, before uppercasing them
+    final String[] lemmas = statLemmatizer.getLemmas(tokens, posTags);
+    analysis.reset(tokens);
+    analysis.setTags(posTags);
+    analysis.setLemmas(lemmas);
+  }
+
+  /**
+   * Post-process the tags with the monosemic dictionary, if required, and
+   * the lemmas with the lemmatizer dictionary, and set the tag ids and KAF pos
+   * ids. Tags not produced by the model, which may come from the
+   * dictionary, are mapped with {@link Resources}.
+   * 
+   * @param analysis
+   *          the tagged and lemmatized sentence
+   */
+  private void postProcess(final SentenceAnalysis analysis) {
+    for (int i = 0; i < analysis.size(); i++) {
+      if (this.dictag || this.multiwords) {
+        analysis.setTag(i, this.dictMorphoTagger.tag(analysis.getForm(i),
+            analysis.getTag(i)));
+      }
+      // dictionary lemmatizer overwrites probabilistic predictions if
+      // lemma is not equal to "O"
+      if (this.dictLemmatizer != null) {
+        final String lemma = this.dictLemmatizer.apply(analysis.getForm(i),
+            analysis.getTag(i));
+        if (!lemma.equalsIgnoreCase("O")) {
+          analysis.setLemma(i, lemma);
         }
-        term.setType(type);
-        term.setLemma(morphemes.get(i).getLemma());
-        term.setPos(posId);
-        term.setMorphofeat(morphemes.get(i).getTag());
+      }
+      final int tagId = this.tagVocabulary.getId(analysis.getTag(i));
+      analysis.setTagId(i, tagId);
+      analysis.setPosId(i, tagId == -1 ? Resources.getKafTagSet(
+          analysis.getTag(i), this.lang) : this.tagVocabulary.getPosId(tagId));
+    }
+  }
+
+  /**
+   * Tags and lemmatizes a range of sentences in the sentence pool. Tagging is
+   * sentence independent, so the range is split in halves until it is small
+   * enough. Every pool thread uses its own decoders.
+   */
+  private class SentenceTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+    private final List<String[]> sentences;
+    private final List<SentenceAnalysis> analyses;
+    private final int from;
+    private final int to;
+
+    SentenceTask(final List<String[]> aSentences,
+        final List<SentenceAnalysis> anAnalyses, final int aFrom,
+        final int aTo) {
+      this.sentences = aSentences;
+      this.analyses = anAnalyses;
+      this.from = aFrom;
+      this.to = aTo;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.to - this.from <= SENTENCE_BATCH_SIZE) {
+        final StatisticalTagger tagger = threadPosTaggers.get();
+        final StatisticalLemmatizer statLemmatizer = threadLemmatizers.get();
+        for (int s = this.from; s < this.to; s++) {
+          // not reused, the analyses are read once every task has joined
+          final SentenceAnalysis analysis = new SentenceAnalysis();
+          analyze(this.sentences.get(s), tagger, statLemmatizer, analysis);
+          // every task sets its own indexes; joining the tasks makes the
+          // results visible to the calling thread
+          this.analyses.set(s, analysis);
+        }
+      } else {
+        final int middle = (this.from + this.to) >>> 1;
+        invokeAll(new SentenceTask(this.sentences, this.analyses,
+            this.from, middle), new SentenceTask(this.sentences,
+            this.analyses, middle, this.to));
       }
     }
   }
@@ -221,17 +732,15 @@ public class Annotate {
    * Creates the multiword spans. It gets an initial list of spans (one per
    * token) and creates a multiword span when a multiword is detected.
    * 
-   * @param tokens
-   *          the list of tokens
+   * @param multiWordSpans
+   *          the spans of the multiwords of the sentence
    * @param wfs
    *          the list of WFs
    * @param tokenSpans
    *          the list of initial token spans
    */
-  private void getMultiWordSpans(final String[] tokens, final List<WF> wfs,
+  private void getMultiWordSpans(final Span[] multiWordSpans, final List<WF> wfs,
       final List<ixa.kaflib.Span<WF>> tokenSpans) {
-    final Span[] multiWordSpans = this.multiWordMatcher
-        .multiWordsToSpans(tokens);
     int counter = 0;
     for (final Span mwSpan : multiWordSpans) {
       final Integer fromIndex = mwSpan.getStart() - counter;
@@ -265,50 +774,13 @@ public class Annotate {
       throws IOException {
     final StringBuilder sb = new StringBuilder();
     final List<List<WF>> sentences = kaf.getSentences();
-    for (final List<WF> wfs : sentences) {
-
-      final List<ixa.kaflib.Span<WF>> tokenSpans = new ArrayList<ixa.kaflib.Span<WF>>();
-      List<Morpheme> morphemes = null;
-      // Get an array of token forms from a list of WF objects.
-      final String[] tokens = new String[wfs.size()];
-      for (int i = 0; i < wfs.size(); i++) {
-        tokens[i] = wfs.get(i).getForm();
-        final List<WF> wfTarget = new ArrayList<WF>();
-        wfTarget.add(wfs.get(i));
-        tokenSpans.add(KAFDocument.newWFSpan(wfTarget));
-      }
-      if (this.multiwords) {
-        final String[] multiWordTokens = this.multiWordMatcher
-            .getTokensWithMultiWords(tokens);
-        List<String> posTags = this.posTagger.posAnnotate(multiWordTokens);
-        String[] posTagsArray = new String[posTags.size()];
-        posTagsArray = posTags.toArray(posTagsArray);
-        morphemes = this.lemmatizer.getMorphemes(multiWordTokens, posTagsArray);
-        getMultiWordSpans(tokens, wfs, tokenSpans);
-      } else {
-        List<String> posTags = this.posTagger.posAnnotate(tokens);
-        String[] posTagsArray = new String[posTags.size()];
-        posTagsArray = posTags.toArray(posTagsArray);
-        morphemes = this.lemmatizer.getMorphemes(tokens, posTagsArray);
-      }
-      for (int i = 0; i < morphemes.size(); i++) {
-        final String posTag = morphemes.get(i).getTag();
-        final String word = morphemes.get(i).getWord();
-        if (this.dictag || this.multiwords) {
-          final String dictPosTag = this.dictMorphoTagger.tag(word, posTag);
-          morphemes.get(i).setTag(dictPosTag);
-        }
-        // dictionary lemmatizer overwrites probabilistic predictions
-        // if lemma is not equal to word
-        if (this.dictLemmatizer != null) {
-          final String lemma = this.dictLemmatizer.apply(word, morphemes.get(i)
-              .getTag());
-          if (!lemma.equalsIgnoreCase("O")) {
-            morphemes.get(i).setLemma(lemma);
-          }
-        }
-        sb.append(word).append("\t").append(morphemes.get(i).getLemma())
-            .append("\t").append(morphemes.get(i).getTag()).append("\n");
+    final List<String[]> sentenceTokens = getSentenceTokens(sentences, null);
+    final List<SentenceAnalysis> analyses = getParallelAnalyses(sentenceTokens);
+    for (int s = 0; s < sentences.size(); s++) {
+      final SentenceAnalysis analysis = getAnalysis(analyses, sentenceTokens, s);
+      for (int i = 0; i < analysis.size(); i++) {
+        sb.append(analysis.getForm(i)).append("\t").append(analysis.getLemma(i))
+            .append("\t").append(analysis.getTag(i)).append("\n");
       }
       sb.append("\n");
     }
@@ -386,4 +858,34 @@ public class Annotate {
     return sb.toString();
   }
 
+  /**
+   * Tag and lemmatize a sentence, discarding the result, so that the models
+   * and decoders of this annotator are exercised before it serves documents.
+   * @param tokens the tokens of the sentence
+   */
+  public final void warmUp(final String[] tokens) {
+    final List<String> posTags = this.posTagger.posAnnotate(tokens);
+    this.lemmatizer.lemmatize(tokens, posTags.toArray(new String[posTags.size()]));
+  }
+
+  /**
+   * Get the statistics of the lemma cache of the lemmatizer dictionary. The
+   * cache is shared by every annotator using the same dictionary.
+   * @return the statistics, or null if there is no lemmatizer dictionary or
+   *         the lemmas are not cached
+   */
+  public final CacheStats getLemmaCacheStats() {
+    return this.dictLemmatizer == null ? null : this.dictLemmatizer.getCacheStats();
+  }
+
+  /**
+   * Release the threads of the sentence pool, if any and not shared. The
+   * annotator must not be used afterwards.
+   */
+  public final void close() {
+    if (this.sentencePool != null && !this.sharedSentencePool) {
+      this.sentencePool.shutdown();
+    }
+  }
+
 }
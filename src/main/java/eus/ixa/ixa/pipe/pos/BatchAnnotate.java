@@ -0,0 +1,353 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import ixa.kaflib.KAFDocument;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jdom2.JDOMException;
+
+import com.google.common.io.Files;
+
+/**
+ * Annotates many NAF documents with the same models, which are loaded only
+ * once. The documents are processed in parallel and every output document is
+ * written to an output directory mirroring the input layout. Close it to
+ * release the annotators.
+ */
+public class BatchAnnotate implements Closeable {
+  private static final Logger logger = LogManager.getLogger(BatchAnnotate.class);
+  /**
+   * Get dynamically the version of ixa-pipe-pos by looking at the MANIFEST
+   * file.
+   */
+  private final String version = CLI.class.getPackage().getImplementationVersion();
+  /**
+   * Get the git commit of the ixa-pipe-pos compiled by looking at the MANIFEST
+   * file.
+   */
+  private final String commit = CLI.class.getPackage().getSpecificationVersion();
+  /**
+   * The annotator shared by every worker.
+   */
+  private final ConcurrentAnnotate annotator;
+  /**
+   * The language.
+   */
+  private final String lang;
+  /**
+   * The model name, used in the linguistic processor header.
+   */
+  private final String model;
+  /**
+   * The annotation output format, one of NAF (default) or tabulated.
+   */
+  private final String outputFormat;
+  /**
+   * Whether to just print all pos tags and lemmas, before disambiguation.
+   */
+  private final boolean allMorphology;
+  /**
+   * The number of documents annotated concurrently.
+   */
+  private final int workers;
+
+  /**
+   * Construct a batch annotator, loading the models and dictionaries.
+   *
+   * @param properties
+   *          the annotation properties
+   * @param anOutputFormat
+   *          the output format, naf or conll
+   * @param isAllMorphology
+   *          whether to print all the tags and lemmas
+   * @param aWorkers
+   *          the number of documents annotated concurrently
+   * @throws IOException
+   *           if the models can not be loaded
+   */
+  public BatchAnnotate(final Properties properties, final String anOutputFormat,
+      final boolean isAllMorphology, final int aWorkers) throws IOException {
+    if (aWorkers < 1) {
+      throw new IllegalArgumentException("The number of workers must be at least 1!");
+    }
+    this.annotator = new ConcurrentAnnotate(properties);
+    this.lang = properties.getProperty("language");
+    this.model = properties.getProperty("model");
+    this.outputFormat = anOutputFormat;
+    this.allMorphology = isAllMorphology;
+    this.workers = aWorkers;
+  }
+
+  /**
+   * Annotate every file of a directory, recursively.
+   *
+   * @param inputDir
+   *          the input directory
+   * @param outputDir
+   *          the output directory
+   * @return the number of documents that could not be annotated
+   * @throws IOException
+   *           if two documents would be written to the same output file
+   */
+  public final int annotateDirectory(final File inputDir, final File outputDir)
+      throws IOException {
+    final List<File> inputFiles = StringUtils.getFilesInDir(inputDir);
+    final List<File> outputFiles = new ArrayList<File>();
+    final String inputPath = inputDir.getAbsolutePath();
+    for (final File inputFile : inputFiles) {
+      final String relativePath = inputFile.getAbsolutePath().substring(
+          inputPath.length());
+      outputFiles.add(getOutputFile(outputDir, relativePath));
+    }
+    checkDistinct(outputFiles);
+    return annotate(inputFiles, outputFiles);
+  }
+
+  /**
+   * Annotate every file listed, one path per line, in a file list. Relative
+   * paths are kept in the output directory; absolute paths are written under
+   * the output directory without their root. Paths which would be written
+   * outside the output directory, e.g. with "..", are rejected.
+   *
+   * @param fileList
+   *          the file containing the list of documents
+   * @param outputDir
+   *          the output directory
+   * @return the number of documents that could not be annotated
+   * @throws IOException
+   *           if the file list can not be read, a document would be written
+   *           outside the output directory or two documents would be written
+   *           to the same output file
+   */
+  public final int annotateFileList(final File fileList, final File outputDir)
+      throws IOException {
+    final List<File> inputFiles = new ArrayList<File>();
+    final List<File> outputFiles = new ArrayList<File>();
+    try (BufferedReader breader = new BufferedReader(new InputStreamReader(
+        new FileInputStream(fileList), "UTF-8"))) {
+      String line;
+      while ((line = breader.readLine()) != null) {
+        line = line.trim();
+        if (line.length() == 0) {
+          continue;
+        }
+        final File inputFile = new File(line);
+        final File root = getRoot(inputFile);
+        final String relativePath = root == null ? line : inputFile.getPath()
+            .substring(root.getPath().length());
+        inputFiles.add(inputFile);
+        outputFiles.add(getOutputFile(outputDir, relativePath));
+      }
+    }
+    checkDistinct(outputFiles);
+    return annotate(inputFiles, outputFiles);
+  }
+
+  /**
+   * Get the file system root of an absolute file.
+   *
+   * @param file
+   *          the file
+   * @return the root, or null if the file is relative
+   */
+  private static File getRoot(final File file) {
+    if (!file.isAbsolute()) {
+      return null;
+    }
+    File root = file;
+    while (root.getParentFile() != null) {
+      root = root.getParentFile();
+    }
+    return root;
+  }
+
+  /**
+   * Get the output file of a document. CoNLL output gets the .conll
+   * extension appended.
+   *
+   * @param outputDir
+   *          the output directory
+   * @param relativePath
+   *          the path of the input document relative to its base
+   * @return the output file, normalized
+   * @throws IOException
+   *           if the output file is not inside the output directory
+   */
+  private File getOutputFile(final File outputDir, final String relativePath)
+      throws IOException {
+    String outputPath = relativePath;
+    if (this.outputFormat.equalsIgnoreCase("conll")) {
+      outputPath = outputPath + ".conll";
+    }
+    final File canonicalDir = outputDir.getCanonicalFile();
+    final File outputFile = new File(canonicalDir, outputPath).getCanonicalFile();
+    if (outputFile.equals(canonicalDir)
+        || !outputFile.toPath().startsWith(canonicalDir.toPath())) {
+      throw new IOException("The output of " + relativePath
+          + " would be written outside " + outputDir);
+    }
+    return outputFile;
+  }
+
+  /**
+   * Check that no two documents are written to the same output file.
+   *
+   * @param outputFiles
+   *          the normalized output files
+   * @throws IOException
+   *           if an output file is repeated
+   */
+  private static void checkDistinct(final List<File> outputFiles)
+      throws IOException {
+    final Set<File> seen = new HashSet<File>();
+    for (final File outputFile : outputFiles) {
+      if (!seen.add(outputFile)) {
+        throw new IOException("Several documents would be written to "
+            + outputFile);
+      }
+    }
+  }
+
+  /**
+   * Annotate the input files in parallel, writing each one to its output
+   * file.
+   *
+   * @param inputFiles
+   *          the input files
+   * @param outputFiles
+   *          the output files, in the same order
+   * @return the number of documents that could not be annotated
+   */
+  private int annotate(final List<File> inputFiles, final List<File> outputFiles) {
+    final long lStartTime = System.currentTimeMillis();
+    final ExecutorService executor = Executors.newFixedThreadPool(this.workers);
+    final List<Future<Void>> results = new ArrayList<Future<Void>>();
+    for (int i = 0; i < inputFiles.size(); i++) {
+      final File inputFile = inputFiles.get(i);
+      final File outputFile = outputFiles.get(i);
+      results.add(executor.submit(new Callable<Void>() {
+        public Void call() throws IOException, JDOMException {
+          annotate(inputFile, outputFile);
+          return null;
+        }
+      }));
+    }
+    executor.shutdown();
+    int failures = 0;
+    for (int i = 0; i < results.size(); i++) {
+      try {
+        results.get(i).get();
+      } catch (final ExecutionException e) {
+        failures++;
+        logger.error("ERROR: Could not annotate " + inputFiles.get(i) + ": "
+            + e.getCause().getMessage());
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        executor.shutdownNow();
+        failures += results.size() - i;
+        break;
+      }
+    }
+    final long difference = System.currentTimeMillis() - lStartTime;
+    logger.info("Annotated " + (inputFiles.size() - failures) + " of "
+        + inputFiles.size() + " documents in " + difference + " miliseconds");
+    return failures;
+  }
+
+  /**
+   * Annotate one document.
+   *
+   * @param inputFile
+   *          the NAF input document
+   * @param outputFile
+   *          the output file
+   * @throws IOException
+   *           if io error
+   * @throws JDOMException
+   *           if malformed XML
+   */
+  private void annotate(final File inputFile, final File outputFile)
+      throws IOException, JDOMException {
+    KAFDocument kaf;
+    try (BufferedReader breader = new BufferedReader(new InputStreamReader(
+        new FileInputStream(inputFile), "UTF-8"))) {
+      kaf = KAFDocument.createFromStream(breader);
+    }
+    if (kaf.getLang() != null && !kaf.getLang().equalsIgnoreCase(this.lang)) {
+      logger.warn("Language parameter in NAF and CLI do not match for " + inputFile);
+    }
+    final KAFDocument.LinguisticProcessor newLp = kaf.addLinguisticProcessor(
+        "terms", "ixa-pipe-pos-" + Files.getNameWithoutExtension(this.model),
+        this.version + "-" + this.commit);
+    newLp.setBeginTimestamp();
+    String output;
+    if (this.allMorphology) {
+      if (this.outputFormat.equalsIgnoreCase("conll")) {
+        output = this.annotator.getAllTagsLemmasToCoNLL(kaf);
+      } else {
+        this.annotator.getAllTagsLemmasToNAF(kaf);
+        newLp.setEndTimestamp();
+        output = kaf.toString();
+      }
+    } else {
+      if (this.outputFormat.equalsIgnoreCase("conll")) {
+        output = this.annotator.annotatePOSToCoNLL(kaf);
+      } else {
+        this.annotator.annotatePOSToKAF(kaf);
+        newLp.setEndTimestamp();
+        output = kaf.toString();
+      }
+    }
+    final File outputDir = outputFile.getParentFile();
+    if (outputDir != null && !outputDir.isDirectory() && !outputDir.mkdirs()
+        && !outputDir.isDirectory()) {
+      throw new IOException("Could not create directory " + outputDir);
+    }
+    try (BufferedWriter bwriter = new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(outputFile), "UTF-8"))) {
+      bwriter.write(output);
+    }
+  }
+
+  /**
+   * Release the annotators.
+   */
+  public final void close() {
+    this.annotator.close();
+  }
+
+}
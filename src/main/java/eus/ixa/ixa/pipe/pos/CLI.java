@@ -27,36 +27,41 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
-import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.List;
 import java.util.Properties;
 
 import net.sourceforge.argparse4j.ArgumentParsers;
 import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.MutuallyExclusiveGroup;
 import net.sourceforge.argparse4j.inf.Namespace;
 import net.sourceforge.argparse4j.inf.Subparser;
 import net.sourceforge.argparse4j.inf.Subparsers;
 import opennlp.tools.cmdline.CmdLineUtil;
 import opennlp.tools.postag.POSModel;
+import opennlp.tools.util.ObjectStream;
 import opennlp.tools.util.TrainingParameters;
 
 import org.jdom2.JDOMException;
 
 import com.google.common.io.Files;
 
+import eus.ixa.ixa.pipe.lemma.LemmaSample;
+import eus.ixa.ixa.pipe.lemma.LemmaSampleStream;
 import eus.ixa.ixa.pipe.lemma.LemmatizerModel;
+import eus.ixa.ixa.pipe.lemma.eval.LemmaCrossValidator;
 import eus.ixa.ixa.pipe.lemma.eval.LemmaEvaluate;
 import eus.ixa.ixa.pipe.lemma.train.LemmatizerFixedTrainer;
-import eus.ixa.ixa.pipe.lemma.train.LemmatizerTrainer;
 import eus.ixa.ixa.pipe.pos.eval.POSCrossValidator;
 import eus.ixa.ixa.pipe.pos.eval.Evaluate;
 import eus.ixa.ixa.pipe.pos.eval.POSEvaluate;
+import eus.ixa.ixa.pipe.pos.train.CompiledCorpus;
 import eus.ixa.ixa.pipe.pos.train.FixedTrainer;
 import eus.ixa.ixa.pipe.pos.train.Flags;
+import eus.ixa.ixa.pipe.pos.train.GridSearch;
 import eus.ixa.ixa.pipe.pos.train.InputOutputUtils;
-import eus.ixa.ixa.pipe.pos.train.TaggerTrainer;
 
 /**
  * Main class of ixa-pipe-pos, the pos tagger of ixa-pipes
@@ -111,6 +116,18 @@ public class CLI {
    * The parser that manages the cross validation sub-command.
    */
   private final Subparser crossValidateParser;
+  /**
+   * Parser to search the training hyperparameters.
+   */
+  private final Subparser gridParser;
+  /**
+   * Parser to compile a training corpus.
+   */
+  private final Subparser compileCorpusParser;
+  /**
+   * Parser to convert a model to the compact format.
+   */
+  private final Subparser convertModelParser;
   /**
    * Parser to start TCP socket for server-client functionality.
    */
@@ -119,6 +136,10 @@ public class CLI {
    * Sends queries to the serverParser for annotation.
    */
   private Subparser clientParser;
+  /**
+   * Parser to start the HTTP server for pre-tokenized sentences.
+   */
+  private Subparser httpParser;
   /**
    * Default beam size for decoding.
    */
@@ -138,10 +159,21 @@ public class CLI {
     this.crossValidateParser = this.subParsers.addParser("cross").help(
         "Cross validation CLI");
     loadCrossValidateParameters();
+    this.gridParser = this.subParsers.addParser("grid").help(
+        "Hyperparameter grid search CLI");
+    loadGridParameters();
+    this.compileCorpusParser = this.subParsers.addParser("compile-corpus")
+        .help("Compile a training corpus into a binary corpus");
+    loadCompileCorpusParameters();
+    this.convertModelParser = this.subParsers.addParser("convert-model")
+        .help("Convert a model to the memory mapped compact format");
+    loadConvertModelParameters();
     serverParser = subParsers.addParser("server").help("Start TCP socket server");
     loadServerParameters();
     clientParser = subParsers.addParser("client").help("Send queries to the TCP socket server");
     loadClientParameters();
+    httpParser = subParsers.addParser("http").help("Start HTTP server for tokenized sentences");
+    loadHttpParameters();
   }
 
   /**
@@ -179,15 +211,23 @@ public class CLI {
         train();
       } else if (args[0].equals("cross")) {
         crossValidate();
+      } else if (args[0].equals("grid")) {
+        gridSearch();
+      } else if (args[0].equals("compile-corpus")) {
+        compileCorpus();
+      } else if (args[0].equals("convert-model")) {
+        convertModel();
       } else if (args[0].equals("server")) {
         server();
       } else if (args[0].equals("client")) {
         client(System.in, System.out);
+      } else if (args[0].equals("http")) {
+        http();
       }
     } catch (final ArgumentParserException e) {
       this.argParser.handleError(e);
       System.out.println("Run java -jar target/ixa-pipe-pos-" + this.version
-          + ".jar (tag|train|eval|cross|server|client) -help for details");
+          + ".jar (tag|train|eval|cross|grid|compile-corpus|convert-model|server|client|http) -help for details");
       System.exit(1);
     }
   }
@@ -218,6 +258,14 @@ public class CLI {
     final String dictag = Boolean.toString(this.parsedArguments
         .getBoolean("dictag"));
     String outputFormat = parsedArguments.getString("outputFormat");
+    final String sentenceThreads = this.parsedArguments
+        .getString("sentenceThreads");
+    if (this.parsedArguments.getString("inputDir") != null
+        || this.parsedArguments.getString("fileList") != null) {
+      batchAnnotate(model, lemmatizerModel, allMorphology, multiwords, dictag,
+          outputFormat, sentenceThreads);
+      return;
+    }
     BufferedReader breader = null;
     BufferedWriter bwriter = null;
     breader = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
@@ -237,33 +285,111 @@ public class CLI {
     }
     final Properties properties = setAnnotateProperties(model, lemmatizerModel,
         lang, multiwords, dictag);
-    final Annotate annotator = new Annotate(properties);
-    final KAFDocument.LinguisticProcessor newLp = kaf.addLinguisticProcessor(
-        "terms", "ixa-pipe-pos-" + Files.getNameWithoutExtension(model),
-        this.version + "-" + this.commit);
-    newLp.setBeginTimestamp();
-
-    if (allMorphology) {
-      if (outputFormat.equalsIgnoreCase("conll")) {
-        bwriter.write(annotator.getAllTagsLemmasToCoNLL(kaf));
+    properties.setProperty("sentenceThreads", sentenceThreads);
+    properties.setProperty("lemmaCacheSize", this.parsedArguments.getString("lemmaCacheSize"));
+    setDictagIndexProperties(properties);
+    try (Annotate annotator = new Annotate(properties)) {
+      final KAFDocument.LinguisticProcessor newLp = kaf.addLinguisticProcessor(
+          "terms", "ixa-pipe-pos-" + Files.getNameWithoutExtension(model),
+          this.version + "-" + this.commit);
+      newLp.setBeginTimestamp();
+
+      if (allMorphology) {
+        if (outputFormat.equalsIgnoreCase("conll")) {
+          bwriter.write(annotator.getAllTagsLemmasToCoNLL(kaf));
+        } else {
+          annotator.getAllTagsLemmasToNAF(kaf);
+          newLp.setEndTimestamp();
+          bwriter.write(kaf.toString());
+        }
       } else {
-        annotator.getAllTagsLemmasToNAF(kaf);
-        newLp.setEndTimestamp();
-        bwriter.write(kaf.toString());
-      }
-    } else {
-      if (outputFormat.equalsIgnoreCase("conll")) {
-        bwriter.write(annotator.annotatePOSToCoNLL(kaf));
-      } else {
-        annotator.annotatePOSToKAF(kaf);
-        newLp.setEndTimestamp();
-        bwriter.write(kaf.toString());
+        if (outputFormat.equalsIgnoreCase("conll")) {
+          bwriter.write(annotator.annotatePOSToCoNLL(kaf));
+        } else {
+          annotator.annotatePOSToKAF(kaf);
+          newLp.setEndTimestamp();
+          bwriter.write(kaf.toString());
+        }
       }
     }
     bwriter.close();
     breader.close();
   }
 
+  /**
+   * Annotate every document of an input directory or file list, loading the
+   * models only once, and write the annotated documents to the output
+   * directory.
+   *
+   * @param model
+   *          the pos tagging model
+   * @param lemmatizerModel
+   *          the lemmatizer model
+   * @param allMorphology
+   *          whether to print all the tags and lemmas
+   * @param multiwords
+   *          whether multiwords are detected
+   * @param dictag
+   *          whether to post process with a monosemic dictionary
+   * @param outputFormat
+   *          the output format
+   * @param sentenceThreads
+   *          the number of threads annotating the sentences of a document
+   * @throws IOException
+   *           if the models or the file list can not be read
+   */
+  private void batchAnnotate(final String model, final String lemmatizerModel,
+      final boolean allMorphology, final String multiwords,
+      final String dictag, final String outputFormat,
+      final String sentenceThreads) throws IOException {
+    final String lang = this.parsedArguments.getString("language");
+    final String outputDir = this.parsedArguments.getString("outputDir");
+    if (lang == null || outputDir == null) {
+      System.err.println("Batch mode requires the --language and --outputDir parameters!!");
+      System.exit(1);
+    }
+    final Properties properties = setAnnotateProperties(model, lemmatizerModel,
+        lang, multiwords, dictag);
+    properties.setProperty("sentenceThreads", sentenceThreads);
+    properties.setProperty("lemmaCacheSize", this.parsedArguments.getString("lemmaCacheSize"));
+    setDictagIndexProperties(properties);
+    final int workers = Integer.parseInt(this.parsedArguments
+        .getString("workers"));
+    int failures;
+    try (BatchAnnotate batchAnnotator = new BatchAnnotate(properties,
+        outputFormat, allMorphology, workers)) {
+      if (this.parsedArguments.getString("inputDir") != null) {
+        failures = batchAnnotator.annotateDirectory(
+            new File(this.parsedArguments.getString("inputDir")),
+            new File(outputDir));
+      } else {
+        failures = batchAnnotator.annotateFileList(
+            new File(this.parsedArguments.getString("fileList")),
+            new File(outputDir));
+      }
+    }
+    if (failures > 0) {
+      System.err.println(failures + " documents could not be annotated!!");
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Set the monosemic tag index options of the tag CLI.
+   * 
+   * @param properties
+   *          the annotation properties
+   */
+  private void setDictagIndexProperties(final Properties properties) {
+    final String dictagIndexFile = this.parsedArguments.getString("dictagIndexFile");
+    final boolean dictagIndex = this.parsedArguments.getBoolean("dictagIndex")
+        || dictagIndexFile != null;
+    properties.setProperty("dictagIndex", Boolean.toString(dictagIndex));
+    if (dictagIndexFile != null) {
+      properties.setProperty("dictagIndexFile", dictagIndexFile);
+    }
+  }
+
   /**
    * Generate the annotation parameter of the CLI.
    */
@@ -297,6 +423,34 @@ public class CLI {
     this.annotateParser.addArgument("-a","--allMorphology")
         .action(Arguments.storeTrue())
         .help("Print all the POS tags and lemmas before disambiguation.\n");
+    this.annotateParser.addArgument("--sentenceThreads")
+        .required(false)
+        .setDefault("1")
+        .help("Tag and lemmatize the sentences of a document in parallel with this number of threads; it defaults to 1 (sequential).\n");
+    this.annotateParser.addArgument("--dictagIndex")
+        .action(Arguments.storeTrue())
+        .help("Load the monosemic dictionary into an in-memory index for faster lookups.\n");
+    this.annotateParser.addArgument("--dictagIndexFile")
+        .required(false)
+        .help("Binary snapshot of the monosemic dictionary index; it is created if it does not exist "
+            + "and rebuilt when the dictionary changes.\n");
+    this.annotateParser.addArgument("--lemmaCacheSize")
+        .required(false)
+        .setDefault("0")
+        .help("Cache this number of dictionary lemmas; it defaults to 0 (no cache).\n");
+    final MutuallyExclusiveGroup batchInput = this.annotateParser
+        .addMutuallyExclusiveGroup("batch");
+    batchInput.addArgument("--inputDir")
+        .help("Annotate every NAF document in this directory instead of reading from standard input.\n");
+    batchInput.addArgument("--fileList")
+        .help("Annotate every NAF document listed, one path per line, in this file instead of reading from standard input.\n");
+    this.annotateParser.addArgument("--outputDir")
+        .required(false)
+        .help("Directory where batch mode writes the annotated documents, mirroring the input layout.\n");
+    this.annotateParser.addArgument("-w", "--workers")
+        .required(false)
+        .setDefault(Integer.toString(Runtime.getRuntime().availableProcessors()))
+        .help("Number of documents annotated concurrently in batch mode; it defaults to the number of available processors.\n");
   }
 
   /**
@@ -319,12 +473,14 @@ public class CLI {
     }
     String component = Flags.getComponent(params);
     if (component.equalsIgnoreCase("POS")) {
-      final TaggerTrainer posTaggerTrainer = new FixedTrainer(params);
+      final FixedTrainer posTaggerTrainer = new FixedTrainer(params);
       final POSModel trainedModel = posTaggerTrainer.train(params);
+      System.out.println("Final result: " + posTaggerTrainer.getWordAccuracy());
       CmdLineUtil.writeModel("ixa-pipe-pos", new File(outModel), trainedModel);
     } else if (component.equalsIgnoreCase("Lemma")) {
-      final LemmatizerTrainer lemmatizerTrainer = new LemmatizerFixedTrainer(params);
+      final LemmatizerFixedTrainer lemmatizerTrainer = new LemmatizerFixedTrainer(params);
       final LemmatizerModel trainedModel = lemmatizerTrainer.train(params);
+      System.out.println("Final result: " + lemmatizerTrainer.getWordAccuracy());
       CmdLineUtil.writeModel("ixa-pipe-lemma", new File(outModel), trainedModel);
     }
   }
@@ -385,14 +541,37 @@ public class CLI {
     final String dictag = Boolean.toString(this.parsedArguments
         .getBoolean("dictag"));
     String outputFormat = parsedArguments.getString("outputFormat");
+    String workers = parsedArguments.getString("workers");
     // language parameter
     String lang = parsedArguments.getString("language");
-    Properties serverproperties = setServerProperties(port, model, lemmatizerModel, lang, multiwords, dictag, outputFormat, allMorphology);
+    Properties serverproperties = setServerProperties(port, model, lemmatizerModel, lang, multiwords, dictag, outputFormat, allMorphology, workers);
+    serverproperties.setProperty("nio", Boolean.toString(parsedArguments.getBoolean("nio")));
+    serverproperties.setProperty("queueSize", parsedArguments.getString("queueSize"));
+    serverproperties.setProperty("reloadInterval", parsedArguments.getString("reloadInterval"));
+    serverproperties.setProperty("adminReload", Boolean.toString(parsedArguments.getBoolean("adminReload")));
     new StatisticalTaggerServer(serverproperties);
   }
   
   /**
-   * The client to query the TCP server for annotation.
+   * Start the HTTP server tagging tokenized sentences.
+   * 
+   * @throws IOException
+   *           if the port can not be bound
+   */
+  public final void http() throws IOException {
+    final Properties httpProperties = new Properties();
+    httpProperties.setProperty("port", parsedArguments.getString("port"));
+    httpProperties.setProperty("model", parsedArguments.getString("model"));
+    httpProperties.setProperty("lemmatizerModel", parsedArguments.getString("lemmatizerModel"));
+    httpProperties.setProperty("language", parsedArguments.getString("language"));
+    httpProperties.setProperty("workers", parsedArguments.getString("workers"));
+    new HttpTaggerServer(httpProperties);
+  }
+
+  /**
+   * The client to query the TCP server for annotation. Every document read
+   * from stdin, separated by {@code <ENDOFDOCUMENT>} lines, is sent over the
+   * same connection.
    * 
    * @param inputStream
    *          the stdin
@@ -404,33 +583,28 @@ public class CLI {
 
     String host = parsedArguments.getString("host");
     String port = parsedArguments.getString("port");
-    try (Socket socketClient = new Socket(host, Integer.parseInt(port));
+    try (StatisticalTaggerClient socketClient = new StatisticalTaggerClient(
+        host, Integer.parseInt(port));
         BufferedReader inFromUser = new BufferedReader(new InputStreamReader(
             System.in, "UTF-8"));
         BufferedWriter outToUser = new BufferedWriter(new OutputStreamWriter(
-            System.out, "UTF-8"));
-        BufferedWriter outToServer = new BufferedWriter(new OutputStreamWriter(
-            socketClient.getOutputStream(), "UTF-8"));
-        BufferedReader inFromServer = new BufferedReader(new InputStreamReader(
-            socketClient.getInputStream(), "UTF-8"));) {
+            System.out, "UTF-8"))) {
 
-      // send data to server socket
+      // send every document to the server socket
       StringBuilder inText = new StringBuilder();
       String line;
       while ((line = inFromUser.readLine()) != null) {
-        inText.append(line).append("\n");
+        if (line.equals(TaggerProtocol.END_OF_DOCUMENT)) {
+          outToUser.write(socketClient.annotate(inText.toString()));
+          outToUser.flush();
+          inText.setLength(0);
+        } else {
+          inText.append(line).append("\n");
+        }
       }
-      inText.append("<ENDOFDOCUMENT>").append("\n");
-      outToServer.write(inText.toString());
-      outToServer.flush();
-      
-      // get data from server
-      StringBuilder sb = new StringBuilder();
-      String kafString;
-      while ((kafString = inFromServer.readLine()) != null) {
-        sb.append(kafString).append("\n");
+      if (inText.toString().trim().length() > 0) {
+        outToUser.write(socketClient.annotate(inText.toString()));
       }
-      outToUser.write(sb.toString());
     } catch (UnsupportedEncodingException e) {
       //this cannot happen but...
       throw new AssertionError("UTF-8 not supported");
@@ -475,8 +649,14 @@ public class CLI {
     final String paramFile = this.parsedArguments.getString("params");
     final TrainingParameters params = InputOutputUtils
         .loadTrainingParameters(paramFile);
-    final POSCrossValidator crossValidator = new POSCrossValidator(params);
-    crossValidator.crossValidate(params);
+    final String component = Flags.getComponent(params);
+    if (component.equalsIgnoreCase("POS")) {
+      final POSCrossValidator crossValidator = new POSCrossValidator(params);
+      crossValidator.crossValidate(params);
+    } else if (component.equalsIgnoreCase("Lemma")) {
+      final LemmaCrossValidator crossValidator = new LemmaCrossValidator(params);
+      crossValidator.crossValidate(params);
+    }
   }
 
   /**
@@ -486,6 +666,110 @@ public class CLI {
     this.crossValidateParser.addArgument("-p", "--params").required(true)
         .help("Load the Cross validation parameters file\n");
   }
+
+  /**
+   * Main access to the grid search functionalities.
+   * 
+   * @throws IOException
+   *           input output exception if problems with corpora
+   */
+  public final void gridSearch() throws IOException {
+
+    final String paramFile = this.parsedArguments.getString("params");
+    final TrainingParameters params = InputOutputUtils
+        .loadTrainingParameters(paramFile);
+    final List<String> grid = this.parsedArguments.getList("grid");
+    final int workers = Integer.parseInt(this.parsedArguments
+        .getString("workers"));
+    final int memoryPerRun = Integer.parseInt(this.parsedArguments
+        .getString("memoryPerRun"));
+    final GridSearch gridSearch = new GridSearch(params, grid, workers,
+        memoryPerRun);
+    gridSearch.run();
+  }
+
+  /**
+   * Compile a corpus in the word\tabpostag\tablemma format into a binary
+   * corpus which can be used as TrainSet or TestSet.
+   * 
+   * @throws IOException
+   *           input output exception if problems with corpora
+   */
+  public final void compileCorpus() throws IOException {
+    final String input = this.parsedArguments.getString("input");
+    final String output = this.parsedArguments.getString("output");
+    final int threads = Integer.parseInt(this.parsedArguments
+        .getString("threads"));
+    final ObjectStream<LemmaSample> samples = LemmaSampleStream.create(
+        InputOutputUtils.readFileIntoMarkableStreamFactory(input), threads);
+    CompiledCorpus.compile(samples, new File(output));
+    samples.close();
+    System.err.println("Compiled corpus saved to " + output);
+  }
+
+  /**
+   * Convert a pos or lemmatizer model to the {@link CompactModel} format.
+   * 
+   * @throws IOException
+   *           if the model can not be read or converted
+   */
+  public final void convertModel() throws IOException {
+    final String component = this.parsedArguments.getString("component");
+    final String model = this.parsedArguments.getString("model");
+    final String output = this.parsedArguments.getString("output");
+    if (component.equalsIgnoreCase("pos")) {
+      CompactModel.write(new POSModel(new File(model)), new File(output));
+    } else {
+      CompactModel.write(new LemmatizerModel(new File(model)), new File(output));
+    }
+    System.err.println("Compact model saved to " + output);
+  }
+
+  /**
+   * Create the parameters available for converting a model.
+   */
+  private void loadConvertModelParameters() {
+    this.convertModelParser.addArgument("-c", "--component")
+        .required(true)
+        .choices("pos", "lemma")
+        .help("Choose component of the model.\n");
+    this.convertModelParser.addArgument("-m", "--model").required(true)
+        .help("The model to convert.\n");
+    this.convertModelParser.addArgument("-o", "--output").required(true)
+        .help("The compact model file.\n");
+  }
+
+  /**
+   * Create the parameters available for compiling a corpus.
+   */
+  private void loadCompileCorpusParameters() {
+    this.compileCorpusParser.addArgument("-i", "--input").required(true)
+        .help("The corpus to compile, in word\\tpostag\\tlemma format.\n");
+    this.compileCorpusParser.addArgument("-o", "--output").required(true)
+        .help("The compiled corpus file.\n");
+    this.compileCorpusParser.addArgument("--threads").required(false)
+        .setDefault("1")
+        .help("Number of threads parsing the corpus; it defaults to 1.\n");
+  }
+
+  /**
+   * Create the parameters available for the grid search.
+   */
+  private void loadGridParameters() {
+    this.gridParser.addArgument("-p", "--params").required(true)
+        .help("Load the base training parameters file\n");
+    this.gridParser.addArgument("-g", "--grid").required(true).nargs("+")
+        .help("Values of the searched parameters, e.g., Iterations=100,300 Cutoff=0,2\n");
+    this.gridParser.addArgument("-w", "--workers")
+        .required(false)
+        .setDefault(Integer.toString(Runtime.getRuntime().availableProcessors()))
+        .help("Maximum number of trainings run at the same time; it defaults to the number of available processors.\n");
+    this.gridParser.addArgument("--memoryPerRun")
+        .required(false)
+        .setDefault(Integer.toString(GridSearch.DEFAULT_MEMORY_PER_RUN))
+        .help("Heap estimated for a training in MB, which limits the trainings run at the same time; it defaults to "
+            + GridSearch.DEFAULT_MEMORY_PER_RUN + ".\n");
+  }
   
   /**
    * Create the available parameters for POS tagging.
@@ -519,6 +803,44 @@ public class CLI {
     serverParser.addArgument("-a","--allMorphology")
         .action(Arguments.storeTrue())
         .help("Print all the POS tags and lemmas before disambiguation.\n");
+    serverParser.addArgument("-w", "--workers")
+        .required(false)
+        .setDefault(Integer.toString(Runtime.getRuntime().availableProcessors()))
+        .help("Number of documents annotated concurrently; it defaults to the number of available processors.\n");
+    serverParser.addArgument("--nio")
+        .action(Arguments.storeTrue())
+        .help("Serve every connection from a single non-blocking thread instead of one thread per connection.\n");
+    serverParser.addArgument("--queueSize")
+        .required(false)
+        .setDefault("64")
+        .help("Number of documents waiting for a worker before the non-blocking server stops reading; it defaults to 64.\n");
+    serverParser.addArgument("--reloadInterval")
+        .required(false)
+        .setDefault("0")
+        .help("Seconds between checks of the model files, which are reloaded without stopping the server when they change; 0 (default) disables the checks.\n");
+    serverParser.addArgument("--adminReload")
+        .action(Arguments.storeTrue())
+        .help("Reload the models when a client sends a document consisting of <RELOADMODELS>, and "
+            + "send the statistics of the loaded models when it sends <MODELSTATS>.\n");
+  }
+  
+  private void loadHttpParameters() {
+    
+    httpParser.addArgument("-p", "--port").required(true)
+        .help("Port to be assigned to the HTTP server.\n");
+    httpParser.addArgument("-m", "--model").required(true)
+        .help("It is required to provide a model to perform POS tagging.");
+    httpParser.addArgument("-lm", "--lemmatizerModel")
+        .required(true)
+        .help("It is required to provide a lemmatizer model.");
+    httpParser.addArgument("-l", "--language")
+        .choices("de", "en", "es", "eu", "fr", "gl", "it", "nl")
+        .required(true)
+        .help("Choose a language to perform annotation with ixa-pipe-pos.");
+    httpParser.addArgument("-w", "--workers")
+        .required(false)
+        .setDefault(Integer.toString(Runtime.getRuntime().availableProcessors()))
+        .help("Number of requests served concurrently; it defaults to the number of available processors.\n");
   }
   
   private void loadClientParameters() {
@@ -552,7 +874,7 @@ public class CLI {
     return annotateProperties;
   }
   
-  private Properties setServerProperties(String port, String model, String lemmatizerModel, String language, String multiwords, String dictag, String outputFormat, String allMorphology) {
+  private Properties setServerProperties(String port, String model, String lemmatizerModel, String language, String multiwords, String dictag, String outputFormat, String allMorphology, String workers) {
     Properties serverProperties = new Properties();
     serverProperties.setProperty("port", port);
     serverProperties.setProperty("model", model);
@@ -562,6 +884,7 @@ public class CLI {
     serverProperties.setProperty("dictTag", dictag);
     serverProperties.setProperty("outputFormat", outputFormat);
     serverProperties.setProperty("allMorphology", allMorphology);
+    serverProperties.setProperty("workers", workers);
     return serverProperties;
   }
 
@@ -0,0 +1,374 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import opennlp.tools.dictionary.Dictionary;
+import opennlp.tools.ml.BeamSearch;
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.Context;
+import opennlp.tools.ml.model.IndexHashTable;
+import opennlp.tools.postag.POSDictionary;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.postag.POSTaggerFactory;
+import opennlp.tools.postag.POSTaggerME;
+import opennlp.tools.postag.TagDictionary;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eus.ixa.ixa.pipe.lemma.LemmatizerFactory;
+import eus.ixa.ixa.pipe.lemma.LemmatizerME;
+import eus.ixa.ixa.pipe.lemma.LemmatizerModel;
+import eus.ixa.ixa.pipe.pos.train.BaselineFactory;
+import eus.ixa.ixa.pipe.pos.train.FeatureHasher;
+
+/**
+ * Compact model format for fast startup. A {@link POSModel} or a
+ * {@link LemmatizerModel} is converted once into a flat binary file: a small
+ * header with the language, the factory, the beam size, the hash width, the
+ * dictionaries of the factory and the outcomes, followed by the predicate
+ * table and the parameters of the model. Loading a compact model only reads
+ * the header; the rest of the file is memory mapped read-only and evaluated
+ * in place by a {@link MappedMaxentModel}, so that it takes milliseconds,
+ * builds no predicate map or parameter objects on the heap, and the pages of
+ * the model are shared by every JVM of the host using it.
+ * 
+ * Only maxent (GIS) and perceptron models can be converted. Compact models
+ * are recognized by their magic number wherever a model file is loaded. As
+ * the file stays mapped while the model is in use, a new version must be
+ * deployed by renaming it over the old file, never by writing into it.
+ */
+public final class CompactModel {
+  private static final Logger logger = LogManager.getLogger(CompactModel.class);
+
+  /**
+   * Magic number of the compact models.
+   */
+  private static final int MAGIC = 0x4958434d;
+  private static final int VERSION = 1;
+  private static final int POS_COMPONENT = 0;
+  private static final int LEMMA_COMPONENT = 1;
+
+  private CompactModel() {
+  }
+
+  /**
+   * Check whether a file is a compact model.
+   * 
+   * @param model
+   *          the path of the model
+   * @return true if the file starts with the magic number of the compact
+   *         models
+   * @throws IOException
+   *           if the file can not be read
+   */
+  public static boolean isCompact(final String model) throws IOException {
+    final File file = new File(model);
+    if (file.length() < 4) {
+      return false;
+    }
+    try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+      return input.readInt() == MAGIC;
+    }
+  }
+
+  /**
+   * Convert a pos model to the compact format.
+   * 
+   * @param posModel
+   *          the model
+   * @param output
+   *          the compact model file
+   * @throws IOException
+   *           if the model can not be converted
+   */
+  public static void write(final POSModel posModel, final File output)
+      throws IOException {
+    final POSTaggerFactory factory = posModel.getFactory();
+    final TagDictionary tagDictionary = factory.getTagDictionary();
+    if (tagDictionary != null && !(tagDictionary instanceof POSDictionary)) {
+      throw new IOException("Unsupported tag dictionary: "
+          + tagDictionary.getClass().getName());
+    }
+    final ByteArrayOutputStream ngramBytes = new ByteArrayOutputStream();
+    if (factory.getDictionary() != null) {
+      factory.getDictionary().serialize(ngramBytes);
+    }
+    final ByteArrayOutputStream tagDictionaryBytes = new ByteArrayOutputStream();
+    if (tagDictionary != null) {
+      ((POSDictionary) tagDictionary).serialize(tagDictionaryBytes);
+    }
+    write(output, POS_COMPONENT, posModel.getLanguage(), factory.getClass()
+        .getName(), posModel.getManifestProperty(BeamSearch.BEAM_SIZE_PARAMETER),
+        posModel.getManifestProperty(FeatureHasher.HASH_FEATURES_PARAMETER),
+        ngramBytes.toByteArray(), tagDictionaryBytes.toByteArray(),
+        posModel.getArtifact(POSModel.POS_MODEL_ENTRY_NAME));
+  }
+
+  /**
+   * Convert a lemmatizer model to the compact format.
+   * 
+   * @param lemmatizerModel
+   *          the model
+   * @param output
+   *          the compact model file
+   * @throws IOException
+   *           if the model can not be converted
+   */
+  public static void write(final LemmatizerModel lemmatizerModel,
+      final File output) throws IOException {
+    write(output, LEMMA_COMPONENT, lemmatizerModel.getLanguage(),
+        lemmatizerModel.getFactory().getClass().getName(),
+        lemmatizerModel.getManifestProperty(BeamSearch.BEAM_SIZE_PARAMETER),
+        lemmatizerModel
+            .getManifestProperty(FeatureHasher.HASH_FEATURES_PARAMETER),
+        new byte[0], new byte[0], lemmatizerModel.getLemmatizerModel());
+  }
+
+  /**
+   * Write a compact model. The model is the artifact of the pos or lemmatizer
+   * model, which is a sequence model instead of a maxent model if it was
+   * trained as such.
+   */
+  @SuppressWarnings("unchecked")
+  private static void write(final File output, final int component,
+      final String lang, final String factoryName, final String beamSize,
+      final String hashFeatures, final byte[] ngramDictionary,
+      final byte[] tagDictionary, final Object model) throws IOException {
+    if (!(model instanceof AbstractModel)
+        || ((AbstractModel) model).getModelType() == AbstractModel.ModelType.MaxentQn) {
+      throw new IOException("Only maxent and perceptron models can be converted!");
+    }
+    final AbstractModel abstractModel = (AbstractModel) model;
+    final Object[] dataStructures = abstractModel.getDataStructures();
+    final Context[] params = (Context[]) dataStructures[0];
+    final IndexHashTable<String> pmap = (IndexHashTable<String>) dataStructures[1];
+    final String[] predLabels = pmap.toArray(new String[pmap.size()]);
+    final String[] outcomes = (String[]) dataStructures[2];
+    int totalParams = 0;
+    for (final Context context : params) {
+      totalParams += context.getOutcomes().length;
+    }
+    int totalChars = 0;
+    for (final String predicate : predLabels) {
+      totalChars += predicate.length();
+    }
+    final int tableSize = MappedMaxentModel.getTableSize(params.length);
+    if (MappedMaxentModel.getArraysSize(params.length, tableSize, totalParams,
+        totalChars) > Integer.MAX_VALUE) {
+      throw new IOException("Model too large for the compact format!");
+    }
+
+    final ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+    final DataOutputStream header = new DataOutputStream(headerBytes);
+    header.writeInt(MAGIC);
+    header.writeInt(VERSION);
+    header.writeInt(component);
+    header.writeUTF(lang);
+    header.writeUTF(factoryName);
+    header.writeInt(beamSize == null ? -1 : Integer.parseInt(beamSize));
+    header.writeInt(hashFeatures == null ? 0 : Integer.parseInt(hashFeatures));
+    header.writeInt(ngramDictionary.length);
+    header.write(ngramDictionary);
+    header.writeInt(tagDictionary.length);
+    header.write(tagDictionary);
+    header.writeBoolean(abstractModel.getModelType() == AbstractModel.ModelType.Perceptron);
+    header.writeInt((Integer) dataStructures[3]);
+    header.writeDouble((Double) dataStructures[4]);
+    header.writeInt(outcomes.length);
+    for (final String outcome : outcomes) {
+      header.writeUTF(outcome);
+    }
+    header.writeInt(params.length);
+    header.writeInt(tableSize);
+    header.writeInt(totalParams);
+    header.writeInt(totalChars);
+    header.flush();
+    // the arrays start at a position multiple of 8
+    final int arraysStart = (headerBytes.size() + 4 + 7) & ~7;
+
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(output)))) {
+      headerBytes.writeTo(out);
+      out.writeInt(arraysStart);
+      for (int i = headerBytes.size() + 4; i < arraysStart; i++) {
+        out.writeByte(0);
+      }
+      MappedMaxentModel.writeArrays(out, params, predLabels, tableSize);
+    }
+  }
+
+  /**
+   * Load a compact pos model.
+   * 
+   * @param model
+   *          the compact model file
+   * @return the model
+   * @throws IOException
+   *           if the file is not a compact pos model
+   */
+  public static POSModel loadPOSModel(final File model) throws IOException {
+    final long start = System.nanoTime();
+    final Header header = readHeader(model, POS_COMPONENT);
+    final Dictionary ngramDictionary = header.ngramDictionary.length == 0 ? null
+        : new Dictionary(new ByteArrayInputStream(header.ngramDictionary));
+    final TagDictionary tagDictionary = header.tagDictionary.length == 0 ? null
+        : POSDictionary.create(new ByteArrayInputStream(header.tagDictionary));
+    final POSTaggerFactory factory = POSTaggerFactory.create(
+        header.factoryName, ngramDictionary, tagDictionary);
+    if (factory instanceof BaselineFactory) {
+      ((BaselineFactory) factory).setHashFeatures(header.hashFeatures);
+    }
+    final POSModel posModel = new POSModel(header.lang, mapModel(model,
+        header), header.beamSize == -1 ? POSTaggerME.DEFAULT_BEAM_SIZE
+        : header.beamSize, null, factory);
+    logger.debug("Compact pos model mapped in " + (System.nanoTime() - start)
+        / 1000000 + " ms");
+    return posModel;
+  }
+
+  /**
+   * Load a compact lemmatizer model.
+   * 
+   * @param model
+   *          the compact model file
+   * @return the model
+   * @throws IOException
+   *           if the file is not a compact lemmatizer model
+   */
+  public static LemmatizerModel loadLemmatizerModel(final File model)
+      throws IOException {
+    final long start = System.nanoTime();
+    final Header header = readHeader(model, LEMMA_COMPONENT);
+    final LemmatizerFactory factory = LemmatizerFactory
+        .create(header.factoryName);
+    factory.setHashFeatures(header.hashFeatures);
+    final LemmatizerModel lemmatizerModel = new LemmatizerModel(header.lang,
+        mapModel(model, header), header.beamSize == -1 ? LemmatizerME.DEFAULT_BEAM_SIZE
+            : header.beamSize, null, factory);
+    logger.debug("Compact lemmatizer model mapped in "
+        + (System.nanoTime() - start) / 1000000 + " ms");
+    return lemmatizerModel;
+  }
+
+  /**
+   * Read the header of a compact model.
+   * 
+   * @param model
+   *          the compact model file
+   * @param component
+   *          the expected component
+   * @return the header
+   * @throws IOException
+   *           if the file is not a compact model of the component
+   */
+  private static Header readHeader(final File model, final int component)
+      throws IOException {
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(model)))) {
+      if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+        throw new IOException("Not a compact model: " + model);
+      }
+      if (input.readInt() != component) {
+        throw new IOException("Compact model of another component: " + model);
+      }
+      final Header header = new Header();
+      header.lang = input.readUTF();
+      header.factoryName = input.readUTF();
+      header.beamSize = input.readInt();
+      header.hashFeatures = input.readInt();
+      header.ngramDictionary = new byte[input.readInt()];
+      input.readFully(header.ngramDictionary);
+      header.tagDictionary = new byte[input.readInt()];
+      input.readFully(header.tagDictionary);
+      header.perceptron = input.readBoolean();
+      header.correctionConstant = input.readInt();
+      header.correctionParam = input.readDouble();
+      header.outcomes = new String[input.readInt()];
+      for (int i = 0; i < header.outcomes.length; i++) {
+        header.outcomes[i] = input.readUTF();
+      }
+      header.numPreds = input.readInt();
+      header.tableSize = input.readInt();
+      header.totalParams = input.readInt();
+      header.totalChars = input.readInt();
+      header.arraysStart = input.readInt();
+      return header;
+    }
+  }
+
+  /**
+   * Map the predicate table and the parameters of a compact model.
+   * 
+   * @param model
+   *          the compact model file
+   * @param header
+   *          its header
+   * @return the mapped model
+   * @throws IOException
+   *           if the file is truncated
+   */
+  private static MappedMaxentModel mapModel(final File model,
+      final Header header) throws IOException {
+    final long size = MappedMaxentModel.getArraysSize(header.numPreds,
+        header.tableSize, header.totalParams, header.totalChars);
+    final ByteBuffer data;
+    try (RandomAccessFile file = new RandomAccessFile(model, "r")) {
+      if (file.length() != header.arraysStart + size) {
+        throw new IOException("Truncated compact model: " + model);
+      }
+      data = file.getChannel().map(FileChannel.MapMode.READ_ONLY,
+          header.arraysStart, size);
+    }
+    return new MappedMaxentModel(data, header.outcomes, header.perceptron,
+        header.correctionConstant, header.correctionParam, header.numPreds,
+        header.tableSize, header.totalParams);
+  }
+
+  /**
+   * The header of a compact model.
+   */
+  private static class Header {
+    private String lang;
+    private String factoryName;
+    private int beamSize;
+    private int hashFeatures;
+    private byte[] ngramDictionary;
+    private byte[] tagDictionary;
+    private boolean perceptron;
+    private int correctionConstant;
+    private double correctionParam;
+    private String[] outcomes;
+    private int numPreds;
+    private int tableSize;
+    private int totalParams;
+    private int totalChars;
+    private int arraysStart;
+  }
+}
@@ -0,0 +1,181 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import ixa.kaflib.KAFDocument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Thread-safe annotator. {@link Annotate} is not thread-safe because the
+ * {@code POSTaggerME} and {@code LemmatizerME} decoders and the dictionary
+ * lookups keep state while tagging a sentence. This facade leases every call
+ * an idle annotator, creating one only when every annotator is busy, so one
+ * instance can be shared by every thread of an application without locking.
+ * The leased annotators share the dictionaries, the models and the sentence
+ * pool of the first annotator; each one only owns its decoders and lookups.
+ * The models are taken from the first annotator, not read from the model
+ * files, so every call is served by the same models even if a model file is
+ * replaced or removed while the facade is in use.
+ *
+ * Closing the facade releases the annotators and the sentence pool.
+ */
+public class ConcurrentAnnotate implements Closeable {
+
+  /**
+   * The annotator loading the resources shared by every leased annotator.
+   */
+  private final Annotate sharedAnnotator;
+  /**
+   * The annotators not leased at the moment.
+   */
+  private final ConcurrentLinkedQueue<Annotate> idleAnnotators = new ConcurrentLinkedQueue<Annotate>();
+  /**
+   * Whether the facade has been closed.
+   */
+  private volatile boolean closed;
+
+  /**
+   * Construct a thread-safe annotator. The models and dictionaries are loaded
+   * right away, and any problem reported, before the object is shared.
+   *
+   * @param aProperties
+   *          the properties
+   * @throws IOException
+   *           io exception if model not properly loaded
+   */
+  public ConcurrentAnnotate(final Properties aProperties) throws IOException {
+    final Properties properties = new Properties();
+    properties.putAll(aProperties);
+    this.sharedAnnotator = new Annotate(properties);
+    this.idleAnnotators.add(this.sharedAnnotator);
+  }
+
+  /**
+   * Lease an idle annotator, or create one if every annotator is busy.
+   *
+   * @return the annotator, to be given back with {@link #release(Annotate)}
+   */
+  private Annotate lease() {
+    if (this.closed) {
+      throw new IllegalStateException("The annotator is closed");
+    }
+    final Annotate annotator = this.idleAnnotators.poll();
+    if (annotator != null) {
+      return annotator;
+    }
+    try {
+      return new Annotate(this.sharedAnnotator);
+    } catch (final IOException e) {
+      throw new IllegalStateException("Could not create annotator: "
+          + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Give back a leased annotator.
+   *
+   * @param annotator
+   *          the annotator
+   */
+  private void release(final Annotate annotator) {
+    if (!this.closed) {
+      this.idleAnnotators.offer(annotator);
+    }
+  }
+
+  /**
+   * Annotate morphological information into a NAF document.
+   *
+   * @param kaf
+   *          the NAF document
+   * @see Annotate#annotatePOSToKAF(KAFDocument)
+   */
+  public final void annotatePOSToKAF(final KAFDocument kaf) {
+    final Annotate annotator = lease();
+    try {
+      annotator.annotatePOSToKAF(kaf);
+    } finally {
+      release(annotator);
+    }
+  }
+
+  /**
+   * Annotate morphological information in tabulated CoNLL-style format.
+   *
+   * @param kaf
+   *          the naf input document
+   * @return the text annotated in tabulated format
+   * @throws IOException
+   *           throws io exception
+   * @see Annotate#annotatePOSToCoNLL(KAFDocument)
+   */
+  public final String annotatePOSToCoNLL(final KAFDocument kaf)
+      throws IOException {
+    final Annotate annotator = lease();
+    try {
+      return annotator.annotatePOSToCoNLL(kaf);
+    } finally {
+      release(annotator);
+    }
+  }
+
+  /**
+   * Add all postags and lemmas to morphofeat attribute.
+   *
+   * @param kaf
+   *          the NAF document
+   * @see Annotate#getAllTagsLemmasToNAF(KAFDocument)
+   */
+  public final void getAllTagsLemmasToNAF(final KAFDocument kaf) {
+    final Annotate annotator = lease();
+    try {
+      annotator.getAllTagsLemmasToNAF(kaf);
+    } finally {
+      release(annotator);
+    }
+  }
+
+  /**
+   * Give all lemmas and tags possible for a sentence in conll tabulated format.
+   *
+   * @param kaf
+   *          the NAF document
+   * @return the output in tabulated format
+   * @see Annotate#getAllTagsLemmasToCoNLL(KAFDocument)
+   */
+  public final String getAllTagsLemmasToCoNLL(final KAFDocument kaf) {
+    final Annotate annotator = lease();
+    try {
+      return annotator.getAllTagsLemmasToCoNLL(kaf);
+    } finally {
+      release(annotator);
+    }
+  }
+
+  /**
+   * Release the annotators and the sentence pool. The annotator must not be
+   * used afterwards.
+   */
+  public final void close() {
+    this.closed = true;
+    this.idleAnnotators.clear();
+    this.sharedAnnotator.close();
+  }
+
+}
@@ -0,0 +1,204 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A lemma class, the shortest edit script (SES) encoded by
+ * {@link StringUtils#getShortestEditScript(String, String)},
+ * compiled into an array of opcodes. Every operation of the script is four
+ * ints: the operation, the position in the reversed word form and its one or
+ * two characters. The SES string is parsed only once, when the program is
+ * compiled, and applying it only copies characters within a buffer.
+ *
+ * Positions may have several digits. As the characters following a position
+ * may be digits too, the script is parsed with backtracking, trying the
+ * shortest positions first; a script of single digit positions is therefore
+ * read as before.
+ */
+public final class EditScriptProgram {
+
+  private static final int REPLACE = 'R';
+  private static final int INSERT = 'I';
+  private static final int DELETE = 'D';
+  private static final int OP_SIZE = 4;
+
+  /**
+   * The program of the lemma classes not changing the word form.
+   */
+  private static final EditScriptProgram IDENTITY = new EditScriptProgram(
+      new int[0]);
+
+  private final int[] code;
+  /**
+   * The number of insertions, which bounds the growth of the word form.
+   */
+  private final int insertions;
+
+  private EditScriptProgram(final int[] aCode) {
+    this.code = aCode;
+    int inserts = 0;
+    for (int pc = 0; pc < aCode.length; pc += OP_SIZE) {
+      if (aCode[pc] == INSERT) {
+        inserts++;
+      }
+    }
+    this.insertions = inserts;
+  }
+
+  /**
+   * Compile a shortest edit script.
+   *
+   * @param ses
+   *          the shortest edit script, "O" if the lemma is the word form
+   * @return the program; scripts which can not be parsed leave the word form
+   *         unchanged
+   */
+  public static EditScriptProgram compile(final String ses) {
+    final List<int[]> ops = new ArrayList<int[]>();
+    if (!parse(ses, 0, ops) || ops.isEmpty()) {
+      return IDENTITY;
+    }
+    final int[] code = new int[ops.size() * OP_SIZE];
+    for (int i = 0; i < ops.size(); i++) {
+      System.arraycopy(ops.get(i), 0, code, i * OP_SIZE, OP_SIZE);
+    }
+    return new EditScriptProgram(code);
+  }
+
+  /**
+   * Parse the operations of a script from an offset to its end.
+   *
+   * @param ses
+   *          the script
+   * @param start
+   *          the offset
+   * @param ops
+   *          the parsed operations, to which the operations are added
+   * @return true if the rest of the script could be parsed
+   */
+  private static boolean parse(final String ses, final int start,
+      final List<int[]> ops) {
+    if (start == ses.length()) {
+      return true;
+    }
+    final char op = ses.charAt(start);
+    final int chars;
+    if (op == REPLACE) {
+      chars = 2;
+    } else if (op == INSERT || op == DELETE) {
+      chars = 1;
+    } else if (op == 'O' && start == 0 && ses.length() == 1) {
+      return true;
+    } else {
+      return false;
+    }
+    int position = 0;
+    for (int end = start + 1; end < ses.length()
+        && Character.isDigit(ses.charAt(end)); end++) {
+      position = position * 10 + (ses.charAt(end) - '0');
+      final int next = end + 1 + chars;
+      if (next <= ses.length()) {
+        final int[] operation = { op, position, ses.charAt(end + 1),
+            chars == 2 ? ses.charAt(end + 2) : 0 };
+        ops.add(operation);
+        if (parse(ses, next, ops)) {
+          return true;
+        }
+        ops.remove(ops.size() - 1);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the size of the buffer required to apply the program to a word form.
+   *
+   * @param wordForm
+   *          the word form
+   * @return the minimum buffer length
+   */
+  public int getBufferSize(final String wordForm) {
+    return wordForm.length() + this.insertions;
+  }
+
+  /**
+   * Apply the program to a word form.
+   *
+   * @param wordForm
+   *          the word form
+   * @param buffer
+   *          the working buffer, of at least {@link #getBufferSize(String)}
+   *          chars
+   * @return the lemma, or the word form if the script does not fit it
+   */
+  public String apply(final String wordForm, final char[] buffer) {
+    if (this.code.length == 0) {
+      return wordForm;
+    }
+    int length = wordForm.length();
+    for (int i = 0; i < length; i++) {
+      buffer[i] = wordForm.charAt(length - 1 - i);
+    }
+    for (int pc = 0; pc < this.code.length; pc += OP_SIZE) {
+      final int position = this.code[pc + 1];
+      switch (this.code[pc]) {
+      case REPLACE:
+        if (length <= position) {
+          return wordForm;
+        }
+        if (buffer[position] == this.code[pc + 2]) {
+          buffer[position] = (char) this.code[pc + 3];
+        }
+        break;
+      case INSERT:
+        if (length < position) {
+          return wordForm;
+        }
+        System.arraycopy(buffer, position, buffer, position + 1, length
+            - position);
+        buffer[position] = (char) this.code[pc + 2];
+        length++;
+        break;
+      default:
+        if (length <= position) {
+          return wordForm;
+        }
+        System.arraycopy(buffer, position + 1, buffer, position, length
+            - position - 1);
+        length--;
+        break;
+      }
+    }
+    for (int i = 0, j = length - 1; i < j; i++, j--) {
+      final char c = buffer[i];
+      buffer[i] = buffer[j];
+      buffer[j] = c;
+    }
+    return new String(buffer, 0, length);
+  }
+
+  /**
+   * Apply the program to a word form with a new buffer.
+   *
+   * @param wordForm
+   *          the word form
+   * @return the lemma, or the word form if the script does not fit it
+   */
+  public String apply(final String wordForm) {
+    return apply(wordForm, new char[getBufferSize(wordForm)]);
+  }
+}
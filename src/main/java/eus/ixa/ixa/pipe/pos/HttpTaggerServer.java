@@ -0,0 +1,302 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import eus.ixa.ixa.pipe.lemma.StatisticalLemmatizer;
+
+/**
+ * HTTP server tagging and lemmatizing already tokenized sentences, without
+ * building NAF documents. A POST to {@code /tag} with the body
+ *
+ * <pre>
+ * {"sentences": [["The", "dog", "barks", "."], ["Hi", "!"]]}
+ * </pre>
+ *
+ * is answered with, for every token, the pos tag, the KAF pos id and the
+ * lemma:
+ *
+ * <pre>
+ * {"sentences": [[{"word": "The", "tag": "DT", "pos": "D", "lemma": "the"}, ...], ...]}
+ * </pre>
+ *
+ * Only the statistical tagger and lemmatizer are applied; the multiword and
+ * dictionary options of the NAF annotation are not available here. Every
+ * worker thread keeps its own decoders over the shared cached models. As in
+ * the {@link TaggerProtocol}, request bodies larger than the maximum request
+ * size are rejected, with a 413 status, before they are parsed.
+ */
+public class HttpTaggerServer {
+  private static final Logger logger = LogManager.getLogger(HttpTaggerServer.class);
+  /**
+   * JSON serializer, thread-safe.
+   */
+  private static final Gson GSON = new Gson();
+
+  private final Properties properties;
+  private final String lang;
+  private final int maxRequestSize;
+  private final HttpServer server;
+  private final ExecutorService workerPool;
+  private final MorphoFactory morphoFactory = new MorphoFactory();
+  private final ThreadLocal<StatisticalTagger> posTaggers = new ThreadLocal<StatisticalTagger>() {
+    @Override
+    protected StatisticalTagger initialValue() {
+      return new StatisticalTagger(properties, morphoFactory);
+    }
+  };
+  private final ThreadLocal<StatisticalLemmatizer> lemmatizers = new ThreadLocal<StatisticalLemmatizer>() {
+    @Override
+    protected StatisticalLemmatizer initialValue() {
+      return new StatisticalLemmatizer(properties, morphoFactory);
+    }
+  };
+
+  /**
+   * Construct and start the HTTP server. The models are loaded before the
+   * server starts listening.
+   *
+   * @param aProperties
+   *          the properties: port, model, lemmatizerModel, language,
+   *          workers and optionally maxRequestSize, in bytes
+   * @throws IOException
+   *           if the port can not be bound
+   */
+  public HttpTaggerServer(final Properties aProperties) throws IOException {
+    this.properties = new Properties();
+    this.properties.putAll(aProperties);
+    this.lang = this.properties.getProperty("language");
+    final int port = Integer.parseInt(this.properties.getProperty("port"));
+    final int workers = Integer.parseInt(this.properties.getProperty("workers",
+        Integer.toString(Runtime.getRuntime().availableProcessors())));
+    if (workers < 1) {
+      throw new IllegalArgumentException("The number of workers must be at least 1!");
+    }
+    this.maxRequestSize = Integer.parseInt(this.properties.getProperty(
+        "maxRequestSize", Integer.toString(TaggerProtocol.MAX_REQUEST_SIZE)));
+    // load the models once, the workers share them through the model cache
+    this.posTaggers.get();
+    this.lemmatizers.get();
+    this.workerPool = Executors.newFixedThreadPool(workers);
+    this.server = HttpServer.create(new InetSocketAddress(port), 0);
+    this.server.createContext("/tag", new TagHandler());
+    this.server.setExecutor(this.workerPool);
+    this.server.start();
+    logger.debug("-> Listening to HTTP port " + port + " with " + workers + " workers");
+  }
+
+  /**
+   * Stop the server, waiting at most a second for the requests being tagged.
+   */
+  public final void stop() {
+    this.server.stop(1);
+    this.workerPool.shutdown();
+  }
+
+  /**
+   * Read the body of a request, up to the maximum request size.
+   *
+   * @param exchange
+   *          the request
+   * @return the body, or null if it is larger than the maximum request size
+   * @throws IOException
+   *           if the body can not be read
+   */
+  private byte[] readBody(final HttpExchange exchange) throws IOException {
+    final String contentLength = exchange.getRequestHeaders().getFirst(
+        "Content-Length");
+    if (contentLength != null) {
+      try {
+        if (Long.parseLong(contentLength.trim()) > this.maxRequestSize) {
+          return null;
+        }
+      } catch (final NumberFormatException e) {
+        // a chunked body, counted while it is read
+      }
+    }
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[8192];
+    try (InputStream input = exchange.getRequestBody()) {
+      int read;
+      while ((read = input.read(buffer)) != -1) {
+        if (body.size() + read > this.maxRequestSize) {
+          return null;
+        }
+        body.write(buffer, 0, read);
+      }
+    }
+    return body.toByteArray();
+  }
+
+  /**
+   * Tag and lemmatize a batch of tokenized sentences with the decoders of the
+   * calling thread.
+   *
+   * @param sentences
+   *          the tokenized sentences
+   * @return the analysis of every token of every sentence
+   */
+  final List<List<TokenAnalysis>> tag(final List<List<String>> sentences) {
+    final StatisticalTagger posTagger = this.posTaggers.get();
+    final StatisticalLemmatizer lemmatizer = this.lemmatizers.get();
+    final List<List<TokenAnalysis>> result = new ArrayList<List<TokenAnalysis>>(
+        sentences.size());
+    for (final List<String> sentence : sentences) {
+      final String[] tokens = sentence.toArray(new String[sentence.size()]);
+      final List<String> posTags = posTagger.posAnnotate(tokens);
+      final String[] tags = posTags.toArray(new String[posTags.size()]);
+      final List<String> lemmas = lemmatizer.lemmatize(tokens, tags);
+      final List<Morpheme> morphemes = lemmatizer.getMorphemesFromStrings(
+          tokens, tags, lemmas);
+      final List<TokenAnalysis> analyses = new ArrayList<TokenAnalysis>(
+          morphemes.size());
+      final TagVocabulary vocabulary = posTagger.getTagVocabulary();
+      for (final Morpheme morpheme : morphemes) {
+        final int tagId = vocabulary.getId(morpheme.getTag());
+        final String posId = tagId == -1 ? Resources.getKafTagSet(
+            morpheme.getTag(), this.lang) : vocabulary.getPosId(tagId);
+        analyses.add(new TokenAnalysis(morpheme.getWord(), morpheme.getTag(),
+            posId, morpheme.getLemma()));
+      }
+      result.add(analyses);
+    }
+    return result;
+  }
+
+  /**
+   * Handles the requests to {@code /tag}.
+   */
+  private class TagHandler implements HttpHandler {
+    public void handle(final HttpExchange exchange) throws IOException {
+      try {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
+          sendError(exchange, 405, "Only POST requests are accepted");
+          return;
+        }
+        final byte[] body = readBody(exchange);
+        if (body == null) {
+          sendError(exchange, 413, "The request is larger than "
+              + maxRequestSize + " bytes");
+          return;
+        }
+        TagRequest request;
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(
+            body), "UTF-8")) {
+          request = GSON.fromJson(reader, TagRequest.class);
+        } catch (final JsonParseException e) {
+          sendError(exchange, 400, "Malformed JSON: " + e.getMessage());
+          return;
+        }
+        if (request == null || request.sentences == null) {
+          sendError(exchange, 400, "The request has no sentences");
+          return;
+        }
+        for (final List<String> sentence : request.sentences) {
+          if (sentence == null || sentence.contains(null)) {
+            sendError(exchange, 400, "Sentences must be lists of tokens");
+            return;
+          }
+        }
+        final TagResponse response = new TagResponse();
+        response.sentences = tag(request.sentences);
+        send(exchange, 200, GSON.toJson(response));
+      } catch (final RuntimeException e) {
+        logger.error("-> Error while tagging: " + e.getMessage());
+        sendError(exchange, 500, "Error while tagging");
+      } finally {
+        exchange.close();
+      }
+    }
+
+    private void sendError(final HttpExchange exchange, final int status,
+        final String message) throws IOException {
+      final TagError error = new TagError();
+      error.error = message;
+      send(exchange, status, GSON.toJson(error));
+    }
+
+    private void send(final HttpExchange exchange, final int status,
+        final String json) throws IOException {
+      final byte[] body = json.getBytes(TaggerProtocol.UTF8);
+      exchange.getResponseHeaders().set("Content-Type",
+          "application/json; charset=utf-8");
+      exchange.sendResponseHeaders(status, body.length);
+      try (OutputStream output = exchange.getResponseBody()) {
+        output.write(body);
+      }
+    }
+  }
+
+  /**
+   * The JSON request.
+   */
+  private static class TagRequest {
+    private List<List<String>> sentences;
+  }
+
+  /**
+   * The JSON response.
+   */
+  private static class TagResponse {
+    private List<List<TokenAnalysis>> sentences;
+  }
+
+  /**
+   * The JSON error response.
+   */
+  private static class TagError {
+    private String error;
+  }
+
+  /**
+   * The analysis of a token.
+   */
+  static class TokenAnalysis {
+    private final String word;
+    private final String tag;
+    private final String pos;
+    private final String lemma;
+
+    TokenAnalysis(final String aWord, final String aTag, final String aPos,
+        final String aLemma) {
+      this.word = aWord;
+      this.tag = aTag;
+      this.pos = aPos;
+      this.lemma = aLemma;
+    }
+  }
+}
@@ -0,0 +1,347 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.Context;
+
+/**
+ * A maxent or perceptron model evaluated directly over a memory mapped
+ * region, without building the predicate map and the parameter objects on
+ * the heap. The region holds an open-addressing table from predicate to
+ * predicate index, the predicates as UTF-16 chars, and for every predicate
+ * the outcomes and parameters of its context, as laid out by
+ * {@link #writeArrays(DataOutputStream, Context[], String[], int)}. The
+ * contexts are summed in the same order as the {@code GISModel} and the
+ * {@code PerceptronModel}, so that the probabilities are the same.
+ * 
+ * The model is read-only and thread-safe. As its parameters are not on the
+ * heap, it can not be serialized back to an OpenNLP model. Evaluating a
+ * context into a caller supplied array allocates nothing, except for maxent
+ * models with a correction parameter, which count the features of every
+ * outcome as the {@code GISModel} does.
+ */
+public class MappedMaxentModel extends AbstractModel {
+
+  private final ByteBuffer data;
+  private final boolean perceptron;
+  private final int numOutcomes;
+  private final int mask;
+  private final int slotsStart;
+  private final int hashesStart;
+  private final int charOffsetsStart;
+  private final int paramOffsetsStart;
+  private final int outcomesStart;
+  private final int paramsStart;
+  private final int charsStart;
+  private final double constantInverse;
+  private final double correctionConstant;
+  private final double correctionParam;
+
+  /**
+   * Construct a model over a mapped region.
+   * 
+   * @param aData
+   *          the region, starting at the predicate table
+   * @param outcomeNames
+   *          the outcomes
+   * @param isPerceptron
+   *          whether it is a perceptron model, a maxent model otherwise
+   * @param aCorrectionConstant
+   *          the correction constant of a maxent model
+   * @param aCorrectionParam
+   *          the correction parameter of a maxent model
+   * @param numPreds
+   *          the number of predicates
+   * @param tableSize
+   *          the size of the predicate table
+   * @param totalParams
+   *          the number of parameters
+   */
+  public MappedMaxentModel(final ByteBuffer aData, final String[] outcomeNames,
+      final boolean isPerceptron, final int aCorrectionConstant,
+      final double aCorrectionParam, final int numPreds, final int tableSize,
+      final int totalParams) {
+    super(new Context[0], new String[0], outcomeNames, aCorrectionConstant,
+        aCorrectionParam);
+    this.modelType = isPerceptron ? ModelType.Perceptron : ModelType.Maxent;
+    this.data = aData;
+    this.perceptron = isPerceptron;
+    this.numOutcomes = outcomeNames.length;
+    this.mask = tableSize - 1;
+    this.correctionConstant = aCorrectionConstant;
+    this.correctionParam = aCorrectionParam;
+    this.constantInverse = 1.0 / aCorrectionConstant;
+    this.slotsStart = 0;
+    this.hashesStart = this.slotsStart + tableSize * 4;
+    this.charOffsetsStart = this.hashesStart + numPreds * 4;
+    this.paramOffsetsStart = this.charOffsetsStart + (numPreds + 1) * 4;
+    this.outcomesStart = this.paramOffsetsStart + (numPreds + 1) * 4;
+    this.paramsStart = align(this.outcomesStart + totalParams * 4);
+    this.charsStart = this.paramsStart + totalParams * 8;
+  }
+
+  /**
+   * Get the size of the predicate table for a number of predicates.
+   * 
+   * @param numPreds
+   *          the number of predicates
+   * @return the table size, a power of two
+   */
+  static int getTableSize(final int numPreds) {
+    int tableSize = 2;
+    while (tableSize < numPreds * 2) {
+      tableSize <<= 1;
+    }
+    return tableSize;
+  }
+
+  /**
+   * Write the predicate table, the predicates and the contexts of a model as
+   * they are mapped by this class. The region must start at a position
+   * multiple of 8 for the parameters to be aligned.
+   * 
+   * @param out
+   *          the output
+   * @param params
+   *          the contexts of the predicates, by predicate index
+   * @param predLabels
+   *          the predicates, by predicate index
+   * @param tableSize
+   *          the size of the predicate table, from {@link #getTableSize(int)}
+   * @throws IOException
+   *           if io error
+   */
+  static void writeArrays(final DataOutputStream out, final Context[] params,
+      final String[] predLabels, final int tableSize) throws IOException {
+    final int[] slots = new int[tableSize];
+    for (int pred = 0; pred < predLabels.length; pred++) {
+      int slot = mix(predLabels[pred].hashCode()) & (tableSize - 1);
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & (tableSize - 1);
+      }
+      slots[slot] = pred + 1;
+    }
+    for (final int slot : slots) {
+      out.writeInt(slot);
+    }
+    for (final String predLabel : predLabels) {
+      out.writeInt(predLabel.hashCode());
+    }
+    int charOffset = 0;
+    out.writeInt(charOffset);
+    for (final String predLabel : predLabels) {
+      charOffset += predLabel.length();
+      out.writeInt(charOffset);
+    }
+    int paramOffset = 0;
+    out.writeInt(paramOffset);
+    for (final Context context : params) {
+      paramOffset += context.getOutcomes().length;
+      out.writeInt(paramOffset);
+    }
+    for (final Context context : params) {
+      for (final int outcome : context.getOutcomes()) {
+        out.writeInt(outcome);
+      }
+    }
+    final int outcomesEnd = (tableSize + params.length * 3 + 2 + paramOffset) * 4;
+    for (int i = outcomesEnd; i < align(outcomesEnd); i++) {
+      out.writeByte(0);
+    }
+    for (final Context context : params) {
+      for (final double parameter : context.getParameters()) {
+        out.writeDouble(parameter);
+      }
+    }
+    for (final String predLabel : predLabels) {
+      out.writeChars(predLabel);
+    }
+  }
+
+  /**
+   * Get the size of the region of a model.
+   * 
+   * @param numPreds
+   *          the number of predicates
+   * @param tableSize
+   *          the size of the predicate table
+   * @param totalParams
+   *          the number of parameters
+   * @param totalChars
+   *          the number of chars of the predicates
+   * @return the size in bytes
+   */
+  static long getArraysSize(final int numPreds, final int tableSize,
+      final int totalParams, final int totalChars) {
+    final long outcomesEnd = (tableSize + numPreds * 3L + 2 + totalParams) * 4;
+    return (outcomesEnd + 7) / 8 * 8 + totalParams * 8L + totalChars * 2L;
+  }
+
+  private static int align(final int position) {
+    return (position + 7) & ~7;
+  }
+
+  private static int mix(final int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * Find the index of a predicate.
+   * 
+   * @param predicate
+   *          the predicate
+   * @return the index, or -1 if the predicate is not in the model
+   */
+  private int getPredicate(final String predicate) {
+    final int hash = predicate.hashCode();
+    int slot = mix(hash) & this.mask;
+    while (true) {
+      final int pred = this.data.getInt(this.slotsStart + slot * 4) - 1;
+      if (pred == -1) {
+        return -1;
+      }
+      if (this.data.getInt(this.hashesStart + pred * 4) == hash
+          && matches(pred, predicate)) {
+        return pred;
+      }
+      slot = (slot + 1) & this.mask;
+    }
+  }
+
+  /**
+   * Compare a predicate of the model with a string.
+   * 
+   * @param pred
+   *          the predicate index
+   * @param predicate
+   *          the string
+   * @return whether they are equal
+   */
+  private boolean matches(final int pred, final String predicate) {
+    final int start = this.data.getInt(this.charOffsetsStart + pred * 4);
+    final int end = this.data.getInt(this.charOffsetsStart + pred * 4 + 4);
+    if (end - start != predicate.length()) {
+      return false;
+    }
+    for (int i = 0; i < predicate.length(); i++) {
+      if (this.data.getChar(this.charsStart + (start + i) * 2) != predicate
+          .charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public final double[] eval(final String[] context) {
+    return eval(context, null, new double[this.numOutcomes]);
+  }
+
+  public final double[] eval(final String[] context, final double[] probs) {
+    return eval(context, null, probs);
+  }
+
+  public final double[] eval(final String[] context, final float[] values) {
+    return eval(context, values, new double[this.numOutcomes]);
+  }
+
+  /**
+   * Evaluate a context.
+   * 
+   * @param context
+   *          the predicates of the context
+   * @param values
+   *          the values of the predicates, null for 1
+   * @param outsums
+   *          the array where the probabilities are computed
+   * @return the probabilities of the outcomes
+   */
+  public final double[] eval(final String[] context, final float[] values,
+      final double[] outsums) {
+    if (!this.perceptron) {
+      // uniform prior
+      final double logPrior = Math.log(1.0 / this.numOutcomes);
+      for (int oid = 0; oid < this.numOutcomes; oid++) {
+        outsums[oid] = logPrior;
+      }
+    } else {
+      // callers such as the beam search reuse the array for every token
+      Arrays.fill(outsums, 0);
+    }
+    // only the correction feature of a maxent model needs the counts
+    final int[] numfeats = !this.perceptron && this.correctionParam != 0
+        ? new int[this.numOutcomes] : null;
+    double value = 1;
+    for (int ci = 0; ci < context.length; ci++) {
+      final int pred = getPredicate(context[ci]);
+      if (pred >= 0) {
+        if (values != null) {
+          value = values[ci];
+        }
+        final int start = this.data.getInt(this.paramOffsetsStart + pred * 4);
+        final int end = this.data.getInt(this.paramOffsetsStart + pred * 4 + 4);
+        for (int ai = start; ai < end; ai++) {
+          final int oid = this.data.getInt(this.outcomesStart + ai * 4);
+          if (numfeats != null) {
+            numfeats[oid]++;
+          }
+          outsums[oid] += this.data.getDouble(this.paramsStart + ai * 8) * value;
+        }
+      }
+    }
+    return this.perceptron ? normalizePerceptron(outsums)
+        : normalizeMaxent(outsums, numfeats);
+  }
+
+  private double[] normalizeMaxent(final double[] prior, final int[] numfeats) {
+    double normal = 0.0;
+    for (int oid = 0; oid < this.numOutcomes; oid++) {
+      if (this.correctionParam != 0) {
+        prior[oid] = Math.exp(prior[oid] * this.constantInverse
+            + ((1.0 - (numfeats[oid] / this.correctionConstant)) * this.correctionParam));
+      } else {
+        prior[oid] = Math.exp(prior[oid] * this.constantInverse);
+      }
+      normal += prior[oid];
+    }
+    for (int oid = 0; oid < this.numOutcomes; oid++) {
+      prior[oid] /= normal;
+    }
+    return prior;
+  }
+
+  private double[] normalizePerceptron(final double[] prior) {
+    double maxPrior = 1;
+    for (int oid = 0; oid < this.numOutcomes; oid++) {
+      if (maxPrior < Math.abs(prior[oid])) {
+        maxPrior = Math.abs(prior[oid]);
+      }
+    }
+    double normal = 0.0;
+    for (int oid = 0; oid < this.numOutcomes; oid++) {
+      prior[oid] = Math.exp(prior[oid] / maxPrior);
+      normal += prior[oid];
+    }
+    for (int oid = 0; oid < this.numOutcomes; oid++) {
+      prior[oid] /= normal;
+    }
+    return prior;
+  }
+}
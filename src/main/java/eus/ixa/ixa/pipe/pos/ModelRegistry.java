@@ -0,0 +1,301 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Registry of the loaded models, keyed by model identity: the canonical path
+ * and the version of a model file or the SHA-1 of the content of a model
+ * stream, so that two models of the same language do not collide. A new
+ * version of a file is loaded under a new key while the previous version
+ * stays registered, until {@link #evictOtherVersions(File)} is called. Every
+ * key is loaded once, by the first thread requesting it; the threads
+ * requesting the same key meanwhile wait for that single load, while distinct
+ * models load concurrently without any global lock. A failed load is not
+ * kept, so that the next request tries again.
+ * 
+ * The registry keeps the file size and the load time of every model, see
+ * {@link #getStats()}, and logs them at info level as every model is loaded.
+ * 
+ * @param <M>
+ *          the model type
+ */
+public class ModelRegistry<M> {
+  private static final Logger logger = LogManager.getLogger(ModelRegistry.class);
+
+  /**
+   * Loads a model.
+   * 
+   * @param <M>
+   *          the model type
+   */
+  public interface ModelLoader<M> {
+    /**
+     * Load the model.
+     * 
+     * @return the model
+     * @throws IOException
+     *           if the model can not be loaded
+     */
+    M load() throws IOException;
+  }
+
+  /**
+   * The name of the registered models, for the logs.
+   */
+  private final String name;
+  private final ConcurrentMap<String, FutureTask<M>> models = new ConcurrentHashMap<String, FutureTask<M>>();
+  private final ConcurrentMap<String, ModelStats> stats = new ConcurrentHashMap<String, ModelStats>();
+
+  /**
+   * Construct an empty registry.
+   * 
+   * @param aName
+   *          the name of the registered models, for the logs
+   */
+  public ModelRegistry(final String aName) {
+    this.name = aName;
+  }
+
+  /**
+   * Get the key of a model file.
+   * 
+   * @param model
+   *          the model file
+   * @return the key, the canonical path of the file followed by its last
+   *         modification time and length
+   * @throws IOException
+   *           if the path can not be resolved
+   */
+  public static String getFileKey(final File model) throws IOException {
+    return getFilePrefix(model) + model.lastModified() + ":" + model.length();
+  }
+
+  /**
+   * Get the prefix of the keys of every version of a model file.
+   * 
+   * @param model
+   *          the model file
+   * @return the prefix
+   * @throws IOException
+   *           if the path can not be resolved
+   */
+  private static String getFilePrefix(final File model) throws IOException {
+    return "file:" + model.getCanonicalPath() + "@";
+  }
+
+  /**
+   * Get the key of a model read from a stream.
+   * 
+   * @param model
+   *          the content of the model
+   * @return the key, the SHA-1 of the content
+   */
+  public static String getContentKey(final byte[] model) {
+    try {
+      final byte[] digest = MessageDigest.getInstance("SHA-1").digest(model);
+      final StringBuilder key = new StringBuilder("sha1:");
+      for (final byte b : digest) {
+        key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(
+            Character.forDigit(b & 0xf, 16));
+      }
+      return key.toString();
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 not available", e);
+    }
+  }
+
+  /**
+   * Get a model, loading it if it is not in the registry.
+   * 
+   * @param key
+   *          the key of the model
+   * @param size
+   *          the size in bytes of the model file or stream, on disk
+   * @param loader
+   *          the loader of the model, called at most once per key unless it
+   *          fails
+   * @return the model
+   * @throws IOException
+   *           if the model can not be loaded
+   */
+  public final M get(final String key, final long size,
+      final ModelLoader<M> loader) throws IOException {
+    FutureTask<M> task = this.models.get(key);
+    if (task == null) {
+      final FutureTask<M> newTask = new FutureTask<M>(new Callable<M>() {
+        public M call() throws IOException {
+          final long start = System.nanoTime();
+          final M model = loader.load();
+          final ModelStats modelStats = new ModelStats(key, size,
+              (System.nanoTime() - start) / 1000000);
+          ModelRegistry.this.stats.put(key, modelStats);
+          logger.info("Loaded " + ModelRegistry.this.name + " model "
+              + modelStats + "; " + ModelRegistry.this.stats.size()
+              + " models registered, " + getTotalFileSize()
+              + " bytes of model files");
+          return model;
+        }
+      });
+      task = this.models.putIfAbsent(key, newTask);
+      if (task == null) {
+        task = newTask;
+        // load in the calling thread, other requests for the key wait on it
+        newTask.run();
+      }
+    }
+    try {
+      return task.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while loading " + key);
+    } catch (final ExecutionException e) {
+      this.models.remove(key, task);
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      } else if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Remove a model from the registry. The instances already using it keep
+   * it; the next request of the key loads it again.
+   * 
+   * @param key
+   *          the key of the model
+   * @return true if the model was registered
+   */
+  public final boolean evict(final String key) {
+    this.stats.remove(key);
+    return this.models.remove(key) != null;
+  }
+
+  /**
+   * Remove the previous versions of a model file from the registry, keeping
+   * the current version. The instances already using them keep them.
+   * 
+   * @param model
+   *          the model file
+   * @return the keys removed
+   * @throws IOException
+   *           if the path can not be resolved
+   */
+  public final List<String> evictOtherVersions(final File model)
+      throws IOException {
+    final String prefix = getFilePrefix(model);
+    final String current = getFileKey(model);
+    final List<String> evicted = new ArrayList<String>();
+    for (final String key : this.models.keySet()) {
+      if (key.startsWith(prefix) && !key.equals(current) && evict(key)) {
+        evicted.add(key);
+      }
+    }
+    return evicted;
+  }
+
+  /**
+   * Get the statistics of the loaded models.
+   * 
+   * @return the statistics of every loaded model
+   */
+  public final List<ModelStats> getStats() {
+    return new ArrayList<ModelStats>(this.stats.values());
+  }
+
+  /**
+   * Get the total file size of the loaded models.
+   * 
+   * @return the sum of the sizes of the model files and streams, in bytes
+   */
+  public final long getTotalFileSize() {
+    long totalSize = 0;
+    for (final ModelStats modelStats : this.stats.values()) {
+      totalSize += modelStats.getFileSize();
+    }
+    return totalSize;
+  }
+
+  /**
+   * The statistics of a loaded model.
+   */
+  public static class ModelStats {
+    private final String key;
+    private final long fileSize;
+    private final long loadTime;
+
+    ModelStats(final String aKey, final long aFileSize, final long aLoadTime) {
+      this.key = aKey;
+      this.fileSize = aFileSize;
+      this.loadTime = aLoadTime;
+    }
+
+    /**
+     * Get the key of the model.
+     * 
+     * @return the key
+     */
+    public final String getKey() {
+      return this.key;
+    }
+
+    /**
+     * Get the size of the model file or stream, as stored on disk. This is
+     * not the heap used by the model: a zip model is compressed and takes
+     * several times its file size once deserialized, whereas a
+     * {@link CompactModel} is memory mapped outside of the heap and its file
+     * size is the memory it maps.
+     * 
+     * @return the file size in bytes
+     */
+    public final long getFileSize() {
+      return this.fileSize;
+    }
+
+    /**
+     * Get the load time of the model.
+     * 
+     * @return the load time in milliseconds
+     */
+    public final long getLoadTime() {
+      return this.loadTime;
+    }
+
+    @Override
+    public String toString() {
+      return this.key + " (file size " + this.fileSize + " bytes, loaded in "
+          + this.loadTime + " ms)";
+    }
+  }
+}
@@ -15,6 +15,8 @@
  */
 package eus.ixa.ixa.pipe.pos;
 
+import eus.ixa.ixa.pipe.pos.train.ParallelSampleStream;
+import eus.ixa.ixa.pipe.pos.train.SampleParser;
 import opennlp.tools.postag.POSSample;
 import opennlp.tools.util.FilterObjectStream;
 import opennlp.tools.util.ObjectStream;
@@ -29,13 +31,28 @@ import java.util.List;
  * A stream filter which reads a sentence per line which contains
  * words and tags in word_tag format and outputs a {@link POSSample} objects.
  */
-public class MorphoSampleStream extends FilterObjectStream<String, POSSample> {
+public class MorphoSampleStream extends FilterObjectStream<String, POSSample>
+    implements SampleParser<POSSample> {
   private static final Logger logger = LogManager.getLogger(MorphoSampleStream.class);
 
   public MorphoSampleStream(ObjectStream<String> samples) {
     super(samples);
   }
 
+  /**
+   * Create a stream of {@link POSSample}s, parsing the sentences in parallel
+   * if more than one thread is requested.
+   * @param samples the lines of the corpus
+   * @param threads the number of parsing threads
+   * @return the sample stream
+   */
+  public static ObjectStream<POSSample> create(ObjectStream<String> samples, int threads) {
+    if (threads > 1) {
+      return new ParallelSampleStream<POSSample>(samples, new MorphoSampleStream(samples), threads);
+    }
+    return new MorphoSampleStream(samples);
+  }
+
   /**
    * Parses the next sentence and return the next
    * {@link POSSample} object.
@@ -48,10 +65,23 @@ public class MorphoSampleStream extends FilterObjectStream<String, POSSample> {
    */
   public POSSample read() throws IOException {
 
-    List<String> toks = new ArrayList<String>();
-    List<String> tags = new ArrayList<String>();
-
+    List<String> lines = new ArrayList<String>();
     for (String line = samples.read(); line != null && !line.equals(""); line = samples.read()) {
+      lines.add(line);
+    }
+    return parse(lines);
+  }
+
+  /**
+   * Parses the lines of a sentence into a {@link POSSample}. Thread-safe.
+   * @param lines the lines of the sentence
+   * @return the sample, or null if the sentence has no valid lines
+   */
+  public POSSample parse(List<String> lines) {
+    List<String> toks = new ArrayList<String>(lines.size());
+    List<String> tags = new ArrayList<String>(lines.size());
+
+    for (String line : lines) {
       String[] parts = line.split("\t");
       if (parts.length != 3) {
         logger.error("Skipping corrupt line: " + line);
@@ -63,7 +93,9 @@ public class MorphoSampleStream extends FilterObjectStream<String, POSSample> {
     }
     if (toks.size() > 0) {
       POSSample posSample = new POSSample(toks.toArray(new String[toks.size()]), tags.toArray(new String[tags.size()]));
-      logger.debug(posSample.toString());
+      if (logger.isDebugEnabled()) {
+        logger.debug(posSample.toString());
+      }
       return posSample;
     }
     else {
@@ -0,0 +1,482 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Non-blocking front-end of the {@link StatisticalTaggerServer}. One selector
+ * thread accepts every connection, reads the requests and writes the
+ * responses, so idle connections do not cost any thread. Complete requests
+ * are handed to the annotation workers through a bounded queue; when the
+ * queue is full the selector stops reading from the connection until there
+ * is room again. Both the framed and the legacy {@link TaggerProtocol} are
+ * served; a connection has at most one request being annotated at a time, so
+ * responses are sent in request order.
+ */
+class NioTaggerFrontEnd {
+  private static final Logger logger = LogManager.getLogger(NioTaggerFrontEnd.class);
+  private static final int INITIAL_BUFFER_SIZE = 8192;
+  private static final byte[] END_OF_DOCUMENT = TaggerProtocol.END_OF_DOCUMENT
+      .getBytes(TaggerProtocol.UTF8);
+  private static final byte[] END_OF_NAF = "</NAF>".getBytes(TaggerProtocol.UTF8);
+
+  private final StatisticalTaggerServer server;
+  private final int port;
+  private final int workers;
+  /**
+   * Requests waiting for an annotation worker.
+   */
+  private final BlockingQueue<Request> requests;
+  /**
+   * Responses waiting to be written by the selector thread.
+   */
+  private final ConcurrentLinkedQueue<Response> responses = new ConcurrentLinkedQueue<Response>();
+  /**
+   * Connections with a complete request which did not fit in the queue.
+   */
+  private final Set<Connection> blocked = new LinkedHashSet<Connection>();
+  private Selector selector;
+
+  /**
+   * Construct the front-end.
+   *
+   * @param aServer
+   *          the server annotating the requests
+   * @param aPort
+   *          the port
+   * @param aWorkers
+   *          the number of annotation workers
+   * @param queueSize
+   *          the capacity of the hand-off queue
+   */
+  NioTaggerFrontEnd(final StatisticalTaggerServer aServer, final int aPort,
+      final int aWorkers, final int queueSize) {
+    this.server = aServer;
+    this.port = aPort;
+    this.workers = aWorkers;
+    this.requests = new ArrayBlockingQueue<Request>(queueSize);
+  }
+
+  /**
+   * Listen to the port and serve the clients until the thread is interrupted.
+   *
+   * @throws IOException
+   *           if the port can not be bound
+   */
+  final void serve() throws IOException {
+    final ExecutorService workerPool = Executors.newFixedThreadPool(this.workers);
+    for (int i = 0; i < this.workers; i++) {
+      workerPool.execute(new Worker());
+    }
+    try (Selector aSelector = Selector.open();
+        ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+      this.selector = aSelector;
+      serverChannel.bind(new InetSocketAddress(this.port));
+      serverChannel.configureBlocking(false);
+      serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+      logger.debug("-> Listening to port " + this.port + " with " + this.workers
+          + " workers (non-blocking)");
+      while (!Thread.currentThread().isInterrupted()) {
+        this.selector.select();
+        completeResponses();
+        dispatchBlocked();
+        final Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          final SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept(serverChannel);
+            continue;
+          }
+          final Connection connection = (Connection) key.attachment();
+          try {
+            if (key.isReadable()) {
+              read(connection);
+            }
+            if (key.isValid() && key.isWritable()) {
+              write(connection);
+            }
+          } catch (final IOException e) {
+            logger.error("-> IOException while serving client: " + e.getMessage());
+            close(connection);
+          }
+        }
+      }
+    } finally {
+      workerPool.shutdownNow();
+    }
+  }
+
+  private void accept(final ServerSocketChannel serverChannel) throws IOException {
+    final SocketChannel channel = serverChannel.accept();
+    if (channel == null) {
+      return;
+    }
+    channel.configureBlocking(false);
+    channel.socket().setTcpNoDelay(true);
+    final Connection connection = new Connection(channel);
+    connection.key = channel.register(this.selector, SelectionKey.OP_READ,
+        connection);
+  }
+
+  /**
+   * Queue the responses annotated by the workers for writing.
+   */
+  private void completeResponses() {
+    Response response;
+    while ((response = this.responses.poll()) != null) {
+      final Connection connection = response.connection;
+      if (!connection.key.isValid()) {
+        continue;
+      }
+      connection.busy = false;
+      connection.writes.add(response.data);
+      try {
+        parse(connection);
+      } catch (final IOException e) {
+        logger.error("-> IOException while serving client: " + e.getMessage());
+        close(connection);
+        continue;
+      }
+      updateInterest(connection);
+    }
+  }
+
+  /**
+   * Retry the requests that did not fit in the hand-off queue.
+   */
+  private void dispatchBlocked() {
+    final Iterator<Connection> iterator = this.blocked.iterator();
+    while (iterator.hasNext()) {
+      final Connection connection = iterator.next();
+      if (!connection.key.isValid()) {
+        iterator.remove();
+      } else if (this.requests.offer(connection.pending)) {
+        iterator.remove();
+        connection.pending = null;
+        connection.busy = true;
+        updateInterest(connection);
+      } else {
+        break;
+      }
+    }
+  }
+
+  private void read(final Connection connection) throws IOException {
+    connection.ensureCapacity(INITIAL_BUFFER_SIZE);
+    final int read = connection.channel.read(connection.input);
+    if (read == -1) {
+      connection.inputClosed = true;
+      if (connection.mode == Mode.LEGACY && !connection.closeAfterWrite
+          && connection.input.position() > 0) {
+        // the end of the stream also ends a legacy document
+        dispatch(connection, connection.takeInput(connection.input.position(), 0));
+      }
+    } else {
+      parse(connection);
+    }
+    if (connection.key.isValid()) {
+      updateInterest(connection);
+    }
+  }
+
+  /**
+   * Dispatch the next complete request buffered in the connection, if any.
+   */
+  private void parse(final Connection connection) throws IOException {
+    if (connection.busy || connection.pending != null || connection.closeAfterWrite) {
+      return;
+    }
+    final ByteBuffer input = connection.input;
+    if (connection.mode == Mode.UNKNOWN) {
+      if (input.position() == 0) {
+        return;
+      }
+      if (input.get(0) != TaggerProtocol.PREAMBLE[0]) {
+        connection.mode = Mode.LEGACY;
+      } else if (input.position() < TaggerProtocol.PREAMBLE.length) {
+        return;
+      } else {
+        final byte[] header = new byte[TaggerProtocol.PREAMBLE.length];
+        for (int i = 0; i < header.length; i++) {
+          header[i] = input.get(i);
+        }
+        if (!TaggerProtocol.isPreamble(header, header.length)) {
+          throw new IOException("Unknown protocol");
+        }
+        connection.takeInput(header.length, 0);
+        connection.mode = Mode.FRAMED;
+      }
+    }
+    if (connection.mode == Mode.FRAMED) {
+      if (input.position() < 4) {
+        return;
+      }
+      final int length = input.getInt(0);
+      if (length < 0 || length > TaggerProtocol.MAX_REQUEST_SIZE) {
+        throw new IOException("Invalid frame length " + length);
+      }
+      if (input.position() < 4 + length) {
+        connection.ensureCapacity(4 + length - input.position());
+        return;
+      }
+      connection.takeInput(4, 0);
+      dispatch(connection, connection.takeInput(length, 0));
+    } else {
+      parseLegacy(connection);
+    }
+  }
+
+  /**
+   * Look for the line ending a legacy document.
+   */
+  private void parseLegacy(final Connection connection) throws IOException {
+    final ByteBuffer input = connection.input;
+    int lineStart = connection.scanned;
+    for (int i = connection.scanned; i < input.position(); i++) {
+      if (input.get(i) != '\n') {
+        continue;
+      }
+      int lineEnd = i;
+      if (lineEnd > lineStart && input.get(lineEnd - 1) == '\r') {
+        lineEnd--;
+      }
+      if (lineEquals(input, lineStart, lineEnd, END_OF_DOCUMENT)) {
+        final byte[] document = connection.takeInput(lineStart, i + 1 - lineStart);
+        dispatch(connection, document);
+        return;
+      }
+      if (lineEquals(input, lineStart, lineEnd, END_OF_NAF)) {
+        dispatch(connection, connection.takeInput(i + 1, 0));
+        return;
+      }
+      lineStart = i + 1;
+    }
+    connection.scanned = lineStart;
+    if (input.position() > TaggerProtocol.MAX_REQUEST_SIZE) {
+      throw new IOException("Document too large");
+    }
+  }
+
+  private static boolean lineEquals(final ByteBuffer input, final int start,
+      final int end, final byte[] expected) {
+    if (end - start != expected.length) {
+      return false;
+    }
+    for (int i = 0; i < expected.length; i++) {
+      if (input.get(start + i) != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void dispatch(final Connection connection, final byte[] document) {
+    final Request request = new Request(connection, new String(document,
+        TaggerProtocol.UTF8));
+    if (connection.mode == Mode.LEGACY) {
+      connection.closeAfterWrite = true;
+    }
+    if (this.requests.offer(request)) {
+      connection.busy = true;
+    } else {
+      connection.pending = request;
+      this.blocked.add(connection);
+    }
+  }
+
+  private void write(final Connection connection) throws IOException {
+    while (!connection.writes.isEmpty()) {
+      final ByteBuffer output = connection.writes.peek();
+      connection.channel.write(output);
+      if (output.hasRemaining()) {
+        return;
+      }
+      connection.writes.poll();
+    }
+    if (connection.closeAfterWrite
+        || (connection.inputClosed && !connection.busy && connection.pending == null)) {
+      close(connection);
+    } else {
+      updateInterest(connection);
+    }
+  }
+
+  /**
+   * Read only while the connection has no request in progress, and write
+   * while there are responses left.
+   */
+  private void updateInterest(final Connection connection) {
+    int ops = 0;
+    if (!connection.inputClosed && !connection.busy && connection.pending == null
+        && !connection.closeAfterWrite) {
+      ops |= SelectionKey.OP_READ;
+    }
+    if (!connection.writes.isEmpty()) {
+      ops |= SelectionKey.OP_WRITE;
+    }
+    if (ops == 0 && connection.inputClosed && !connection.busy
+        && connection.pending == null) {
+      close(connection);
+    } else {
+      connection.key.interestOps(ops);
+    }
+  }
+
+  private void close(final Connection connection) {
+    this.blocked.remove(connection);
+    connection.key.cancel();
+    try {
+      connection.channel.close();
+    } catch (final IOException e) {
+      logger.error("-> IOException while closing client: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Annotates the requests of the hand-off queue.
+   */
+  private class Worker implements Runnable {
+    public void run() {
+      try {
+        while (true) {
+          final Request request = requests.take();
+          String result;
+          try {
+            result = server.annotateOrError(request.text);
+          } catch (final RuntimeException e) {
+            logger.error("-> Error while annotating: " + e.getMessage());
+            result = "\n -> ERROR: Input data not correct!!\n";
+          }
+          final byte[] annotation = result.getBytes(TaggerProtocol.UTF8);
+          ByteBuffer data;
+          if (request.connection.mode == Mode.FRAMED) {
+            data = ByteBuffer.allocate(4 + annotation.length);
+            data.putInt(annotation.length).put(annotation).flip();
+          } else {
+            data = ByteBuffer.wrap(annotation);
+          }
+          responses.add(new Response(request.connection, data));
+          selector.wakeup();
+        }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private enum Mode {
+    UNKNOWN, FRAMED, LEGACY
+  }
+
+  /**
+   * The state of a client connection, only accessed by the selector thread.
+   */
+  private static class Connection {
+    private final SocketChannel channel;
+    private SelectionKey key;
+    private Mode mode = Mode.UNKNOWN;
+    private ByteBuffer input = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    /**
+     * Position up to which a legacy document has been scanned for its end.
+     */
+    private int scanned = 0;
+    private final ArrayDeque<ByteBuffer> writes = new ArrayDeque<ByteBuffer>();
+    private Request pending;
+    private boolean busy = false;
+    private boolean inputClosed = false;
+    private boolean closeAfterWrite = false;
+
+    private Connection(final SocketChannel aChannel) {
+      this.channel = aChannel;
+    }
+
+    /**
+     * Make room for at least the given number of bytes after the position.
+     */
+    private void ensureCapacity(final int bytes) {
+      if (this.input.remaining() >= bytes) {
+        return;
+      }
+      final int capacity = Math.max(this.input.capacity() * 2,
+          this.input.position() + bytes);
+      final ByteBuffer grown = ByteBuffer.allocate(capacity);
+      this.input.flip();
+      grown.put(this.input);
+      this.input = grown;
+    }
+
+    /**
+     * Remove bytes from the beginning of the input.
+     *
+     * @param length
+     *          the number of bytes returned
+     * @param skip
+     *          the number of bytes discarded after the returned ones
+     * @return the removed bytes
+     */
+    private byte[] takeInput(final int length, final int skip) {
+      final byte[] taken = new byte[length];
+      this.input.flip();
+      this.input.get(taken);
+      this.input.position(this.input.position() + skip);
+      this.input.compact();
+      this.scanned = 0;
+      return taken;
+    }
+  }
+
+  private static class Request {
+    private final Connection connection;
+    private final String text;
+
+    private Request(final Connection aConnection, final String aText) {
+      this.connection = aConnection;
+      this.text = aText;
+    }
+  }
+
+  private static class Response {
+    private final Connection connection;
+    private final ByteBuffer data;
+
+    private Response(final Connection aConnection, final ByteBuffer aData) {
+      this.connection = aConnection;
+      this.data = aData;
+    }
+  }
+}
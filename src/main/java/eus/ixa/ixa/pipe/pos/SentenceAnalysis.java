@@ -0,0 +1,222 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+/**
+ * Morphological analysis of a sentence stored column-wise: the forms, tags,
+ * lemmas, tag ids and KAF pos ids of the tokens are kept in parallel arrays
+ * instead of one {@link Morpheme} object per token. An analysis can be reset
+ * and reused for the next sentence, its buffers only growing when a longer
+ * sentence arrives. As in {@link Morpheme}, tags are stored uppercased.
+ *
+ * The reuse is limited to the columns: the decoders still return a new array
+ * of tags and of lemmas for every sentence, which are copied in. When the
+ * sentences are annotated in parallel, every sentence gets its own analysis,
+ * as all of them are kept until the terms of the document are created.
+ */
+public class SentenceAnalysis {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  /**
+   * The forms of the sentence, as given.
+   */
+  private String[] forms;
+  private String[] tags;
+  private String[] lemmas;
+  private String[] posIds;
+  private int[] tagIds;
+  private int size;
+
+  /**
+   * Create an empty analysis.
+   */
+  public SentenceAnalysis() {
+    this.forms = new String[0];
+    this.tags = new String[INITIAL_CAPACITY];
+    this.lemmas = new String[INITIAL_CAPACITY];
+    this.posIds = new String[INITIAL_CAPACITY];
+    this.tagIds = new int[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Start the analysis of a new sentence, clearing the previous one.
+   *
+   * @param aForms
+   *          the tokens of the sentence, which are not copied
+   */
+  public final void reset(final String[] aForms) {
+    this.forms = aForms;
+    this.size = aForms.length;
+    if (this.tags.length < this.size) {
+      final int capacity = Math.max(this.size, this.tags.length * 2);
+      this.tags = new String[capacity];
+      this.lemmas = new String[capacity];
+      this.posIds = new String[capacity];
+      this.tagIds = new int[capacity];
+    } else {
+      for (int i = this.size; i < this.tags.length && this.tags[i] != null; i++) {
+        // release the strings of longer previous sentences
+        this.tags[i] = null;
+        this.lemmas[i] = null;
+        this.posIds[i] = null;
+      }
+    }
+  }
+
+  /**
+   * Get the number of tokens.
+   *
+   * @return the number of tokens
+   */
+  public final int size() {
+    return this.size;
+  }
+
+  /**
+   * Get the tokens of the sentence.
+   *
+   * @return the tokens, an array of exactly {@link #size()} elements
+   */
+  public final String[] getForms() {
+    return this.forms;
+  }
+
+  /**
+   * Get the form of a token.
+   *
+   * @param i
+   *          the token index
+   * @return the form
+   */
+  public final String getForm(final int i) {
+    return this.forms[i];
+  }
+
+  /**
+   * Get the tag of a token.
+   *
+   * @param i
+   *          the token index
+   * @return the uppercased tag
+   */
+  public final String getTag(final int i) {
+    return this.tags[i];
+  }
+
+  /**
+   * Set the tag of a token.
+   *
+   * @param i
+   *          the token index
+   * @param tag
+   *          the tag, which is uppercased
+   */
+  public final void setTag(final int i, final String tag) {
+    this.tags[i] = tag.toUpperCase();
+  }
+
+  /**
+   * Set the tags of every token.
+   *
+   * @param aTags
+   *          the tags, which are uppercased
+   */
+  public final void setTags(final String[] aTags) {
+    for (int i = 0; i < this.size; i++) {
+      this.tags[i] = aTags[i].toUpperCase();
+    }
+  }
+
+  /**
+   * Get the lemma of a token.
+   *
+   * @param i
+   *          the token index
+   * @return the lemma
+   */
+  public final String getLemma(final int i) {
+    return this.lemmas[i];
+  }
+
+  /**
+   * Set the lemma of a token.
+   *
+   * @param i
+   *          the token index
+   * @param lemma
+   *          the lemma
+   */
+  public final void setLemma(final int i, final String lemma) {
+    this.lemmas[i] = lemma;
+  }
+
+  /**
+   * Set the lemmas of every token.
+   *
+   * @param aLemmas
+   *          the lemmas
+   */
+  public final void setLemmas(final String[] aLemmas) {
+    System.arraycopy(aLemmas, 0, this.lemmas, 0, this.size);
+  }
+
+  /**
+   * Get the tag id of a token.
+   *
+   * @param i
+   *          the token index
+   * @return the id of the tag in the {@link TagVocabulary} of the model, or
+   *         -1 if the tag is not in the vocabulary
+   */
+  public final int getTagId(final int i) {
+    return this.tagIds[i];
+  }
+
+  /**
+   * Set the tag id of a token.
+   *
+   * @param i
+   *          the token index
+   * @param tagId
+   *          the tag id, -1 if the tag is not in the vocabulary
+   */
+  public final void setTagId(final int i, final int tagId) {
+    this.tagIds[i] = tagId;
+  }
+
+  /**
+   * Get the KAF pos id of a token.
+   *
+   * @param i
+   *          the token index
+   * @return the KAF pos id
+   */
+  public final String getPosId(final int i) {
+    return this.posIds[i];
+  }
+
+  /**
+   * Set the KAF pos id of a token.
+   *
+   * @param i
+   *          the token index
+   * @param posId
+   *          the KAF pos id
+   */
+  public final void setPosId(final int i, final String posId) {
+    this.posIds[i] = posId;
+  }
+}
@@ -20,8 +20,10 @@ import opennlp.tools.postag.POSTaggerME;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
@@ -41,10 +43,21 @@ public class StatisticalTagger {
    */
   private final POSTaggerME posTagger;
   /**
-   * The models to use for every language. The keys of the hashmap are the language
-   * codes, the values the models.
+   * The model of the morpho tagger.
+   */
+  private final POSModel posModel;
+  /**
+   * The loaded models, shared by every instance.
    */
-  private final static ConcurrentHashMap<String, POSModel> posModels = new ConcurrentHashMap<String, POSModel>();
+  private final static ModelRegistry<POSModel> posModels = new ModelRegistry<POSModel>("pos");
+  /**
+   * The tag vocabularies of the registered models, by model key and language.
+   */
+  private final static ConcurrentHashMap<String, TagVocabulary> tagVocabularies = new ConcurrentHashMap<String, TagVocabulary>();
+  /**
+   * The tags of the model.
+   */
+  private final TagVocabulary tagVocabulary;
   /**
    * The morpho factory.
    */
@@ -72,7 +85,16 @@ public class StatisticalTagger {
     final String lang = props.getProperty("language");
     final String model = props.getProperty("model");
     final Boolean useModelCache = Boolean.valueOf(props.getProperty("useModelCache", "true"));
-    final POSModel posModel = loadModel(lang, model, useModelCache);
+    final POSModel posModel;
+    try {
+      final File modelFile = new File(model);
+      final String modelKey = ModelRegistry.getFileKey(modelFile);
+      posModel = loadModel(modelKey, modelFile.length(), new FileModelLoader(modelFile), useModelCache);
+      this.tagVocabulary = loadTagVocabulary(modelKey, lang, posModel, useModelCache);
+    } catch (final IOException e) {
+      throw new IllegalStateException("Could not load pos model " + model + ": " + e.getMessage(), e);
+    }
+    this.posModel = posModel;
     this.posTagger = new POSTaggerME(posModel);
     this.morphoFactory = aMorphoFactory;
   }
@@ -90,11 +112,49 @@ public class StatisticalTagger {
   public StatisticalTagger(final InputStream modelAsStream, final Properties props, final MorphoFactory aMorphoFactory) {
     final String lang = props.getProperty("language");
     final Boolean useModelCache = Boolean.valueOf(props.getProperty("useModelCache", "true"));
-    final POSModel posModel = loadModelAsStream(lang, modelAsStream, useModelCache);
+    final POSModel posModel;
+    try {
+      final byte[] model;
+      try {
+        model = ByteStreams.toByteArray(modelAsStream);
+      } finally {
+        modelAsStream.close();
+      }
+      final String modelKey = ModelRegistry.getContentKey(model);
+      posModel = loadModel(modelKey, model.length, new ModelRegistry.ModelLoader<POSModel>() {
+        public POSModel load() throws IOException {
+          return new POSModel(new ByteArrayInputStream(model));
+        }
+      }, useModelCache);
+      this.tagVocabulary = loadTagVocabulary(modelKey, lang, posModel, useModelCache);
+    } catch (final IOException e) {
+      throw new IllegalStateException("Could not load pos model: " + e.getMessage(), e);
+    }
+    this.posModel = posModel;
     this.posTagger = new POSTaggerME(posModel);
     this.morphoFactory = aMorphoFactory;
   }
 
+  /**
+   * Construct a morphotagger over an already loaded model, with its own
+   * decoder. The model file is not read again, so the tagger uses the same
+   * model as the tagger the model comes from even if the file has changed
+   * since.
+   *
+   * @param aPosModel
+   *          the model, see {@link #getModel()}
+   * @param aTagVocabulary
+   *          the tags of the model, see {@link #getTagVocabulary()}
+   * @param aMorphoFactory
+   *          the morpho factory
+   */
+  public StatisticalTagger(final POSModel aPosModel, final TagVocabulary aTagVocabulary, final MorphoFactory aMorphoFactory) {
+    this.posModel = aPosModel;
+    this.tagVocabulary = aTagVocabulary;
+    this.posTagger = new POSTaggerME(aPosModel);
+    this.morphoFactory = aMorphoFactory;
+  }
+
   /**
    * Get morphological analysis from a tokenized sentence.
    * 
@@ -123,6 +183,35 @@ public class StatisticalTagger {
     return posTags;
   }
   
+  /**
+   * Produce postags from a tokenized sentence, as an array.
+   * 
+   * @param tokens
+   *          the sentence
+   * @return the postags
+   */
+  public final String[] getPosTags(final String[] tokens) {
+    return this.posTagger.tag(tokens);
+  }
+  
+  /**
+   * Get the tags of the model, interned into ids.
+   * 
+   * @return the tag vocabulary
+   */
+  public final TagVocabulary getTagVocabulary() {
+    return this.tagVocabulary;
+  }
+
+  /**
+   * Get the model of the tagger.
+   * 
+   * @return the model
+   */
+  public final POSModel getModel() {
+    return this.posModel;
+  }
+
   /**
    * Produces a multidimensional array containing all the tagging
    * possible for a given sentence.
@@ -156,62 +245,108 @@ public class StatisticalTagger {
   }
 
   /**
-   * Loads statically the probabilistic model. Every instance of this finder
-   * will share the same model.
+   * Get the registry of the loaded pos models, with their statistics.
    * 
-   * @param lang
-   *          the language
-   * @param modelName
-   *          the model to be loaded
-   * @param useModelCache
-   *          whether to cache the model in memory
-   * @return the model as a {@link POSModel} object
+   * @return the model registry
    */
-  private POSModel loadModel(final String lang, final String modelName, final Boolean useModelCache) {
-    FileInputStream fileInputStream;
-    try {
-      fileInputStream = new FileInputStream(modelName);
-    } catch (FileNotFoundException e) {
-      throw new RuntimeException(e);
-    }
+  public static ModelRegistry<POSModel> getModelRegistry() {
+    return posModels;
+  }
 
-    return loadModelAsStream(lang,fileInputStream, useModelCache);
+  /**
+   * Remove the previous versions of a model file from the registry, with
+   * their tag vocabularies, once no new tagger is to be built over them.
+   * Taggers already built keep their model.
+   * 
+   * @param modelFile
+   *          the model file
+   * @return whether a previous version was registered
+   * @throws IOException
+   *           if the path of the model can not be resolved
+   */
+  public static boolean evictPreviousModels(final File modelFile) throws IOException {
+    final List<String> modelKeys = posModels.evictOtherVersions(modelFile);
+    for (final String modelKey : modelKeys) {
+      final Iterator<String> vocabularyKeys = tagVocabularies.keySet().iterator();
+      while (vocabularyKeys.hasNext()) {
+        if (vocabularyKeys.next().startsWith(modelKey + "#")) {
+          vocabularyKeys.remove();
+        }
+      }
+    }
+    return !modelKeys.isEmpty();
   }
 
   /**
-   * Loads statically the probabilistic model. Every instance of this finder
-   * will share the same model.
-   * The second argument is an already set InputStream. This allow a better classpath management.
-   *
-   * @param lang
-   *          the language
-   * @param modelAsStream
-   *          the model to be loaded
+   * Loads statically the probabilistic model. Every instance of this tagger
+   * using the same model will share it.
+   * 
+   * @param modelKey
+   *          the key of the model in the registry
+   * @param size
+   *          the size of the model in bytes
+   * @param loader
+   *          the loader of the model
    * @param useModelCache
-   *          whether to cache the model in memory
+   *          whether to share the model via the registry
    * @return the model as a {@link POSModel} object
+   * @throws IOException
+   *           if the model can not be loaded
    */
-  private POSModel loadModelAsStream(final String lang, InputStream modelAsStream, final Boolean useModelCache) {
+  private POSModel loadModel(final String modelKey, final long size, final ModelRegistry.ModelLoader<POSModel> loader, final Boolean useModelCache) throws IOException {
     final long lStartTime = new Date().getTime();
-    POSModel model = null;
-    try {
-      if (useModelCache) {
-        synchronized (posModels) {
-          model = posModels.get(lang);
-          if (model == null) {
-            model = new POSModel(modelAsStream);
-            posModels.put(lang, model);
-          } 
-        }
-      } else {
-        model = new POSModel(modelAsStream);
-      }
-    } catch (final IOException e) {
-      e.printStackTrace();
-    }
+    final POSModel model = useModelCache ? posModels.get(modelKey, size, loader) : loader.load();
     final long lEndTime = new Date().getTime();
     final long difference = lEndTime - lStartTime;
     logger.debug("ixa-pipe-pos model loaded in: " + difference  + " miliseconds ... [DONE]");
     return model;
   }
+
+  /**
+   * Intern the tags of a model. The vocabulary of a registered model is
+   * shared by every instance.
+   * 
+   * @param modelKey
+   *          the key of the model in the registry
+   * @param lang
+   *          the language
+   * @param posModel
+   *          the model
+   * @param useModelCache
+   *          whether the model is registered
+   * @return the tag vocabulary
+   */
+  private TagVocabulary loadTagVocabulary(final String modelKey, final String lang, final POSModel posModel, final Boolean useModelCache) {
+    if (!useModelCache) {
+      return TagVocabulary.fromModel(posModel, lang);
+    }
+    final String vocabularyKey = modelKey + "#" + lang;
+    TagVocabulary vocabulary = tagVocabularies.get(vocabularyKey);
+    if (vocabulary == null) {
+      final TagVocabulary newVocabulary = TagVocabulary.fromModel(posModel, lang);
+      vocabulary = tagVocabularies.putIfAbsent(vocabularyKey, newVocabulary);
+      if (vocabulary == null) {
+        vocabulary = newVocabulary;
+      }
+    }
+    return vocabulary;
+  }
+
+  /**
+   * Loads a model file, in the zip or in the {@link CompactModel} format.
+   */
+  private static class FileModelLoader implements ModelRegistry.ModelLoader<POSModel> {
+    private final File modelFile;
+
+    FileModelLoader(final File aModelFile) {
+      this.modelFile = aModelFile;
+    }
+
+    public POSModel load() throws IOException {
+      if (CompactModel.isCompact(this.modelFile.getPath())) {
+        return CompactModel.loadPOSModel(this.modelFile);
+      }
+      return new POSModel(this.modelFile);
+    }
+  }
 }
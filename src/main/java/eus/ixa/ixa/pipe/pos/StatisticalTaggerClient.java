@@ -0,0 +1,85 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Client of the {@link StatisticalTaggerServer}. It keeps one connection open
+ * and sends every document as a frame of the {@link TaggerProtocol}, so the
+ * connection setup is paid only once. Not thread-safe: documents are
+ * annotated one after the other.
+ */
+public class StatisticalTaggerClient implements Closeable {
+
+  private final Socket socket;
+  private final DataInputStream inFromServer;
+  private final DataOutputStream outToServer;
+
+  /**
+   * Connect to a tagger server.
+   *
+   * @param host
+   *          the hostname or IP of the server
+   * @param port
+   *          the port of the server
+   * @throws IOException
+   *           if the connection can not be established
+   */
+  public StatisticalTaggerClient(final String host, final int port)
+      throws IOException {
+    this.socket = new Socket(host, port);
+    this.socket.setTcpNoDelay(true);
+    this.inFromServer = new DataInputStream(new BufferedInputStream(
+        this.socket.getInputStream()));
+    this.outToServer = new DataOutputStream(new BufferedOutputStream(
+        this.socket.getOutputStream()));
+    this.outToServer.write(TaggerProtocol.PREAMBLE);
+  }
+
+  /**
+   * Send a NAF document to the server and wait for its annotation.
+   *
+   * @param document
+   *          the NAF document
+   * @return the annotated document or the error message of the server
+   * @throws IOException
+   *           if the connection fails
+   */
+  public final String annotate(final String document) throws IOException {
+    TaggerProtocol.writeFrame(this.outToServer, document);
+    final String response = TaggerProtocol.readFrame(this.inFromServer);
+    if (response == null) {
+      throw new IOException("Connection closed by the server");
+    }
+    return response;
+  }
+
+  /**
+   * Close the connection.
+   *
+   * @throws IOException
+   *           if io error
+   */
+  public final void close() throws IOException {
+    this.socket.close();
+  }
+}
@@ -16,7 +16,10 @@
 
 package eus.ixa.ixa.pipe.pos;
 
+import com.google.common.cache.CacheStats;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import eus.ixa.ixa.pipe.lemma.StatisticalLemmatizer;
 import ixa.kaflib.KAFDocument;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -25,10 +28,60 @@ import org.jdom2.JDOMException;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * TCP server for ixa-pipe-pos. Every client connection is served by its own
+ * thread, whereas the number of documents annotated concurrently is bounded by
+ * the number of workers. Each worker owns an {@link Annotate} instance, and
+ * therefore its own decoders, built over the shared cached models.
+ * Connections may use the framed, keep-alive {@link TaggerProtocol} or the
+ * legacy one document per connection protocol. With the {@code nio}
+ * property, the connections are served by the non-blocking
+ * {@link NioTaggerFrontEnd} instead of one thread per connection.
+ * <p>
+ * The models can be reloaded without stopping the server, when the model
+ * files change ({@code reloadInterval} property) or when a client sends the
+ * {@link TaggerProtocol#RELOAD_MODELS} document ({@code adminReload}
+ * property). With that property, the {@link TaggerProtocol#MODEL_STATS}
+ * document gets the file size and load time of the loaded models, which are
+ * also logged at startup, and the statistics of the lemma cache. A new set of
+ * annotators is built and warmed up in the background and then swapped in for
+ * the new documents, while the documents being annotated finish with the
+ * previous annotators, which are released afterwards. A compact model is
+ * memory mapped, so it must be replaced by renaming the new file over it,
+ * never by writing into it: the watcher skips, with a warning, compact model
+ * files modified in place.
+ */
 public class StatisticalTaggerServer {
   private static final Logger logger = LogManager.getLogger(StatisticalTaggerServer.class);
+  /**
+   * Default capacity of the queue between the non-blocking front-end and the
+   * workers.
+   */
+  private static final int DEFAULT_QUEUE_SIZE = 64;
+  /**
+   * Sentence tagged by the new annotators before they are swapped in.
+   */
+  private static final String[] WARM_UP_SENTENCE = { "This", "is", "a",
+      "warm", "up", "sentence", "." };
+  /**
+   * Milliseconds between checks for the end of the documents still being
+   * annotated by a replaced set of annotators.
+   */
+  private static final long RETIRE_POLL_MILLIS = 100;
   /**
    * Get dynamically the version of ixa-pipe-pos by looking at the MANIFEST
    * file.
@@ -51,7 +104,30 @@ public class StatisticalTaggerServer {
    * Whether to just print all pos tags and lemmas, before disambiguation.
    */
   private final Boolean allMorphology;
-  
+  /**
+   * The properties, required to build the annotators again on reload.
+   */
+  private final Properties properties;
+  /**
+   * The number of workers.
+   */
+  private final int workers;
+  /**
+   * Whether clients may ask for the models to be reloaded.
+   */
+  private final Boolean adminReload;
+  /**
+   * The annotators serving new documents.
+   */
+  private final AtomicReference<AnnotatorPool> annotators = new AtomicReference<AnnotatorPool>();
+  /**
+   * The thread checking the model files and reloading the models, so that
+   * reloads never overlap.
+   */
+  private final ScheduledExecutorService reloader = Executors
+      .newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setNameFormat("model-reloader").setDaemon(true).build());
+
   /**
    * Construct a MorphoTagger server.
    * 
@@ -60,62 +136,296 @@ public class StatisticalTaggerServer {
    */
   public StatisticalTaggerServer(Properties properties) {
 
+    this.properties = properties;
     Integer port = Integer.parseInt(properties.getProperty("port"));
     model = properties.getProperty("model");
     outputFormat = properties.getProperty("outputFormat");
     allMorphology = Boolean.valueOf(properties.getProperty("allMorphology"));
+    workers = Integer.parseInt(properties.getProperty("workers",
+        Integer.toString(Runtime.getRuntime().availableProcessors())));
+    adminReload = Boolean.valueOf(properties.getProperty("adminReload"));
+    long reloadInterval = Long.parseLong(properties.getProperty("reloadInterval", "0"));
     
-    String kafToString;
     ServerSocket socketServer = null;
-    Socket activeSocket;
-    BufferedReader inFromClient = null;
-    BufferedWriter outToClient = null;
+    ExecutorService connectionPool = null;
 
     try {
-      Annotate annotator = new Annotate(properties);
+      annotators.set(loadAnnotators());
+      logger.info("-> Models loaded:\n" + getModelStats());
+      if (reloadInterval > 0) {
+        reloader.scheduleWithFixedDelay(new ModelWatcher(), reloadInterval,
+            reloadInterval, TimeUnit.SECONDS);
+        logger.debug("-> Checking the model files every " + reloadInterval + " seconds");
+      }
+      if (Boolean.valueOf(properties.getProperty("nio"))) {
+        Integer queueSize = Integer.parseInt(properties.getProperty("queueSize",
+            Integer.toString(DEFAULT_QUEUE_SIZE)));
+        new NioTaggerFrontEnd(this, port, workers, queueSize).serve();
+        return;
+      }
+      connectionPool = Executors.newCachedThreadPool();
       logger.debug("-> Trying to listen port... " + port);
       socketServer = new ServerSocket(port);
-      logger.debug("-> Connected and listening to port " + port);
+      logger.debug("-> Connected and listening to port " + port + " with " + workers + " workers");
       while (true) {
-        try {
-          activeSocket = socketServer.accept();
-          inFromClient = new BufferedReader(new InputStreamReader(activeSocket.getInputStream(), "UTF-8"));
-          outToClient = new BufferedWriter(new OutputStreamWriter(activeSocket.getOutputStream(), "UTF-8"));
-          //get data from client
-          String stringFromClient = getClientData(inFromClient);
-          // annotate
-          kafToString = getAnnotations(annotator, stringFromClient);
-        } catch (JDOMException e) {
-          kafToString = "\n-> ERROR: Badly formatted NAF document!!\n";
-          sendDataToClient(outToClient, kafToString);
-          continue;
-        } catch (UnsupportedEncodingException e) {
-          kafToString = "\n-> ERROR: UTF-8 not valid!!\n";
-          sendDataToClient(outToClient, kafToString);
-          continue;
-        } catch (IOException e) {
-          kafToString = "\n -> ERROR: Input data not correct!!\n";
-          sendDataToClient(outToClient, kafToString);
-          continue;
-        }
-        //send data to server after all exceptions and close the outToClient
-        sendDataToClient(outToClient, kafToString);
-        //close the resources
-        inFromClient.close();
-        activeSocket.close();
+        Socket activeSocket = socketServer.accept();
+        connectionPool.execute(new ClientHandler(activeSocket));
       } //end of processing block
     } catch (IOException e) {
       e.printStackTrace();
       logger.error("-> IOException due to failing to create the TCP socket or to wrongly provided model path.");
     } finally {
       logger.debug("closing tcp socket...");
+      if (connectionPool != null) {
+        connectionPool.shutdown();
+      }
+      if (annotators.get() != null) {
+        annotators.get().close();
+      }
       try {
-        socketServer.close();
+        if (socketServer != null) {
+          socketServer.close();
+        }
       } catch (IOException e) {
         e.printStackTrace();
       }
     }
   }
+
+  /**
+   * Create one annotator per worker. The probabilistic models are cached, so
+   * every annotator builds its own decoders over the same models.
+   * @return the annotators
+   * @throws IOException if the models or dictionaries can not be loaded
+   */
+  private AnnotatorPool loadAnnotators() throws IOException {
+    if (workers < 1) {
+      throw new IllegalArgumentException("The number of workers must be at least 1!");
+    }
+    AnnotatorPool pool = new AnnotatorPool(workers);
+    try {
+      for (int i = 0; i < workers; i++) {
+        pool.add(new Annotate(properties));
+      }
+    } catch (IOException | RuntimeException e) {
+      pool.close();
+      throw e;
+    }
+    return pool;
+  }
+
+  /**
+   * Reload the models from their files. The new annotators are built and
+   * warmed up while the current ones keep serving documents; then the new
+   * documents go to the new annotators, and this method waits for the
+   * documents being annotated by the previous annotators before releasing
+   * them. If the new models can not be loaded, the current annotators and
+   * the registered models are kept.
+   * @return whether the models were reloaded
+   */
+  public synchronized boolean reloadModels() {
+    long lStartTime = System.currentTimeMillis();
+    AnnotatorPool newPool = null;
+    try {
+      // the models are registered by file version, so a changed file is
+      // loaded under a new key, next to the models in use
+      newPool = loadAnnotators();
+      newPool.warmUp();
+    } catch (IOException | RuntimeException e) {
+      if (newPool != null) {
+        newPool.close();
+      }
+      logger.error("-> Models not reloaded, the previous models are still in use: " + e.getMessage());
+      return false;
+    }
+    AnnotatorPool oldPool = annotators.getAndSet(newPool);
+    logger.info("-> Models reloaded in " + (System.currentTimeMillis() - lStartTime) + " miliseconds");
+    try {
+      StatisticalTagger.evictPreviousModels(new File(model));
+      StatisticalLemmatizer.evictPreviousModels(new File(properties.getProperty("lemmatizerModel")));
+    } catch (IOException e) {
+      logger.warn("-> Previous models not unregistered: " + e.getMessage());
+    }
+    try {
+      oldPool.retire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return true;
+  }
+
+  /**
+   * Serves one client connection. Framed connections, opened with the
+   * {@link TaggerProtocol#PREAMBLE}, are kept alive and every frame is
+   * annotated with the first idle worker; legacy connections send one
+   * document, get its annotation and are closed.
+   */
+  private class ClientHandler implements Runnable {
+
+    private final Socket activeSocket;
+
+    public ClientHandler(Socket aSocket) {
+      this.activeSocket = aSocket;
+    }
+
+    public void run() {
+      try (Socket socket = activeSocket;
+          BufferedInputStream inFromClient = new BufferedInputStream(socket.getInputStream())) {
+        if (isFramed(inFromClient)) {
+          socket.setTcpNoDelay(true);
+          serveFramed(new DataInputStream(inFromClient),
+              new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())));
+        } else {
+          serveLegacy(new BufferedReader(new InputStreamReader(inFromClient, "UTF-8")),
+              new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8")));
+        }
+      } catch (IOException e) {
+        logger.error("-> IOException while serving client: " + e.getMessage());
+      }
+    }
+
+    /**
+     * Check whether the connection starts with the framed protocol preamble.
+     * Otherwise the stream is rewound for the legacy protocol.
+     * @param inFromClient the client inputstream
+     * @return whether the connection is framed
+     * @throws IOException if io error
+     */
+    private boolean isFramed(BufferedInputStream inFromClient) throws IOException {
+      byte[] header = new byte[TaggerProtocol.PREAMBLE.length];
+      inFromClient.mark(header.length);
+      int length = 0;
+      int read;
+      while (length < header.length
+          && (read = inFromClient.read(header, length, header.length - length)) != -1) {
+        length += read;
+      }
+      if (TaggerProtocol.isPreamble(header, length)) {
+        return true;
+      }
+      inFromClient.reset();
+      return false;
+    }
+
+    /**
+     * Annotate every frame sent by the client until it closes the connection.
+     * @param inFromClient the client inputstream
+     * @param outToClient the client outputstream
+     * @throws IOException if io error
+     */
+    private void serveFramed(DataInputStream inFromClient, DataOutputStream outToClient) throws IOException {
+      String stringFromClient;
+      while ((stringFromClient = TaggerProtocol.readFrame(inFromClient)) != null) {
+        TaggerProtocol.writeFrame(outToClient, annotateOrError(stringFromClient));
+      }
+    }
+
+    /**
+     * Annotate the only document sent by a legacy client.
+     * @param inFromClient the client reader
+     * @param outToClient the client writer
+     * @throws IOException if io error
+     */
+    private void serveLegacy(BufferedReader inFromClient, BufferedWriter outToClient) throws IOException {
+      //get data from client
+      String stringFromClient = getClientData(inFromClient);
+      //send data to server after all exceptions and close the outToClient
+      sendDataToClient(outToClient, annotateOrError(stringFromClient));
+    }
+  }
+
+  /**
+   * Annotate a document, turning any failure into the error message sent to
+   * the client.
+   * @param stringFromClient the string to be annotated
+   * @return the annotation result or the error message
+   */
+  String annotateOrError(String stringFromClient) {
+    if (adminReload && stringFromClient.trim().equals(TaggerProtocol.RELOAD_MODELS)) {
+      reloader.execute(new Runnable() {
+        public void run() {
+          reloadModels();
+        }
+      });
+      return "\n-> Reloading models\n";
+    }
+    if (adminReload && stringFromClient.trim().equals(TaggerProtocol.MODEL_STATS)) {
+      return getModelStats();
+    }
+    try {
+      return annotate(stringFromClient);
+    } catch (JDOMException e) {
+      return "\n-> ERROR: Badly formatted NAF document!!\n";
+    } catch (UnsupportedEncodingException e) {
+      return "\n-> ERROR: UTF-8 not valid!!\n";
+    } catch (IOException e) {
+      return "\n -> ERROR: Input data not correct!!\n";
+    }
+  }
+
+  /**
+   * Describe the registered models, one per line, with their file size and
+   * load time, followed by the statistics of the lemma cache. The file size
+   * is the size on disk, not the heap used by the model.
+   * @return the statistics of the models
+   */
+  private String getModelStats() {
+    StringBuilder modelStats = new StringBuilder();
+    for (ModelRegistry.ModelStats stats : StatisticalTagger.getModelRegistry().getStats()) {
+      modelStats.append("pos\t").append(stats).append("\n");
+    }
+    for (ModelRegistry.ModelStats stats : StatisticalLemmatizer.getModelRegistry().getStats()) {
+      modelStats.append("lemma\t").append(stats).append("\n");
+    }
+    AnnotatorPool pool = annotators.get();
+    // the lemma cache is shared by the annotators of a dictionary
+    CacheStats cacheStats = pool == null ? null : pool.all.get(0).getLemmaCacheStats();
+    if (cacheStats != null) {
+      modelStats.append("lemma cache\t").append(cacheStats.requestCount())
+          .append(" lookups, hit rate ")
+          .append(String.format("%.3f", cacheStats.hitRate()))
+          .append(", ").append(cacheStats.evictionCount()).append(" evictions\n");
+    }
+    return modelStats.toString();
+  }
+
+  /**
+   * Annotate a document with the first idle worker of the current
+   * annotators. The document is annotated by those annotators even if the
+   * models are reloaded meanwhile.
+   * @param stringFromClient the string to be annotated
+   * @return the annotation result
+   * @throws IOException if io error
+   * @throws JDOMException if xml error
+   */
+  private String annotate(String stringFromClient) throws IOException, JDOMException {
+    AnnotatorPool pool;
+    while (true) {
+      pool = annotators.get();
+      pool.users.incrementAndGet();
+      if (pool == annotators.get()) {
+        break;
+      }
+      // swapped meanwhile, the previous annotators may be being released
+      pool.users.decrementAndGet();
+    }
+    try {
+      Annotate annotator;
+      try {
+        annotator = pool.idle.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for a worker", e);
+      }
+      try {
+        return getAnnotations(annotator, stringFromClient);
+      } finally {
+        pool.idle.add(annotator);
+      }
+    } finally {
+      pool.users.decrementAndGet();
+    }
+  }
   
   /**
    * Read data from the client and output to a String.
@@ -127,11 +437,11 @@ public class StatisticalTaggerServer {
     try {
       String line;
       while ((line = inFromClient.readLine()) != null) {
-        if (line.matches("<ENDOFDOCUMENT>")) {
+        if (line.equals(TaggerProtocol.END_OF_DOCUMENT)) {
           break;
         }
         stringFromClient.append(line).append("\n");
-        if (line.matches("</NAF>")) {
+        if (line.equals("</NAF>")) {
           break;
         }
       }
@@ -188,4 +498,169 @@ public class StatisticalTaggerServer {
     }
     return kafToString;
   }
-}
\ No newline at end of file
+
+  /**
+   * One annotator per worker, built over the same models.
+   */
+  private static class AnnotatorPool {
+
+    private final List<Annotate> all;
+    private final BlockingQueue<Annotate> idle;
+    /**
+     * The documents being annotated, or waiting for an idle annotator.
+     */
+    private final AtomicInteger users = new AtomicInteger();
+
+    AnnotatorPool(int size) {
+      this.all = new ArrayList<Annotate>(size);
+      this.idle = new ArrayBlockingQueue<Annotate>(size);
+    }
+
+    void add(Annotate annotator) {
+      all.add(annotator);
+      idle.add(annotator);
+    }
+
+    /**
+     * Tag a sentence with every annotator.
+     */
+    void warmUp() {
+      for (Annotate annotator : all) {
+        annotator.warmUp(WARM_UP_SENTENCE);
+      }
+    }
+
+    /**
+     * Wait for the documents being annotated, once these annotators no
+     * longer receive new documents, and release the annotators.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void retire() throws InterruptedException {
+      while (users.get() > 0) {
+        Thread.sleep(RETIRE_POLL_MILLIS);
+      }
+      close();
+    }
+
+    void close() {
+      for (Annotate annotator : all) {
+        annotator.close();
+      }
+    }
+  }
+
+  /**
+   * Reloads the models when the model files change. A change is only acted
+   * upon once the files are unchanged for a whole interval, so that files
+   * still being copied are not loaded, and a failed reload is tried again at
+   * the next check. Compact model files modified in place instead of renamed
+   * are not loaded.
+   */
+  private class ModelWatcher implements Runnable {
+
+    private final File[] modelFiles = { new File(model),
+        new File(properties.getProperty("lemmatizerModel")) };
+    private FileVersion[] loaded = getVersions();
+    private FileVersion[] pending = loaded;
+
+    public void run() {
+      FileVersion[] current = getVersions();
+      if (Arrays.equals(current, loaded) || !Arrays.equals(current, pending)) {
+        pending = current;
+      } else if (isModifiedInPlace(current)) {
+        logger.warn("-> Compact model file modified in place, not reloading it; "
+            + "replace compact models by renaming the new file over them and restart the server");
+        loaded = current;
+      } else {
+        logger.info("-> Model files changed, reloading models");
+        if (reloadModels()) {
+          loaded = current;
+        }
+      }
+    }
+
+    /**
+     * Get the current version of the model files.
+     * @return the versions
+     */
+    private FileVersion[] getVersions() {
+      FileVersion[] versions = new FileVersion[modelFiles.length];
+      for (int i = 0; i < modelFiles.length; i++) {
+        versions[i] = new FileVersion(modelFiles[i]);
+      }
+      return versions;
+    }
+
+    /**
+     * Whether a memory mapped model file was written into since it was
+     * loaded.
+     * @param current the current versions of the model files
+     * @return whether a compact model file changed keeping its identity
+     */
+    private boolean isModifiedInPlace(FileVersion[] current) {
+      for (int i = 0; i < modelFiles.length; i++) {
+        try {
+          if (current[i].isModifiedInPlace(loaded[i])
+              && CompactModel.isCompact(modelFiles[i].getPath())) {
+            return true;
+          }
+        } catch (IOException e) {
+          // unreadable, the reload reports it
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * The identity, last modification time and length of a file.
+   */
+  private static class FileVersion {
+
+    /**
+     * The identity of the file, such as its inode, null if the file system
+     * has none.
+     */
+    private final Object fileKey;
+    private final long lastModified;
+    private final long length;
+
+    FileVersion(File file) {
+      Object key = null;
+      try {
+        key = java.nio.file.Files.readAttributes(file.toPath(),
+            BasicFileAttributes.class).fileKey();
+      } catch (IOException e) {
+        // a missing file has no identity
+      }
+      this.fileKey = key;
+      this.lastModified = file.lastModified();
+      this.length = file.length();
+    }
+
+    /**
+     * Whether this version is the same file as a previous version, changed.
+     * @param previous the previous version
+     * @return whether the file was modified in place
+     */
+    boolean isModifiedInPlace(FileVersion previous) {
+      return fileKey != null && fileKey.equals(previous.fileKey)
+          && !equals(previous);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof FileVersion)) {
+        return false;
+      }
+      FileVersion other = (FileVersion) obj;
+      return lastModified == other.lastModified && length == other.length
+          && (fileKey == null ? other.fileKey == null : fileKey.equals(other.fileKey));
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (lastModified ^ length);
+    }
+  }
+}
@@ -18,8 +18,6 @@ package eus.ixa.ixa.pipe.pos;
 
 import com.google.common.io.Files;
 import opennlp.tools.util.Span;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -34,7 +32,18 @@ import java.util.List;
  * @version 2013-03-19
  */
 public final class StringUtils {
-    private static final Logger logger = LogManager.getLogger(StringUtils.class);
+
+  /**
+   * The flat Levenshtein matrix of every thread for
+   * {@link #getShortestEditScript(String, String)}.
+   */
+  private static final ThreadLocal<int[]> SES_MATRIX = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[1024];
+    }
+  };
+
   /**
    * Private constructor.
    */
@@ -315,94 +324,95 @@ public static void computeShortestEditScript(String wordForm, String lemma, int[
 }
   /**
    * Read predicted SES by the lemmatizer model and apply the
-   * permutations to obtain the lemma from the wordForm.
+   * permutations to obtain the lemma from the wordForm. The SES is compiled
+   * into an {@link EditScriptProgram} for every call; the statistical
+   * lemmatizer applies the programs compiled once per model instead.
    * @param wordForm the wordForm
    * @param permutations the permutations predicted by the lemmatizer model
    * @return the lemma
    */
   public static String decodeShortestEditScript(String wordForm, String permutations) {
-    
-    StringBuffer lemma = new StringBuffer(wordForm).reverse();
-    
-    int permIndex = 0;
-    while(true) {
-        if (permutations.length() <= permIndex) {
-          break;
-        }
-        //read first letter of permutation string
-        char nextOperation = permutations.charAt(permIndex);
-        logger.debug("-> NextOP: " + nextOperation);
-        //go to the next permutation letter
-        permIndex++;
-        if (nextOperation == 'R') {
-            String charAtPerm = Character.toString(permutations.charAt(permIndex));
-            int charIndex = Integer.parseInt(charAtPerm);
-            // go to the next character in the permutation buffer
-            // which is the replacement character
-            permIndex++;
-            char replace = permutations.charAt(permIndex);
-            //go to the next char in the permutation buffer
-            // which is the candidate character
-            permIndex++;
-            char with = permutations.charAt(permIndex);
-            
-            if (lemma.length() <= charIndex) {
-              return wordForm; 
-            }
-            if (lemma.charAt(charIndex) == replace) {
-              lemma.setCharAt(charIndex, with);
-            }
-            logger.debug("-> ROP: " + lemma);
-            //go to next permutation
-            permIndex++;
-            
-        } else if (nextOperation == 'I') {
-            String charAtPerm = Character.toString(permutations.charAt(permIndex));
-            int charIndex = Integer.parseInt(charAtPerm);
-            permIndex++;
-            //character to be inserted
-            char in = permutations.charAt(permIndex);
-        
-            if (lemma.length() < charIndex) {
-              return wordForm; 
-            }
-            lemma.insert(charIndex, in);
-            logger.debug("-> IOP " + lemma);
-            //go to next permutation
-            permIndex++;
-        } else if (nextOperation == 'D') {
-            String charAtPerm = Character.toString(permutations.charAt(permIndex));
-            int charIndex = Integer.parseInt(charAtPerm);
-            if (lemma.length() <= charIndex) {
-              return wordForm;
-            }
-            lemma.deleteCharAt(charIndex);
-            permIndex++;
-            // go to next permutation
-            permIndex++;
-        }
-    }
-    return lemma.reverse().toString();
-}
+    return EditScriptProgram.compile(permutations).apply(wordForm);
+  }
   
   /**
-   * Get the SES required to go from a word to a lemma.
+   * Get the SES required to go from a word to a lemma. The distance matrix is
+   * computed in a flat buffer reused by the calling thread; the result is the
+   * same as that of {@link #levenshteinDistance(String, String)} followed by
+   * {@link #computeShortestEditScript(String, String, int[][], StringBuffer)}.
    * @param wordForm the word
    * @param lemma the lemma
    * @return the shortest edit script
    */
   public static String getShortestEditScript(String wordForm, String lemma) {
-    String reversedWF = new StringBuffer(wordForm.toLowerCase()).reverse().toString();
-    String reversedLemma = new StringBuffer(lemma.toLowerCase()).reverse().toString();
-    StringBuffer permutations = new StringBuffer();
-    String ses;
-    if (!reversedWF.equals(reversedLemma)) {
-      int[][]levenDistance = StringUtils.levenshteinDistance(reversedWF, reversedLemma);
-      StringUtils.computeShortestEditScript(reversedWF, reversedLemma, levenDistance, permutations);
-      ses = permutations.toString();
-    } else {
-      ses = "O";
+    String reversedWF = new StringBuilder(wordForm.toLowerCase()).reverse().toString();
+    String reversedLemma = new StringBuilder(lemma.toLowerCase()).reverse().toString();
+    if (reversedWF.equals(reversedLemma)) {
+      return "O";
+    }
+    int n = reversedWF.length() + 1;
+    int m = reversedLemma.length() + 1;
+    int[] distance = SES_MATRIX.get();
+    if (distance.length < n * m) {
+      distance = new int[Math.max(n * m, distance.length * 2)];
+      SES_MATRIX.set(distance);
+    }
+    if (n == 1 || m == 1) {
+      // as levenshteinDistance, which leaves the matrix empty
+      return "";
+    }
+    for (int i = 0; i < n; i++) {
+      distance[i * m] = i;
+    }
+    for (int j = 0; j < m; j++) {
+      distance[j] = j;
+    }
+    for (int i = 1; i < n; i++) {
+      char s_i = reversedWF.charAt(i - 1);
+      for (int j = 1; j < m; j++) {
+        int cost = s_i == reversedLemma.charAt(j - 1) ? 0 : 1;
+        distance[i * m + j] = minimum(distance[(i - 1) * m + j] + 1,
+            distance[i * m + j - 1] + 1, distance[(i - 1) * m + j - 1] + cost);
+      }
+    }
+    StringBuilder permutations = new StringBuilder();
+    int wordFormLength = n - 1;
+    int lemmaLength = m - 1;
+    while (true) {
+      int current = distance[wordFormLength * m + lemmaLength];
+      if (current == 0) {
+        break;
+      }
+      if ((lemmaLength > 0 && wordFormLength > 0) && (distance[(wordFormLength - 1) * m + lemmaLength - 1] < current)) {
+        permutations.append('R').append(wordFormLength - 1).append(reversedWF.charAt(wordFormLength - 1)).append(reversedLemma.charAt(lemmaLength - 1));
+        lemmaLength--;
+        wordFormLength--;
+        continue;
+      }
+      if (lemmaLength > 0 && (distance[wordFormLength * m + lemmaLength - 1] < current)) {
+        permutations.append('I').append(wordFormLength).append(reversedLemma.charAt(lemmaLength - 1));
+        lemmaLength--;
+        continue;
+      }
+      if (wordFormLength > 0 && (distance[(wordFormLength - 1) * m + lemmaLength] < current)) {
+        permutations.append('D').append(wordFormLength - 1).append(reversedWF.charAt(wordFormLength - 1));
+        wordFormLength--;
+        continue;
+      }
+      if ((wordFormLength > 0 && lemmaLength > 0) && (distance[(wordFormLength - 1) * m + lemmaLength - 1] == current)) {
+        wordFormLength--;
+        lemmaLength--;
+        continue;
+      }
+      if (wordFormLength > 0 && (distance[(wordFormLength - 1) * m + lemmaLength] == current)) {
+        wordFormLength--;
+        continue;
+      }
+      if (lemmaLength > 0 && (distance[wordFormLength * m + lemmaLength - 1] == current)) {
+        lemmaLength--;
+        continue;
+      }
     }
-    return ses;
+    return permutations.toString();
   }
 }
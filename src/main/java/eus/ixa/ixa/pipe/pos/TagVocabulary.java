@@ -0,0 +1,135 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import opennlp.tools.postag.POSModel;
+
+/**
+ * The closed set of tags of a pos tagging model, interned into integer ids.
+ * The KAF pos id and the term type of every tag are computed once, when the
+ * vocabulary is built, so that mapping a tag takes one hash lookup of its id
+ * and then array accesses, instead of the
+ * {@link Resources#getKafTagSet(String, String)} and
+ * {@link Resources#setTermType(String)} chains. The id is looked up after
+ * decoding because the monosemic dictionary may still replace the tag. Tags
+ * are uppercased, as in {@link Morpheme}. Immutable and thread-safe.
+ */
+public class TagVocabulary {
+
+  private final Map<String, Integer> tagIds;
+  private final String[] tags;
+  private final String[] posIds;
+  private final String[] termTypes;
+
+  /**
+   * Build the vocabulary of a set of tags.
+   *
+   * @param outcomes
+   *          the tags
+   * @param lang
+   *          the language, which selects the KAF mapping
+   */
+  public TagVocabulary(final String[] outcomes, final String lang) {
+    this.tagIds = new HashMap<String, Integer>(outcomes.length * 2);
+    for (final String outcome : outcomes) {
+      final String tag = outcome.toUpperCase();
+      if (!this.tagIds.containsKey(tag)) {
+        this.tagIds.put(tag, this.tagIds.size());
+      }
+    }
+    this.tags = new String[this.tagIds.size()];
+    this.posIds = new String[this.tags.length];
+    this.termTypes = new String[this.tags.length];
+    for (final Map.Entry<String, Integer> tagId : this.tagIds.entrySet()) {
+      final int id = tagId.getValue();
+      this.tags[id] = tagId.getKey();
+      this.posIds[id] = Resources.getKafTagSet(tagId.getKey(), lang);
+      this.termTypes[id] = Resources.setTermType(this.posIds[id]);
+    }
+  }
+
+  /**
+   * Build the vocabulary of the outcomes of a pos tagging model.
+   *
+   * @param posModel
+   *          the model
+   * @param lang
+   *          the language
+   * @return the vocabulary
+   */
+  public static TagVocabulary fromModel(final POSModel posModel,
+      final String lang) {
+    // maxent models are wrapped in a beam search, so that the outcomes of
+    // sequence trained models are read the same way
+    return new TagVocabulary(posModel.getPosSequenceModel().getOutcomes(), lang);
+  }
+
+  /**
+   * Get the id of a tag.
+   *
+   * @param tag
+   *          the uppercased tag
+   * @return the id, or -1 if the tag is not in the vocabulary
+   */
+  public final int getId(final String tag) {
+    final Integer id = this.tagIds.get(tag);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * Get the number of tags.
+   *
+   * @return the number of tags
+   */
+  public final int size() {
+    return this.tags.length;
+  }
+
+  /**
+   * Get a tag.
+   *
+   * @param id
+   *          the tag id
+   * @return the uppercased tag
+   */
+  public final String getTag(final int id) {
+    return this.tags[id];
+  }
+
+  /**
+   * Get the KAF pos id of a tag.
+   *
+   * @param id
+   *          the tag id
+   * @return the KAF pos id
+   */
+  public final String getPosId(final int id) {
+    return this.posIds[id];
+  }
+
+  /**
+   * Get the term type of a tag.
+   *
+   * @param id
+   *          the tag id
+   * @return the term type, open or close
+   */
+  public final String getTermType(final int id) {
+    return this.termTypes[id];
+  }
+}
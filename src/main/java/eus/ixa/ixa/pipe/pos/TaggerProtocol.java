@@ -0,0 +1,131 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Framed protocol of the {@link StatisticalTaggerServer}. A framed connection
+ * starts with the {@link #PREAMBLE} sent by the client; afterwards every
+ * request and every response is a frame consisting of a 4 byte big-endian
+ * length followed by that many bytes of UTF-8 text. The connection is kept
+ * open until the client closes it, so many documents can be annotated over
+ * the same connection.
+ *
+ * Connections not starting with the preamble are served with the legacy
+ * protocol: one document, ended by the end of the stream, a
+ * {@code <ENDOFDOCUMENT>} line or a {@code </NAF>} line, per connection.
+ */
+final class TaggerProtocol {
+
+  /**
+   * Bytes opening a framed connection. The first byte is never sent by a
+   * legacy client, which sends XML text.
+   */
+  static final byte[] PREAMBLE = { 0, 'I', 'X', 'A' };
+  /**
+   * The charset of the frames.
+   */
+  static final Charset UTF8 = Charset.forName("UTF-8");
+  /**
+   * Line ending a document in the legacy protocol.
+   */
+  static final String END_OF_DOCUMENT = "<ENDOFDOCUMENT>";
+  /**
+   * Document asking the server to reload its models, if the server accepts
+   * administrative commands.
+   */
+  static final String RELOAD_MODELS = "<RELOADMODELS>";
+  /**
+   * Document asking the server for the statistics of its models, if the
+   * server accepts administrative commands.
+   */
+  static final String MODEL_STATS = "<MODELSTATS>";
+  /**
+   * Largest request accepted, in bytes.
+   */
+  static final int MAX_REQUEST_SIZE = 1 << 28;
+
+  private TaggerProtocol() {
+  }
+
+  /**
+   * Check whether the first bytes of a connection are the framed protocol
+   * preamble.
+   *
+   * @param header
+   *          the first bytes read
+   * @param length
+   *          the number of bytes read
+   * @return whether the connection uses the framed protocol
+   */
+  static boolean isPreamble(final byte[] header, final int length) {
+    return length == PREAMBLE.length && Arrays.equals(header, PREAMBLE);
+  }
+
+  /**
+   * Read a frame.
+   *
+   * @param input
+   *          the input stream
+   * @return the text of the frame or null if the stream ended before the
+   *         frame started
+   * @throws IOException
+   *           if the stream ends inside a frame or the frame is malformed
+   *           or larger than {@link #MAX_REQUEST_SIZE}
+   */
+  static String readFrame(final DataInputStream input) throws IOException {
+    final int first = input.read();
+    if (first == -1) {
+      return null;
+    }
+    final int length = (first << 24) | (input.readUnsignedByte() << 16)
+        | (input.readUnsignedByte() << 8) | input.readUnsignedByte();
+    if (length < 0 || length > MAX_REQUEST_SIZE) {
+      // rejected before allocating the payload
+      throw new IOException("Invalid frame length " + length);
+    }
+    final byte[] payload = new byte[length];
+    try {
+      input.readFully(payload);
+    } catch (final EOFException e) {
+      throw new IOException("Connection closed inside a frame", e);
+    }
+    return new String(payload, UTF8);
+  }
+
+  /**
+   * Write a frame and flush it.
+   *
+   * @param output
+   *          the output stream
+   * @param text
+   *          the text of the frame
+   * @throws IOException
+   *           if io error
+   */
+  static void writeFrame(final DataOutputStream output, final String text)
+      throws IOException {
+    final byte[] payload = text.getBytes(UTF8);
+    output.writeInt(payload.length);
+    output.write(payload);
+    output.flush();
+  }
+}
@@ -0,0 +1,278 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos.dict;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import morfologik.stemming.Dictionary;
+import morfologik.stemming.DictionaryLookup;
+import morfologik.stemming.WordData;
+
+/**
+ * Monosemic dictionary tagger backed by a read-only open-addressing table from
+ * word to tag id. The {@link MorfologikTagger} looks up the FSA and scans every
+ * analysis of every token to keep the last tag; this index computes that word
+ * to tag mapping once, when the dictionary is loaded, so that tagging a word is
+ * a single hash probe. The index is immutable and can be shared by every
+ * thread without locking.
+ *
+ * The index can be saved to, and loaded from, a binary snapshot to avoid
+ * iterating the FSA at load time. The snapshot header records the size and
+ * the last modification time of the dictionary it was built from, so that a
+ * snapshot of another version of the dictionary is not loaded.
+ */
+public class MonosemicTagIndex implements DictionaryTagger {
+
+  /**
+   * Magic number of the binary snapshots.
+   */
+  private static final int MAGIC = 0x49584d54;
+  private static final int VERSION = 2;
+
+  /**
+   * The distinct tags.
+   */
+  private final String[] tags;
+  /**
+   * The words, null for the empty slots.
+   */
+  private final String[] words;
+  /**
+   * The tag id of the word in the same slot.
+   */
+  private final int[] tagIds;
+  /**
+   * The table size minus one, the table size being a power of two.
+   */
+  private final int mask;
+
+  /**
+   * Build the index from a word to tag mapping.
+   *
+   * @param wordTags
+   *          the tag of every word
+   */
+  public MonosemicTagIndex(final Map<String, String> wordTags) {
+    final Map<String, Integer> tagVocabulary = new LinkedHashMap<String, Integer>();
+    int capacity = 2;
+    while (capacity < wordTags.size() * 2) {
+      capacity <<= 1;
+    }
+    this.words = new String[capacity];
+    this.tagIds = new int[capacity];
+    this.mask = capacity - 1;
+    for (final Map.Entry<String, String> wordTag : wordTags.entrySet()) {
+      Integer tagId = tagVocabulary.get(wordTag.getValue());
+      if (tagId == null) {
+        tagId = tagVocabulary.size();
+        tagVocabulary.put(wordTag.getValue(), tagId);
+      }
+      final int slot = findSlot(wordTag.getKey());
+      this.words[slot] = wordTag.getKey();
+      this.tagIds[slot] = tagId;
+    }
+    this.tags = tagVocabulary.keySet().toArray(new String[tagVocabulary.size()]);
+  }
+
+  /**
+   * Build the index from a FSA Morfologik dictionary. As in the
+   * {@link MorfologikTagger}, the last tag of a word is kept.
+   *
+   * @param dictURL
+   *          the URL of the dictionary
+   * @return the index
+   * @throws IOException
+   *           if the dictionary can not be read
+   */
+  public static MonosemicTagIndex build(final URL dictURL) throws IOException {
+    final Map<String, String> wordTags = new HashMap<String, String>();
+    final DictionaryLookup dictLookup = new DictionaryLookup(
+        Dictionary.read(dictURL));
+    for (final WordData wd : dictLookup) {
+      if (wd.getWord() != null && wd.getTag() != null) {
+        // WordData objects are reused by the iterator, so copy the sequences
+        wordTags.put(wd.getWord().toString(), wd.getTag().toString());
+      }
+    }
+    return new MonosemicTagIndex(wordTags);
+  }
+
+  /**
+   * Load the index from a binary snapshot.
+   *
+   * @param snapshot
+   *          the input stream of the snapshot, not closed
+   * @param dictURL
+   *          the URL of the dictionary the index is built from
+   * @return the index, or null if the snapshot was saved by a previous
+   *         version of the format or from another version of the dictionary,
+   *         or if it is truncated or corrupt
+   * @throws IOException
+   *           if the stream is not a snapshot or can not be read
+   */
+  public static MonosemicTagIndex load(final InputStream snapshot,
+      final URL dictURL) throws IOException {
+    final DataInputStream input = new DataInputStream(new BufferedInputStream(
+        snapshot));
+    final List<String> tagList = new ArrayList<String>();
+    // the counts of a corrupt snapshot can not be trusted to size the map
+    final Map<String, String> wordTags = new HashMap<String, String>();
+    try {
+      if (input.readInt() != MAGIC) {
+        throw new IOException("Not a monosemic tag index snapshot");
+      }
+      if (input.readInt() != VERSION) {
+        return null;
+      }
+      final long[] dictVersion = getDictionaryVersion(dictURL);
+      if (input.readLong() != dictVersion[0]
+          || input.readLong() != dictVersion[1]) {
+        return null;
+      }
+      final int tagCount = input.readInt();
+      for (int i = 0; i < tagCount; i++) {
+        tagList.add(input.readUTF());
+      }
+      final int wordCount = input.readInt();
+      for (int i = 0; i < wordCount; i++) {
+        final String word = input.readUTF();
+        final int tagId = input.readInt();
+        if (tagId < 0 || tagId >= tagList.size()) {
+          return null;
+        }
+        wordTags.put(word, tagList.get(tagId));
+      }
+    } catch (final EOFException e) {
+      return null;
+    } catch (final UTFDataFormatException e) {
+      return null;
+    }
+    return new MonosemicTagIndex(wordTags);
+  }
+
+  /**
+   * Save the index as a binary snapshot.
+   *
+   * @param snapshot
+   *          the output stream, flushed but not closed
+   * @param dictURL
+   *          the URL of the dictionary the index was built from
+   * @throws IOException
+   *           if io error
+   */
+  public final void save(final OutputStream snapshot, final URL dictURL)
+      throws IOException {
+    final long[] dictVersion = getDictionaryVersion(dictURL);
+    final DataOutputStream output = new DataOutputStream(
+        new BufferedOutputStream(snapshot));
+    output.writeInt(MAGIC);
+    output.writeInt(VERSION);
+    output.writeLong(dictVersion[0]);
+    output.writeLong(dictVersion[1]);
+    output.writeInt(this.tags.length);
+    for (final String tag : this.tags) {
+      output.writeUTF(tag);
+    }
+    output.writeInt(size());
+    for (int slot = 0; slot < this.words.length; slot++) {
+      if (this.words[slot] != null) {
+        output.writeUTF(this.words[slot]);
+        output.writeInt(this.tagIds[slot]);
+      }
+    }
+    output.flush();
+  }
+
+  /**
+   * Get the version of a dictionary: its size and last modification time.
+   *
+   * @param dictURL
+   *          the URL of the dictionary
+   * @return the size in bytes and the last modification time
+   * @throws IOException
+   *           if the dictionary can not be read
+   */
+  private static long[] getDictionaryVersion(final URL dictURL)
+      throws IOException {
+    final URLConnection connection = dictURL.openConnection();
+    // file and jar connections open the dictionary to read its headers
+    final InputStream dict = connection.getInputStream();
+    try {
+      return new long[] { connection.getContentLengthLong(),
+          connection.getLastModified() };
+    } finally {
+      dict.close();
+    }
+  }
+
+  /**
+   * Find the slot of a word: the slot holding it, or the empty slot where it
+   * would be inserted.
+   *
+   * @param word
+   *          the word
+   * @return the slot
+   */
+  private int findSlot(final String word) {
+    int hash = word.hashCode();
+    hash ^= (hash >>> 16);
+    int slot = hash & this.mask;
+    while (this.words[slot] != null && !this.words[slot].equals(word)) {
+      slot = (slot + 1) & this.mask;
+    }
+    return slot;
+  }
+
+  /**
+   * Get the number of words of the index.
+   *
+   * @return the number of words
+   */
+  public final int size() {
+    int size = 0;
+    for (final String word : this.words) {
+      if (word != null) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see eus.ixa.ixa.pipe.pos.dict.DictionaryTagger#tag(java.lang.String,
+   * java.lang.String)
+   */
+  public String tag(final String word, final String posTag) {
+    final int slot = findSlot(word.toLowerCase());
+    return this.words[slot] == null ? posTag : this.tags[this.tagIds[slot]];
+  }
+}
@@ -53,7 +53,18 @@ public class MorfologikTagger implements DictionaryTagger {
    */
   public MorfologikTagger(final URL dictURL, final String aLang)
       throws IOException {
-    this.dictLookup = new DictionaryLookup(Dictionary.read(dictURL));
+    this(Dictionary.read(dictURL));
+  }
+
+  /**
+   * Look up a dictionary already read. The dictionary can be shared by
+   * several taggers, each one with its own lookup.
+   * 
+   * @param dictionary
+   *          the dictionary
+   */
+  public MorfologikTagger(final Dictionary dictionary) {
+    this.dictLookup = new DictionaryLookup(dictionary);
   }
 
   /**
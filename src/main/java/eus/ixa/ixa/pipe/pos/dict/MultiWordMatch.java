@@ -0,0 +1,59 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.dict;
+
+import opennlp.tools.util.Span;
+
+/**
+ * The multiwords found in a sentence by the {@link MultiWordMatcher}: the
+ * tokens with every multiword joined by "#" and the spans of the multiwords
+ * over the original tokens.
+ */
+public class MultiWordMatch {
+
+  private final String[] tokens;
+  private final Span[] spans;
+
+  /**
+   * Construct the result of a multiword match.
+   *
+   * @param aTokens
+   *          the tokens with the multiwords joined
+   * @param aSpans
+   *          the spans of the multiwords over the original tokens, the type
+   *          of every span being the postag of the multiword
+   */
+  public MultiWordMatch(final String[] aTokens, final Span[] aSpans) {
+    this.tokens = aTokens;
+    this.spans = aSpans;
+  }
+
+  /**
+   * Get the tokens of the sentence with the multiwords joined by "#".
+   *
+   * @return the tokens
+   */
+  public final String[] getTokens() {
+    return this.tokens;
+  }
+
+  /**
+   * Get the spans of the multiwords over the original tokens.
+   *
+   * @return the spans
+   */
+  public final Span[] getSpans() {
+    return this.spans;
+  }
+}
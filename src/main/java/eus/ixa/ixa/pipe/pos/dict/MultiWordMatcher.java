@@ -15,21 +15,25 @@
  */
 package eus.ixa.ixa.pipe.pos.dict;
 
-import com.google.common.base.Joiner;
-import eus.ixa.ixa.pipe.pos.StringUtils;
+import eus.ixa.ixa.pipe.pos.ModelRegistry;
 import opennlp.tools.util.Span;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
+import java.net.URL;
+import java.net.URLConnection;
 import java.nio.charset.Charset;
 import java.util.*;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Reads a dictionary multiword\tmultiwordlemma\tpostag\tambiguity and matches
- * the multiwords for each sentence.
+ * the multiwords for each sentence. The multiwords are stored in a token trie,
+ * so every sentence is matched in a single left to right pass which takes,
+ * at each position, the longest multiword starting there. The tries are
+ * loaded once per dictionary, language and resources directory, and shared by
+ * every matcher using the same dictionary.
  * 
  * @author ragerri
  * @version 2015-01-28
@@ -39,8 +43,19 @@ public class MultiWordMatcher {
   private static final Logger logger = LogManager.getLogger(MultiWordMatcher.class);
   
   private static final Pattern tabPattern = Pattern.compile("\t");
-  private static final Pattern linePattern = Pattern.compile("#");
-  private static Map<String, String> dictionary;
+  private static final Pattern tokenPattern = Pattern.compile("[# ]");
+  /**
+   * The multiword tries, by dictionary URL, shared by every matcher.
+   */
+  private static final ModelRegistry<MultiWordDictionary> dictionaries = new ModelRegistry<MultiWordDictionary>("multiword dictionary");
+  /**
+   * The root of the trie of lowercased multiword tokens.
+   */
+  private final TrieNode dictionary;
+  /**
+   * The number of tokens of the longest multiword.
+   */
+  private final int maxTokenCount;
 
   /**
    * Construct a multiword matcher with a dictionary for a given language.
@@ -51,42 +66,80 @@ public class MultiWordMatcher {
    *           throw exception is files does not exist
    */
   public MultiWordMatcher(final Properties props) throws IOException {
-    if (dictionary == null) {
-      loadDictionary(props);
-    }
+    final MultiWordDictionary multiWordDictionary = loadDictionary(props);
+    this.dictionary = multiWordDictionary.root;
+    this.maxTokenCount = multiWordDictionary.maxTokenCount;
   }
 
   /**
-   * Load the dictionaries.
+   * Load statically the dictionary of a language, so that every matcher
+   * using it shares its trie.
    * 
    * @param props
    *          the properties object
+   * @return the trie of the dictionary
    * @throws IOException
    *           if io problems
    */
-  private void loadDictionary(final Properties props) throws IOException {
-    dictionary = new HashMap<String, String>();
+  private static MultiWordDictionary loadDictionary(final Properties props)
+      throws IOException {
     final String lang = props.getProperty("language");
     final String resourcesDirectory = props.getProperty("resourcesDirectory");
-    final InputStream dictInputStream = getMultiWordDict(lang, resourcesDirectory);
-    if (dictInputStream == null) {
+    final URL dictURL = getMultiWordDict(lang, resourcesDirectory);
+    if (dictURL == null) {
       final String resourcesLocation = resourcesDirectory == null ? "src/main/resources" : resourcesDirectory;
-      logger.error("ERROR: Not multiword dictionary for language " + lang + " in " + resourcesLocation + "!!");
-      System.exit(1);
+      throw new FileNotFoundException("Not multiword dictionary for language "
+          + lang + " in " + resourcesLocation + "!!");
     }
+    final URLConnection connection = dictURL.openConnection();
+    final InputStream dict = connection.getInputStream();
+    final long size;
+    try {
+      size = connection.getContentLengthLong();
+    } finally {
+      dict.close();
+    }
+    return dictionaries.get("url:" + dictURL, size,
+        new ModelRegistry.ModelLoader<MultiWordDictionary>() {
+          public MultiWordDictionary load() throws IOException {
+            return readDictionary(dictURL);
+          }
+        });
+  }
+
+  /**
+   * Read a dictionary into a trie.
+   * 
+   * @param dictURL
+   *          the URL of the dictionary
+   * @return the trie
+   * @throws IOException
+   *           if io problems
+   */
+  private static MultiWordDictionary readDictionary(final URL dictURL)
+      throws IOException {
+    final TrieNode root = new TrieNode();
+    int maxTokens = 0;
     final BufferedReader breader = new BufferedReader(new InputStreamReader(
-        dictInputStream, Charset.forName("UTF-8")));
+        dictURL.openStream(), Charset.forName("UTF-8")));
     String line;
     while ((line = breader.readLine()) != null) {
       final String[] lineArray = tabPattern.split(line);
       if (lineArray.length == 4) {
-        final Matcher lineMatcher = linePattern.matcher(lineArray[0]
+        final String[] multiWord = tokenPattern.split(lineArray[0]
             .toLowerCase());
-        dictionary.put(lineMatcher.replaceAll(" "), lineArray[2]);
+        TrieNode node = root;
+        for (final String token : multiWord) {
+          node = node.addChild(token);
+        }
+        node.tag = lineArray[2];
+        maxTokens = Math.max(maxTokens, multiWord.length);
       } else {
         logger.warn("WARNING: line starting with " + lineArray[0] + " is not well-formed; skipping!!");
       }
     }
+    breader.close();
+    return new MultiWordDictionary(root, maxTokens);
   }
 
   /**
@@ -97,38 +150,39 @@ public class MultiWordMatcher {
    * @param resourcesDirectory
    *          the directory where the dictionary can be found.
    *          If {@code null}, load from package resources.
-   * @return the inputstream of the dictionary
+   * @return the URL of the dictionary, or null if there is none
+   * @throws IOException
+   *           if the path of the dictionary can not be resolved
    */
-  private final InputStream getMultiWordDict(final String lang, final String resourcesDirectory) {
+  private static URL getMultiWordDict(final String lang, final String resourcesDirectory)
+      throws IOException {
     return resourcesDirectory == null
       ? getMultiWordDictFromResources(lang)
       : getMultiWordDictFromDirectory(lang, resourcesDirectory);
   }
 
-  private final InputStream getMultiWordDictFromResources(final String lang) {
-    InputStream dict = null;
+  private static URL getMultiWordDictFromResources(final String lang) {
+    URL dict = null;
     // TODO complete locutions dictionary and binarize
     if (lang.equalsIgnoreCase("en")) {
-      dict = getClass().getResourceAsStream(
+      dict = MultiWordMatcher.class.getResource(
           "/lemmatizer-dicts/freeling/en-locutions-extended.txt");
     }
     if (lang.equalsIgnoreCase("es")) {
-      dict = getClass().getResourceAsStream(
+      dict = MultiWordMatcher.class.getResource(
           "/lemmatizer-dicts/freeling/es-locutions.txt");
     }
     if (lang.equalsIgnoreCase("gl")) {
-      dict = getClass().getResourceAsStream(
+      dict = MultiWordMatcher.class.getResource(
           "/lemmatizer-dicts/ctag/gl-locutions.txt");
     }
     return dict;
   }
 
-  private final InputStream getMultiWordDictFromDirectory(final String lang, final String resourcesDirectory) {
-    try {
-      return new FileInputStream(new File(resourcesDirectory, lang.toLowerCase() + "-locutions.txt"));
-    } catch (FileNotFoundException ex) {
-      return null;
-    }
+  private static URL getMultiWordDictFromDirectory(final String lang, final String resourcesDirectory)
+      throws IOException {
+    final File dict = new File(resourcesDirectory, lang.toLowerCase() + "-locutions.txt");
+    return dict.isFile() ? dict.getCanonicalFile().toURI().toURL() : null;
   }
 
   /**
@@ -139,26 +193,7 @@ public class MultiWordMatcher {
    * @return the output text with the joined multiwords
    */
   public final String[] getTokensWithMultiWords(final String[] tokens) {
-    final Span[] multiWordSpans = multiWordsToSpans(tokens);
-    final List<String> tokenList = new ArrayList<String>(Arrays.asList(tokens));
-    int counter = 0;
-    for (final Span mwSpan : multiWordSpans) {
-      final int fromIndex = mwSpan.getStart() - counter;
-      final int toIndex = mwSpan.getEnd() - counter;
-      logger.debug(fromIndex + " " + toIndex);
-      // add to the counter the length of the sublist removed
-      // to allow the fromIndex and toIndex to match wrt to the tokenList
-      // indexes
-      counter = counter + tokenList.subList(fromIndex, toIndex).size() - 1;
-      // create the multiword joining the sublist
-      final String multiWord = Joiner.on("#").join(
-          tokenList.subList(fromIndex, toIndex));
-      // remove the sublist containing the tokens to be replaced in the span
-      tokenList.subList(fromIndex, toIndex).clear();
-      // add the multiword containing the tokens in one Span
-      tokenList.add(fromIndex, multiWord);
-    }
-    return tokenList.toArray(new String[tokenList.size()]);
+    return match(tokens).getTokens();
   }
 
   /**
@@ -169,45 +204,103 @@ public class MultiWordMatcher {
    * @return spans of the multiword
    */
   public final Span[] multiWordsToSpans(final String[] tokens) {
-    final List<Span> multiWordsFound = new LinkedList<Span>();
-
-    for (int offsetFrom = 0; offsetFrom < tokens.length; offsetFrom++) {
-      Span multiwordFound = null;
-      String[] tokensSearching;
+    return match(tokens).getSpans();
+  }
 
+  /**
+   * Detects multiword expressions ignoring case, in a single pass which takes
+   * the longest multiword starting at each token. It returns both the tokens
+   * with the multiwords joined by "#" and the spans of the multiwords.
+   * 
+   * @param tokens
+   *          the tokenized sentence
+   * @return the joined tokens and the multiword spans
+   */
+  public final MultiWordMatch match(final String[] tokens) {
+    final List<String> joinedTokens = new ArrayList<String>(tokens.length);
+    final List<Span> multiWordsFound = new ArrayList<Span>();
+    final String[] lowerTokens = new String[tokens.length];
+    for (int i = 0; i < tokens.length; i++) {
+      lowerTokens[i] = tokens[i].toLowerCase();
+    }
+    int offsetFrom = 0;
+    while (offsetFrom < tokens.length) {
+      int multiWordEnd = -1;
+      String multiWordTag = null;
+      TrieNode node = this.dictionary;
       for (int offsetTo = offsetFrom; offsetTo < tokens.length; offsetTo++) {
-
-        final int lengthSearching = offsetTo - offsetFrom + 1;
-        if (lengthSearching > getMaxTokenCount()) {
+        node = node.getChild(lowerTokens[offsetTo]);
+        if (node == null) {
           break;
-        } else {
-          tokensSearching = new String[lengthSearching];
-          System.arraycopy(tokens, offsetFrom, tokensSearching, 0,
-              lengthSearching);
-
-          final String entryForSearch = StringUtils
-              .getStringFromTokens(tokensSearching);
-          final String entryValue = dictionary
-              .get(entryForSearch.toLowerCase());
-          if (entryValue != null) {
-            multiwordFound = new Span(offsetFrom, offsetTo + 1, entryValue);
-          }
+        }
+        if (node.tag != null) {
+          multiWordEnd = offsetTo + 1;
+          multiWordTag = node.tag;
         }
       }
-      if (multiwordFound != null) {
-        multiWordsFound.add(multiwordFound);
-        offsetFrom += multiwordFound.length() - 1;
+      if (multiWordEnd == -1) {
+        joinedTokens.add(tokens[offsetFrom]);
+        offsetFrom++;
+      } else {
+        multiWordsFound.add(new Span(offsetFrom, multiWordEnd, multiWordTag));
+        final StringBuilder multiWord = new StringBuilder(tokens[offsetFrom]);
+        for (int i = offsetFrom + 1; i < multiWordEnd; i++) {
+          multiWord.append('#').append(tokens[i]);
+        }
+        joinedTokens.add(multiWord.toString());
+        offsetFrom = multiWordEnd;
       }
     }
-    return multiWordsFound.toArray(new Span[multiWordsFound.size()]);
+    return new MultiWordMatch(
+        joinedTokens.toArray(new String[joinedTokens.size()]),
+        multiWordsFound.toArray(new Span[multiWordsFound.size()]));
   }
 
   /**
-   * Get the key,value size of the dictionary.
+   * Get the number of tokens of the longest multiword in the dictionary.
    * 
    * @return maximum token count in the dictionary
    */
   public int getMaxTokenCount() {
-    return dictionary.size();
+    return this.maxTokenCount;
+  }
+
+  /**
+   * The trie of a dictionary, with the number of tokens of its longest
+   * multiword.
+   */
+  private static class MultiWordDictionary {
+    private final TrieNode root;
+    private final int maxTokenCount;
+
+    private MultiWordDictionary(final TrieNode aRoot, final int aMaxTokenCount) {
+      this.root = aRoot;
+      this.maxTokenCount = aMaxTokenCount;
+    }
+  }
+
+  /**
+   * A node of the multiword trie: its children by lowercased token, and the
+   * postag if a multiword ends at this node.
+   */
+  private static class TrieNode {
+    private Map<String, TrieNode> children;
+    private String tag;
+
+    private TrieNode getChild(final String token) {
+      return this.children == null ? null : this.children.get(token);
+    }
+
+    private TrieNode addChild(final String token) {
+      if (this.children == null) {
+        this.children = new HashMap<String, TrieNode>();
+      }
+      TrieNode child = this.children.get(token);
+      if (child == null) {
+        child = new TrieNode();
+        this.children.put(token, child);
+      }
+      return child;
+    }
   }
 }
@@ -21,11 +21,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * POS tag by simple dictionary lookup into a hashmap built from a file
  * containing, for each line, word\tablemma\tabpostag. This is originally
- * thought to work with monosemic dictionaries.
+ * thought to work with monosemic dictionaries. The words are looked up in a
+ * read-only {@link MonosemicTagIndex}.
  * 
  * @author ragerri
  * @version 2014-12-05
@@ -33,9 +35,9 @@ import java.util.HashMap;
 public class SimpleTagger implements DictionaryTagger {
 
   /**
-   * The hashmap containing the dictionary.
+   * The index containing the dictionary.
    */
-  private final HashMap<String, String> dictMap;
+  private final MonosemicTagIndex dictIndex;
 
   /**
    * Construct a hashmap from the input tab separated dictionary.
@@ -48,18 +50,19 @@ public class SimpleTagger implements DictionaryTagger {
    *          the language
    */
   public SimpleTagger(final InputStream dictionary, final String aLang) {
-    this.dictMap = new HashMap<String, String>();
+    final Map<String, String> dictMap = new HashMap<String, String>();
     final BufferedReader breader = new BufferedReader(new InputStreamReader(
         dictionary));
     String line;
     try {
       while ((line = breader.readLine()) != null) {
         final String[] elems = line.split("\t");
-        this.dictMap.put(elems[0], elems[2]);
+        dictMap.put(elems[0], elems[2]);
       }
     } catch (final IOException e) {
       e.printStackTrace();
     }
+    this.dictIndex = new MonosemicTagIndex(dictMap);
   }
 
   /*
@@ -69,11 +72,6 @@ public class SimpleTagger implements DictionaryTagger {
    * java.lang.String)
    */
   public String tag(final String word, final String postag) {
-    // lookup postag as value of the map
-    String newPosTag = this.dictMap.get(word.toLowerCase());
-    if (newPosTag == null) {
-      newPosTag = postag;
-    }
-    return newPosTag;
+    return this.dictIndex.tag(word, postag);
   }
 }
@@ -0,0 +1,168 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.eval;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import opennlp.tools.util.CollectionObjectStream;
+import opennlp.tools.util.ObjectStream;
+import opennlp.tools.util.eval.Mean;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs the folds of a cross validation concurrently. The samples are
+ * partitioned as in OpenNLP's {@code CrossValidationPartitioner}: the sample
+ * at position i belongs to the test set of fold i % folds and to the training
+ * set of every other fold. The word accuracies of the folds are aggregated in
+ * fold order, weighted by their number of words, so that the result is that
+ * of a sequential cross validation whatever the number of threads.
+ * 
+ * @param <T>
+ *          the sample type
+ */
+public class CrossValidationRunner<T> {
+  private static final Logger logger = LogManager.getLogger(CrossValidationRunner.class);
+
+  /**
+   * Trains and evaluates a fold.
+   * 
+   * @param <T>
+   *          the sample type
+   */
+  public interface FoldEvaluator<T> {
+    /**
+     * Train a model on the training samples of a fold and evaluate it on its
+     * test samples. Called concurrently for different folds.
+     * 
+     * @param fold
+     *          the fold number
+     * @param trainSamples
+     *          the training samples
+     * @param testSamples
+     *          the test samples
+     * @return the word accuracy of the fold, added with its number of words
+     * @throws IOException
+     *           if io error
+     */
+    Mean evaluate(int fold, ObjectStream<T> trainSamples,
+        ObjectStream<T> testSamples) throws IOException;
+  }
+
+  private final int folds;
+  private final int threads;
+
+  /**
+   * Construct a cross validation runner.
+   * 
+   * @param aFolds
+   *          the number of folds
+   * @param aThreads
+   *          the number of folds run at the same time
+   */
+  public CrossValidationRunner(final int aFolds, final int aThreads) {
+    if (aFolds < 2) {
+      throw new IllegalArgumentException("The number of folds must be at least 2!");
+    }
+    if (aThreads < 1) {
+      throw new IllegalArgumentException("The number of fold threads must be at least 1!");
+    }
+    this.folds = aFolds;
+    this.threads = aThreads;
+  }
+
+  /**
+   * Cross validate.
+   * 
+   * @param samples
+   *          the samples, which are read into memory
+   * @param evaluator
+   *          the fold evaluator
+   * @return the aggregated word accuracy
+   * @throws IOException
+   *           if the samples can not be read or a fold fails
+   */
+  public final Mean run(final ObjectStream<T> samples,
+      final FoldEvaluator<T> evaluator) throws IOException {
+    final List<T> sampleList = new ArrayList<T>();
+    for (T sample = samples.read(); sample != null; sample = samples.read()) {
+      sampleList.add(sample);
+    }
+    final ExecutorService foldPool = Executors.newFixedThreadPool(Math.min(
+        this.threads, this.folds));
+    try {
+      final List<Future<Mean>> results = new ArrayList<Future<Mean>>(this.folds);
+      for (int fold = 0; fold < this.folds; fold++) {
+        final int testFold = fold;
+        results.add(foldPool.submit(new Callable<Mean>() {
+          public Mean call() throws IOException {
+            final List<T> trainSamples = new ArrayList<T>();
+            final List<T> testSamples = new ArrayList<T>();
+            for (int i = 0; i < sampleList.size(); i++) {
+              if (i % CrossValidationRunner.this.folds == testFold) {
+                testSamples.add(sampleList.get(i));
+              } else {
+                trainSamples.add(sampleList.get(i));
+              }
+            }
+            return evaluator.evaluate(testFold, new CollectionObjectStream<T>(
+                trainSamples), new CollectionObjectStream<T>(testSamples));
+          }
+        }));
+      }
+      final Mean wordAccuracy = new Mean();
+      for (int fold = 0; fold < this.folds; fold++) {
+        final Mean foldAccuracy = getFoldResult(results.get(fold));
+        logger.info("-> Fold " + fold + " word accuracy: " + foldAccuracy.mean());
+        wordAccuracy.add(foldAccuracy.mean(), foldAccuracy.count());
+      }
+      return wordAccuracy;
+    } finally {
+      foldPool.shutdownNow();
+    }
+  }
+
+  /**
+   * Wait for the result of a fold.
+   * 
+   * @param result
+   *          the future result
+   * @return the word accuracy of the fold
+   * @throws IOException
+   *           if the fold failed
+   */
+  private Mean getFoldResult(final Future<Mean> result) throws IOException {
+    try {
+      return result.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while cross validating", e);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+}
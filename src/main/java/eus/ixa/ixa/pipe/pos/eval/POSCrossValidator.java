@@ -16,6 +16,7 @@
 package eus.ixa.ixa.pipe.pos.eval;
 
 import eus.ixa.ixa.pipe.pos.train.BaselineFactory;
+import eus.ixa.ixa.pipe.pos.train.CompiledCorpus;
 import eus.ixa.ixa.pipe.pos.train.Flags;
 import eus.ixa.ixa.pipe.pos.train.InputOutputUtils;
 import opennlp.tools.cmdline.postag.POSEvaluationErrorListener;
@@ -24,12 +25,13 @@ import opennlp.tools.postag.*;
 import opennlp.tools.util.ObjectStream;
 import opennlp.tools.util.TrainingParameters;
 import opennlp.tools.util.eval.EvaluationMonitor;
+import opennlp.tools.util.eval.Mean;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -66,7 +68,7 @@ public class POSCrossValidator {
   /**
    * The evaluation listeners.
    */
-  private final List<EvaluationMonitor<POSSample>> listeners = new LinkedList<EvaluationMonitor<POSSample>>();
+  private final List<EvaluationMonitor<POSSample>> listeners = new ArrayList<EvaluationMonitor<POSSample>>();
   POSTaggerFineGrainedReportListener detailedListener;
 
   /**
@@ -82,9 +84,13 @@ public class POSCrossValidator {
   public POSCrossValidator(final TrainingParameters params) throws IOException {
     this.lang = Flags.getLanguage(params);
     final String trainData = Flags.getDataSet("TrainSet", params);
-    final ObjectStream<String> trainStream = InputOutputUtils
-        .readFileIntoMarkableStreamFactory(trainData);
-    this.trainSamples = new WordTagSampleStream(trainStream);
+    if (CompiledCorpus.isCompiled(trainData)) {
+      this.trainSamples = CompiledCorpus.load(trainData).getPOSSamples();
+    } else {
+      final ObjectStream<String> trainStream = InputOutputUtils
+          .readFileIntoMarkableStreamFactory(trainData);
+      this.trainSamples = new WordTagSampleStream(trainStream);
+    }
     this.dictCutOff = Flags.getAutoDictFeatures(params);
     this.folds = Flags.getFolds(params);
     createPOSFactory(params);
@@ -111,17 +117,38 @@ public class POSCrossValidator {
   }
 
   /**
-   * Cross validate when no separate testset is available.
+   * Cross validate when no separate testset is available. The folds are
+   * trained and evaluated concurrently by FoldThreads threads.
    * 
    * @param params
    *          the training parameters
    */
   public final void crossValidate(final TrainingParameters params) {
 
-    POSTaggerCrossValidator validator = null;
+    final int foldThreads = Flags.getFoldThreads(params);
+    final POSTaggerEvaluationMonitor[] monitors = getEvaluationMonitors(foldThreads);
+    Mean wordAccuracy = null;
     try {
-      validator = getPOSTaggerCrossValidator(params);
-      validator.evaluate(this.trainSamples, this.folds);
+      final CrossValidationRunner<POSSample> validator = new CrossValidationRunner<POSSample>(
+          this.folds, foldThreads);
+      wordAccuracy = validator.run(this.trainSamples,
+          new CrossValidationRunner.FoldEvaluator<POSSample>() {
+            public Mean evaluate(final int fold,
+                final ObjectStream<POSSample> foldTrainSamples,
+                final ObjectStream<POSSample> foldTestSamples)
+                throws IOException {
+              final POSModel model = POSTaggerME.train(POSCrossValidator.this.lang,
+                  foldTrainSamples, params,
+                  createFoldFactory(params, foldTrainSamples));
+              final POSEvaluator evaluator = new POSEvaluator(new POSTaggerME(
+                  model), monitors);
+              evaluator.evaluate(foldTestSamples);
+              final Mean foldAccuracy = new Mean();
+              foldAccuracy.add(evaluator.getWordAccuracy(),
+                  evaluator.getWordCount());
+              return foldAccuracy;
+            }
+          });
     } catch (final IOException e) {
       logger.error("IO error while loading training set!");
       e.printStackTrace();
@@ -134,55 +161,94 @@ public class POSCrossValidator {
       }
     }
     if (this.detailedListener == null) {
-      System.out.println(validator.getWordAccuracy());
+      System.out.println(wordAccuracy.mean());
     } else {
       // TODO add detailed evaluation here
-      System.out.println(validator.getWordAccuracy());
+      System.out.println(wordAccuracy.mean());
     }
   }
 
   /**
-   * Get the postagger cross validator.
+   * Get the evaluation listeners, synchronized if the folds run concurrently.
+   * 
+   * @param foldThreads
+   *          the number of folds run at the same time
+   * @return the evaluation monitors
+   */
+  private POSTaggerEvaluationMonitor[] getEvaluationMonitors(
+      final int foldThreads) {
+    final POSTaggerEvaluationMonitor[] monitors = new POSTaggerEvaluationMonitor[this.listeners
+        .size()];
+    for (int i = 0; i < monitors.length; i++) {
+      final EvaluationMonitor<POSSample> listener = this.listeners.get(i);
+      monitors[i] = foldThreads > 1 ? new SynchronizedMonitor(listener)
+          : (POSTaggerEvaluationMonitor) listener;
+    }
+    return monitors;
+  }
+
+  /**
+   * Create the factory of a fold, as OpenNLP's POSTaggerCrossValidator does
+   * for every fold: the tag dictionary, if any, is loaded and extended with
+   * the training samples of the fold.
    * 
    * @param params
    *          the training parameters
-   * @return the pos tagger cross validator
+   * @param foldTrainSamples
+   *          the training samples of the fold, reset after use
+   * @return the factory
+   * @throws IOException
+   *           if the tag dictionary can not be loaded
    */
-  private POSTaggerCrossValidator getPOSTaggerCrossValidator(
-      final TrainingParameters params) {
+  private POSTaggerFactory createFoldFactory(final TrainingParameters params,
+      final ObjectStream<POSSample> foldTrainSamples) throws IOException {
     final File dictPath = new File(Flags.getDictionaryFeatures(params));
-    // features
-    if (this.posTaggerFactory == null) {
-      throw new IllegalStateException(
-          "You must create the POSTaggerFactory features!");
+    final POSTaggerFactory factory = POSTaggerFactory.create(
+        this.posTaggerFactory.getClass().getName(), null, null);
+    if (!dictPath.getName().equals(Flags.DEFAULT_DICT_PATH)) {
+      factory.setTagDictionary(factory.createTagDictionary(dictPath));
     }
-    POSTaggerCrossValidator validator = null;
-    if (dictPath.getName().equals(Flags.DEFAULT_DICT_PATH)) {
-      if (this.dictCutOff == Flags.DEFAULT_DICT_CUTOFF) {
-        validator = new POSTaggerCrossValidator(this.lang, params, null, null,
-            null, this.posTaggerFactory.getClass().getName(),
-            this.listeners
-                .toArray(new POSTaggerEvaluationMonitor[this.listeners.size()]));
-      } else {
-        validator = new POSTaggerCrossValidator(this.lang, params, null, null,
-            this.dictCutOff, this.posTaggerFactory.getClass().getName(),
-            this.listeners
-                .toArray(new POSTaggerEvaluationMonitor[this.listeners.size()]));
+    if (this.dictCutOff != Flags.DEFAULT_DICT_CUTOFF) {
+      TagDictionary dict = factory.getTagDictionary();
+      if (dict == null) {
+        dict = factory.createEmptyTagDictionary();
+        factory.setTagDictionary(dict);
       }
-    } else {
-      if (this.dictCutOff == Flags.DEFAULT_DICT_CUTOFF) {
-        validator = new POSTaggerCrossValidator(this.lang, params, dictPath,
-            null, null, this.posTaggerFactory.getClass().getName(),
-            this.listeners
-                .toArray(new POSTaggerEvaluationMonitor[this.listeners.size()]));
+      if (dict instanceof MutableTagDictionary) {
+        POSTaggerME.populatePOSDictionary(foldTrainSamples,
+            (MutableTagDictionary) dict, this.dictCutOff);
       } else {
-        validator = new POSTaggerCrossValidator(this.lang, params, dictPath,
-            null, this.dictCutOff, this.posTaggerFactory.getClass().getName(),
-            this.listeners
-                .toArray(new POSTaggerEvaluationMonitor[this.listeners.size()]));
+        throw new IllegalArgumentException("Can't extend a POSDictionary"
+            + " that does not implement MutableTagDictionary.");
       }
+      foldTrainSamples.reset();
+    }
+    if (factory instanceof BaselineFactory) {
+      ((BaselineFactory) factory).setHashFeatures(Flags.getHashFeatures(params));
+    }
+    return factory;
+  }
+
+  /**
+   * Evaluation monitor serializing the calls to a monitor shared by the
+   * concurrent folds.
+   */
+  private static class SynchronizedMonitor implements POSTaggerEvaluationMonitor {
+    private final EvaluationMonitor<POSSample> monitor;
+
+    SynchronizedMonitor(final EvaluationMonitor<POSSample> aMonitor) {
+      this.monitor = aMonitor;
+    }
+
+    public synchronized void correctlyClassified(final POSSample reference,
+        final POSSample prediction) {
+      this.monitor.correctlyClassified(reference, prediction);
+    }
+
+    public synchronized void missclassified(final POSSample reference,
+        final POSSample prediction) {
+      this.monitor.missclassified(reference, prediction);
     }
-    return validator;
   }
 
 }
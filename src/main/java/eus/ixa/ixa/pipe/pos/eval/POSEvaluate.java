@@ -16,8 +16,9 @@
 
 package eus.ixa.ixa.pipe.pos.eval;
 
-import eus.ixa.ixa.pipe.pos.MorphoSampleStream;
-import eus.ixa.ixa.pipe.pos.train.InputOutputUtils;
+import eus.ixa.ixa.pipe.pos.CompactModel;
+import eus.ixa.ixa.pipe.pos.train.CompiledCorpus;
+import eus.ixa.ixa.pipe.pos.train.FeatureHasher;
 import opennlp.tools.cmdline.postag.POSEvaluationErrorListener;
 import opennlp.tools.cmdline.postag.POSTaggerFineGrainedReportListener;
 import opennlp.tools.postag.*;
@@ -26,6 +27,7 @@ import opennlp.tools.util.eval.EvaluationMonitor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -52,6 +54,10 @@ public class POSEvaluate implements Evaluate {
    * An instance of the probabilistic {@link POSTaggerME}.
    */
   private final POSTaggerME posTagger;
+  /**
+   * The size of the model file in bytes.
+   */
+  private final long modelSize;
 
   /**
    * Construct an evaluator. The features are encoded in the model itself.
@@ -65,12 +71,12 @@ public class POSEvaluate implements Evaluate {
    */
   public POSEvaluate(final String testData, final String model) throws IOException {
 
-    final ObjectStream<String> testStream = InputOutputUtils
-        .readFileIntoMarkableStreamFactory(testData);
-    this.testSamples = new MorphoSampleStream(testStream);
+    this.testSamples = CompiledCorpus.openPOSSamples(testData, 1);
     InputStream trainedModelInputStream = null;
     try {
-      if (posModel == null) {
+      if (posModel == null && CompactModel.isCompact(model)) {
+        posModel = CompactModel.loadPOSModel(new File(model));
+      } else if (posModel == null) {
         trainedModelInputStream = new FileInputStream(model);
         posModel = new POSModel(trainedModelInputStream);
       }
@@ -86,10 +92,12 @@ public class POSEvaluate implements Evaluate {
       }
     }
     this.posTagger = new POSTaggerME(posModel);
+    this.modelSize = new File(model).length();
   }
 
   /**
-   * Evaluate word accuracy.
+   * Evaluate word accuracy, reporting also the size of the model and the
+   * width of its hashed features, if any.
    */
   public final void evaluate() {
     final POSEvaluator evaluator = new POSEvaluator(this.posTagger);
@@ -99,6 +107,10 @@ public class POSEvaluate implements Evaluate {
       e.printStackTrace();
     }
     System.out.println(evaluator.getWordAccuracy());
+    final String hashFeatures = posModel
+        .getManifestProperty(FeatureHasher.HASH_FEATURES_PARAMETER);
+    System.out.println("Model size: " + this.modelSize + " bytes; hashed features: "
+        + (hashFeatures == null ? "no" : hashFeatures + " bits"));
   }
 
   /**
@@ -19,6 +19,7 @@ import eus.ixa.ixa.pipe.pos.MorphoSampleStream;
 import opennlp.tools.cmdline.TerminateToolException;
 import opennlp.tools.dictionary.Dictionary;
 import opennlp.tools.postag.*;
+import opennlp.tools.util.CollectionObjectStream;
 import opennlp.tools.util.ObjectStream;
 import opennlp.tools.util.TrainingParameters;
 import org.apache.logging.log4j.LogManager;
@@ -26,6 +27,7 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Training POS tagger with Apache OpenNLP Machine Learning API.
@@ -52,7 +54,7 @@ public abstract class AbstractTaggerTrainer implements TaggerTrainer {
    * ObjectStream of the automatically created dictionary data, taken from the
    * training data.
    */
-  private MorphoSampleStream dictSamples;
+  private ObjectStream<POSSample> dictSamples;
   /**
    * Cutoff value to create tag dictionary from training data.
    */
@@ -66,6 +68,10 @@ public abstract class AbstractTaggerTrainer implements TaggerTrainer {
    * this one.
    */
   private POSTaggerFactory posTaggerFactory;
+  /**
+   * The word accuracy of the last trained model on the test data.
+   */
+  private double wordAccuracy;
 
   /**
    * Construct an AbstractTrainer. In the params parameter there is information
@@ -81,49 +87,89 @@ public abstract class AbstractTaggerTrainer implements TaggerTrainer {
     this.lang = Flags.getLanguage(params);
     final String trainData = Flags.getDataSet("TrainSet", params);
     final String testData = Flags.getDataSet("TestSet", params);
-    final ObjectStream<String> trainStream = InputOutputUtils
-        .readFileIntoMarkableStreamFactory(trainData);
-    this.trainSamples = new MorphoSampleStream(trainStream);
-    final ObjectStream<String> testStream = InputOutputUtils
-        .readFileIntoMarkableStreamFactory(testData);
-    this.testSamples = new MorphoSampleStream(testStream);
-    final ObjectStream<String> dictStream = InputOutputUtils
-        .readFileIntoMarkableStreamFactory(trainData);
-    setDictSamples(new MorphoSampleStream(dictStream));
+    final int parseThreads = Flags.getParseThreads(params);
+    if (CompiledCorpus.isCompiled(trainData)) {
+      // a single mapping for the training and the dictionary passes
+      final CompiledCorpus trainCorpus = CompiledCorpus.load(trainData);
+      this.trainSamples = trainCorpus.getPOSSamples();
+      setDictSamples(trainCorpus.getPOSSamples());
+    } else {
+      final ObjectStream<String> trainStream = InputOutputUtils
+          .readFileIntoMarkableStreamFactory(trainData);
+      this.trainSamples = MorphoSampleStream.create(trainStream, parseThreads);
+      final ObjectStream<String> dictStream = InputOutputUtils
+          .readFileIntoMarkableStreamFactory(trainData);
+      setDictSamples(new MorphoSampleStream(dictStream));
+    }
+    this.testSamples = CompiledCorpus.openPOSSamples(testData, parseThreads);
     this.dictCutOff = Flags.getAutoDictFeatures(params);
     this.ngramCutOff = Flags.getNgramDictFeatures(params);
 
   }
 
-  /*
-   * (non-Javadoc)
+  /**
+   * Construct an AbstractTrainer over already parsed training and test data,
+   * so that a corpus can be parsed once and shared by several trainings, as
+   * in the {@link GridSearch}. The TrainSet and TestSet parameters are
+   * ignored.
+   * 
+   * @param params
+   *          the training parameters
+   * @param aTrainSamples
+   *          the training samples, which are not copied
+   * @param aTestSamples
+   *          the test samples, which are not copied
+   */
+  public AbstractTaggerTrainer(final TrainingParameters params,
+      final List<POSSample> aTrainSamples, final List<POSSample> aTestSamples) {
+    this.lang = Flags.getLanguage(params);
+    this.trainSamples = new CollectionObjectStream<POSSample>(aTrainSamples);
+    this.testSamples = new CollectionObjectStream<POSSample>(aTestSamples);
+    setDictSamples(new CollectionObjectStream<POSSample>(aTrainSamples));
+    this.dictCutOff = Flags.getAutoDictFeatures(params);
+    this.ngramCutOff = Flags.getNgramDictFeatures(params);
+  }
+
+  /**
+   * Train and evaluate a model. The sample streams are closed afterwards,
+   * releasing the threads of the parallel streams, so a trainer trains a
+   * single model.
    * 
    * @see es.ehu.si.ixa.pipe.pos.train.Trainer#train(opennlp.tools.util.
    * TrainingParameters)
    */
-  public final POSModel train(final TrainingParameters params) {
-    // features
-    if (getPosTaggerFactory() == null) {
-      throw new IllegalStateException(
-          "Classes derived from AbstractTrainer must "
-              + " create a POSTaggerFactory features!");
-    }
-    // training model
-    POSModel trainedModel = null;
-    POSEvaluator posEvaluator = null;
+  public final POSModel train(final TrainingParameters params)
+      throws IOException {
     try {
-      trainedModel = POSTaggerME.train(this.lang, this.trainSamples, params,
-          getPosTaggerFactory());
+      // features
+      if (getPosTaggerFactory() == null) {
+        throw new IllegalStateException(
+            "Classes derived from AbstractTrainer must "
+                + " create a POSTaggerFactory features!");
+      }
+      // training model
+      final POSModel trainedModel = POSTaggerME.train(this.lang,
+          this.trainSamples, params, getPosTaggerFactory());
       final POSTaggerME posTagger = new POSTaggerME(trainedModel);
-      posEvaluator = new POSEvaluator(posTagger);
+      final POSEvaluator posEvaluator = new POSEvaluator(posTagger);
       posEvaluator.evaluate(this.testSamples);
-    } catch (final IOException e) {
-      logger.error("IO error while loading training and test sets!");
-      e.printStackTrace();
-      System.exit(1);
+      this.wordAccuracy = posEvaluator.getWordAccuracy();
+      logger.info("Final result: " + this.wordAccuracy);
+      return trainedModel;
+    } finally {
+      this.trainSamples.close();
+      this.testSamples.close();
+      this.dictSamples.close();
     }
-    System.out.println("Final result: " + posEvaluator.getWordAccuracy());
-    return trainedModel;
+  }
+
+  /**
+   * Get the word accuracy on the test data of the last trained model.
+   * 
+   * @return the word accuracy
+   */
+  public final double getWordAccuracy() {
+    return this.wordAccuracy;
   }
 
   /**
@@ -207,9 +253,9 @@ public abstract class AbstractTaggerTrainer implements TaggerTrainer {
   /**
    * Get the dictSamples to automatically create tag dictionary.
    * 
-   * @return the MorphoSampleStream dictSamples
+   * @return the dictSamples
    */
-  protected final MorphoSampleStream getDictSamples() {
+  protected final ObjectStream<POSSample> getDictSamples() {
     return this.dictSamples;
   }
 
@@ -217,9 +263,9 @@ public abstract class AbstractTaggerTrainer implements TaggerTrainer {
    * Set the dictSamples to automatically create tag dictionary.
    * 
    * @param aDictSamples
-   *          the dict samples as a {@code MorphoSampleStream}
+   *          the dict samples
    */
-  protected final void setDictSamples(final MorphoSampleStream aDictSamples) {
+  protected final void setDictSamples(final ObjectStream<POSSample> aDictSamples) {
     this.dictSamples = aDictSamples;
   }
 
@@ -16,12 +16,13 @@
 package eus.ixa.ixa.pipe.pos.train;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 import opennlp.tools.dictionary.Dictionary;
 import opennlp.tools.postag.POSContextGenerator;
-import opennlp.tools.util.Cache;
 import opennlp.tools.util.StringList;
 
 /**
@@ -30,6 +31,20 @@ import opennlp.tools.util.StringList;
  * {@code @DefaultPOSContextGenerator}. These extra features require at least
  * 2GB memory to train, more if training data is large.
  * 
+ * If caching is enabled, the features of a token which do not depend on the
+ * previous tags (the word, its prefixes and suffixes, its shape and the
+ * surrounding words) are computed once per sentence, the first time the token
+ * is seen, and the contexts are kept in a sentence-scoped table keyed by the
+ * token index and the ids of the two previous tags, so that the hypotheses of
+ * the beam sharing a history reuse the same context. As in the OpenNLP
+ * generators, the sentence is then identified by its token array, which must
+ * not be refilled with another sentence. Without caching nothing is kept
+ * between calls. If the model uses hashed features, the features are hashed
+ * as they are built, so that the token features are hashed once per sentence
+ * and the cached contexts are already hashed. The buffers belong to the
+ * instance; as the {@code POSTaggerME} using it, an instance must not be
+ * shared by threads.
+ * 
  * @author ragerri
  * @version 2014-07-08
  */
@@ -52,17 +67,13 @@ public class BaselineContextGenerator implements POSContextGenerator {
    */
   private static final int SUFFIX_LENGTH = 4;
   /**
-   * Has capital regexp.
-   */
-  private static Pattern hasCap = Pattern.compile("[A-Z]");
-  /**
-   * Has number regexp.
+   * Whether the contexts are cached.
    */
-  private static Pattern hasNum = Pattern.compile("[0-9]");
+  private final boolean useCache;
   /**
-   * The context Cache.
+   * The contexts of the current sentence by token index and tag history.
    */
-  private Cache contextsCache;
+  private final ContextTable contextsCache = new ContextTable();
   /**
    * The words key.
    */
@@ -75,6 +86,28 @@ public class BaselineContextGenerator implements POSContextGenerator {
    * The dictionary ngrams.
    */
   private final String[] dictGram;
+  /**
+   * The features of every token of the current sentence preceding the tag
+   * features, null until the token is seen.
+   */
+  private String[][] headFeatures = new String[0][];
+  /**
+   * The features of every token of the current sentence following the tag
+   * features.
+   */
+  private String[][] tailFeatures = new String[0][];
+  /**
+   * The ids of the tags seen so far, 0 being reserved for no tag.
+   */
+  private final Map<String, Integer> tagIds = new HashMap<String, Integer>();
+  /**
+   * The "pt=" feature of every tag id.
+   */
+  private final List<String> prevTagFeatures = new ArrayList<String>();
+  /**
+   * The hasher of the features, null if the features are not hashed.
+   */
+  private final FeatureHasher hasher;
 
   /**
    * Initializes the current instance.
@@ -95,11 +128,26 @@ public class BaselineContextGenerator implements POSContextGenerator {
    *          the dictionary
    */
   public BaselineContextGenerator(final int cacheSize, final Dictionary aDict) {
+    this(cacheSize, aDict, null);
+  }
+
+  /**
+   * Initializes the current instance.
+   * 
+   * @param cacheSize
+   *          the cache size
+   * @param aDict
+   *          the dictionary
+   * @param aHasher
+   *          the hasher of the features, null if the features are not hashed
+   */
+  public BaselineContextGenerator(final int cacheSize, final Dictionary aDict,
+      final FeatureHasher aHasher) {
     this.dict = aDict;
+    this.hasher = aHasher;
     this.dictGram = new String[1];
-    if (cacheSize > 0) {
-      this.contextsCache = new Cache(cacheSize);
-    }
+    this.useCache = cacheSize > 0;
+    this.prevTagFeatures.add(null);
   }
 
   /**
@@ -158,50 +206,122 @@ public class BaselineContextGenerator implements POSContextGenerator {
    */
   public final String[] getContext(final int index, final Object[] tokens,
       final String[] tags) {
-    String next, nextnext, lex, prev, prevprev;
-    String tagprev, tagprevprev;
-    tagprev = tagprevprev = null;
-    next = nextnext = lex = prev = prevprev = null;
-
-    lex = tokens[index].toString();
-    if (tokens.length > index + 1) {
-      next = tokens[index + 1].toString();
-      if (tokens.length > index + 2) {
-        nextnext = tokens[index + 2].toString();
-      } else {
-        nextnext = this.SE; // Sentence End
+    if (!this.useCache) {
+      // the token array may be a buffer reused for every sentence
+      ensureCapacity(tokens.length);
+    } else if (this.wordsKey != tokens) {
+      startSentence(tokens);
+    }
+    final String tagprev = index - 1 >= 0 ? tags[index - 1] : null;
+    final String tagprevprev = index - 2 >= 0 ? tags[index - 2] : null;
+    final int prevId = getTagId(tagprev);
+    final int prevPrevId = getTagId(tagprevprev);
+    final long cacheKey = ((long) index << 40) | ((long) prevId << 20)
+        | prevPrevId;
+    if (this.useCache) {
+      final String[] cachedContexts = this.contextsCache.get(cacheKey);
+      if (cachedContexts != null) {
+        return cachedContexts;
+      }
+    }
+    if (!this.useCache || this.headFeatures[index] == null) {
+      computeTokenFeatures(index, tokens);
+    }
+    final String[] head = this.headFeatures[index];
+    final String[] tail = this.tailFeatures[index];
+    final String lex = tokens[index].toString();
+    // tail[0] is the ppw feature, null for the first token
+    int size = head.length + tail.length - (tail[0] == null ? 1 : 0);
+    if (prevId != 0) {
+      size += 2;
+    }
+    if (tail[0] != null && prevPrevId != 0) {
+      size++;
+    }
+    final String[] contexts = new String[size];
+    System.arraycopy(head, 0, contexts, 0, head.length);
+    int pos = head.length;
+    if (prevId != 0) {
+      contexts[pos++] = this.prevTagFeatures.get(prevId);
+      // bigram tag-1, w
+      contexts[pos++] = feature("pt,w=" + tagprev + "," + lex);
+    }
+    if (tail[0] != null) {
+      contexts[pos++] = tail[0];
+      if (prevPrevId != 0) {
+        // bigram tag-2,tag-1
+        contexts[pos++] = feature("pt2,pt1=" + tagprevprev + "," + tagprev);
       }
+    }
+    System.arraycopy(tail, 1, contexts, pos, tail.length - 1);
+    if (this.useCache) {
+      this.contextsCache.put(cacheKey, contexts);
+    }
+    return contexts;
+  }
 
-    } else {
-      next = this.SE; // Sentence End
+  /**
+   * Clear the features and contexts of the previous sentence.
+   * 
+   * @param tokens
+   *          the tokens of the new sentence
+   */
+  private void startSentence(final Object[] tokens) {
+    this.wordsKey = tokens;
+    if (!ensureCapacity(tokens.length)) {
+      Arrays.fill(this.headFeatures, null);
+      Arrays.fill(this.tailFeatures, null);
     }
+    this.contextsCache.clear();
+  }
 
-    if (index - 1 >= 0) {
-      prev = tokens[index - 1].toString();
-      tagprev = tags[index - 1];
+  /**
+   * Make room for the token features of a sentence.
+   * 
+   * @param length
+   *          the number of tokens of the sentence
+   * @return true if new, empty, buffers were allocated
+   */
+  private boolean ensureCapacity(final int length) {
+    if (this.headFeatures.length < length) {
+      final int capacity = Math.max(length, this.headFeatures.length * 2);
+      this.headFeatures = new String[capacity][];
+      this.tailFeatures = new String[capacity][];
+      return true;
+    }
+    return false;
+  }
 
-      if (index - 2 >= 0) {
-        prevprev = tokens[index - 2].toString();
-        tagprevprev = tags[index - 2];
-      } else {
-        prevprev = this.SB; // Sentence Beginning
-      }
-    } else {
-      prev = this.SB; // Sentence Beginning
+  /**
+   * Get the id of a tag, interning it the first time it is seen.
+   * 
+   * @param tag
+   *          the tag, possibly null
+   * @return the id, 0 for null
+   */
+  private int getTagId(final String tag) {
+    if (tag == null) {
+      return 0;
     }
-    final String cacheKey = index + tagprev + tagprevprev;
-    if (this.contextsCache != null) {
-      if (this.wordsKey == tokens) {
-        final String[] cachedContexts = (String[]) this.contextsCache
-            .get(cacheKey);
-        if (cachedContexts != null) {
-          return cachedContexts;
-        }
-      } else {
-        this.contextsCache.clear();
-        this.wordsKey = tokens;
-      }
+    Integer tagId = this.tagIds.get(tag);
+    if (tagId == null) {
+      tagId = this.prevTagFeatures.size();
+      this.tagIds.put(tag, tagId);
+      this.prevTagFeatures.add(feature("pt=" + tag));
     }
+    return tagId;
+  }
+
+  /**
+   * Compute the features of a token which do not depend on the tags.
+   * 
+   * @param index
+   *          the token index
+   * @param tokens
+   *          the tokens of the sentence
+   */
+  private void computeTokenFeatures(final int index, final Object[] tokens) {
+    final String lex = tokens[index].toString();
     final List<String> featureList = new ArrayList<String>();
     featureList.add("default");
     // add the word itself
@@ -223,46 +343,147 @@ public class BaselineContextGenerator implements POSContextGenerator {
         featureList.add("h");
       }
 
-      if (hasCap.matcher(lex).find()) {
+      if (hasChar(lex, 'A', 'Z')) {
         featureList.add("c");
       }
 
-      if (hasNum.matcher(lex).find()) {
+      if (hasChar(lex, '0', '9')) {
         featureList.add("d");
       }
     }
-    // add the words and pos's of the surrounding context
-    if (prev != null) {
-      featureList.add("pw=" + prev);
-      // bigram w-1,w
-      featureList.add("pw,w=" + prev + "," + lex);
-      if (tagprev != null) {
-        featureList.add("pt=" + tagprev);
-        // bigram tag-1, w
-        featureList.add("pt,w=" + tagprev + "," + lex);
+    // add the words of the surrounding context
+    final String prev = index - 1 >= 0 ? tokens[index - 1].toString() : this.SB;
+    featureList.add("pw=" + prev);
+    // bigram w-1,w
+    featureList.add("pw,w=" + prev + "," + lex);
+    final String[] head = new String[featureList.size()];
+    for (int i = 0; i < head.length; i++) {
+      head[i] = feature(featureList.get(i));
+    }
+    this.headFeatures[index] = head;
+
+    String prevprev = null;
+    if (index - 2 >= 0) {
+      prevprev = tokens[index - 2].toString();
+    } else if (index - 1 >= 0) {
+      prevprev = this.SB; // Sentence Beginning
+    }
+    String next, nextnext;
+    nextnext = null;
+    if (tokens.length > index + 1) {
+      next = tokens[index + 1].toString();
+      if (tokens.length > index + 2) {
+        nextnext = tokens[index + 2].toString();
+      } else {
+        nextnext = this.SE; // Sentence End
       }
-      if (prevprev != null) {
-        featureList.add("ppw=" + prevprev);
-        if (tagprevprev != null) {
-          // bigram tag-2,tag-1
-          featureList.add("pt2,pt1=" + tagprevprev + "," + tagprev);
+    } else {
+      next = this.SE; // Sentence End
+    }
+    final String[] tail = new String[nextnext == null ? 2 : 3];
+    tail[0] = prevprev == null ? null : feature("ppw=" + prevprev);
+    tail[1] = feature("nw=" + next);
+    if (nextnext != null) {
+      tail[2] = feature("nnw=" + nextnext);
+    }
+    this.tailFeatures[index] = tail;
+  }
+
+  /**
+   * Hash a feature if the features are hashed.
+   * 
+   * @param feature
+   *          the feature
+   * @return the predicate
+   */
+  private String feature(final String feature) {
+    return this.hasher == null ? feature : this.hasher.hash(feature);
+  }
+
+  /**
+   * Whether a word contains a character of a range, as the regular expression
+   * [from-to] would find.
+   * 
+   * @param lex
+   *          the word
+   * @param from
+   *          the first character of the range
+   * @param to
+   *          the last character of the range
+   * @return true if the word contains a character of the range
+   */
+  private static boolean hasChar(final String lex, final char from,
+      final char to) {
+    for (int i = 0; i < lex.length(); i++) {
+      final char c = lex.charAt(i);
+      if (c >= from && c <= to) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Open-addressing table from primitive long keys to contexts, cleared for
+   * every sentence.
+   */
+  private static class ContextTable {
+    private long[] keys = new long[256];
+    private String[][] values = new String[256][];
+    private int size;
+
+    String[] get(final long key) {
+      final int mask = this.keys.length - 1;
+      int slot = hash(key) & mask;
+      while (this.values[slot] != null) {
+        if (this.keys[slot] == key) {
+          return this.values[slot];
         }
+        slot = (slot + 1) & mask;
+      }
+      return null;
+    }
+
+    void put(final long key, final String[] value) {
+      if (this.size * 2 >= this.keys.length) {
+        grow();
+      }
+      final int mask = this.keys.length - 1;
+      int slot = hash(key) & mask;
+      while (this.values[slot] != null && this.keys[slot] != key) {
+        slot = (slot + 1) & mask;
       }
+      if (this.values[slot] == null) {
+        this.size++;
+      }
+      this.keys[slot] = key;
+      this.values[slot] = value;
     }
 
-    if (next != null) {
-      featureList.add("nw=" + next);
-      if (nextnext != null) {
-        featureList.add("nnw=" + nextnext);
+    void clear() {
+      if (this.size > 0) {
+        Arrays.fill(this.values, null);
+        this.size = 0;
+      }
+    }
 
+    private void grow() {
+      final long[] oldKeys = this.keys;
+      final String[][] oldValues = this.values;
+      this.keys = new long[oldKeys.length * 2];
+      this.values = new String[oldValues.length * 2][];
+      this.size = 0;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldValues[i] != null) {
+          put(oldKeys[i], oldValues[i]);
+        }
       }
     }
-    final String[] contexts = featureList
-        .toArray(new String[featureList.size()]);
-    if (this.contextsCache != null) {
-      this.contextsCache.put(cacheKey, contexts);
+
+    private static int hash(final long key) {
+      final long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32));
     }
-    return contexts;
   }
 
 }
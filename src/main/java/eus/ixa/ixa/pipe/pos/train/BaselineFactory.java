@@ -15,6 +15,8 @@
  */
 package eus.ixa.ixa.pipe.pos.train;
 
+import java.util.Map;
+
 import opennlp.tools.dictionary.Dictionary;
 import opennlp.tools.postag.POSContextGenerator;
 import opennlp.tools.postag.POSTaggerFactory;
@@ -22,10 +24,15 @@ import opennlp.tools.postag.TagDictionary;
 
 /**
  * Extends the POSTagger Factory. Right now we only override the context
- * generators.
+ * generators, optionally hashing their features with a {@link FeatureHasher}.
  */
 public class BaselineFactory extends POSTaggerFactory {
 
+  /**
+   * The hash width of the features when training, 0 for no hashing.
+   */
+  private int hashFeatures;
+
   /**
    * Creates a {@link BaselineFactory} that provides the default implementation
    * of the resources.
@@ -47,6 +54,46 @@ public class BaselineFactory extends POSTaggerFactory {
     super(ngramDictionary, posDictionary);
   }
 
+  /**
+   * Hash the features of the model to be trained into 2^bits predicates.
+   * 
+   * @param bits
+   *          the hash width, 0 for no hashing
+   */
+  public final void setHashFeatures(final int bits) {
+    this.hashFeatures = bits;
+  }
+
+  /**
+   * Get the hash width of the features, read from the manifest of a loaded
+   * model.
+   * 
+   * @return the hash width, 0 if the features are not hashed
+   */
+  public final int getHashFeatures() {
+    if (this.artifactProvider != null) {
+      final String bits = this.artifactProvider
+          .getManifestProperty(FeatureHasher.HASH_FEATURES_PARAMETER);
+      return bits == null ? 0 : Integer.parseInt(bits);
+    }
+    return this.hashFeatures;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see opennlp.tools.util.BaseToolFactory#createManifestEntries()
+   */
+  @Override
+  public Map<String, String> createManifestEntries() {
+    final Map<String, String> manifestEntries = super.createManifestEntries();
+    if (getHashFeatures() > 0) {
+      manifestEntries.put(FeatureHasher.HASH_FEATURES_PARAMETER,
+          Integer.toString(getHashFeatures()));
+    }
+    return manifestEntries;
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -54,7 +101,7 @@ public class BaselineFactory extends POSTaggerFactory {
    */
   @Override
   public final POSContextGenerator getPOSContextGenerator() {
-    return new BaselineContextGenerator(0, getDictionary());
+    return new BaselineContextGenerator(0, getDictionary(), getHasher());
   }
 
   /*
@@ -64,7 +111,18 @@ public class BaselineFactory extends POSTaggerFactory {
    */
   @Override
   public final POSContextGenerator getPOSContextGenerator(final int cacheSize) {
-    return new BaselineContextGenerator(cacheSize, getDictionary());
+    return new BaselineContextGenerator(cacheSize, getDictionary(),
+        getHasher());
+  }
+
+  /**
+   * Get the hasher of the features if the model uses hashed features.
+   * 
+   * @return the hasher, null if the features are not hashed
+   */
+  private FeatureHasher getHasher() {
+    final int bits = getHashFeatures();
+    return bits > 0 ? new FeatureHasher(bits) : null;
   }
 
 }
@@ -0,0 +1,410 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos.train;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import opennlp.tools.postag.POSSample;
+import opennlp.tools.util.ObjectStream;
+
+import eus.ixa.ixa.pipe.lemma.LemmaSample;
+import eus.ixa.ixa.pipe.lemma.LemmaSampleStream;
+import eus.ixa.ixa.pipe.pos.MorphoSampleStream;
+
+/**
+ * A training corpus compiled into a binary file which is memory mapped, so
+ * that its samples are read without decoding nor splitting any text. The
+ * tokens, tags and shortest edit scripts of the lemmas are interned into ids;
+ * the file holds the three vocabularies, the offset of every sentence and the
+ * id columns. As the corpus is in the word\tabpostag\tablemma format, the
+ * same compiled corpus provides the {@link POSSample}s of the pos tagger and
+ * the {@link LemmaSample}s of the lemmatizer.
+ * 
+ * A compiled corpus is read-only and thread-safe: every stream over it keeps
+ * its own position, so the training, dictionary and evaluation passes can
+ * share a single mapping. Compiled corpora are recognized by their magic
+ * number wherever a TrainSet or TestSet is read.
+ */
+public class CompiledCorpus {
+
+  /**
+   * Magic number of the compiled corpora.
+   */
+  private static final int MAGIC = 0x49585043;
+  private static final int VERSION = 1;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final String[] tokens;
+  private final String[] tags;
+  private final String[] editScripts;
+  /**
+   * The mapped file.
+   */
+  private final ByteBuffer data;
+  private final int sentences;
+  private final int tokenCount;
+  /**
+   * The positions in the file of the sentence offsets and of the token, tag
+   * and edit script id columns.
+   */
+  private final int offsetsStart;
+  private final int tokenIdsStart;
+  private final int tagIdsStart;
+  private final int editScriptIdsStart;
+
+  /**
+   * Map a compiled corpus.
+   * 
+   * @param corpus
+   *          the compiled corpus file
+   * @throws IOException
+   *           if the file is not a compiled corpus
+   */
+  private CompiledCorpus(final File corpus) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(corpus, "r")) {
+      if (file.length() > Integer.MAX_VALUE) {
+        throw new IOException("Compiled corpus larger than 2GB: " + corpus);
+      }
+      this.data = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+          file.length());
+    }
+    if (this.data.getInt() != MAGIC || this.data.getInt() != VERSION) {
+      throw new IOException("Not a compiled corpus: " + corpus);
+    }
+    this.sentences = this.data.getInt();
+    this.tokenCount = this.data.getInt();
+    this.tokens = readVocabulary(this.data);
+    this.tags = readVocabulary(this.data);
+    this.editScripts = readVocabulary(this.data);
+    this.offsetsStart = this.data.position();
+    this.tokenIdsStart = this.offsetsStart + (this.sentences + 1) * 4;
+    this.tagIdsStart = this.tokenIdsStart + this.tokenCount * 4;
+    this.editScriptIdsStart = this.tagIdsStart + this.tokenCount * 4;
+    if (this.editScriptIdsStart + this.tokenCount * 4 != this.data.limit()) {
+      throw new IOException("Truncated compiled corpus: " + corpus);
+    }
+  }
+
+  /**
+   * Map a compiled corpus.
+   * 
+   * @param corpus
+   *          the path of the compiled corpus
+   * @return the compiled corpus
+   * @throws IOException
+   *           if the file is not a compiled corpus
+   */
+  public static CompiledCorpus load(final String corpus) throws IOException {
+    return new CompiledCorpus(new File(corpus));
+  }
+
+  /**
+   * Check whether a file is a compiled corpus.
+   * 
+   * @param dataSet
+   *          the path of the file
+   * @return true if the file starts with the magic number of the compiled
+   *         corpora
+   * @throws IOException
+   *           if the file can not be read
+   */
+  public static boolean isCompiled(final String dataSet) throws IOException {
+    final File file = new File(dataSet);
+    if (file.length() < 4) {
+      return false;
+    }
+    try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+      return input.readInt() == MAGIC;
+    }
+  }
+
+  /**
+   * Open the {@link POSSample}s of a data set, which is either a compiled
+   * corpus or a text corpus to be parsed.
+   * 
+   * @param dataSet
+   *          the path of the data set
+   * @param parseThreads
+   *          the number of threads parsing a text corpus
+   * @return the sample stream
+   * @throws IOException
+   *           if the data set can not be read
+   */
+  public static ObjectStream<POSSample> openPOSSamples(final String dataSet,
+      final int parseThreads) throws IOException {
+    if (isCompiled(dataSet)) {
+      return load(dataSet).getPOSSamples();
+    }
+    return MorphoSampleStream.create(
+        InputOutputUtils.readFileIntoMarkableStreamFactory(dataSet),
+        parseThreads);
+  }
+
+  /**
+   * Open the {@link LemmaSample}s of a data set, which is either a compiled
+   * corpus or a text corpus to be parsed.
+   * 
+   * @param dataSet
+   *          the path of the data set
+   * @param parseThreads
+   *          the number of threads parsing a text corpus
+   * @return the sample stream
+   * @throws IOException
+   *           if the data set can not be read
+   */
+  public static ObjectStream<LemmaSample> openLemmaSamples(
+      final String dataSet, final int parseThreads) throws IOException {
+    if (isCompiled(dataSet)) {
+      return load(dataSet).getLemmaSamples();
+    }
+    return LemmaSampleStream.create(
+        InputOutputUtils.readFileIntoMarkableStreamFactory(dataSet),
+        parseThreads);
+  }
+
+  /**
+   * Compile a corpus.
+   * 
+   * @param samples
+   *          the samples of the corpus, as parsed by the
+   *          {@link LemmaSampleStream}
+   * @param output
+   *          the compiled corpus file
+   * @throws IOException
+   *           if io error
+   */
+  public static void compile(final ObjectStream<LemmaSample> samples,
+      final File output) throws IOException {
+    final Vocabulary tokenVocabulary = new Vocabulary();
+    final Vocabulary tagVocabulary = new Vocabulary();
+    final Vocabulary editScriptVocabulary = new Vocabulary();
+    final IntColumn offsets = new IntColumn();
+    final IntColumn tokenIds = new IntColumn();
+    final IntColumn tagIds = new IntColumn();
+    final IntColumn editScriptIds = new IntColumn();
+    offsets.add(0);
+    for (LemmaSample sample = samples.read(); sample != null; sample = samples
+        .read()) {
+      final String[] sampleTokens = sample.getTokens();
+      final String[] sampleTags = sample.getTags();
+      final String[] sampleEditScripts = sample.getLemmas();
+      for (int i = 0; i < sampleTokens.length; i++) {
+        tokenIds.add(tokenVocabulary.getId(sampleTokens[i]));
+        tagIds.add(tagVocabulary.getId(sampleTags[i]));
+        editScriptIds.add(editScriptVocabulary.getId(sampleEditScripts[i]));
+      }
+      offsets.add(tokenIds.size());
+    }
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(output)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(offsets.size() - 1);
+      out.writeInt(tokenIds.size());
+      tokenVocabulary.write(out);
+      tagVocabulary.write(out);
+      editScriptVocabulary.write(out);
+      offsets.write(out);
+      tokenIds.write(out);
+      tagIds.write(out);
+      editScriptIds.write(out);
+    }
+  }
+
+  /**
+   * Get the number of sentences.
+   * 
+   * @return the number of sentences
+   */
+  public final int size() {
+    return this.sentences;
+  }
+
+  /**
+   * Get a new stream over the {@link POSSample}s of the corpus.
+   * 
+   * @return the sample stream
+   */
+  public final ObjectStream<POSSample> getPOSSamples() {
+    return new CompiledSampleStream<POSSample>() {
+      @Override
+      protected POSSample getSample(final int start, final int end) {
+        return new POSSample(getColumn(tokenIdsStart, tokens, start, end),
+            getColumn(tagIdsStart, tags, start, end));
+      }
+    };
+  }
+
+  /**
+   * Get a new stream over the {@link LemmaSample}s of the corpus, their lemmas
+   * being the shortest edit scripts.
+   * 
+   * @return the sample stream
+   */
+  public final ObjectStream<LemmaSample> getLemmaSamples() {
+    return new CompiledSampleStream<LemmaSample>() {
+      @Override
+      protected LemmaSample getSample(final int start, final int end) {
+        return new LemmaSample(getColumn(tokenIdsStart, tokens, start, end),
+            getColumn(tagIdsStart, tags, start, end), getColumn(
+                editScriptIdsStart, editScripts, start, end));
+      }
+    };
+  }
+
+  /**
+   * Get the strings of a column for the tokens of a sentence.
+   * 
+   * @param columnStart
+   *          the position of the column in the file
+   * @param vocabulary
+   *          the vocabulary of the column
+   * @param start
+   *          the first token of the sentence
+   * @param end
+   *          the token after the last one of the sentence
+   * @return the strings
+   */
+  private String[] getColumn(final int columnStart, final String[] vocabulary,
+      final int start, final int end) {
+    final String[] column = new String[end - start];
+    for (int i = start; i < end; i++) {
+      // absolute reads, the buffer position is shared by every stream
+      column[i - start] = vocabulary[this.data.getInt(columnStart + i * 4)];
+    }
+    return column;
+  }
+
+  /**
+   * Read a vocabulary at the position of the buffer.
+   * 
+   * @param buffer
+   *          the buffer
+   * @return the strings of the vocabulary, by id
+   */
+  private static String[] readVocabulary(final ByteBuffer buffer) {
+    final String[] vocabulary = new String[buffer.getInt()];
+    for (int i = 0; i < vocabulary.length; i++) {
+      final byte[] bytes = new byte[buffer.getInt()];
+      buffer.get(bytes);
+      vocabulary[i] = new String(bytes, UTF8);
+    }
+    return vocabulary;
+  }
+
+  /**
+   * A stream over the sentences of the corpus.
+   * 
+   * @param <T>
+   *          the sample type
+   */
+  private abstract class CompiledSampleStream<T> implements ObjectStream<T> {
+    private int sentence;
+
+    public final T read() {
+      if (this.sentence == sentences) {
+        return null;
+      }
+      final int offset = offsetsStart + this.sentence * 4;
+      this.sentence++;
+      return getSample(data.getInt(offset), data.getInt(offset + 4));
+    }
+
+    public final void reset() {
+      this.sentence = 0;
+    }
+
+    public final void close() {
+    }
+
+    /**
+     * Build the sample of a sentence.
+     * 
+     * @param start
+     *          the first token of the sentence
+     * @param end
+     *          the token after the last one of the sentence
+     * @return the sample
+     */
+    protected abstract T getSample(int start, int end);
+  }
+
+  /**
+   * Strings interned into consecutive ids while compiling.
+   */
+  private static class Vocabulary {
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+    private final List<String> strings = new ArrayList<String>();
+
+    int getId(final String string) {
+      Integer id = this.ids.get(string);
+      if (id == null) {
+        id = this.strings.size();
+        this.ids.put(string, id);
+        this.strings.add(string);
+      }
+      return id;
+    }
+
+    void write(final DataOutputStream out) throws IOException {
+      out.writeInt(this.strings.size());
+      for (final String string : this.strings) {
+        final byte[] bytes = string.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+    }
+  }
+
+  /**
+   * A growable column of ints.
+   */
+  private static class IntColumn {
+    private int[] values = new int[1024];
+    private int size;
+
+    void add(final int value) {
+      if (this.size == this.values.length) {
+        this.values = Arrays.copyOf(this.values, this.size * 2);
+      }
+      this.values[this.size++] = value;
+    }
+
+    int size() {
+      return this.size;
+    }
+
+    void write(final DataOutputStream out) throws IOException {
+      for (int i = 0; i < this.size; i++) {
+        out.writeInt(this.values[i]);
+      }
+    }
+  }
+}
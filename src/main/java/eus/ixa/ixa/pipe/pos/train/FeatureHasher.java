@@ -0,0 +1,112 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.train;
+
+/**
+ * Maps feature strings into a fixed space of 2^bits predicates, the hashing
+ * trick. A model trained on hashed features has at most 2^bits predicates,
+ * whatever the size of the training corpus, so the width bounds the size of
+ * the predicate table and of the parameters of the model. Colliding features
+ * share their parameters. The same hasher must be used at training and
+ * decoding time, which is why the width is stored in the model manifest.
+ */
+public final class FeatureHasher {
+
+  /**
+   * The manifest property storing the hash width of a model.
+   */
+  public static final String HASH_FEATURES_PARAMETER = "hashFeatures";
+  /**
+   * The maximum hash width.
+   */
+  public static final int MAX_BITS = 30;
+
+  /**
+   * The hash width.
+   */
+  private final int bits;
+  /**
+   * The number of predicates minus one.
+   */
+  private final int mask;
+
+  /**
+   * Construct a feature hasher.
+   * 
+   * @param aBits
+   *          the hash width, between 1 and {@link #MAX_BITS}
+   */
+  public FeatureHasher(final int aBits) {
+    if (aBits < 1 || aBits > MAX_BITS) {
+      throw new IllegalArgumentException("The hash width must be between 1 and "
+          + MAX_BITS + " bits!");
+    }
+    this.bits = aBits;
+    this.mask = (1 << aBits) - 1;
+  }
+
+  /**
+   * Get the hash width.
+   * 
+   * @return the number of bits
+   */
+  public int getBits() {
+    return this.bits;
+  }
+
+  /**
+   * Hash a context.
+   * 
+   * @param features
+   *          the features
+   * @return the hashed predicates, in the same order
+   */
+  public String[] hash(final String[] features) {
+    final String[] predicates = new String[features.length];
+    for (int i = 0; i < features.length; i++) {
+      predicates[i] = hash(features[i]);
+    }
+    return predicates;
+  }
+
+  /**
+   * Hash a feature. The context generators hash the features of a token once
+   * per sentence with this method, instead of hashing every context.
+   * 
+   * @param feature
+   *          the feature
+   * @return the hashed predicate
+   */
+  public String hash(final String feature) {
+    return Integer.toString(bucket(feature), 36);
+  }
+
+  /**
+   * Get the bucket of a feature, mixing the bits of its hash code so that
+   * features differing only in their last characters spread over the space.
+   * 
+   * @param feature
+   *          the feature
+   * @return the bucket
+   */
+  private int bucket(final String feature) {
+    int h = feature.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h & this.mask;
+  }
+}
@@ -16,12 +16,17 @@
 package eus.ixa.ixa.pipe.pos.train;
 
 import java.io.IOException;
+import java.util.List;
 
 import opennlp.tools.dictionary.Dictionary;
+import opennlp.tools.postag.POSSample;
 import opennlp.tools.postag.POSTaggerFactory;
 import opennlp.tools.util.InvalidFormatException;
 import opennlp.tools.util.TrainingParameters;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 /**
  * FixedTrainer to train the pos tagger.
  * 
@@ -29,6 +34,7 @@ import opennlp.tools.util.TrainingParameters;
  * @version 2014-11-26
  */
 public class FixedTrainer extends AbstractTaggerTrainer {
+  private static final Logger logger = LogManager.getLogger(FixedTrainer.class);
 
   /**
    * Extends the {@code AbstractTrainer} providing some {@code POSTaggerFactory}
@@ -41,12 +47,37 @@ public class FixedTrainer extends AbstractTaggerTrainer {
    */
   public FixedTrainer(final TrainingParameters params) throws IOException {
     super(params);
+    createFactory(params);
+  }
+
+  /**
+   * Extends the {@code AbstractTrainer} over already parsed training and test
+   * data.
+   * 
+   * @param params
+   *          the training parameters
+   * @param trainSamples
+   *          the training samples
+   * @param testSamples
+   *          the test samples
+   */
+  public FixedTrainer(final TrainingParameters params,
+      final List<POSSample> trainSamples, final List<POSSample> testSamples) {
+    super(params, trainSamples, testSamples);
+    createFactory(params);
+  }
 
+  /**
+   * Create the {@code POSTaggerFactory} with its tag dictionaries.
+   * 
+   * @param params
+   *          the training parameters
+   */
+  private void createFactory(final TrainingParameters params) {
     final String dictPath = Flags.getDictionaryFeatures(params);
     setPosTaggerFactory(getTrainerFactory(params));
     createTagDictionary(dictPath);
     createAutomaticDictionary(getDictSamples(), getDictCutOff());
-
   }
 
   /**
@@ -66,7 +97,11 @@ public class FixedTrainer extends AbstractTaggerTrainer {
       ngramDictionary = createNgramDictionary(getDictSamples(),
           getNgramDictCutOff());
     }
+    final int hashFeatures = Flags.getHashFeatures(params);
     if (featureSet.equalsIgnoreCase("Opennlp")) {
+      if (hashFeatures != Flags.DEFAULT_HASH_FEATURES) {
+        logger.warn("HashFeatures is only available for the Baseline featureset, ignoring it!");
+      }
       try {
         posTaggerFactory = POSTaggerFactory.create(
             POSTaggerFactory.class.getName(), ngramDictionary, null);
@@ -77,6 +112,7 @@ public class FixedTrainer extends AbstractTaggerTrainer {
       try {
         posTaggerFactory = POSTaggerFactory.create(
             BaselineFactory.class.getName(), ngramDictionary, null);
+        ((BaselineFactory) posTaggerFactory).setHashFeatures(hashFeatures);
       } catch (final InvalidFormatException e) {
         e.printStackTrace();
       }
@@ -33,6 +33,9 @@ public class Flags {
   public static final String DEFAULT_EVAL_FORMAT = "opennlp";
   public static final String DEFAULT_OUTPUT_FORMAT = "naf";
   public static final String DEFAULT_HOSTNAME = "localhost";
+  public static final int DEFAULT_HASH_FEATURES = 0;
+  public static final int DEFAULT_PARSE_THREADS = 1;
+  public static final int DEFAULT_FOLD_THREADS = 1;
 
   private Flags() {
 
@@ -142,6 +145,26 @@ public class Flags {
     return Integer.parseInt(dictionaryFlag);
   }
 
+  public static Integer getHashFeatures(final TrainingParameters params) {
+    Integer hashFeatures = null;
+    if (params.getSettings().get("HashFeatures") == null) {
+      hashFeatures = Flags.DEFAULT_HASH_FEATURES;
+    } else {
+      hashFeatures = Integer.parseInt(params.getSettings().get("HashFeatures"));
+    }
+    return hashFeatures;
+  }
+
+  public static Integer getParseThreads(final TrainingParameters params) {
+    Integer parseThreads = null;
+    if (params.getSettings().get("ParseThreads") == null) {
+      parseThreads = Flags.DEFAULT_PARSE_THREADS;
+    } else {
+      parseThreads = Integer.parseInt(params.getSettings().get("ParseThreads"));
+    }
+    return parseThreads;
+  }
+
   public static Integer getFolds(final TrainingParameters params) {
     Integer folds = null;
     if (params.getSettings().get("Folds") == null) {
@@ -152,6 +175,16 @@ public class Flags {
     return folds;
   }
 
+  public static Integer getFoldThreads(final TrainingParameters params) {
+    Integer foldThreads = null;
+    if (params.getSettings().get("FoldThreads") == null) {
+      foldThreads = Flags.DEFAULT_FOLD_THREADS;
+    } else {
+      foldThreads = Integer.parseInt(params.getSettings().get("FoldThreads"));
+    }
+    return foldThreads;
+  }
+
   public static void componentException() {
     logger.error("Please provide a component name in the Component field in the parameters file!");
     System.exit(1);
@@ -0,0 +1,540 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos.train;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.postag.POSSample;
+import opennlp.tools.postag.POSTaggerME;
+import opennlp.tools.util.ObjectStream;
+import opennlp.tools.util.TrainingParameters;
+import opennlp.tools.util.model.BaseModel;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eus.ixa.ixa.pipe.lemma.LemmaSample;
+import eus.ixa.ixa.pipe.lemma.LemmatizerME;
+import eus.ixa.ixa.pipe.lemma.LemmatizerModel;
+import eus.ixa.ixa.pipe.lemma.train.LemmatizerFixedTrainer;
+
+/**
+ * Hyperparameter grid search over a training parameters file. Every parameter
+ * of the grid takes a list of values, e.g., {@code Iterations=100,300} and
+ * {@code Cutoff=0,2}, and a model is trained with the {@link FixedTrainer} or
+ * the {@link LemmatizerFixedTrainer} for every combination of values, the
+ * rest of the parameters being those of the file. The training and test sets
+ * are parsed once and shared by every training.
+ * 
+ * The trainings run concurrently, but no more of them than the heap can hold:
+ * the number of trainings at the same time is the number of workers, limited
+ * to the free heap after parsing the corpus divided by the memory estimated
+ * for a training. For every configuration, the word accuracy on the test set,
+ * the size of the serialized model, the training time (including the
+ * dictionaries and the evaluation) and the tagging throughput on the test set
+ * are reported. The throughput is measured once every training is done, one
+ * model at a time, timing a second pass over the test set so that the
+ * decoding code is compiled by then. Meanwhile, the trained models are kept
+ * in temporary files rather than on the heap, so that the heap only holds
+ * the models being trained and the model being measured.
+ */
+public class GridSearch {
+  private static final Logger logger = LogManager.getLogger(GridSearch.class);
+
+  /**
+   * Default memory estimated for a training, in megabytes.
+   */
+  public static final int DEFAULT_MEMORY_PER_RUN = 2048;
+  /**
+   * The parameters that define the corpus, which can not be searched.
+   */
+  private static final List<String> CORPUS_PARAMETERS = Arrays.asList(
+      "TrainSet", "TestSet", "Component");
+
+  private final TrainingParameters params;
+  private final Map<String, String[]> grid;
+  private final int workers;
+  private final long memoryPerRun;
+
+  /**
+   * Construct a grid search.
+   * 
+   * @param aParams
+   *          the base training parameters
+   * @param gridValues
+   *          the values of every searched parameter, as Key=value1,value2
+   * @param aWorkers
+   *          the maximum number of trainings at the same time
+   * @param aMemoryPerRun
+   *          the memory estimated for a training, in megabytes
+   */
+  public GridSearch(final TrainingParameters aParams,
+      final List<String> gridValues, final int aWorkers,
+      final int aMemoryPerRun) {
+    if (aWorkers < 1) {
+      throw new IllegalArgumentException("The number of workers must be at least 1!");
+    }
+    if (aMemoryPerRun < 1) {
+      throw new IllegalArgumentException("The memory per training must be at least 1MB!");
+    }
+    this.params = aParams;
+    this.workers = aWorkers;
+    this.memoryPerRun = aMemoryPerRun * 1024L * 1024L;
+    this.grid = new LinkedHashMap<String, String[]>();
+    for (final String gridValue : gridValues) {
+      final int separator = gridValue.indexOf('=');
+      if (separator <= 0 || separator == gridValue.length() - 1) {
+        throw new IllegalArgumentException("Grid parameters must be given as Key=value1,value2: " + gridValue);
+      }
+      final String key = gridValue.substring(0, separator).trim();
+      if (CORPUS_PARAMETERS.contains(key)) {
+        throw new IllegalArgumentException("The " + key + " parameter can not be searched!");
+      }
+      final String[] values = gridValue.substring(separator + 1).split(",");
+      for (int i = 0; i < values.length; i++) {
+        values[i] = values[i].trim();
+      }
+      this.grid.put(key, values);
+    }
+  }
+
+  /**
+   * Run the grid search, printing a line per configuration.
+   * 
+   * @throws IOException
+   *           if the corpus can not be read or a training fails
+   */
+  public final void run() throws IOException {
+    final List<TrainingParameters> configurations = getConfigurations();
+    final String component = Flags.getComponent(this.params);
+    final int parseThreads = Flags.getParseThreads(this.params);
+    final String trainData = Flags.getDataSet("TrainSet", this.params);
+    final String testData = Flags.getDataSet("TestSet", this.params);
+    final List<GridResult> gridResults = new ArrayList<GridResult>();
+    try {
+      searchGrid(configurations, component, parseThreads, trainData, testData,
+          gridResults);
+    } finally {
+      for (final GridResult result : gridResults) {
+        result.deleteModel();
+      }
+    }
+    System.out.println("Configuration\tWord accuracy\tModel size (bytes)"
+        + "\tTraining time (s)\tTokens per second");
+    for (final GridResult result : gridResults) {
+      System.out.println(result.toString());
+    }
+  }
+
+  /**
+   * Train and measure every configuration.
+   * 
+   * @param configurations
+   *          the training parameters of every configuration
+   * @param component
+   *          the component trained
+   * @param parseThreads
+   *          the threads parsing the corpus
+   * @param trainData
+   *          the training set
+   * @param testData
+   *          the test set
+   * @param gridResults
+   *          the list where the results are added, in the order of the
+   *          configurations
+   * @throws IOException
+   *           if the corpus can not be read or a training fails
+   */
+  private void searchGrid(final List<TrainingParameters> configurations,
+      final String component, final int parseThreads, final String trainData,
+      final String testData, final List<GridResult> gridResults)
+      throws IOException {
+    final List<Callable<GridResult>> runs = new ArrayList<Callable<GridResult>>();
+    if (component.equalsIgnoreCase("Lemma")) {
+      final List<LemmaSample> trainSamples = readSamples(CompiledCorpus
+          .openLemmaSamples(trainData, parseThreads));
+      final List<LemmaSample> testSamples = readSamples(CompiledCorpus
+          .openLemmaSamples(testData, parseThreads));
+      for (final TrainingParameters configuration : configurations) {
+        runs.add(new Callable<GridResult>() {
+          public GridResult call() throws IOException {
+            return trainLemmatizer(configuration, trainSamples, testSamples);
+          }
+        });
+      }
+      search(runs, gridResults);
+      for (final GridResult result : gridResults) {
+        measureLemmatizer(result, testSamples);
+      }
+    } else {
+      final List<POSSample> trainSamples = readSamples(CompiledCorpus
+          .openPOSSamples(trainData, parseThreads));
+      final List<POSSample> testSamples = readSamples(CompiledCorpus
+          .openPOSSamples(testData, parseThreads));
+      for (final TrainingParameters configuration : configurations) {
+        runs.add(new Callable<GridResult>() {
+          public GridResult call() throws IOException {
+            return trainTagger(configuration, trainSamples, testSamples);
+          }
+        });
+      }
+      search(runs, gridResults);
+      for (final GridResult result : gridResults) {
+        measureTagger(result, testSamples);
+      }
+    }
+  }
+
+  /**
+   * Run the trainings of every configuration.
+   * 
+   * @param runs
+   *          the trainings
+   * @param gridResults
+   *          the list where the results are added, in the order of the
+   *          trainings
+   * @throws IOException
+   *           if a training fails
+   */
+  private void search(final List<Callable<GridResult>> runs,
+      final List<GridResult> gridResults) throws IOException {
+    final int concurrency = getConcurrency();
+    logger.info("-> Grid search of " + runs.size() + " configurations, "
+        + concurrency + " at the same time");
+    final ExecutorService gridPool = Executors.newFixedThreadPool(concurrency);
+    try {
+      final List<Future<GridResult>> results = new ArrayList<Future<GridResult>>(
+          runs.size());
+      for (final Callable<GridResult> run : runs) {
+        results.add(gridPool.submit(run));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        final GridResult result = getResult(results.get(i));
+        logger.info("-> Configuration " + (i + 1) + "/" + results.size()
+            + " trained: " + result.configuration + ", word accuracy "
+            + result.wordAccuracy);
+        gridResults.add(result);
+      }
+    } finally {
+      gridPool.shutdownNow();
+    }
+  }
+
+  /**
+   * Get the number of trainings run at the same time: the number of workers,
+   * limited by the free heap and the memory estimated for a training.
+   * 
+   * @return the number of trainings at the same time, at least 1
+   */
+  private int getConcurrency() {
+    final Runtime runtime = Runtime.getRuntime();
+    final long usedMemory = runtime.totalMemory() - runtime.freeMemory();
+    final long freeMemory = runtime.maxMemory() - usedMemory;
+    final long memoryLimit = Math.max(1, freeMemory / this.memoryPerRun);
+    if (memoryLimit < this.workers) {
+      logger.warn("Running " + memoryLimit + " trainings at the same time instead of "
+          + this.workers + ": " + freeMemory / (1024 * 1024) + "MB of free heap");
+    }
+    return (int) Math.min(this.workers, memoryLimit);
+  }
+
+  /**
+   * Expand the grid into every combination of values, in the order of the
+   * grid parameters, the last one varying fastest.
+   * 
+   * @return the training parameters of every configuration
+   */
+  private List<TrainingParameters> getConfigurations() {
+    List<Map<String, String>> combinations = new ArrayList<Map<String, String>>();
+    combinations.add(new LinkedHashMap<String, String>());
+    for (final Map.Entry<String, String[]> gridParameter : this.grid.entrySet()) {
+      final List<Map<String, String>> expanded = new ArrayList<Map<String, String>>();
+      for (final Map<String, String> combination : combinations) {
+        for (final String value : gridParameter.getValue()) {
+          final Map<String, String> extended = new LinkedHashMap<String, String>(
+              combination);
+          extended.put(gridParameter.getKey(), value);
+          expanded.add(extended);
+        }
+      }
+      combinations = expanded;
+    }
+    final List<TrainingParameters> configurations = new ArrayList<TrainingParameters>(
+        combinations.size());
+    for (final Map<String, String> combination : combinations) {
+      final TrainingParameters configuration = new TrainingParameters();
+      for (final Map.Entry<String, String> param : this.params.getSettings()
+          .entrySet()) {
+        configuration.put(param.getKey(), param.getValue());
+      }
+      for (final Map.Entry<String, String> value : combination.entrySet()) {
+        configuration.put(value.getKey(), value.getValue());
+      }
+      configurations.add(configuration);
+    }
+    return configurations;
+  }
+
+  /**
+   * Train a pos tagger.
+   * 
+   * @param configuration
+   *          the training parameters
+   * @param trainSamples
+   *          the training samples
+   * @param testSamples
+   *          the test samples
+   * @return the result, with the model saved to a temporary file
+   * @throws IOException
+   *           if the model can not be saved
+   */
+  private GridResult trainTagger(final TrainingParameters configuration,
+      final List<POSSample> trainSamples, final List<POSSample> testSamples)
+      throws IOException {
+    final long trainStart = System.nanoTime();
+    final FixedTrainer trainer = new FixedTrainer(configuration, trainSamples,
+        testSamples);
+    final POSModel model = trainer.train(configuration);
+    final long trainTime = System.nanoTime() - trainStart;
+    return new GridResult(describe(configuration), trainer.getWordAccuracy(),
+        trainTime, saveModel(model));
+  }
+
+  /**
+   * Measure the tagging throughput of a trained pos tagger.
+   * 
+   * @param result
+   *          the result of the training
+   * @param testSamples
+   *          the test samples
+   * @throws IOException
+   *           if the model can not be loaded
+   */
+  private static void measureTagger(final GridResult result,
+      final List<POSSample> testSamples) throws IOException {
+    final POSTaggerME tagger = new POSTaggerME(new POSModel(result.modelFile));
+    // the first pass warms up the decoder, the second one is timed
+    for (int pass = 0; pass < 2; pass++) {
+      long tokens = 0;
+      final long tagStart = System.nanoTime();
+      for (final POSSample sample : testSamples) {
+        tagger.tag(sample.getSentence());
+        tokens += sample.getSentence().length;
+      }
+      result.setThroughput(tokens, System.nanoTime() - tagStart);
+    }
+    result.deleteModel();
+  }
+
+  /**
+   * Train a lemmatizer.
+   * 
+   * @param configuration
+   *          the training parameters
+   * @param trainSamples
+   *          the training samples
+   * @param testSamples
+   *          the test samples
+   * @return the result, with the model saved to a temporary file
+   * @throws IOException
+   *           if the model can not be saved
+   */
+  private GridResult trainLemmatizer(final TrainingParameters configuration,
+      final List<LemmaSample> trainSamples, final List<LemmaSample> testSamples)
+      throws IOException {
+    final long trainStart = System.nanoTime();
+    final LemmatizerFixedTrainer trainer = new LemmatizerFixedTrainer(
+        configuration, trainSamples, testSamples);
+    final LemmatizerModel model = trainer.train(configuration);
+    final long trainTime = System.nanoTime() - trainStart;
+    return new GridResult(describe(configuration), trainer.getWordAccuracy(),
+        trainTime, saveModel(model));
+  }
+
+  /**
+   * Measure the lemmatization throughput of a trained lemmatizer.
+   * 
+   * @param result
+   *          the result of the training
+   * @param testSamples
+   *          the test samples
+   * @throws IOException
+   *           if the model can not be loaded
+   */
+  private static void measureLemmatizer(final GridResult result,
+      final List<LemmaSample> testSamples) throws IOException {
+    final LemmatizerME lemmatizer = new LemmatizerME(new LemmatizerModel(
+        result.modelFile));
+    // the first pass warms up the decoder, the second one is timed
+    for (int pass = 0; pass < 2; pass++) {
+      long tokens = 0;
+      final long tagStart = System.nanoTime();
+      for (final LemmaSample sample : testSamples) {
+        final String[] lemmaClasses = lemmatizer.lemmatize(sample.getTokens(),
+            sample.getTags());
+        lemmatizer.decodeLemmas(sample.getTokens(), lemmaClasses);
+        tokens += sample.getTokens().length;
+      }
+      result.setThroughput(tokens, System.nanoTime() - tagStart);
+    }
+    result.deleteModel();
+  }
+
+  /**
+   * Describe a configuration by the values of the grid parameters.
+   * 
+   * @param configuration
+   *          the training parameters
+   * @return the description
+   */
+  private String describe(final TrainingParameters configuration) {
+    final StringBuilder description = new StringBuilder();
+    for (final String key : this.grid.keySet()) {
+      if (description.length() > 0) {
+        description.append(' ');
+      }
+      description.append(key).append('=')
+          .append(configuration.getSettings().get(key));
+    }
+    return description.toString();
+  }
+
+  /**
+   * Save a trained model to a temporary file, until its throughput is
+   * measured, so that it does not stay on the heap.
+   * 
+   * @param model
+   *          the model
+   * @return the temporary file, of the size of the model on disk
+   * @throws IOException
+   *           if the model can not be saved
+   */
+  private static File saveModel(final BaseModel model) throws IOException {
+    final File modelFile = File.createTempFile("grid-search-", ".bin");
+    // the models of the trainings left running after a failure
+    modelFile.deleteOnExit();
+    try (OutputStream output = new BufferedOutputStream(new FileOutputStream(
+        modelFile))) {
+      model.serialize(output);
+    } catch (final IOException e) {
+      modelFile.delete();
+      throw e;
+    }
+    return modelFile;
+  }
+
+  /**
+   * Read every sample of a stream.
+   * 
+   * @param samples
+   *          the samples
+   * @return the list of samples
+   * @throws IOException
+   *           if io error
+   */
+  private static <T> List<T> readSamples(final ObjectStream<T> samples)
+      throws IOException {
+    final List<T> sampleList = new ArrayList<T>();
+    for (T sample = samples.read(); sample != null; sample = samples.read()) {
+      sampleList.add(sample);
+    }
+    samples.close();
+    return sampleList;
+  }
+
+  /**
+   * Wait for the result of a training.
+   * 
+   * @param result
+   *          the future result
+   * @return the result
+   * @throws IOException
+   *           if the training failed
+   */
+  private static GridResult getResult(final Future<GridResult> result)
+      throws IOException {
+    try {
+      return result.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while searching the grid", e);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * The measures of a configuration.
+   */
+  private static class GridResult {
+    private final String configuration;
+    private final double wordAccuracy;
+    private final long modelSize;
+    private final long trainTime;
+    /**
+     * The file of the trained model, kept until its throughput is measured.
+     */
+    private final File modelFile;
+    private long tokens;
+    private long tagTime;
+
+    GridResult(final String aConfiguration, final double aWordAccuracy,
+        final long aTrainTime, final File aModelFile) {
+      this.configuration = aConfiguration;
+      this.wordAccuracy = aWordAccuracy;
+      this.modelSize = aModelFile.length();
+      this.trainTime = aTrainTime;
+      this.modelFile = aModelFile;
+    }
+
+    void deleteModel() {
+      this.modelFile.delete();
+    }
+
+    void setThroughput(final long aTokens, final long aTagTime) {
+      this.tokens = aTokens;
+      this.tagTime = aTagTime;
+    }
+
+    @Override
+    public String toString() {
+      final double tokensPerSecond = this.tagTime == 0 ? 0 : this.tokens
+          * 1e9 / this.tagTime;
+      return this.configuration + "\t" + this.wordAccuracy + "\t"
+          + this.modelSize + "\t" + String.format("%.1f", this.trainTime / 1e9)
+          + "\t" + String.format("%.0f", tokensPerSecond);
+    }
+  }
+}
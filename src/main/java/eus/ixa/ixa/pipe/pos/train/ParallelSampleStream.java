@@ -0,0 +1,295 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.train;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import opennlp.tools.util.ObjectStream;
+
+/**
+ * Sample stream parsing the sentences of a corpus in parallel. A reader
+ * thread splits the lines into blocks of sentences, a pool of threads parses
+ * the blocks with a {@link SampleParser} and the samples are returned in the
+ * order of the corpus, so that the stream can replace the sequential sample
+ * streams for the trainers and evaluators. As in the sequential streams, a
+ * sentence without valid lines ends the stream. The number of blocks read
+ * ahead is bounded.
+ * 
+ * @param <T>
+ *          the sample type
+ */
+public class ParallelSampleStream<T> implements ObjectStream<T> {
+
+  /**
+   * The number of sentences of a block.
+   */
+  private static final int BLOCK_SIZE = 128;
+
+  private final ObjectStream<String> lines;
+  private final SampleParser<T> parser;
+  private final ExecutorService parsers;
+  /**
+   * The blocks being parsed, in the order of the corpus. A null block marks
+   * the end of the corpus.
+   */
+  private final BlockingQueue<Future<List<T>>> blocks;
+  private Thread reader;
+  private volatile boolean stopped;
+  private Iterator<T> currentBlock;
+  private boolean finished;
+
+  /**
+   * Construct a parallel sample stream.
+   * 
+   * @param aLines
+   *          the lines of the corpus
+   * @param aParser
+   *          the sentence parser
+   * @param threads
+   *          the number of parsing threads
+   */
+  public ParallelSampleStream(final ObjectStream<String> aLines,
+      final SampleParser<T> aParser, final int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("The number of parsing threads must be at least 1!");
+    }
+    this.lines = aLines;
+    this.parser = aParser;
+    this.parsers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(runnable, "sample-parser");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    this.blocks = new ArrayBlockingQueue<Future<List<T>>>(threads * 4);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see opennlp.tools.util.ObjectStream#read()
+   */
+  public T read() throws IOException {
+    if (this.finished) {
+      return null;
+    }
+    if (this.reader == null) {
+      startReader();
+    }
+    while (this.currentBlock == null || !this.currentBlock.hasNext()) {
+      final List<T> block = nextBlock();
+      if (block == null) {
+        this.finished = true;
+        return null;
+      }
+      this.currentBlock = block.iterator();
+    }
+    final T sample = this.currentBlock.next();
+    if (sample == null) {
+      this.finished = true;
+    }
+    return sample;
+  }
+
+  /**
+   * Wait for the next block to be parsed.
+   * 
+   * @return the samples of the block, null at the end of the corpus
+   * @throws IOException
+   *           if the corpus could not be read
+   */
+  private List<T> nextBlock() throws IOException {
+    try {
+      return this.blocks.take().get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while parsing samples");
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Start reading the corpus from its current position.
+   */
+  private void startReader() {
+    this.stopped = false;
+    this.reader = new Thread(new Runnable() {
+      public void run() {
+        readBlocks();
+      }
+    }, "sample-reader");
+    this.reader.setDaemon(true);
+    this.reader.start();
+  }
+
+  /**
+   * Stop the reader, discarding the blocks read ahead.
+   */
+  private void stopReader() {
+    if (this.reader == null) {
+      return;
+    }
+    this.stopped = true;
+    try {
+      while (this.reader.isAlive()) {
+        // unblock the reader if it waits for room in the queue
+        this.blocks.clear();
+        this.reader.join(10);
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    this.blocks.clear();
+    this.reader = null;
+    this.currentBlock = null;
+  }
+
+  /**
+   * Split the corpus into blocks of sentences and submit them to the parsing
+   * threads. Runs in the reader thread.
+   */
+  private void readBlocks() {
+    try {
+      List<List<String>> block = new ArrayList<List<String>>(BLOCK_SIZE);
+      List<String> sentence = new ArrayList<String>();
+      String line;
+      do {
+        line = this.lines.read();
+        if (line == null || line.equals("")) {
+          block.add(sentence);
+          sentence = new ArrayList<String>();
+          if (block.size() == BLOCK_SIZE || line == null) {
+            submit(block);
+            block = new ArrayList<List<String>>(BLOCK_SIZE);
+          }
+        } else {
+          sentence.add(line);
+        }
+      } while (line != null && !this.stopped);
+      enqueue(new FutureTask<List<T>>(new Callable<List<T>>() {
+        public List<T> call() {
+          return null;
+        }
+      }));
+    } catch (final IOException e) {
+      failed(e);
+    } catch (final RuntimeException e) {
+      failed(e);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Submit a block of sentences to be parsed.
+   * 
+   * @param block
+   *          the sentences
+   * @throws InterruptedException
+   *           if interrupted while waiting for room in the queue
+   */
+  private void submit(final List<List<String>> block)
+      throws InterruptedException {
+    final Future<List<T>> parsedBlock = this.parsers
+        .submit(new Callable<List<T>>() {
+          public List<T> call() {
+            final List<T> samples = new ArrayList<T>(block.size());
+            for (final List<String> sentence : block) {
+              samples.add(ParallelSampleStream.this.parser.parse(sentence));
+            }
+            return samples;
+          }
+        });
+    this.blocks.put(parsedBlock);
+  }
+
+  /**
+   * Pass an error of the reader to the consumer.
+   * 
+   * @param e
+   *          the error
+   */
+  private void failed(final Exception e) {
+    try {
+      enqueue(new FutureTask<List<T>>(new Callable<List<T>>() {
+        public List<T> call() throws Exception {
+          throw e;
+        }
+      }));
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Run a task in the reader thread and queue it.
+   * 
+   * @param task
+   *          the task
+   * @throws InterruptedException
+   *           if interrupted while waiting for room in the queue
+   */
+  private void enqueue(final FutureTask<List<T>> task)
+      throws InterruptedException {
+    task.run();
+    while (!this.stopped) {
+      if (this.blocks.offer(task, 10, TimeUnit.MILLISECONDS)) {
+        return;
+      }
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see opennlp.tools.util.ObjectStream#reset()
+   */
+  public void reset() throws IOException {
+    stopReader();
+    this.finished = false;
+    this.lines.reset();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see opennlp.tools.util.ObjectStream#close()
+   */
+  public void close() throws IOException {
+    stopReader();
+    this.parsers.shutdownNow();
+    this.lines.close();
+  }
+}
@@ -0,0 +1,37 @@
+/*
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.pos.train;
+
+import java.util.List;
+
+/**
+ * Parses the lines of a sentence of a training corpus into a sample.
+ * Implementations must be thread-safe to be used by a
+ * {@link ParallelSampleStream}.
+ * 
+ * @param <T>
+ *          the sample type
+ */
+public interface SampleParser<T> {
+
+  /**
+   * Parse a sentence.
+   * 
+   * @param lines
+   *          the lines of the sentence, without the empty line ending it
+   * @return the sample, or null if the sentence has no valid lines, which
+   *         ends the stream
+   */
+  T parse(List<String> lines);
+}
@@ -0,0 +1,104 @@
+package eus.ixa.ixa.pipe.lemma;
+
+import eus.ixa.ixa.pipe.pos.train.FeatureHasher;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class DefaultLemmatizerContextGeneratorTest {
+    private String[][] sentences = {
+        {"The", "well-known", "dogs", "barked", "at", "3", "cats", "."},
+        {"Hi", "!"},
+        {"Donostia", "hosted", "the", "2016", "European", "Capital", "of", "Culture", "."}
+    };
+    private String[] tagSet = {"DT", "JJ", "NNS", "VBD", "IN", "CD", "NNP", "."};
+    private String[] predSet = {"O", "R0", "D1", "D2I1"};
+
+    /**
+     * The features as computed, for every call, by the generator before the
+     * token features were precomputed per sentence.
+     */
+    private static String[] referenceContext(int index, String[] toks, String[] tags, String[] preds) {
+        String lex = toks[index];
+        String p_1 = index < 1 ? "p_1=bos" : "p_1=" + preds[index - 1];
+        String w0 = "w0=" + toks[index];
+        String t0 = "t0=" + tags[index];
+        List<String> features = new ArrayList<String>();
+        features.add(w0);
+        features.add(t0);
+        features.add(p_1);
+        features.add(p_1 + t0);
+        features.add(p_1 + w0);
+        for (String suff : DefaultLemmatizerContextGenerator.getSuffixes(lex)) {
+            features.add("suf=" + suff);
+        }
+        for (String pref : DefaultLemmatizerContextGenerator.getPrefixes(lex)) {
+            features.add("pre=" + pref);
+        }
+        if (lex.indexOf('-') != -1) {
+            features.add("h");
+        }
+        if (lex.matches(".*[A-Z].*")) {
+            features.add("c");
+        }
+        if (lex.matches(".*[0-9].*")) {
+            features.add("d");
+        }
+        return features.toArray(new String[features.size()]);
+    }
+
+    private void checkSentences(DefaultLemmatizerContextGenerator generator, FeatureHasher hasher) {
+        for (String[] sentence : sentences) {
+            String[] tags = new String[sentence.length];
+            for (int i = 0; i < sentence.length; i++) {
+                tags[i] = tagSet[i % tagSet.length];
+            }
+            // several prediction histories per token, as the beam search asks for
+            for (int history = 0; history < 3; history++) {
+                String[] preds = new String[sentence.length];
+                for (int i = 0; i < sentence.length; i++) {
+                    preds[i] = predSet[(i + history) % predSet.length];
+                }
+                for (int i = 0; i < sentence.length; i++) {
+                    String[] expected = referenceContext(i, sentence, tags, preds);
+                    if (hasher != null) {
+                        expected = hasher.hash(expected);
+                    }
+                    assertArrayEquals(expected, generator.getContext(i, sentence, tags, preds));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSameFeatures() {
+        checkSentences(new DefaultLemmatizerContextGenerator(), null);
+    }
+
+    @Test
+    public void testHashedFeatures() {
+        FeatureHasher hasher = new FeatureHasher(18);
+        checkSentences(new DefaultLemmatizerContextGenerator(hasher), hasher);
+    }
+
+    @Test
+    public void testReusedBuffers() {
+        DefaultLemmatizerContextGenerator generator = new DefaultLemmatizerContextGenerator();
+        String[] toks = new String[4];
+        String[] tags = new String[4];
+        String[] preds = {"O", "O", "R0", "O"};
+        String[][] tokRefills = {{"The", "dogs", "barked", "."}, {"A", "cat", "slept", "!"}, {"A", "cat", "sleeps", "!"}};
+        String[][] tagRefills = {{"DT", "NNS", "VBD", "."}, {"DT", "NN", "VBD", "."}, {"DT", "NN", "VBZ", "."}};
+        for (int refill = 0; refill < tokRefills.length; refill++) {
+            System.arraycopy(tokRefills[refill], 0, toks, 0, toks.length);
+            System.arraycopy(tagRefills[refill], 0, tags, 0, tags.length);
+            for (int i = 0; i < toks.length; i++) {
+                assertArrayEquals(referenceContext(i, tokRefills[refill], tagRefills[refill], preds),
+                    generator.getContext(i, toks, tags, preds));
+            }
+        }
+    }
+}
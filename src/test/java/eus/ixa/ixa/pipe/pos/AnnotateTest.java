@@ -0,0 +1,152 @@
+package eus.ixa.ixa.pipe.pos;
+
+import eus.ixa.ixa.pipe.lemma.StatisticalLemmatizer;
+import ixa.kaflib.KAFDocument;
+import ixa.kaflib.Term;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+
+public class AnnotateTest {
+    private String posTaggerModelName = "models/en/en-test-pos-perceptron-autodict01-ud.bin";
+    private String lemmatizerModelName = "models/en/en-test-lemma-perceptron-ud.bin";
+    private String[][] sentences = {
+        {"The", "cats", "were", "sitting", "on", "the", "mats", "in", "London", "yesterday", "."},
+        {"Dogs", "bark", "."},
+        {"She", "has", "written", "three", "better", "books", "than", "him", "."},
+        {"It", "rains", "."},
+        {"The", "children", "went", "to", "school", "by", "bus", "every", "morning", "."},
+        {"Yes", "!"},
+        {"Running", "is", "healthier", "than", "walking", "."},
+        {"The", "geese", "flew", "south", "."},
+        {"We", "bought", "2", "new", "computers", "for", "the", "office", "."},
+        {"Thanks", "."}
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Properties getProperties(String sentenceThreads) throws Exception {
+        Properties prop = new Properties();
+        prop.setProperty("language", "en");
+        prop.setProperty("model", AnnotateTest.class.getClassLoader().getResource(posTaggerModelName).getPath());
+        prop.setProperty("lemmatizerModel", AnnotateTest.class.getClassLoader().getResource(lemmatizerModelName).getPath());
+        prop.setProperty("resourcesDirectory", folder.newFolder("resources-" + sentenceThreads).getPath());
+        prop.setProperty("sentenceThreads", sentenceThreads);
+        return prop;
+    }
+
+    private KAFDocument getDocument() {
+        KAFDocument kaf = new KAFDocument("en", "v1.naf");
+        int offset = 0;
+        for (int s = 0; s < sentences.length; s++) {
+            for (String token : sentences[s]) {
+                kaf.newWF(offset, token, s + 1);
+                offset += token.length() + 1;
+            }
+        }
+        return kaf;
+    }
+
+    /**
+     * Check the terms against the morphemes as built before the columnar
+     * analysis: the tags as a list, then one morpheme per token.
+     */
+    private void checkSameTerms(Properties prop, List<Term> terms) {
+        MorphoFactory morphoFactory = new MorphoFactory();
+        StatisticalTagger posTagger = new StatisticalTagger(prop, morphoFactory);
+        StatisticalLemmatizer lemmatizer = new StatisticalLemmatizer(prop, morphoFactory);
+        int t = 0;
+        for (String[] tokens : sentences) {
+            List<String> posTags = posTagger.posAnnotate(tokens);
+            List<Morpheme> morphemes = lemmatizer.getMorphemes(tokens, posTags.toArray(new String[posTags.size()]));
+            for (Morpheme morpheme : morphemes) {
+                Term term = terms.get(t++);
+                String posId = Resources.getKafTagSet(morpheme.getTag(), "en");
+                assertEquals(morpheme.getWord(), morpheme.getTag(), term.getMorphofeat());
+                assertEquals(morpheme.getWord(), morpheme.getLemma(), term.getLemma());
+                assertEquals(morpheme.getWord(), posId, term.getPos());
+                assertEquals(morpheme.getWord(), Resources.setTermType(posId), term.getType());
+            }
+        }
+        assertEquals(t, terms.size());
+    }
+
+    @Test
+    public void testSameTermsAsMorphemes() throws Exception {
+        Properties prop = getProperties("1");
+        KAFDocument kaf = getDocument();
+        try (Annotate annotator = new Annotate(prop)) {
+            // a single analysis is reused for sentences of different lengths
+            annotator.annotatePOSToKAF(kaf);
+        }
+        checkSameTerms(prop, kaf.getTerms());
+    }
+
+    @Test
+    public void testSameTermsInParallel() throws Exception {
+        Properties prop = getProperties("2");
+        KAFDocument kaf = getDocument();
+        try (Annotate annotator = new Annotate(prop)) {
+            annotator.annotatePOSToKAF(kaf);
+        }
+        checkSameTerms(prop, kaf.getTerms());
+    }
+
+    @Test
+    public void testParallelDecodersOfTheLoadedModels() throws Exception {
+        Properties prop = getProperties("4");
+        String expected;
+        try (Annotate annotator = new Annotate(prop)) {
+            expected = annotator.annotatePOSToCoNLL(getDocument());
+        }
+        // copies of the models, removed before the pool threads build their decoders
+        File posModel = new File(folder.getRoot(), "pos.bin");
+        File lemmatizerModel = new File(folder.getRoot(), "lemma.bin");
+        try (InputStream model = AnnotateTest.class.getClassLoader().getResourceAsStream(posTaggerModelName)) {
+            Files.copy(model, posModel.toPath());
+        }
+        try (InputStream model = AnnotateTest.class.getClassLoader().getResourceAsStream(lemmatizerModelName)) {
+            Files.copy(model, lemmatizerModel.toPath());
+        }
+        prop.setProperty("model", posModel.getPath());
+        prop.setProperty("lemmatizerModel", lemmatizerModel.getPath());
+        try (Annotate annotator = new Annotate(prop)) {
+            Files.delete(posModel.toPath());
+            Files.delete(lemmatizerModel.toPath());
+            assertEquals(expected, annotator.annotatePOSToCoNLL(getDocument()));
+        }
+    }
+
+    @Test
+    public void testReusedAnalysis() {
+        SentenceAnalysis analysis = new SentenceAnalysis();
+        analysis.reset(sentences[0]);
+        analysis.setTags(sentences[0]);
+        analysis.setLemmas(sentences[0]);
+        analysis.reset(sentences[1]);
+        assertEquals(3, analysis.size());
+        analysis.setTags(new String[] {"noun", "verb", "punct"});
+        analysis.setLemmas(new String[] {"dog", "bark", "."});
+        assertEquals("Dogs", analysis.getForm(0));
+        assertEquals("NOUN", analysis.getTag(0));
+        assertEquals("bark", analysis.getLemma(1));
+        // a longer sentence than the capacity grows the buffers
+        String[] longSentence = new String[100];
+        for (int i = 0; i < longSentence.length; i++) {
+            longSentence[i] = "w" + i;
+        }
+        analysis.reset(longSentence);
+        analysis.setTags(longSentence);
+        assertEquals(100, analysis.size());
+        assertEquals("W99", analysis.getTag(99));
+    }
+}
@@ -0,0 +1,148 @@
+package eus.ixa.ixa.pipe.pos;
+
+import ixa.kaflib.KAFDocument;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchAnnotateTest {
+    private String posTaggerModelName = "models/en/en-test-pos-perceptron-autodict01-ud.bin";
+    private String lemmatizerModelName = "models/en/en-test-lemma-perceptron-ud.bin";
+
+    private String[][] sentences = {
+        {"The", "cats", "were", "sitting", "on", "the", "mats", "in", "London", "yesterday", "."},
+        {"Dogs", "bark", "."},
+        {"She", "has", "written", "three", "better", "books", "than", "him", "."},
+        {"The", "geese", "flew", "south", "."},
+        {"Thanks", "."}
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BatchAnnotate createBatchAnnotate() throws IOException {
+        Properties prop = new Properties();
+        prop.setProperty("language", "en");
+        prop.setProperty("model", BatchAnnotateTest.class.getClassLoader().getResource(posTaggerModelName).getPath());
+        prop.setProperty("lemmatizerModel", BatchAnnotateTest.class.getClassLoader().getResource(lemmatizerModelName).getPath());
+        prop.setProperty("resourcesDirectory", folder.newFolder("resources").getPath());
+        return new BatchAnnotate(prop, "naf", false, 1);
+    }
+
+    private File writeFileList(String... lines) throws IOException {
+        File fileList = folder.newFile("files.txt");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(fileList), "UTF-8")) {
+            for (String line : lines) {
+                writer.write(line + "\n");
+            }
+        }
+        return fileList;
+    }
+
+    @Test(expected = IOException.class)
+    public void testParentPathRejected() throws IOException {
+        try (BatchAnnotate batchAnnotate = createBatchAnnotate()) {
+            File outputDir = folder.newFolder("output");
+            batchAnnotate.annotateFileList(writeFileList("docs/../../escape.naf"), outputDir);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testDuplicateOutputRejected() throws IOException {
+        try (BatchAnnotate batchAnnotate = createBatchAnnotate()) {
+            File outputDir = folder.newFolder("output");
+            batchAnnotate.annotateFileList(writeFileList("docs/a.naf", "docs/./a.naf"), outputDir);
+        }
+    }
+
+    /**
+     * Write a NAF document of the sentences, starting at a different sentence
+     * for every document.
+     */
+    private void writeDocument(File file, int d) throws IOException {
+        KAFDocument kaf = new KAFDocument("en", "v1.naf");
+        int offset = 0;
+        for (int s = 0; s < sentences.length; s++) {
+            for (String token : sentences[(s + d) % sentences.length]) {
+                kaf.newWF(offset, token, s + 1);
+                offset += token.length() + 1;
+            }
+        }
+        file.getParentFile().mkdirs();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            writer.write(kaf.toString());
+        }
+    }
+
+    private static KAFDocument readDocument(File file) throws Exception {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+            return KAFDocument.createFromStream(reader);
+        }
+    }
+
+    @Test
+    public void testAnnotateDirectoryInParallel() throws Exception {
+        // copies of the models, removed once the batch annotator is built
+        File posModel = new File(folder.getRoot(), "pos.bin");
+        File lemmatizerModel = new File(folder.getRoot(), "lemma.bin");
+        try (InputStream model = BatchAnnotateTest.class.getClassLoader().getResourceAsStream(posTaggerModelName)) {
+            Files.copy(model, posModel.toPath());
+        }
+        try (InputStream model = BatchAnnotateTest.class.getClassLoader().getResourceAsStream(lemmatizerModelName)) {
+            Files.copy(model, lemmatizerModel.toPath());
+        }
+        Properties prop = new Properties();
+        prop.setProperty("language", "en");
+        prop.setProperty("model", posModel.getPath());
+        prop.setProperty("lemmatizerModel", lemmatizerModel.getPath());
+        prop.setProperty("resourcesDirectory", folder.newFolder("resources").getPath());
+
+        File inputDir = folder.newFolder("input");
+        String[] documents = {"a.naf", "b.naf", "news/c.naf", "news/d.naf", "news/2016/e.naf", "blogs/f.naf"};
+        Map<String, String> expected = new HashMap<String, String>();
+        try (Annotate annotator = new Annotate(prop)) {
+            for (int d = 0; d < documents.length; d++) {
+                File document = new File(inputDir, documents[d]);
+                writeDocument(document, d);
+                expected.put(documents[d] + ".conll", annotator.annotatePOSToCoNLL(readDocument(document)));
+            }
+        }
+
+        File outputDir = folder.newFolder("output");
+        try (BatchAnnotate batchAnnotate = new BatchAnnotate(prop, "conll", false, 4)) {
+            // the models are loaded once, when the batch annotator is built
+            Files.delete(posModel.toPath());
+            Files.delete(lemmatizerModel.toPath());
+            assertEquals(0, batchAnnotate.annotateDirectory(inputDir, outputDir));
+        }
+
+        TreeSet<String> outputPaths = new TreeSet<String>();
+        for (File output : StringUtils.getFilesInDir(outputDir)) {
+            Path relativePath = outputDir.toPath().relativize(output.toPath());
+            String outputPath = relativePath.toString().replace(File.separatorChar, '/');
+            outputPaths.add(outputPath);
+            assertEquals(outputPath, expected.get(outputPath), new String(Files.readAllBytes(output.toPath()), "UTF-8"));
+        }
+        assertEquals(new TreeSet<String>(Arrays.asList("a.naf.conll", "b.naf.conll", "blogs/f.naf.conll",
+            "news/2016/e.naf.conll", "news/c.naf.conll", "news/d.naf.conll")), outputPaths);
+    }
+}
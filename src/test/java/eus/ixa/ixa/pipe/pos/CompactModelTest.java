@@ -0,0 +1,66 @@
+package eus.ixa.ixa.pipe.pos;
+
+import opennlp.tools.ml.model.MaxentModel;
+import opennlp.tools.postag.POSContextGenerator;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.postag.POSTaggerME;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompactModelTest {
+    private String posTaggerModelName = "models/en/en-test-pos-perceptron-autodict01-ud.bin";
+    private String[] tokens = {"The", "cat", "sat", "on", "the", "mat", "in", "London", "yesterday", "."};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private POSModel loadZipModel() throws Exception {
+        try (InputStream modelStream = CompactModelTest.class.getClassLoader().getResourceAsStream(posTaggerModelName)) {
+            return new POSModel(modelStream);
+        }
+    }
+
+    @Test
+    public void testEvalWithSharedBuffer() throws Exception {
+        POSModel zipModel = loadZipModel();
+        File compactFile = folder.newFile("en-test-pos.compact");
+        CompactModel.write(zipModel, compactFile);
+        assertTrue(CompactModel.isCompact(compactFile.getPath()));
+        POSModel compactModel = CompactModel.loadPOSModel(compactFile);
+
+        MaxentModel zipMaxent = zipModel.getPosModel();
+        MaxentModel compactMaxent = compactModel.getPosModel();
+        POSContextGenerator contextGenerator = zipModel.getFactory().getPOSContextGenerator();
+        // the same arrays are passed on every call, as the beam search does
+        double[] zipProbs = new double[zipMaxent.getNumOutcomes()];
+        double[] compactProbs = new double[compactMaxent.getNumOutcomes()];
+        String[] tags = new String[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            String[] context = contextGenerator.getContext(i, tokens, tags, null);
+            zipMaxent.eval(context, zipProbs);
+            compactMaxent.eval(context, compactProbs);
+            assertArrayEquals(zipProbs, compactProbs, 1e-9);
+            assertArrayEquals(zipMaxent.eval(context), compactMaxent.eval(context), 1e-9);
+            tags[i] = zipMaxent.getBestOutcome(zipProbs);
+        }
+    }
+
+    @Test
+    public void testSameTags() throws Exception {
+        POSModel zipModel = loadZipModel();
+        File compactFile = folder.newFile("en-test-pos.compact");
+        CompactModel.write(zipModel, compactFile);
+        POSModel compactModel = CompactModel.loadPOSModel(compactFile);
+
+        String[] zipTags = new POSTaggerME(zipModel).tag(tokens);
+        String[] compactTags = new POSTaggerME(compactModel).tag(tokens);
+        assertArrayEquals(zipTags, compactTags);
+    }
+}
@@ -0,0 +1,112 @@
+package eus.ixa.ixa.pipe.pos;
+
+import ixa.kaflib.KAFDocument;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConcurrentAnnotateTest {
+    private static final int THREADS = 8;
+    private static final int DOCUMENTS = 64;
+    private String posTaggerModelName = "models/en/en-test-pos-perceptron-autodict01-ud.bin";
+    private String lemmatizerModelName = "models/en/en-test-lemma-perceptron-ud.bin";
+    private String[][] sentences = {
+        {"The", "cats", "were", "sitting", "on", "the", "mats", "in", "London", "yesterday", "."},
+        {"Dogs", "bark", "."},
+        {"She", "has", "written", "three", "better", "books", "than", "him", "."},
+        {"It", "rains", "."},
+        {"The", "children", "went", "to", "school", "by", "bus", "every", "morning", "."},
+        {"Yes", "!"},
+        {"Running", "is", "healthier", "than", "walking", "."},
+        {"The", "geese", "flew", "south", "."},
+        {"We", "bought", "2", "new", "computers", "for", "the", "office", "."},
+        {"Thanks", "."}
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Copy the models to the temporary folder, so that they can be removed.
+     */
+    private Properties getProperties() throws Exception {
+        File models = folder.newFolder("models");
+        File posModel = new File(models, "pos.bin");
+        File lemmatizerModel = new File(models, "lemma.bin");
+        try (InputStream model = getClass().getClassLoader().getResourceAsStream(posTaggerModelName)) {
+            Files.copy(model, posModel.toPath());
+        }
+        try (InputStream model = getClass().getClassLoader().getResourceAsStream(lemmatizerModelName)) {
+            Files.copy(model, lemmatizerModel.toPath());
+        }
+        Properties prop = new Properties();
+        prop.setProperty("language", "en");
+        prop.setProperty("model", posModel.getPath());
+        prop.setProperty("lemmatizerModel", lemmatizerModel.getPath());
+        prop.setProperty("resourcesDirectory", folder.newFolder("resources").getPath());
+        return prop;
+    }
+
+    /**
+     * Build a document of the sentences, starting at a different sentence for
+     * every document.
+     */
+    private KAFDocument getDocument(int d) {
+        KAFDocument kaf = new KAFDocument("en", "v1.naf");
+        int offset = 0;
+        for (int s = 0; s < sentences.length; s++) {
+            for (String token : sentences[(s + d) % sentences.length]) {
+                kaf.newWF(offset, token, s + 1);
+                offset += token.length() + 1;
+            }
+        }
+        return kaf;
+    }
+
+    @Test
+    public void testSameOutputAsSequentialAnnotate() throws Exception {
+        Properties prop = getProperties();
+        List<String> expected = new ArrayList<String>();
+        try (Annotate annotator = new Annotate(prop)) {
+            for (int d = 0; d < DOCUMENTS; d++) {
+                expected.add(annotator.annotatePOSToCoNLL(getDocument(d)));
+            }
+        }
+
+        final ConcurrentAnnotate concurrentAnnotator = new ConcurrentAnnotate(prop);
+        // the leases are built from the loaded models, not from the files
+        new File(prop.getProperty("model")).delete();
+        new File(prop.getProperty("lemmatizerModel")).delete();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<String>> outputs = new ArrayList<Future<String>>();
+            for (int d = 0; d < DOCUMENTS; d++) {
+                final KAFDocument kaf = getDocument(d);
+                outputs.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return concurrentAnnotator.annotatePOSToCoNLL(kaf);
+                    }
+                }));
+            }
+            for (int d = 0; d < DOCUMENTS; d++) {
+                assertEquals(expected.get(d), outputs.get(d).get());
+            }
+        } finally {
+            executor.shutdown();
+            concurrentAnnotator.close();
+        }
+    }
+}
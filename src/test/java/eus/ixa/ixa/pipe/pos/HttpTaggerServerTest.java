@@ -0,0 +1,153 @@
+package eus.ixa.ixa.pipe.pos;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import eus.ixa.ixa.pipe.lemma.StatisticalLemmatizer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HttpTaggerServerTest {
+    private static String posTaggerModelName = "models/en/en-test-pos-perceptron-autodict01-ud.bin";
+    private static String lemmatizerModelName = "models/en/en-test-lemma-perceptron-ud.bin";
+    private static final int MAX_REQUEST_SIZE = 4096;
+
+    private static Properties prop;
+    private static HttpTaggerServer server;
+    private static URL tagURL;
+
+    private static class Response {
+        private int status;
+        private JsonObject body;
+    }
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        int port;
+        try (ServerSocket freePort = new ServerSocket(0)) {
+            port = freePort.getLocalPort();
+        }
+        prop = new Properties();
+        prop.setProperty("language", "en");
+        prop.setProperty("model", HttpTaggerServerTest.class.getClassLoader().getResource(posTaggerModelName).getPath());
+        prop.setProperty("lemmatizerModel", HttpTaggerServerTest.class.getClassLoader().getResource(lemmatizerModelName).getPath());
+        prop.setProperty("port", Integer.toString(port));
+        prop.setProperty("workers", "2");
+        prop.setProperty("maxRequestSize", Integer.toString(MAX_REQUEST_SIZE));
+        server = new HttpTaggerServer(prop);
+        tagURL = new URL("http://localhost:" + port + "/tag");
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        server.stop();
+    }
+
+    private static Response send(String method, String body, boolean chunked) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) tagURL.openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            byte[] bytes = body.getBytes("UTF-8");
+            connection.setDoOutput(true);
+            if (chunked) {
+                connection.setChunkedStreamingMode(1024);
+            } else {
+                connection.setFixedLengthStreamingMode(bytes.length);
+            }
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(bytes);
+            } catch (IOException e) {
+                // the server may answer before the whole body is sent
+            }
+        }
+        Response response = new Response();
+        response.status = connection.getResponseCode();
+        InputStream input = response.status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        try (InputStream in = input) {
+            byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                json.write(buffer, 0, read);
+            }
+        }
+        response.body = new Gson().fromJson(json.toString("UTF-8"), JsonObject.class);
+        connection.disconnect();
+        return response;
+    }
+
+    @Test
+    public void testSameAnalysesAsTheTaggerAndLemmatizer() throws IOException {
+        List<String[]> sentences = Arrays.asList(
+            new String[] {"The", "cat", "sat", "on", "the", "mat", "in", "London", "yesterday", "."},
+            new String[] {"Thanks", "."},
+            new String[] {});
+        JsonObject request = new JsonObject();
+        request.add("sentences", new Gson().toJsonTree(sentences));
+        Response response = send("POST", request.toString(), false);
+        assertEquals(200, response.status);
+
+        MorphoFactory morphoFactory = new MorphoFactory();
+        StatisticalTagger posTagger = new StatisticalTagger(prop, morphoFactory);
+        StatisticalLemmatizer lemmatizer = new StatisticalLemmatizer(prop, morphoFactory);
+        JsonArray analyses = response.body.getAsJsonArray("sentences");
+        assertEquals(sentences.size(), analyses.size());
+        for (int s = 0; s < sentences.size(); s++) {
+            String[] tokens = sentences.get(s);
+            String[] tags = posTagger.getPosTags(tokens);
+            List<String> lemmas = lemmatizer.lemmatize(tokens, tags);
+            JsonArray sentence = analyses.get(s).getAsJsonArray();
+            assertEquals(tokens.length, sentence.size());
+            for (int i = 0; i < tokens.length; i++) {
+                JsonObject token = sentence.get(i).getAsJsonObject();
+                String tag = tags[i].toUpperCase();
+                assertEquals(tokens[i], token.get("word").getAsString());
+                assertEquals(tag, token.get("tag").getAsString());
+                assertEquals(Resources.getKafTagSet(tag, "en"), token.get("pos").getAsString());
+                assertEquals(lemmas.get(i), token.get("lemma").getAsString());
+            }
+        }
+    }
+
+    @Test
+    public void testMalformedRequests() throws IOException {
+        Response response = send("POST", "{\"sentences\": [[\"The\", ", false);
+        assertEquals(400, response.status);
+        assertTrue(response.body.get("error").getAsString().startsWith("Malformed JSON"));
+        assertEquals(400, send("POST", "{}", false).status);
+        assertEquals(400, send("POST", "{\"sentences\": [[\"The\", null]]}", false).status);
+    }
+
+    @Test
+    public void testOnlyPost() throws IOException {
+        Response response = send("GET", null, false);
+        assertEquals(405, response.status);
+        assertEquals("Only POST requests are accepted", response.body.get("error").getAsString());
+    }
+
+    @Test
+    public void testTooLargeRequests() throws IOException {
+        StringBuilder body = new StringBuilder("{\"sentences\": [[");
+        while (body.length() <= MAX_REQUEST_SIZE) {
+            body.append("\"token\", ");
+        }
+        body.append("\".\"]]}");
+        // rejected from the Content-Length header, and while reading a chunked body
+        assertEquals(413, send("POST", body.toString(), false).status);
+        assertEquals(413, send("POST", body.toString(), true).status);
+    }
+}
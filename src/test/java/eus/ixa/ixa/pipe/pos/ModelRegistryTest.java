@@ -0,0 +1,97 @@
+package eus.ixa.ixa.pipe.pos;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ModelRegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ModelRegistry.ModelLoader<Object> countingLoader(final AtomicInteger loads) {
+        return new ModelRegistry.ModelLoader<Object>() {
+            public Object load() {
+                loads.incrementAndGet();
+                return new Object();
+            }
+        };
+    }
+
+    private static void write(File file, int length) throws IOException {
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(new byte[length]);
+        }
+    }
+
+    @Test
+    public void testLoadedOncePerKey() throws Exception {
+        ModelRegistry<Object> registry = new ModelRegistry<Object>("test");
+        AtomicInteger loads = new AtomicInteger();
+        Object first = registry.get("a", 10, countingLoader(loads));
+        assertSame(first, registry.get("a", 10, countingLoader(loads)));
+        assertEquals(1, loads.get());
+        registry.get("b", 5, countingLoader(loads));
+        assertEquals(2, loads.get());
+        assertEquals(2, registry.getStats().size());
+        assertEquals(15, registry.getTotalFileSize());
+    }
+
+    @Test
+    public void testFailedLoadNotKept() throws Exception {
+        ModelRegistry<Object> registry = new ModelRegistry<Object>("test");
+        try {
+            registry.get("a", 10, new ModelRegistry.ModelLoader<Object>() {
+                public Object load() throws IOException {
+                    throw new IOException("corrupt model");
+                }
+            });
+            fail("The load error was not thrown");
+        } catch (IOException e) {
+            assertEquals("corrupt model", e.getMessage());
+        }
+        assertTrue(registry.getStats().isEmpty());
+        AtomicInteger loads = new AtomicInteger();
+        registry.get("a", 10, countingLoader(loads));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testNewFileVersionLoadedNextToThePrevious() throws Exception {
+        ModelRegistry<Object> registry = new ModelRegistry<Object>("test");
+        File model = folder.newFile("model.bin");
+        write(model, 10);
+        AtomicInteger loads = new AtomicInteger();
+        String previousKey = ModelRegistry.getFileKey(model);
+        Object previous = registry.get(previousKey, model.length(), countingLoader(loads));
+
+        write(model, 20);
+        String currentKey = ModelRegistry.getFileKey(model);
+        assertFalse(previousKey.equals(currentKey));
+        Object current = registry.get(currentKey, model.length(), countingLoader(loads));
+        assertEquals(2, loads.get());
+        assertEquals(2, registry.getStats().size());
+
+        List<String> evicted = registry.evictOtherVersions(model);
+        assertEquals(1, evicted.size());
+        assertEquals(previousKey, evicted.get(0));
+        assertSame(current, registry.get(currentKey, model.length(), countingLoader(loads)));
+        assertEquals(2, loads.get());
+        assertEquals(20, registry.getTotalFileSize());
+        assertFalse(registry.evict(previousKey));
+        assertNotSame(previous, current);
+    }
+}
@@ -0,0 +1,213 @@
+package eus.ixa.ixa.pipe.pos;
+
+import ixa.kaflib.KAFDocument;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NioTaggerFrontEndTest {
+    private static String posTaggerModelName = "models/en/en-test-pos-perceptron-autodict01-ud.bin";
+    private static String lemmatizerModelName = "models/en/en-test-lemma-perceptron-ud.bin";
+    private static final String BAD_NAF_ERROR = "\n-> ERROR: Badly formatted NAF document!!\n";
+    private static final int WORKERS = 2;
+    private static final int TIMEOUT_MILLIS = 60000;
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static int port;
+    private static Thread serverThread;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        try (ServerSocket freePort = new ServerSocket(0)) {
+            port = freePort.getLocalPort();
+        }
+        final Properties prop = new Properties();
+        prop.setProperty("language", "en");
+        prop.setProperty("model", NioTaggerFrontEndTest.class.getClassLoader().getResource(posTaggerModelName).getPath());
+        prop.setProperty("lemmatizerModel", NioTaggerFrontEndTest.class.getClassLoader().getResource(lemmatizerModelName).getPath());
+        prop.setProperty("resourcesDirectory", folder.newFolder("resources").getPath());
+        prop.setProperty("port", Integer.toString(port));
+        prop.setProperty("outputFormat", "naf");
+        prop.setProperty("allMorphology", "false");
+        prop.setProperty("workers", Integer.toString(WORKERS));
+        // a single slot, so that the selector has to hold back some requests
+        prop.setProperty("queueSize", "1");
+        prop.setProperty("adminReload", "true");
+        prop.setProperty("nio", "true");
+        serverThread = new Thread(new Runnable() {
+            public void run() {
+                new StatisticalTaggerServer(prop);
+            }
+        });
+        serverThread.start();
+    }
+
+    @AfterClass
+    public static void stopServer() throws InterruptedException {
+        // the selector thread stops serving when interrupted
+        serverThread.interrupt();
+        serverThread.join(TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Connect to the server, waiting for it to load the models and listen.
+     */
+    private static Socket connect() throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                Socket socket = new Socket("localhost", port);
+                socket.setSoTimeout(TIMEOUT_MILLIS);
+                return socket;
+            } catch (ConnectException e) {
+                if (System.currentTimeMillis() > deadline || !serverThread.isAlive()) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private static String getDocument() {
+        KAFDocument kaf = new KAFDocument("en", "v1.naf");
+        String[] tokens = {"The", "cats", "sat", "on", "the", "mat", "."};
+        int offset = 0;
+        for (String token : tokens) {
+            kaf.newWF(offset, token, 1);
+            offset += token.length() + 1;
+        }
+        return kaf.toString();
+    }
+
+    private static String readToEnd(InputStream input) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+            bytes.write(buffer, 0, read);
+        }
+        return new String(bytes.toByteArray(), TaggerProtocol.UTF8);
+    }
+
+    private static void assertTagged(String response) {
+        assertTrue(response, response.contains("<terms>"));
+        assertTrue(response, response.contains("morphofeat="));
+    }
+
+    @Test
+    public void testPipelinedFramesAnsweredInOrder() throws Exception {
+        try (Socket socket = connect()) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            output.write(TaggerProtocol.PREAMBLE);
+            // every request is sent before reading any response
+            TaggerProtocol.writeFrame(output, getDocument());
+            TaggerProtocol.writeFrame(output, TaggerProtocol.MODEL_STATS);
+            TaggerProtocol.writeFrame(output, "not a NAF document");
+            TaggerProtocol.writeFrame(output, getDocument());
+
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            assertTagged(TaggerProtocol.readFrame(input));
+            String modelStats = TaggerProtocol.readFrame(input);
+            assertTrue(modelStats, modelStats.startsWith("pos\t"));
+            assertEquals(BAD_NAF_ERROR, TaggerProtocol.readFrame(input));
+            assertTagged(TaggerProtocol.readFrame(input));
+
+            socket.shutdownOutput();
+            assertNull(TaggerProtocol.readFrame(input));
+        }
+    }
+
+    @Test
+    public void testFrameLargerThanTheBuffer() throws Exception {
+        StringBuilder document = new StringBuilder("<NAF>");
+        while (document.length() < 100000) {
+            document.append("<!-- padding -->");
+        }
+        try (Socket socket = connect()) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            output.write(TaggerProtocol.PREAMBLE);
+            TaggerProtocol.writeFrame(output, document.toString());
+            assertEquals(BAD_NAF_ERROR, TaggerProtocol.readFrame(new DataInputStream(socket.getInputStream())));
+        }
+    }
+
+    @Test
+    public void testLegacyDocument() throws Exception {
+        try (Socket socket = connect()) {
+            OutputStream output = socket.getOutputStream();
+            output.write((getDocument() + "\n" + TaggerProtocol.END_OF_DOCUMENT + "\n").getBytes(TaggerProtocol.UTF8));
+            output.flush();
+            // the legacy response ends with the connection
+            assertTagged(readToEnd(socket.getInputStream()));
+        }
+    }
+
+    @Test
+    public void testOversizedFrameClosesOnlyItsConnection() throws Exception {
+        try (Socket socket = connect()) {
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            output.write(TaggerProtocol.PREAMBLE);
+            output.writeInt(Integer.MAX_VALUE);
+            output.flush();
+            assertEquals(-1, socket.getInputStream().read());
+        }
+        try (Socket socket = connect()) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            output.write(TaggerProtocol.PREAMBLE);
+            TaggerProtocol.writeFrame(output, "not a NAF document");
+            assertEquals(BAD_NAF_ERROR, TaggerProtocol.readFrame(new DataInputStream(socket.getInputStream())));
+        }
+    }
+
+    @Test
+    public void testIdleConnectionsDoNotTakeWorkers() throws Exception {
+        List<Socket> idle = new ArrayList<Socket>();
+        try {
+            for (int i = 0; i < WORKERS * 4; i++) {
+                idle.add(connect());
+            }
+            // a connection which only sent part of its frame is idle too
+            Socket partial = connect();
+            idle.add(partial);
+            partial.getOutputStream().write(TaggerProtocol.PREAMBLE);
+            partial.getOutputStream().write(new byte[] {0, 0});
+            partial.getOutputStream().flush();
+
+            try (Socket socket = connect()) {
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                output.write(TaggerProtocol.PREAMBLE);
+                TaggerProtocol.writeFrame(output, getDocument());
+                assertTagged(TaggerProtocol.readFrame(new DataInputStream(socket.getInputStream())));
+            }
+        } finally {
+            for (Socket socket : idle) {
+                socket.close();
+            }
+        }
+        if (!serverThread.isAlive()) {
+            fail("The server stopped");
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package eus.ixa.ixa.pipe.pos;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class StringUtilsTest {
+    /**
+     * Word forms and lemmas of more than 10 characters, so that the edit
+     * scripts have positions of two digits, some of them followed by digits.
+     */
+    private String[][] longPairs = {
+        {"nationalities", "nationality"},
+        {"internationalization", "internationalize"},
+        {"disorganizations", "organization"},
+        {"reorganizaciones", "organización"},
+        {"constitucionalmente", "constitucional"},
+        {"desafortunadamente", "desafortunado"},
+        {"unbelievably", "unbelievable"},
+        {"1abcdefghijk", "2abcdefghijk"},
+        {"x1234567890ab", "y1234567890ab"},
+        {"abcdefghijklm", "abcdefghijklm12"},
+        {"12345678901234", "1234567890123"}
+    };
+
+    /**
+     * The SES as computed before the distance matrix was flattened: the
+     * Levenshtein matrix of the reversed, lowercased strings and the
+     * backtrace over it.
+     */
+    private static String referenceShortestEditScript(String wordForm, String lemma) {
+        String reversedWF = new StringBuffer(wordForm.toLowerCase()).reverse().toString();
+        String reversedLemma = new StringBuffer(lemma.toLowerCase()).reverse().toString();
+        if (reversedWF.equals(reversedLemma)) {
+            return "O";
+        }
+        StringBuffer permutations = new StringBuffer();
+        int[][] distance = StringUtils.levenshteinDistance(reversedWF, reversedLemma);
+        StringUtils.computeShortestEditScript(reversedWF, reversedLemma, distance, permutations);
+        return permutations.toString();
+    }
+
+    private static void checkRoundTrip(String wordForm, String lemma) {
+        String ses = StringUtils.getShortestEditScript(wordForm, lemma);
+        assertEquals(wordForm + " -> " + ses, lemma, EditScriptProgram.compile(ses).apply(wordForm));
+        assertEquals(wordForm + " -> " + ses, lemma, StringUtils.decodeShortestEditScript(wordForm, ses));
+    }
+
+    @Test
+    public void testRoundTripOfLongWords() {
+        for (String[] pair : longPairs) {
+            assertEquals(true, pair[0].length() > 10);
+            checkRoundTrip(pair[0], pair[1]);
+        }
+    }
+
+    @Test
+    public void testRoundTripOfShortWords() {
+        checkRoundTrip("dogs", "dog");
+        checkRoundTrip("went", "go");
+        checkRoundTrip("better", "good");
+        checkRoundTrip("a", "an");
+    }
+
+    @Test
+    public void testSameWord() {
+        assertEquals("O", StringUtils.getShortestEditScript("house", "house"));
+        assertEquals("house", EditScriptProgram.compile("O").apply("house"));
+    }
+
+    @Test
+    public void testSameScriptsAsLevenshteinMatrix() {
+        String[][] pairs = {
+            {"dogs", "dog"}, {"went", "go"}, {"better", "good"}, {"Dogs", "dog"},
+            {"mice", "mouse"}, {"ran", "run"}, {"was", "be"}, {"niños", "niño"},
+            {"", ""}, {"", "a"}, {"a", ""}, {"", "lemma"}, {"word", ""},
+            {"a", "b"}, {"ab", "ba"}, {"aaaa", "aa"}, {"abc", "abcabc"}
+        };
+        for (String[] pair : pairs) {
+            assertEquals(pair[0] + " -> " + pair[1], referenceShortestEditScript(pair[0], pair[1]),
+                StringUtils.getShortestEditScript(pair[0], pair[1]));
+        }
+        for (String[] pair : longPairs) {
+            assertEquals(pair[0] + " -> " + pair[1], referenceShortestEditScript(pair[0], pair[1]),
+                StringUtils.getShortestEditScript(pair[0], pair[1]));
+        }
+    }
+
+    @Test
+    public void testSameScriptsAfterLongerWords() {
+        // the flat matrix of the thread grows and is reused for shorter words
+        String longWord = "pneumonoultramicroscopicsilicovolcanoconiosis";
+        assertEquals(referenceShortestEditScript(longWord, "pneumonia"),
+            StringUtils.getShortestEditScript(longWord, "pneumonia"));
+        assertEquals(referenceShortestEditScript("cats", "cat"),
+            StringUtils.getShortestEditScript("cats", "cat"));
+        assertEquals(referenceShortestEditScript("a", ""),
+            StringUtils.getShortestEditScript("a", ""));
+    }
+}
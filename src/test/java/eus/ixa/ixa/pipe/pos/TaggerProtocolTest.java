@@ -0,0 +1,71 @@
+package eus.ixa.ixa.pipe.pos;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TaggerProtocolTest {
+
+    private DataInputStream toInput(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    public void testFramesRoundTrip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        TaggerProtocol.writeFrame(output, "<NAF>first</NAF>");
+        TaggerProtocol.writeFrame(output, "");
+        TaggerProtocol.writeFrame(output, "Donostia – Sebastián");
+
+        DataInputStream input = toInput(bytes.toByteArray());
+        assertEquals("<NAF>first</NAF>", TaggerProtocol.readFrame(input));
+        assertEquals("", TaggerProtocol.readFrame(input));
+        assertEquals("Donostia – Sebastián", TaggerProtocol.readFrame(input));
+        assertNull(TaggerProtocol.readFrame(input));
+    }
+
+    @Test
+    public void testPreamble() {
+        assertTrue(TaggerProtocol.isPreamble(new byte[] {0, 'I', 'X', 'A'}, 4));
+        assertFalse(TaggerProtocol.isPreamble(new byte[] {'<', 'N', 'A', 'F'}, 4));
+        assertFalse(TaggerProtocol.isPreamble(new byte[] {0, 'I', 'X', 0}, 3));
+    }
+
+    @Test
+    public void testOversizedFrameRejected() {
+        byte[] header = {0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff};
+        try {
+            TaggerProtocol.readFrame(toInput(header));
+            fail("Frames larger than the maximum request size must be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Invalid frame length"));
+        }
+    }
+
+    @Test
+    public void testNegativeFrameRejected() {
+        byte[] header = {(byte) 0xff, 0, 0, 1};
+        try {
+            TaggerProtocol.readFrame(toInput(header));
+            fail("Negative frame lengths must be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Invalid frame length"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedFrame() throws IOException {
+        TaggerProtocol.readFrame(toInput(new byte[] {0, 0, 0, 10, 'a', 'b'}));
+    }
+}
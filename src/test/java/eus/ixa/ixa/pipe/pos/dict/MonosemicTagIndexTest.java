@@ -0,0 +1,126 @@
+package eus.ixa.ixa.pipe.pos.dict;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import morfologik.stemming.Dictionary;
+import morfologik.stemming.DictionaryLookup;
+import morfologik.stemming.WordData;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MonosemicTagIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void write(File file, int length) throws IOException {
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(new byte[length]);
+        }
+    }
+
+    private static MonosemicTagIndex newIndex() {
+        Map<String, String> wordTags = new HashMap<String, String>();
+        wordTags.put("london", "NNP");
+        wordTags.put("the", "DT");
+        wordTags.put("sat", "VBD");
+        return new MonosemicTagIndex(wordTags);
+    }
+
+    @Test
+    public void testSnapshotOfTheSameDictionary() throws Exception {
+        File dict = folder.newFile("test.dict");
+        write(dict, 100);
+        URL dictURL = dict.toURI().toURL();
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        newIndex().save(snapshot, dictURL);
+
+        MonosemicTagIndex loaded = MonosemicTagIndex.load(new ByteArrayInputStream(snapshot.toByteArray()), dictURL);
+        assertNotNull(loaded);
+        assertEquals(3, loaded.size());
+        assertEquals("NNP", loaded.tag("London", "NN"));
+        assertEquals("DT", loaded.tag("The", "X"));
+        assertEquals("NN", loaded.tag("cat", "NN"));
+    }
+
+    @Test
+    public void testSnapshotOfAnotherDictionaryVersion() throws Exception {
+        File dict = folder.newFile("test.dict");
+        write(dict, 100);
+        URL dictURL = dict.toURI().toURL();
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        newIndex().save(snapshot, dictURL);
+
+        write(dict, 120);
+        assertNull(MonosemicTagIndex.load(new ByteArrayInputStream(snapshot.toByteArray()), dictURL));
+    }
+
+    @Test
+    public void testSnapshotOfPreviousFormat() throws Exception {
+        File dict = folder.newFile("test.dict");
+        write(dict, 100);
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(snapshot);
+        output.writeInt(0x49584d54);
+        output.writeInt(1);
+        output.writeInt(0);
+        output.writeInt(0);
+        output.flush();
+        assertNull(MonosemicTagIndex.load(new ByteArrayInputStream(snapshot.toByteArray()), dict.toURI().toURL()));
+    }
+
+    @Test
+    public void testTruncatedSnapshot() throws Exception {
+        File dict = folder.newFile("test.dict");
+        write(dict, 100);
+        URL dictURL = dict.toURI().toURL();
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        newIndex().save(snapshot, dictURL);
+
+        byte[] bytes = snapshot.toByteArray();
+        for (int length : new int[] {0, 6, 30, bytes.length - 1}) {
+            assertNull(MonosemicTagIndex.load(new ByteArrayInputStream(Arrays.copyOf(bytes, length)), dictURL));
+        }
+    }
+
+    @Test
+    public void testSameTagsAsMorfologikTagger() throws Exception {
+        URL dictURL = MonosemicTagIndexTest.class.getClassLoader().getResource("lemmatizer-dicts/en/test-english.dict");
+        MonosemicTagIndex index = MonosemicTagIndex.build(dictURL);
+        MorfologikTagger tagger = new MorfologikTagger(dictURL, "en");
+
+        int words = 0;
+        for (WordData wd : new DictionaryLookup(Dictionary.read(dictURL))) {
+            String word = wd.getWord().toString();
+            assertEquals(word, tagger.tag(word, "X"), index.tag(word, "X"));
+            assertEquals(word, tagger.tag(word.toUpperCase(), "X"), index.tag(word.toUpperCase(), "X"));
+            words++;
+        }
+        assertTrue(words > 0);
+        assertEquals("X", index.tag("notaword", "X"));
+        assertEquals(tagger.tag("notaword", "X"), index.tag("notaword", "X"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotASnapshot() throws Exception {
+        File dict = folder.newFile("test.dict");
+        write(dict, 100);
+        MonosemicTagIndex.load(new ByteArrayInputStream(new byte[16]), dict.toURI().toURL());
+    }
+}
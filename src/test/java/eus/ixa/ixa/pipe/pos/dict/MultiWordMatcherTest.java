@@ -0,0 +1,173 @@
+package eus.ixa.ixa.pipe.pos.dict;
+
+import eus.ixa.ixa.pipe.pos.StringUtils;
+import opennlp.tools.util.Span;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MultiWordMatcherTest {
+    /**
+     * Multiwords sharing their first tokens, so that the longest match has
+     * to be chosen at some positions.
+     */
+    private String[] dictionaryLines = {
+        "a#fin#de\ta_fin_de\tCS\t0",
+        "a#fin#de#que\ta_fin_de_que\tCS\t0",
+        "in#order#to\tin_order_to\tIN\t0",
+        "as#well\tas_well\tRB\t0",
+        "as#well#as\tas_well_as\tCC\t0",
+        "New#York\tnew_york\tNNP\t0",
+        "New#York#City\tnew_york_city\tNNP\t0",
+        "sin#embargo\tsin_embargo\tRG\t0",
+        "not well-formed line",
+        "por#lo#tanto\tpor_lo_tanto\tRG\t0"
+    };
+    private String[][] sentences = {
+        {"They", "came", "in", "order", "to", "see", "New", "York", "City", "."},
+        {"Lo", "hizo", "a", "fin", "de", "que", "vinieran", ",", "sin", "embargo", "."},
+        {"A", "FIN", "DE", "cuentas"},
+        {"as", "well", "as", "well", "as"},
+        {"in", "order", "in", "order", "to"},
+        {"new", "york", "new"},
+        {"por", "lo", "tanto"},
+        {"as"},
+        {}
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MultiWordMatcher newMatcher() throws Exception {
+        File dictionary = new File(folder.getRoot(), "en-locutions.txt");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(dictionary), Charset.forName("UTF-8"))) {
+            for (String line : dictionaryLines) {
+                writer.write(line + "\n");
+            }
+        }
+        Properties properties = new Properties();
+        properties.setProperty("language", "en");
+        properties.setProperty("resourcesDirectory", folder.getRoot().getPath());
+        return new MultiWordMatcher(properties);
+    }
+
+    /**
+     * The multiword dictionary as loaded before the trie: the space joined
+     * lowercased multiwords and their postags.
+     */
+    private Map<String, String> referenceDictionary() {
+        Map<String, String> dictionary = new HashMap<String, String>();
+        for (String line : dictionaryLines) {
+            String[] lineArray = line.split("\t");
+            if (lineArray.length == 4) {
+                dictionary.put(lineArray[0].toLowerCase().replaceAll("#", " "), lineArray[2]);
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * The spans as found before the trie: every token sequence starting at
+     * a position is looked up in the dictionary and the longest one found
+     * is taken.
+     */
+    private static List<Span> referenceSpans(Map<String, String> dictionary, String[] tokens) {
+        List<Span> multiWordsFound = new ArrayList<Span>();
+        for (int offsetFrom = 0; offsetFrom < tokens.length; offsetFrom++) {
+            Span multiwordFound = null;
+            for (int offsetTo = offsetFrom; offsetTo < tokens.length; offsetTo++) {
+                String[] tokensSearching = Arrays.copyOfRange(tokens, offsetFrom, offsetTo + 1);
+                String entryValue = dictionary.get(StringUtils.getStringFromTokens(tokensSearching).toLowerCase());
+                if (entryValue != null) {
+                    multiwordFound = new Span(offsetFrom, offsetTo + 1, entryValue);
+                }
+            }
+            if (multiwordFound != null) {
+                multiWordsFound.add(multiwordFound);
+                offsetFrom += multiwordFound.length() - 1;
+            }
+        }
+        return multiWordsFound;
+    }
+
+    private static String[] referenceTokens(List<Span> spans, String[] tokens) {
+        List<String> tokenList = new ArrayList<String>(Arrays.asList(tokens));
+        int counter = 0;
+        for (Span mwSpan : spans) {
+            int fromIndex = mwSpan.getStart() - counter;
+            int toIndex = mwSpan.getEnd() - counter;
+            List<String> multiWordTokens = tokenList.subList(fromIndex, toIndex);
+            counter = counter + multiWordTokens.size() - 1;
+            StringBuilder multiWord = new StringBuilder();
+            for (String token : multiWordTokens) {
+                multiWord.append(multiWord.length() == 0 ? "" : "#").append(token);
+            }
+            multiWordTokens.clear();
+            tokenList.add(fromIndex, multiWord.toString());
+        }
+        return tokenList.toArray(new String[tokenList.size()]);
+    }
+
+    @Test
+    public void testSameMultiWords() throws Exception {
+        MultiWordMatcher matcher = newMatcher();
+        Map<String, String> dictionary = referenceDictionary();
+        for (String[] sentence : sentences) {
+            List<Span> expected = referenceSpans(dictionary, sentence);
+            Span[] spans = matcher.multiWordsToSpans(sentence);
+            assertEquals(Arrays.toString(sentence), expected.size(), spans.length);
+            for (int i = 0; i < spans.length; i++) {
+                assertEquals(expected.get(i).getStart(), spans[i].getStart());
+                assertEquals(expected.get(i).getEnd(), spans[i].getEnd());
+                assertEquals(expected.get(i).getType(), spans[i].getType());
+            }
+            assertArrayEquals(referenceTokens(expected, sentence), matcher.getTokensWithMultiWords(sentence));
+        }
+    }
+
+    @Test
+    public void testLongestMultiWord() throws Exception {
+        MultiWordMatcher matcher = newMatcher();
+        MultiWordMatch match = matcher.match(sentences[1]);
+        assertArrayEquals(new String[] {"Lo", "hizo", "a#fin#de#que", "vinieran", ",", "sin#embargo", "."},
+            match.getTokens());
+        assertEquals("CS", match.getSpans()[0].getType());
+        assertEquals(4, matcher.getMaxTokenCount());
+    }
+
+    @Test
+    public void testDictionariesOfDistinctDirectories() throws Exception {
+        MultiWordMatcher matcher = newMatcher();
+        File otherDirectory = folder.newFolder("other");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(otherDirectory, "es-locutions.txt")),
+                Charset.forName("UTF-8"))) {
+            writer.write("no#obstante\tno_obstante\tRG\t0\n");
+        }
+        Properties properties = new Properties();
+        properties.setProperty("language", "es");
+        properties.setProperty("resourcesDirectory", otherDirectory.getPath());
+        MultiWordMatcher otherMatcher = new MultiWordMatcher(properties);
+
+        String[] sentence = {"sin", "embargo", "y", "no", "obstante"};
+        // each matcher keeps the trie of its own dictionary
+        assertArrayEquals(new String[] {"sin#embargo", "y", "no", "obstante"}, matcher.getTokensWithMultiWords(sentence));
+        assertArrayEquals(new String[] {"sin", "embargo", "y", "no#obstante"}, otherMatcher.getTokensWithMultiWords(sentence));
+        assertEquals(4, matcher.getMaxTokenCount());
+        assertEquals(2, otherMatcher.getMaxTokenCount());
+    }
+}
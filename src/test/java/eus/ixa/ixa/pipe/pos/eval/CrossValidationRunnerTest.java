@@ -0,0 +1,137 @@
+package eus.ixa.ixa.pipe.pos.eval;
+
+import opennlp.tools.util.CollectionObjectStream;
+import opennlp.tools.util.ObjectStream;
+import opennlp.tools.util.eval.CrossValidationPartitioner;
+import opennlp.tools.util.eval.Mean;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CrossValidationRunnerTest {
+    private static final int FOLDS = 5;
+
+    /**
+     * Sentences of different lengths, every int being a word.
+     */
+    private List<int[]> getSamples() {
+        List<int[]> samples = new ArrayList<int[]>();
+        for (int s = 0; s < 23; s++) {
+            int[] words = new int[1 + (s * 7) % 5];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = s * 31 + i * 17;
+            }
+            samples.add(words);
+        }
+        return samples;
+    }
+
+    /**
+     * A deterministic fold: the words are right or wrong depending on the
+     * training samples, so that every fold gets its own accuracy.
+     */
+    private static Mean evaluateFold(ObjectStream<int[]> trainSamples, ObjectStream<int[]> testSamples)
+            throws IOException {
+        long model = 0;
+        for (int[] sample = trainSamples.read(); sample != null; sample = trainSamples.read()) {
+            for (int word : sample) {
+                model = model * 31 + word;
+            }
+        }
+        Mean accuracy = new Mean();
+        for (int[] sample = testSamples.read(); sample != null; sample = testSamples.read()) {
+            for (int word : sample) {
+                accuracy.add((model + word) % 3 == 0 ? 0 : 1);
+            }
+        }
+        return accuracy;
+    }
+
+    /**
+     * The folds as run by OpenNLP's sequential cross validation.
+     */
+    private List<Mean> referenceFolds(List<int[]> samples) throws IOException {
+        List<Mean> folds = new ArrayList<Mean>();
+        CrossValidationPartitioner<int[]> partitioner = new CrossValidationPartitioner<int[]>(
+            new CollectionObjectStream<int[]>(samples), FOLDS);
+        while (partitioner.hasNext()) {
+            CrossValidationPartitioner.TrainingSampleStream<int[]> trainSamples = partitioner.next();
+            List<int[]> train = new ArrayList<int[]>();
+            for (int[] sample = trainSamples.read(); sample != null; sample = trainSamples.read()) {
+                train.add(sample);
+            }
+            folds.add(evaluateFold(new CollectionObjectStream<int[]>(train), trainSamples.getTestSampleStream()));
+        }
+        return folds;
+    }
+
+    private void checkSameAccuracy(int threads) throws IOException {
+        List<int[]> samples = getSamples();
+        List<Mean> expectedFolds = referenceFolds(samples);
+        Mean expected = new Mean();
+        for (Mean fold : expectedFolds) {
+            expected.add(fold.mean(), fold.count());
+        }
+
+        final Map<Integer, Mean> folds = new ConcurrentHashMap<Integer, Mean>();
+        Mean wordAccuracy = new CrossValidationRunner<int[]>(FOLDS, threads).run(
+            new CollectionObjectStream<int[]>(samples), new CrossValidationRunner.FoldEvaluator<int[]>() {
+                public Mean evaluate(int fold, ObjectStream<int[]> trainSamples, ObjectStream<int[]> testSamples)
+                        throws IOException {
+                    Mean accuracy = evaluateFold(trainSamples, testSamples);
+                    folds.put(fold, accuracy);
+                    return accuracy;
+                }
+            });
+
+        assertEquals(FOLDS, folds.size());
+        for (int fold = 0; fold < FOLDS; fold++) {
+            assertEquals(expectedFolds.get(fold).count(), folds.get(fold).count());
+            assertEquals(expectedFolds.get(fold).mean(), folds.get(fold).mean(), 0d);
+        }
+        assertEquals(expected.count(), wordAccuracy.count());
+        assertEquals(expected.mean(), wordAccuracy.mean(), 0d);
+    }
+
+    @Test
+    public void testSequentialSameAccuracy() throws IOException {
+        checkSameAccuracy(1);
+    }
+
+    @Test
+    public void testConcurrentSameAccuracy() throws IOException {
+        checkSameAccuracy(3);
+        checkSameAccuracy(FOLDS);
+    }
+
+    @Test
+    public void testFoldErrorThrown() throws IOException {
+        try {
+            new CrossValidationRunner<int[]>(FOLDS, 2).run(new CollectionObjectStream<int[]>(getSamples()),
+                new CrossValidationRunner.FoldEvaluator<int[]>() {
+                    public Mean evaluate(int fold, ObjectStream<int[]> trainSamples, ObjectStream<int[]> testSamples)
+                            throws IOException {
+                        if (fold == 3) {
+                            throw new IOException("fold " + fold + " failed");
+                        }
+                        return evaluateFold(trainSamples, testSamples);
+                    }
+                });
+            fail("The fold error was not thrown");
+        } catch (IOException e) {
+            assertEquals("fold 3 failed", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOneFoldRejected() {
+        new CrossValidationRunner<int[]>(1, 1);
+    }
+}
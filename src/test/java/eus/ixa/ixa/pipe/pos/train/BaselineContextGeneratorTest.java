@@ -0,0 +1,145 @@
+package eus.ixa.ixa.pipe.pos.train;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class BaselineContextGeneratorTest {
+    private String[][] sentences = {
+        {"The", "well-known", "dog", "barks", "at", "3", "cats", "."},
+        {"Hi", "!"},
+        {"A"},
+        {"Donostia", "hosted", "the", "2016", "European", "Capital", "of", "Culture", "."}
+    };
+    private String[] tagSet = {"DT", "JJ", "NN", "VBZ", "IN", "CD", "NNS", "."};
+
+    /**
+     * The features as computed, for every call, by the generator before the
+     * token features were precomputed per sentence.
+     */
+    private static String[] referenceContext(int index, String[] tokens, String[] tags) {
+        String lex = tokens[index];
+        String next = null;
+        String nextnext = null;
+        String prev;
+        String prevprev = null;
+        String tagprev = null;
+        String tagprevprev = null;
+        if (tokens.length > index + 1) {
+            next = tokens[index + 1];
+            nextnext = tokens.length > index + 2 ? tokens[index + 2] : "*SE*";
+        } else {
+            next = "*SE*";
+        }
+        if (index - 1 >= 0) {
+            prev = tokens[index - 1];
+            tagprev = tags[index - 1];
+            if (index - 2 >= 0) {
+                prevprev = tokens[index - 2];
+                tagprevprev = tags[index - 2];
+            } else {
+                prevprev = "*SB*";
+            }
+        } else {
+            prev = "*SB*";
+        }
+        List<String> features = new ArrayList<String>();
+        features.add("default");
+        features.add("w=" + lex);
+        for (String suff : BaselineContextGenerator.getSuffixes(lex)) {
+            features.add("suf=" + suff);
+        }
+        for (String pref : BaselineContextGenerator.getPrefixes(lex)) {
+            features.add("pre=" + pref);
+        }
+        if (lex.indexOf('-') != -1) {
+            features.add("h");
+        }
+        if (lex.matches(".*[A-Z].*")) {
+            features.add("c");
+        }
+        if (lex.matches(".*[0-9].*")) {
+            features.add("d");
+        }
+        features.add("pw=" + prev);
+        features.add("pw,w=" + prev + "," + lex);
+        if (tagprev != null) {
+            features.add("pt=" + tagprev);
+            features.add("pt,w=" + tagprev + "," + lex);
+        }
+        if (prevprev != null) {
+            features.add("ppw=" + prevprev);
+            if (tagprevprev != null) {
+                features.add("pt2,pt1=" + tagprevprev + "," + tagprev);
+            }
+        }
+        features.add("nw=" + next);
+        if (nextnext != null) {
+            features.add("nnw=" + nextnext);
+        }
+        return features.toArray(new String[features.size()]);
+    }
+
+    private void checkSentences(BaselineContextGenerator generator) {
+        checkSentences(generator, null);
+    }
+
+    private void checkSentences(BaselineContextGenerator generator, FeatureHasher hasher) {
+        for (String[] sentence : sentences) {
+            // several tag histories per token, as the beam search asks for
+            for (int history = 0; history < 3; history++) {
+                String[] tags = new String[sentence.length];
+                for (int i = 0; i < sentence.length; i++) {
+                    tags[i] = tagSet[(i + history) % tagSet.length];
+                }
+                for (int i = 0; i < sentence.length; i++) {
+                    String[] expected = referenceContext(i, sentence, tags);
+                    if (hasher != null) {
+                        expected = hasher.hash(expected);
+                    }
+                    assertArrayEquals(expected, generator.getContext(i, sentence, tags));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSameFeaturesWithoutCache() {
+        checkSentences(new BaselineContextGenerator(0, null));
+    }
+
+    @Test
+    public void testSameFeaturesWithCache() {
+        checkSentences(new BaselineContextGenerator(3, null));
+    }
+
+    @Test
+    public void testHashedFeaturesWithoutCache() {
+        FeatureHasher hasher = new FeatureHasher(18);
+        checkSentences(new BaselineContextGenerator(0, null, hasher), hasher);
+    }
+
+    @Test
+    public void testHashedFeaturesWithCache() {
+        FeatureHasher hasher = new FeatureHasher(18);
+        checkSentences(new BaselineContextGenerator(3, null, hasher), hasher);
+    }
+
+    @Test
+    public void testReusedTokenBufferWithoutCache() {
+        BaselineContextGenerator generator = new BaselineContextGenerator(0, null);
+        String[] buffer = new String[4];
+        String[] tags = {"DT", "NN", "VBZ", "."};
+        String[][] refills = {{"The", "dog", "barks", "."}, {"A", "cat", "sleeps", "!"}};
+        for (String[] refill : refills) {
+            System.arraycopy(refill, 0, buffer, 0, refill.length);
+            for (int i = 0; i < buffer.length; i++) {
+                assertArrayEquals(referenceContext(i, refill, tags),
+                    generator.getContext(i, buffer, tags));
+            }
+        }
+    }
+}
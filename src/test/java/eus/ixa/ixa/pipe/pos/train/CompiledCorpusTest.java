@@ -0,0 +1,138 @@
+package eus.ixa.ixa.pipe.pos.train;
+
+import eus.ixa.ixa.pipe.lemma.LemmaSample;
+import eus.ixa.ixa.pipe.lemma.LemmaSampleStream;
+import opennlp.tools.postag.POSSample;
+import opennlp.tools.util.ObjectStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompiledCorpusTest {
+    private String[] words = {"The", "niños", "ran", "to", "Donostia", "for", "5", "€", "better", "geese", "."};
+    private String[] tags = {"DT", "NNS", "VBD", "TO", "NNP", "IN", "CD", "$", "JJR", "NNS", "."};
+    private String[] lemmas = {"the", "niño", "run", "to", "Donostia", "for", "5", "€", "good", "goose", "."};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Write a corpus in word\tpostag\tlemma format with more tokens than the
+     * initial capacity of the compiled columns and a corrupt line.
+     */
+    private File writeCorpus() throws IOException {
+        File corpus = folder.newFile("corpus.tsv");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(corpus), "UTF-8")) {
+            for (int s = 0; s < 300; s++) {
+                for (int i = 0; i < 1 + s % 7; i++) {
+                    int w = (s + i) % words.length;
+                    writer.write(words[w] + "\t" + tags[w] + "\t" + lemmas[w] + "\n");
+                }
+                if (s == 42) {
+                    writer.write("corrupt line\n");
+                }
+                writer.write("\n");
+            }
+        }
+        return corpus;
+    }
+
+    private File compile(File corpus) throws IOException {
+        File compiled = folder.newFile("corpus.bin");
+        ObjectStream<LemmaSample> samples = LemmaSampleStream.create(
+            InputOutputUtils.readFileIntoMarkableStreamFactory(corpus.getPath()), 1);
+        try {
+            CompiledCorpus.compile(samples, compiled);
+        } finally {
+            samples.close();
+        }
+        return compiled;
+    }
+
+    @Test
+    public void testSamePOSSamples() throws IOException {
+        File corpus = writeCorpus();
+        File compiled = compile(corpus);
+        ObjectStream<POSSample> expected = CompiledCorpus.openPOSSamples(corpus.getPath(), 1);
+        ObjectStream<POSSample> actual = CompiledCorpus.openPOSSamples(compiled.getPath(), 1);
+        int sentences = 0;
+        for (POSSample sample = expected.read(); sample != null; sample = expected.read()) {
+            POSSample compiledSample = actual.read();
+            assertArrayEquals(sample.getSentence(), compiledSample.getSentence());
+            assertArrayEquals(sample.getTags(), compiledSample.getTags());
+            sentences++;
+        }
+        assertNull(actual.read());
+        assertEquals(300, sentences);
+        assertEquals(300, CompiledCorpus.load(compiled.getPath()).size());
+        expected.close();
+        actual.close();
+    }
+
+    @Test
+    public void testSameLemmaSamples() throws IOException {
+        File corpus = writeCorpus();
+        File compiled = compile(corpus);
+        ObjectStream<LemmaSample> expected = CompiledCorpus.openLemmaSamples(corpus.getPath(), 1);
+        ObjectStream<LemmaSample> actual = CompiledCorpus.openLemmaSamples(compiled.getPath(), 1);
+        for (LemmaSample sample = expected.read(); sample != null; sample = expected.read()) {
+            LemmaSample compiledSample = actual.read();
+            assertArrayEquals(sample.getTokens(), compiledSample.getTokens());
+            assertArrayEquals(sample.getTags(), compiledSample.getTags());
+            assertArrayEquals(sample.getLemmas(), compiledSample.getLemmas());
+        }
+        assertNull(actual.read());
+        expected.close();
+        actual.close();
+    }
+
+    @Test
+    public void testIndependentStreams() throws IOException {
+        CompiledCorpus compiledCorpus = CompiledCorpus.load(compile(writeCorpus()).getPath());
+        ObjectStream<POSSample> first = compiledCorpus.getPOSSamples();
+        ObjectStream<POSSample> second = compiledCorpus.getPOSSamples();
+        POSSample firstSample = first.read();
+        first.read();
+        // the second stream starts at the first sentence whatever the first one read
+        assertArrayEquals(firstSample.getSentence(), second.read().getSentence());
+        first.reset();
+        assertArrayEquals(firstSample.getSentence(), first.read().getSentence());
+    }
+
+    @Test
+    public void testIsCompiled() throws IOException {
+        File corpus = writeCorpus();
+        assertFalse(CompiledCorpus.isCompiled(corpus.getPath()));
+        assertTrue(CompiledCorpus.isCompiled(compile(corpus).getPath()));
+        assertFalse(CompiledCorpus.isCompiled(folder.newFile("empty.bin").getPath()));
+    }
+
+    @Test
+    public void testTruncatedRejected() throws IOException {
+        File compiled = compile(writeCorpus());
+        byte[] bytes = Files.readAllBytes(compiled.toPath());
+        File truncated = folder.newFile("truncated.bin");
+        Files.write(truncated.toPath(), Arrays.copyOf(bytes, bytes.length - 4));
+        try {
+            CompiledCorpus.load(truncated.getPath());
+            fail("The truncated corpus was loaded");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Truncated compiled corpus"));
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package eus.ixa.ixa.pipe.pos.train;
+
+import eus.ixa.ixa.pipe.lemma.LemmaSample;
+import eus.ixa.ixa.pipe.lemma.LemmaSampleStream;
+import eus.ixa.ixa.pipe.pos.MorphoSampleStream;
+import opennlp.tools.postag.POSSample;
+import opennlp.tools.util.ObjectStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ParallelSampleStreamTest {
+    private static final int SENTENCES = 1000;
+    private String[] words = {"The", "niños", "ran", "to", "Donostia", "for", "5", "€", "better", "geese", "."};
+    private String[] tags = {"DT", "NNS", "VBD", "TO", "NNP", "IN", "CD", "$", "JJR", "NNS", "."};
+    private String[] lemmas = {"the", "niño", "run", "to", "Donostia", "for", "5", "€", "good", "goose", "."};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Write a corpus in word\tpostag\tlemma format spanning several blocks of
+     * the parallel stream, with a corrupt line.
+     */
+    private File writeCorpus() throws IOException {
+        File corpus = folder.newFile("corpus.tsv");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(corpus), "UTF-8")) {
+            for (int s = 0; s < SENTENCES; s++) {
+                writer.write("S" + s + "\tNNP\ts" + s + "\n");
+                for (int i = 0; i < s % 9; i++) {
+                    int w = (s + i) % words.length;
+                    writer.write(words[w] + "\t" + tags[w] + "\t" + lemmas[w] + "\n");
+                }
+                if (s == 300) {
+                    writer.write("corrupt line\n");
+                }
+                writer.write("\n");
+            }
+        }
+        return corpus;
+    }
+
+    private static ObjectStream<String> lines(File corpus) throws IOException {
+        return InputOutputUtils.readFileIntoMarkableStreamFactory(corpus.getPath());
+    }
+
+    private static void assertSamePOSSamples(ObjectStream<POSSample> expected, ObjectStream<POSSample> actual,
+            int count) throws IOException {
+        for (int s = 0; s < count; s++) {
+            POSSample sample = expected.read();
+            POSSample parallelSample = actual.read();
+            assertArrayEquals(sample.getSentence(), parallelSample.getSentence());
+            assertArrayEquals(sample.getTags(), parallelSample.getTags());
+        }
+    }
+
+    @Test
+    public void testSamePOSSamples() throws IOException {
+        File corpus = writeCorpus();
+        ObjectStream<POSSample> expected = new MorphoSampleStream(lines(corpus));
+        ObjectStream<POSSample> actual = MorphoSampleStream.create(lines(corpus), 4);
+        try {
+            assertSamePOSSamples(expected, actual, SENTENCES);
+            assertNull(expected.read());
+            assertNull(actual.read());
+            assertNull(actual.read());
+        } finally {
+            expected.close();
+            actual.close();
+        }
+    }
+
+    @Test
+    public void testSameLemmaSamples() throws IOException {
+        File corpus = writeCorpus();
+        ObjectStream<LemmaSample> expected = new LemmaSampleStream(lines(corpus));
+        ObjectStream<LemmaSample> actual = LemmaSampleStream.create(lines(corpus), 4);
+        try {
+            for (int s = 0; s < SENTENCES; s++) {
+                LemmaSample sample = expected.read();
+                LemmaSample parallelSample = actual.read();
+                assertArrayEquals(sample.getTokens(), parallelSample.getTokens());
+                assertArrayEquals(sample.getTags(), parallelSample.getTags());
+                assertArrayEquals(sample.getLemmas(), parallelSample.getLemmas());
+            }
+            assertNull(expected.read());
+            assertNull(actual.read());
+        } finally {
+            expected.close();
+            actual.close();
+        }
+    }
+
+    @Test
+    public void testResetInTheMiddle() throws IOException {
+        File corpus = writeCorpus();
+        ObjectStream<POSSample> expected = new MorphoSampleStream(lines(corpus));
+        ObjectStream<POSSample> actual = MorphoSampleStream.create(lines(corpus), 4);
+        try {
+            // stop in the middle of a block, with more blocks read ahead
+            assertSamePOSSamples(expected, actual, 200);
+            expected.reset();
+            actual.reset();
+            assertSamePOSSamples(expected, actual, SENTENCES);
+            assertNull(actual.read());
+            // and once more after the end of the corpus
+            expected.reset();
+            actual.reset();
+            assertSamePOSSamples(expected, actual, SENTENCES);
+            assertNull(actual.read());
+        } finally {
+            expected.close();
+            actual.close();
+        }
+    }
+
+    @Test
+    public void testParseExceptionPropagated() throws IOException {
+        File corpus = writeCorpus();
+        final SampleParser<POSSample> morphoParser = new MorphoSampleStream(lines(corpus));
+        SampleParser<POSSample> failingParser = new SampleParser<POSSample>() {
+            public POSSample parse(List<String> lines) {
+                if (lines.get(0).startsWith("S700\t")) {
+                    throw new IllegalArgumentException("Unparseable sentence");
+                }
+                return morphoParser.parse(lines);
+            }
+        };
+        ObjectStream<POSSample> actual = new ParallelSampleStream<POSSample>(lines(corpus), failingParser, 4);
+        try {
+            // the samples before the failing block are returned in order
+            for (int s = 0; s < 640; s++) {
+                assertEquals("S" + s, actual.read().getSentence()[0]);
+            }
+            for (int s = 640; s < SENTENCES; s++) {
+                actual.read();
+            }
+            fail("The parse exception was not propagated");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unparseable sentence", e.getMessage());
+        } finally {
+            actual.close();
+        }
+    }
+}